@@ -0,0 +1,277 @@
+package com.cwcdev.ia.admissao;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.service.NavegacaoService;
+
+/**
+ * Controle de admissão pela saúde dos serviços externos.
+ *
+ * Como interceptor do RestTemplate, acompanha por serviço (viacep,
+ * nominatim, osrm) as chamadas em andamento e a média móvel da latência. Um
+ * serviço está saturado quando uma das duas passa do limite configurado.
+ *
+ * As requisições de baixa prioridade que dependem de um serviço saturado
+ * ({@link InterceptorAdmissao}) são admitidas só com respostas em cache: as
+ * chamadas delas a esse serviço falham na hora com {@link SobrecargaException},
+ * em vez de prenderem uma thread do Tomcat. Uma chamada por intervalo de
+ * sonda ainda passa, para a média se atualizar quando o serviço se recupera.
+ * Páginas estáticas, STOMP e as threads de navegação não são restringidas.
+ */
+@Component
+public class ControleAdmissao implements ClientHttpRequestInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ControleAdmissao.class);
+
+    // Peso de cada nova amostra na média móvel da latência
+    private static final double ALFA = 0.2;
+
+    private static final ThreadLocal<Restricao> ATUAL = new ThreadLocal<>();
+
+    private final Servico[] servicos;
+    private final boolean habilitado;
+    private final int maximoEmAndamento;
+    private final long latenciaMaximaMs;
+    private final long intervaloSondaNanos;
+    private final int retryAfterSegundos;
+
+    public ControleAdmissao(
+            @Value("${navegacao.admissao.habilitado:true}") boolean habilitado,
+            @Value("${navegacao.admissao.maximo-em-andamento:32}") int maximoEmAndamento,
+            @Value("${navegacao.admissao.latencia-maxima-ms:3000}") long latenciaMaximaMs,
+            @Value("${navegacao.admissao.intervalo-sonda-ms:1000}") long intervaloSondaMs,
+            @Value("${navegacao.admissao.retry-after-s:5}") int retryAfterSegundos,
+            @Value("${upstream.viacep.url:https://viacep.com.br/ws/}") String urlViaCep,
+            @Value("${upstream.nominatim.url:https://nominatim.openstreetmap.org/search}") String urlNominatim,
+            @Value("${upstream.osrm.url:https://router.project-osrm.org/route/v1/driving/}") String urlOsrm) {
+        this.habilitado = habilitado;
+        this.maximoEmAndamento = maximoEmAndamento;
+        this.latenciaMaximaMs = latenciaMaximaMs;
+        this.intervaloSondaNanos = intervaloSondaMs * 1_000_000L;
+        this.retryAfterSegundos = retryAfterSegundos;
+        this.servicos = new Servico[] {
+                new Servico(0, "viacep", urlViaCep),
+                new Servico(1, "nominatim", urlNominatim),
+                new Servico(2, "osrm", NavegacaoService.urlRaizOsrm(urlOsrm))};
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Servico servico = identificar(request.getURI().toString());
+        if (servico == null) {
+            return execution.execute(request, body);
+        }
+        Restricao restricao = ATUAL.get();
+        if (restricao != null && restricao.cobre(servico.indice) && isSaturado(servico) && !servico.sondar()) {
+            restricao.recusou.set(true);
+            servico.recusas.increment();
+            throw new SobrecargaException(servico.nome);
+        }
+
+        servico.emAndamento.incrementAndGet();
+        long inicio = System.nanoTime();
+        try {
+            return execution.execute(request, body);
+        } finally {
+            servico.emAndamento.decrementAndGet();
+            servico.registrar((System.nanoTime() - inicio) / 1_000_000.0);
+        }
+    }
+
+    /**
+     * Interceptor MVC para requisições que dependem dos serviços citados
+     */
+    public InterceptorAdmissao interceptor(String... nomes) {
+        int mascara = 0;
+        for (String nome : nomes) {
+            Servico servico = porNome(nome);
+            if (servico == null) {
+                throw new IllegalArgumentException("Serviço desconhecido: " + nome);
+            }
+            mascara |= 1 << servico.indice;
+        }
+        return new InterceptorAdmissao(this, mascara);
+    }
+
+    /**
+     * Serviços saturados entre os da máscara (bit i = serviço i), ou 0
+     */
+    int saturados(int mascara) {
+        if (!habilitado) {
+            return 0;
+        }
+        int saturados = 0;
+        for (Servico servico : servicos) {
+            if ((mascara & (1 << servico.indice)) != 0 && isSaturado(servico)) {
+                saturados |= 1 << servico.indice;
+            }
+        }
+        return saturados;
+    }
+
+    private boolean isSaturado(Servico servico) {
+        return servico.emAndamento.get() >= maximoEmAndamento || servico.latenciaMs >= latenciaMaximaMs;
+    }
+
+    /**
+     * Restrição da requisição em andamento nesta thread, ou null se ela foi admitida por completo
+     */
+    public static Restricao atual() {
+        return ATUAL.get();
+    }
+
+    /**
+     * Aplica {@code restricao} (pode ser null) na thread atual até o escopo ser fechado
+     */
+    public static Escopo usar(Restricao restricao) {
+        Escopo escopo = new Escopo(ATUAL.get());
+        if (restricao != null) {
+            ATUAL.set(restricao);
+        } else {
+            ATUAL.remove();
+        }
+        return escopo;
+    }
+
+    /**
+     * A requisição desta thread teve alguma chamada externa recusada por sobrecarga
+     */
+    public static boolean recusouNaRequisicao() {
+        Restricao restricao = ATUAL.get();
+        return restricao != null && restricao.recusou.get();
+    }
+
+    public int getRetryAfterSegundos() {
+        return retryAfterSegundos;
+    }
+
+    public String[] getServicos() {
+        String[] nomes = new String[servicos.length];
+        for (int i = 0; i < servicos.length; i++) {
+            nomes[i] = servicos[i].nome;
+        }
+        return nomes;
+    }
+
+    public int getEmAndamento(String nome) {
+        return porNome(nome).emAndamento.get();
+    }
+
+    public double getLatenciaMediaMs(String nome) {
+        return porNome(nome).latenciaMs;
+    }
+
+    public long getRecusas(String nome) {
+        return porNome(nome).recusas.sum();
+    }
+
+    public boolean isSaturado(String nome) {
+        return habilitado && isSaturado(porNome(nome));
+    }
+
+    private Servico identificar(String url) {
+        for (Servico servico : servicos) {
+            if (url.startsWith(servico.prefixo)) {
+                return servico;
+            }
+        }
+        return null;
+    }
+
+    private Servico porNome(String nome) {
+        for (Servico servico : servicos) {
+            if (servico.nome.equals(nome)) {
+                return servico;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Serviços externos que a requisição só pode usar via cache; repassada
+     * às threads que trabalham em nome dela como o {@code Prazo}
+     */
+    public static final class Restricao {
+
+        private final int mascara;
+        private final AtomicBoolean recusou = new AtomicBoolean();
+
+        Restricao(int mascara) {
+            this.mascara = mascara;
+        }
+
+        boolean cobre(int indice) {
+            return (mascara & (1 << indice)) != 0;
+        }
+    }
+
+    /**
+     * Restaura a restrição anterior da thread ao ser fechado
+     */
+    public static final class Escopo implements AutoCloseable {
+
+        private final Restricao anterior;
+
+        private Escopo(Restricao anterior) {
+            this.anterior = anterior;
+        }
+
+        @Override
+        public void close() {
+            if (anterior != null) {
+                ATUAL.set(anterior);
+            } else {
+                ATUAL.remove();
+            }
+        }
+    }
+
+    private final class Servico {
+        final String nome;
+        final String prefixo;
+        final int indice;
+        final AtomicInteger emAndamento = new AtomicInteger();
+        final AtomicLong ultimaSonda = new AtomicLong(System.nanoTime());
+        final LongAdder recusas = new LongAdder();
+        volatile double latenciaMs;
+
+        Servico(int indice, String nome, String prefixo) {
+            this.indice = indice;
+            this.nome = nome;
+            this.prefixo = prefixo;
+        }
+
+        synchronized void registrar(double amostraMs) {
+            boolean saturadoAntes = latenciaMs >= latenciaMaximaMs;
+            latenciaMs += ALFA * (amostraMs - latenciaMs);
+            boolean saturado = latenciaMs >= latenciaMaximaMs;
+            if (saturado != saturadoAntes) {
+                logger.info("Latência média do {}: {} ms ({})", nome, Math.round(latenciaMs),
+                        saturado ? "saturado" : "normalizado");
+            }
+        }
+
+        /**
+         * Libera no máximo uma chamada por intervalo de sonda
+         */
+        boolean sondar() {
+            long agora = System.nanoTime();
+            long ultima = ultimaSonda.get();
+            return agora - ultima >= intervaloSondaNanos && ultimaSonda.compareAndSet(ultima, agora);
+        }
+    }
+}
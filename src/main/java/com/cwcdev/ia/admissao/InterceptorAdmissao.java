@@ -0,0 +1,55 @@
+package com.cwcdev.ia.admissao;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Admite as requisições de baixa prioridade: se algum serviço de que elas
+ * dependem estiver saturado, seguem só com respostas em cache (cabeçalho
+ * X-Degradado) e o handler responde 503 com Retry-After quando o cache não
+ * basta.
+ */
+public class InterceptorAdmissao implements AsyncHandlerInterceptor {
+
+    private static final String ATRIBUTO = InterceptorAdmissao.class.getName() + ".escopo";
+
+    private final ControleAdmissao controle;
+    private final int mascara;
+
+    InterceptorAdmissao(ControleAdmissao controle, int mascara) {
+        this.controle = controle;
+        this.mascara = mascara;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        int saturados = controle.saturados(mascara);
+        if (saturados != 0) {
+            request.setAttribute(ATRIBUTO, ControleAdmissao.usar(new ControleAdmissao.Restricao(saturados)));
+            response.setHeader("X-Degradado", "somente-cache");
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        fechar(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        fechar(request);
+    }
+
+    private static void fechar(HttpServletRequest request) {
+        Object escopo = request.getAttribute(ATRIBUTO);
+        if (escopo != null) {
+            request.removeAttribute(ATRIBUTO);
+            ((ControleAdmissao.Escopo) escopo).close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.cwcdev.ia.admissao;
+
+/**
+ * Chamada a um serviço externo saturado recusada sem ser feita, numa
+ * requisição admitida só com respostas em cache
+ */
+public class SobrecargaException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SobrecargaException(String servico) {
+        super("Serviço " + servico + " sobrecarregado; só respostas em cache");
+    }
+}
@@ -0,0 +1,117 @@
+package com.cwcdev.ia.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU limitado com chave texto, seguro para várias threads.
+ * O codec permite gravar e restaurar o conteúdo (ver {@link SnapshotCaches}).
+ */
+public class CacheLru<V> {
+
+    private final String nome;
+    private final int capacidade;
+    private final CodecCache<V> codec;
+    private final LinkedHashMap<String, V> entradas;
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder insercoes = new LongAdder();
+    private final LongAdder descartes = new LongAdder();
+
+    public CacheLru(String nome, int capacidade, CodecCache<V> codec) {
+        this.nome = nome;
+        this.capacidade = capacidade;
+        this.codec = codec;
+        this.entradas = new LinkedHashMap<String, V>(capacidade * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> maisAntiga) {
+                if (size() > CacheLru.this.capacidade) {
+                    descartes.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V obter(String chave) {
+        V valor;
+        synchronized (entradas) {
+            valor = entradas.get(chave);
+        }
+        if (valor != null) {
+            acertos.increment();
+        } else {
+            faltas.increment();
+        }
+        return valor;
+    }
+
+    public void colocar(String chave, V valor) {
+        synchronized (entradas) {
+            entradas.put(chave, valor);
+        }
+        insercoes.increment();
+    }
+
+    /**
+     * Insere apenas se a chave não estiver no cache: a restauração de um
+     * snapshot não sobrescreve um valor mais novo
+     */
+    boolean colocarSeAusente(String chave, V valor) {
+        synchronized (entradas) {
+            if (entradas.containsKey(chave)) {
+                return false;
+            }
+            entradas.put(chave, valor);
+        }
+        insercoes.increment();
+        return true;
+    }
+
+    public void remover(String chave) {
+        synchronized (entradas) {
+            entradas.remove(chave);
+        }
+    }
+
+    public int tamanho() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    /**
+     * Cópia das entradas da menos para a mais recentemente usada; restaurar
+     * nessa ordem reproduz a ordem LRU
+     */
+    List<Map.Entry<String, V>> copiarEntradas() {
+        synchronized (entradas) {
+            List<Map.Entry<String, V>> copia = new ArrayList<>(entradas.size());
+            for (Map.Entry<String, V> entrada : entradas.entrySet()) {
+                copia.add(new AbstractMap.SimpleImmutableEntry<>(entrada.getKey(), entrada.getValue()));
+            }
+            return copia;
+        }
+    }
+
+    public String getNome() { return nome; }
+
+    public int getCapacidade() { return capacidade; }
+
+    public CodecCache<V> getCodec() { return codec; }
+
+    public long getAcertos() { return acertos.sum(); }
+
+    public long getFaltas() { return faltas.sum(); }
+
+    public long getInsercoes() { return insercoes.sum(); }
+
+    public long getDescartes() { return descartes.sum(); }
+}
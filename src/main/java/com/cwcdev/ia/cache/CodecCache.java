@@ -0,0 +1,14 @@
+package com.cwcdev.ia.cache;
+
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.codec.LeitorBytes;
+
+/**
+ * Codificação binária dos valores de um {@link CacheLru} para os snapshots em disco
+ */
+public interface CodecCache<V> {
+
+    void escrever(BufferBytes buffer, V valor);
+
+    V ler(LeitorBytes leitor);
+}
@@ -0,0 +1,93 @@
+package com.cwcdev.ia.cache;
+
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.codec.LeitorBytes;
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Codecs dos valores guardados em cache e em disco
+ */
+public final class CodecsCache {
+
+    private static final double ESCALA_COORDENADA = 1e7;
+
+    private CodecsCache() {}
+
+    /**
+     * Endereço completo; coordenadas em ponto fixo 1e7 (~1 cm)
+     */
+    public static final CodecCache<Endereco> ENDERECO = new CodecCache<Endereco>() {
+        @Override
+        public void escrever(BufferBytes buffer, Endereco endereco) {
+            boolean temCoordenadas = endereco.getLatitude() != null && endereco.getLongitude() != null;
+            buffer.escreverByte(temCoordenadas ? 1 : 0);
+            buffer.escreverTexto(endereco.getCep());
+            buffer.escreverTexto(endereco.getLogradouro());
+            buffer.escreverTexto(endereco.getComplemento());
+            buffer.escreverTexto(endereco.getBairro());
+            buffer.escreverTexto(endereco.getLocalidade());
+            buffer.escreverTexto(endereco.getUf());
+            buffer.escreverTexto(endereco.getIbge());
+            buffer.escreverTexto(endereco.getGia());
+            buffer.escreverTexto(endereco.getDdd());
+            buffer.escreverTexto(endereco.getSiafi());
+            if (temCoordenadas) {
+                escreverCoordenada(buffer, endereco.getLatitude());
+                escreverCoordenada(buffer, endereco.getLongitude());
+            }
+        }
+
+        @Override
+        public Endereco ler(LeitorBytes leitor) {
+            boolean temCoordenadas = leitor.lerByte() == 1;
+            Endereco endereco = new Endereco(leitor.lerTexto(), leitor.lerTexto(), leitor.lerTexto(),
+                    leitor.lerTexto(), leitor.lerTexto(), leitor.lerTexto(), leitor.lerTexto(),
+                    leitor.lerTexto(), leitor.lerTexto(), leitor.lerTexto());
+            if (temCoordenadas) {
+                endereco.setLatitude(lerCoordenada(leitor));
+                endereco.setLongitude(lerCoordenada(leitor));
+            }
+            return endereco;
+        }
+    };
+
+    /**
+     * Par {latitude, longitude}
+     */
+    public static final CodecCache<double[]> COORDENADAS = new CodecCache<double[]>() {
+        @Override
+        public void escrever(BufferBytes buffer, double[] coordenadas) {
+            escreverCoordenada(buffer, coordenadas[0]);
+            escreverCoordenada(buffer, coordenadas[1]);
+        }
+
+        @Override
+        public double[] ler(LeitorBytes leitor) {
+            return new double[] { lerCoordenada(leitor), lerCoordenada(leitor) };
+        }
+    };
+
+    /**
+     * Bytes opacos prefixados pelo tamanho
+     */
+    public static final CodecCache<byte[]> BYTES = new CodecCache<byte[]>() {
+        @Override
+        public void escrever(BufferBytes buffer, byte[] valor) {
+            buffer.escreverVarint(valor.length);
+            buffer.escreverBytes(valor, 0, valor.length);
+        }
+
+        @Override
+        public byte[] ler(LeitorBytes leitor) {
+            return leitor.lerBytes(leitor.lerVarint());
+        }
+    };
+
+    private static void escreverCoordenada(BufferBytes buffer, double valor) {
+        buffer.escreverZigZag((int) Math.round(valor * ESCALA_COORDENADA));
+    }
+
+    private static double lerCoordenada(LeitorBytes leitor) {
+        return leitor.lerZigZag() / ESCALA_COORDENADA;
+    }
+}
@@ -0,0 +1,194 @@
+package com.cwcdev.ia.cache;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.codec.LeitorBytes;
+
+/**
+ * Snapshots binários dos caches de CEP, geocodificação e rotas.
+ *
+ * Formato de cada arquivo ({@code <nome>.snap}):
+ * <pre>
+ * magico:int32 versao:byte quantidade:int32 | quantidade x (chave:texto valor:codec)
+ * </pre>
+ * A gravação é periódica (arquivo temporário + troca atômica). Na
+ * inicialização os arquivos são mapeados em memória e restaurados em paralelo
+ * assim que todos os singletons existem ({@link SmartInitializingSingleton}),
+ * antes de o servidor web abrir o conector: nenhuma requisição chega durante a
+ * restauração. Mesmo assim a restauração só insere chaves ausentes, para nunca
+ * sobrescrever um valor mais novo.
+ */
+@Component
+public class SnapshotCaches implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotCaches.class);
+
+    private static final int MAGICO = 0x43414348; // "CACH"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_LOTE = 1 << 20;
+
+    private final boolean habilitado;
+    private final Path diretorio;
+    private final List<CacheLru<?>> caches = new CopyOnWriteArrayList<>();
+
+    public SnapshotCaches(
+            @Value("${cache.snapshot.habilitado:true}") boolean habilitado,
+            @Value("${cache.snapshot.diretorio:dados/cache}") String diretorio) {
+        this.habilitado = habilitado;
+        this.diretorio = Paths.get(diretorio);
+    }
+
+    public void registrar(CacheLru<?> cache) {
+        caches.add(cache);
+    }
+
+    public List<CacheLru<?>> getCaches() {
+        return Collections.unmodifiableList(caches);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!habilitado) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        Thread[] threads = new Thread[caches.size()];
+        for (int i = 0; i < threads.length; i++) {
+            CacheLru<?> cache = caches.get(i);
+            threads[i] = new Thread(() -> restaurar(cache), "restaura-cache-" + cache.getNome());
+            threads[i].start();
+        }
+        int total = 0;
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+                total += caches.get(i).tamanho();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Restauração dos caches interrompida");
+            return;
+        }
+        logger.info("Caches restaurados: {} entradas em {} ms", total, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    @Scheduled(fixedDelayString = "${cache.snapshot.intervalo-ms:300000}",
+            initialDelayString = "${cache.snapshot.intervalo-ms:300000}")
+    public void gravarTodos() {
+        if (!habilitado) {
+            return;
+        }
+        for (CacheLru<?> cache : caches) {
+            gravar(cache);
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        gravarTodos();
+    }
+
+    private <V> void gravar(CacheLru<V> cache) {
+        List<Map.Entry<String, V>> entradas = cache.copiarEntradas();
+        if (entradas.isEmpty()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        Path arquivo = arquivo(cache);
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(diretorio);
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(9);
+                cabecalho.putInt(MAGICO).put((byte) VERSAO).putInt(entradas.size());
+                cabecalho.flip();
+                escreverTudo(canal, cabecalho);
+
+                BufferBytes lote = new BufferBytes(TAMANHO_LOTE + 4096);
+                CodecCache<V> codec = cache.getCodec();
+                for (Map.Entry<String, V> entrada : entradas) {
+                    lote.escreverTexto(entrada.getKey());
+                    codec.escrever(lote, entrada.getValue());
+                    if (lote.tamanho() >= TAMANHO_LOTE) {
+                        escreverTudo(canal, lote.comoByteBuffer());
+                        lote.limpar();
+                    }
+                }
+                escreverTudo(canal, lote.comoByteBuffer());
+                canal.force(false);
+            }
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Snapshot do cache {} gravado: {} entradas em {} ms", cache.getNome(),
+                    entradas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Falha ao gravar snapshot do cache {}: {}", cache.getNome(), e.getMessage());
+        }
+    }
+
+    private <V> void restaurar(CacheLru<V> cache) {
+        Path arquivo = arquivo(cache);
+        if (!Files.exists(arquivo)) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        int restauradas = 0;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (dados.remaining() < 9 || dados.getInt() != MAGICO || dados.get() != VERSAO) {
+                logger.warn("Snapshot do cache {} ignorado: formato diferente", cache.getNome());
+                return;
+            }
+            int quantidade = dados.getInt();
+            // Entradas além da capacidade atual seriam descartadas logo em seguida
+            int pular = Math.max(0, quantidade - cache.getCapacidade());
+            LeitorBytes leitor = new LeitorBytes(dados);
+            CodecCache<V> codec = cache.getCodec();
+            for (int i = 0; i < quantidade; i++) {
+                String chave = leitor.lerTexto();
+                V valor = codec.ler(leitor);
+                if (i >= pular && cache.colocarSeAusente(chave, valor)) {
+                    restauradas++;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warn("Snapshot do cache {} truncado; {} entradas aproveitadas", cache.getNome(), restauradas);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Falha ao restaurar cache {}: {}", cache.getNome(), e.getMessage());
+        }
+        logger.info("Cache {} restaurado: {} entradas em {} ms", cache.getNome(), restauradas,
+                (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private Path arquivo(CacheLru<?> cache) {
+        return diretorio.resolve(cache.getNome() + ".snap");
+    }
+
+    private static void escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cwcdev.ia.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffer de bytes expansível com escrita de varints (LEB128) e zigzag.
+ * Usado pelos codificadores binários compactos.
+ */
+public class BufferBytes {
+
+    private byte[] dados;
+    private int tamanho;
+
+    public BufferBytes() {
+        this(256);
+    }
+
+    public BufferBytes(int capacidadeInicial) {
+        this.dados = new byte[Math.max(16, capacidadeInicial)];
+    }
+
+    public void escreverByte(int valor) {
+        garantirCapacidade(1);
+        dados[tamanho++] = (byte) valor;
+    }
+
+    public void escreverBytes(byte[] origem, int inicio, int quantidade) {
+        garantirCapacidade(quantidade);
+        System.arraycopy(origem, inicio, dados, tamanho, quantidade);
+        tamanho += quantidade;
+    }
+
+    /**
+     * Escreve inteiro sem sinal em 1 a 5 bytes
+     */
+    public void escreverVarint(int valor) {
+        garantirCapacidade(5);
+        while ((valor & ~0x7F) != 0) {
+            dados[tamanho++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        dados[tamanho++] = (byte) valor;
+    }
+
+    /**
+     * Escreve long sem sinal em 1 a 10 bytes
+     */
+    public void escreverVarlong(long valor) {
+        garantirCapacidade(10);
+        while ((valor & ~0x7FL) != 0) {
+            dados[tamanho++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        dados[tamanho++] = (byte) valor;
+    }
+
+    /**
+     * Escreve inteiro com sinal usando zigzag (valores pequenos ocupam poucos bytes)
+     */
+    public void escreverZigZag(int valor) {
+        escreverVarint((valor << 1) ^ (valor >> 31));
+    }
+
+    public void escreverZigZagLong(long valor) {
+        escreverVarlong((valor << 1) ^ (valor >> 63));
+    }
+
+    public void escreverFloat(float valor) {
+        int bits = Float.floatToIntBits(valor);
+        garantirCapacidade(4);
+        dados[tamanho++] = (byte) (bits >>> 24);
+        dados[tamanho++] = (byte) (bits >>> 16);
+        dados[tamanho++] = (byte) (bits >>> 8);
+        dados[tamanho++] = (byte) bits;
+    }
+
+    /**
+     * Escreve string UTF-8 prefixada pelo tamanho; null é codificado como 0
+     */
+    public void escreverTexto(String texto) {
+        if (texto == null) {
+            escreverVarint(0);
+            return;
+        }
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarint(utf8.length + 1);
+        escreverBytes(utf8, 0, utf8.length);
+    }
+
+    public int tamanho() {
+        return tamanho;
+    }
+
+    public void limpar() {
+        tamanho = 0;
+    }
+
+    /**
+     * Descarta o que foi escrito depois da posição informada
+     */
+    public void truncar(int novoTamanho) {
+        if (novoTamanho < 0 || novoTamanho > tamanho) {
+            throw new IllegalArgumentException("Tamanho inválido: " + novoTamanho);
+        }
+        tamanho = novoTamanho;
+    }
+
+    /**
+     * Visão (sem cópia) do conteúdo atual, válida até a próxima escrita
+     */
+    public ByteBuffer comoByteBuffer() {
+        return ByteBuffer.wrap(dados, 0, tamanho);
+    }
+
+    public byte[] paraArray() {
+        return Arrays.copyOf(dados, tamanho);
+    }
+
+    private void garantirCapacidade(int adicional) {
+        if (tamanho + adicional > dados.length) {
+            dados = Arrays.copyOf(dados, Math.max(dados.length * 2, tamanho + adicional));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.cwcdev.ia.codec;
+
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+import com.cwcdev.ia.model.Endereco;
+import com.cwcdev.ia.model.InstrucaoNavegacao;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Codificação binária compacta de {@link Rota} (media type application/x-rota).
+ *
+ * Formato (versão 1), todos os inteiros em varint:
+ * <pre>
+ * versao:byte
+ * distancia:float32  duracao:float32
+ * origem, destino:   flags:byte [cep logradouro bairro localidade uf] [lat lng zigzag 1e5]
+ * geometria:         texto (polyline já é delta/ponto fixo)
+ * n:varint, n x instrucao:
+ *     tipo:byte direcao:byte (índice do dicionário; 0xFF = texto a seguir)
+ *     nomeRua:texto instrucao:texto
+ *     distancia:varint (dm) duracao:varint (ds) distanciaAcumulada:varint (m)
+ *     temCoordenada:byte [dLat dLng zigzag 1e5, delta da instrução anterior]
+ * </pre>
+ * O campo dadosRotaCompleta (árvore OSRM) não é transmitido.
+ */
+public final class CodificadorRota {
+
+    public static final String TIPO_ROTA = "application/x-rota";
+    public static final MediaType MEDIA_TYPE_ROTA = MediaType.parseMediaType(TIPO_ROTA);
+
+    private static final int VERSAO = 1;
+    private static final double ESCALA_COORDENADA = 1e5;
+    private static final int SEM_DICIONARIO = 0xFF;
+
+    private static final String[] TIPOS = {
+        "depart", "arrive", "turn", "continue", "roundabout", "rotary",
+        "fork", "merge", "on ramp", "off ramp", "new name", "end of road",
+        "roundabout turn", "exit roundabout", "exit rotary", "notification"
+    };
+
+    private static final String[] DIRECOES = {
+        "", "left", "right", "straight", "sharp left", "sharp right",
+        "slight left", "slight right", "uturn"
+    };
+
+    private CodificadorRota() {}
+
+    /**
+     * Retorna a codificação compacta da rota, reutilizando os bytes já gerados
+     * enquanto a rota não for alterada.
+     */
+    public static byte[] codificar(Rota rota) {
+        byte[] cache = rota.getCodificacaoCompacta();
+        if (cache != null) {
+            return cache;
+        }
+
+        BufferBytes buffer = new BufferBytes(estimarTamanho(rota));
+        buffer.escreverByte(VERSAO);
+        buffer.escreverFloat((float) rota.getDistancia());
+        buffer.escreverFloat((float) rota.getDuracao());
+        escreverEndereco(buffer, rota.getOrigem());
+        escreverEndereco(buffer, rota.getDestino());
+        buffer.escreverTexto(rota.getGeometria());
+
+        List<InstrucaoNavegacao> instrucoes = rota.getInstrucoes();
+        int total = instrucoes != null ? instrucoes.size() : 0;
+        buffer.escreverVarint(total);
+
+        int latAnterior = 0;
+        int lngAnterior = 0;
+        for (int i = 0; i < total; i++) {
+            InstrucaoNavegacao instrucao = instrucoes.get(i);
+            escreverDicionario(buffer, TIPOS, instrucao.getTipo());
+            escreverDicionario(buffer, DIRECOES, instrucao.getDirecao());
+            buffer.escreverTexto(instrucao.getNomeRua());
+            buffer.escreverTexto(instrucao.getInstrucao());
+            buffer.escreverVarint((int) Math.round(instrucao.getDistancia() * 10));
+            buffer.escreverVarint((int) Math.round(instrucao.getDuracao() * 10));
+            buffer.escreverVarint((int) Math.round(instrucao.getDistanciaAcumulada()));
+
+            if (instrucao.getLatitude() != null && instrucao.getLongitude() != null) {
+                int lat = paraPontoFixo(instrucao.getLatitude());
+                int lng = paraPontoFixo(instrucao.getLongitude());
+                buffer.escreverByte(1);
+                buffer.escreverZigZag(lat - latAnterior);
+                buffer.escreverZigZag(lng - lngAnterior);
+                latAnterior = lat;
+                lngAnterior = lng;
+            } else {
+                buffer.escreverByte(0);
+            }
+        }
+
+        byte[] bytes = buffer.paraArray();
+        rota.setCodificacaoCompacta(bytes);
+        return bytes;
+    }
+
+    static int paraPontoFixo(double coordenada) {
+        return (int) Math.round(coordenada * ESCALA_COORDENADA);
+    }
+
+    private static void escreverEndereco(BufferBytes buffer, Endereco endereco) {
+        if (endereco == null) {
+            buffer.escreverByte(0);
+            return;
+        }
+        boolean temCoordenadas = endereco.getLatitude() != null && endereco.getLongitude() != null;
+        buffer.escreverByte(1 | (temCoordenadas ? 2 : 0));
+        buffer.escreverTexto(endereco.getCep());
+        buffer.escreverTexto(endereco.getLogradouro());
+        buffer.escreverTexto(endereco.getBairro());
+        buffer.escreverTexto(endereco.getLocalidade());
+        buffer.escreverTexto(endereco.getUf());
+        if (temCoordenadas) {
+            buffer.escreverZigZag(paraPontoFixo(endereco.getLatitude()));
+            buffer.escreverZigZag(paraPontoFixo(endereco.getLongitude()));
+        }
+    }
+
+    private static void escreverDicionario(BufferBytes buffer, String[] dicionario, String valor) {
+        String texto = valor != null ? valor : "";
+        for (int i = 0; i < dicionario.length; i++) {
+            if (dicionario[i].equals(texto)) {
+                buffer.escreverByte(i);
+                return;
+            }
+        }
+        buffer.escreverByte(SEM_DICIONARIO);
+        buffer.escreverTexto(texto);
+    }
+
+    private static int estimarTamanho(Rota rota) {
+        int instrucoes = rota.getInstrucoes() != null ? rota.getInstrucoes().size() : 0;
+        int geometria = rota.getGeometria() != null ? rota.getGeometria().length() : 0;
+        return 128 + geometria + instrucoes * 64;
+    }
+}
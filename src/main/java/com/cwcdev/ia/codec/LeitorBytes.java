@@ -0,0 +1,80 @@
+package com.cwcdev.ia.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Leitura dos formatos escritos por {@link BufferBytes} (varint, zigzag, texto).
+ * Lança {@link BufferUnderflowException} se os dados terminarem no meio de um valor.
+ */
+public class LeitorBytes {
+
+    private final ByteBuffer buffer;
+
+    public LeitorBytes(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public boolean temDados() {
+        return buffer.hasRemaining();
+    }
+
+    public int posicao() {
+        return buffer.position();
+    }
+
+    public int lerByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public int lerVarint() {
+        int resultado = 0;
+        for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+            int b = buffer.get();
+            resultado |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return resultado;
+            }
+        }
+        throw new IllegalStateException("Varint inválido na posição " + buffer.position());
+    }
+
+    public long lerVarlong() {
+        long resultado = 0;
+        for (int deslocamento = 0; deslocamento < 70; deslocamento += 7) {
+            int b = buffer.get();
+            resultado |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return resultado;
+            }
+        }
+        throw new IllegalStateException("Varlong inválido na posição " + buffer.position());
+    }
+
+    public int lerZigZag() {
+        int v = lerVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long lerZigZagLong() {
+        long v = lerVarlong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public byte[] lerBytes(int quantidade) {
+        byte[] bytes = new byte[quantidade];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public String lerTexto() {
+        int tamanho = lerVarint();
+        if (tamanho == 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[tamanho - 1];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package com.cwcdev.ia.codec;
+
+import java.util.Arrays;
+
+/**
+ * Codificação polyline (Google/OSRM, precisão 1e5): coordenadas em ponto fixo
+ * com deltas zigzag em blocos de 5 bits.
+ */
+public final class Polyline {
+
+    public static final double ESCALA = 1e5;
+
+    private Polyline() {}
+
+    /**
+     * Decodifica em um array intercalado [lat0, lng0, lat1, lng1, ...] em ponto fixo 1e5
+     */
+    public static int[] decodificar(String polyline) {
+        if (polyline == null || polyline.isEmpty()) {
+            return new int[0];
+        }
+        int[] pontos = new int[Math.max(16, polyline.length() / 2)];
+        int total = 0;
+        int indice = 0;
+        int lat = 0;
+        int lng = 0;
+        int comprimento = polyline.length();
+
+        while (indice < comprimento) {
+            int resultado = 0;
+            int deslocamento = 0;
+            int b;
+            do {
+                b = polyline.charAt(indice++) - 63;
+                resultado |= (b & 0x1F) << deslocamento;
+                deslocamento += 5;
+            } while (b >= 0x20 && indice < comprimento);
+            lat += (resultado & 1) != 0 ? ~(resultado >> 1) : (resultado >> 1);
+
+            resultado = 0;
+            deslocamento = 0;
+            do {
+                b = polyline.charAt(indice++) - 63;
+                resultado |= (b & 0x1F) << deslocamento;
+                deslocamento += 5;
+            } while (b >= 0x20 && indice < comprimento);
+            lng += (resultado & 1) != 0 ? ~(resultado >> 1) : (resultado >> 1);
+
+            if (total + 2 > pontos.length) {
+                pontos = Arrays.copyOf(pontos, pontos.length * 2);
+            }
+            pontos[total++] = lat;
+            pontos[total++] = lng;
+        }
+        return Arrays.copyOf(pontos, total);
+    }
+
+    /**
+     * Codifica pontos intercalados em ponto fixo 1e5, do índice de ponto
+     * {@code inicio} (inclusive) até {@code fim} (exclusive)
+     */
+    public static String codificar(int[] pontos, int inicio, int fim) {
+        StringBuilder sb = new StringBuilder((fim - inicio) * 6);
+        int latAnterior = 0;
+        int lngAnterior = 0;
+        for (int i = inicio; i < fim; i++) {
+            int lat = pontos[2 * i];
+            int lng = pontos[2 * i + 1];
+            escreverValor(sb, lat - latAnterior);
+            escreverValor(sb, lng - lngAnterior);
+            latAnterior = lat;
+            lngAnterior = lng;
+        }
+        return sb.toString();
+    }
+
+    private static void escreverValor(StringBuilder sb, int valor) {
+        int v = valor < 0 ? ~(valor << 1) : (valor << 1);
+        while (v >= 0x20) {
+            sb.append((char) ((0x20 | (v & 0x1F)) + 63));
+            v >>= 5;
+        }
+        sb.append((char) (v + 63));
+    }
+}
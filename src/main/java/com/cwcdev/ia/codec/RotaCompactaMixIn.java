@@ -0,0 +1,13 @@
+package com.cwcdev.ia.codec;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Mix-in Jackson para formatos compactos: omite a árvore OSRM completa da rota.
+ */
+public abstract class RotaCompactaMixIn {
+
+    @JsonIgnore
+    public abstract JsonNode getDadosRotaCompleta();
+}
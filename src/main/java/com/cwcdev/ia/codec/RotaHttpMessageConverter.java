@@ -0,0 +1,47 @@
+package com.cwcdev.ia.codec;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Converter HTTP que entrega {@link Rota} no formato binário compacto quando o
+ * cliente envia "Accept: application/x-rota". Apenas escrita.
+ */
+public class RotaHttpMessageConverter extends AbstractHttpMessageConverter<Rota> {
+
+    public RotaHttpMessageConverter() {
+        super(CodificadorRota.MEDIA_TYPE_ROTA);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Rota.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Rota readInternal(Class<? extends Rota> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Formato application/x-rota é somente de saída", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(Rota rota, MediaType contentType) {
+        return (long) CodificadorRota.codificar(rota).length;
+    }
+
+    @Override
+    protected void writeInternal(Rota rota, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(CodificadorRota.codificar(rota));
+    }
+}
@@ -3,19 +3,44 @@ package com.cwcdev.ia.configuratioin;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import com.cwcdev.ia.admissao.ControleAdmissao;
+import com.cwcdev.ia.codec.RotaCompactaMixIn;
+import com.cwcdev.ia.codec.RotaHttpMessageConverter;
+import com.cwcdev.ia.gravacao.GravacaoUpstream;
+import com.cwcdev.ia.metricas.MetricasUpstreamInterceptor;
+import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.prazo.FabricaRequisicoesComPrazo;
+import com.cwcdev.ia.prazo.InterceptorPrazo;
+import com.cwcdev.ia.service.NavegacaoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class AppConfig {
     
     @Bean
-    public RestTemplate restTemplate() {
-        RestTemplate restTemplate = new RestTemplate();
+    public RestTemplate restTemplate(MeterRegistry meterRegistry, GravacaoUpstream gravacaoUpstream,
+            ControleAdmissao controleAdmissao,
+            @Value("${upstream.viacep.url:https://viacep.com.br/ws/}") String urlViaCep,
+            @Value("${upstream.nominatim.url:https://nominatim.openstreetmap.org/search}") String urlNominatim,
+            @Value("${upstream.osrm.url:https://router.project-osrm.org/route/v1/driving/}") String urlOsrm,
+            @Value("${spring.httpclient.connect-timeout:5000}") int conexaoMs,
+            @Value("${spring.httpclient.read-timeout:10000}") int leituraMs) {
+        // Timeouts configurados, limitados pelo prazo da requisição em andamento
+        RestTemplate restTemplate = new RestTemplate(new FabricaRequisicoesComPrazo(conexaoMs, leituraMs));
         
         // Adicionar interceptor para headers
         List<ClientHttpRequestInterceptor> interceptors = new ArrayList<>();
@@ -23,6 +48,16 @@ public class AppConfig {
             request.getHeaders().set("User-Agent", "GPS-Navegacao-App/1.0");
             return execution.execute(request, body);
         });
+        // Chamadas em andamento e latência média por serviço; recusa as de
+        // requisições admitidas só com cache enquanto o serviço está saturado
+        interceptors.add(controleAdmissao);
+        // Latência por serviço externo (ViaCEP, Nominatim, OSRM de qualquer perfil e serviço)
+        interceptors.add(new MetricasUpstreamInterceptor(meterRegistry, urlViaCep, urlNominatim,
+                NavegacaoService.urlRaizOsrm(urlOsrm)));
+        // Gravação/reprodução das respostas, dentro da medição de latência
+        if (gravacaoUpstream.isAtivo()) {
+            interceptors.add(gravacaoUpstream);
+        }
         restTemplate.setInterceptors(interceptors);
         
         return restTemplate;
@@ -37,4 +72,57 @@ public class AppConfig {
             }
         };
     }
+    
+    /**
+     * Prazo total das requisições que chamam serviços externos; estáticos,
+     * STOMP e stubs ficam de fora
+     */
+    @Bean
+    public WebMvcConfigurer prazoConfigurer(InterceptorPrazo interceptorPrazo) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptorPrazo).addPathPatterns("/api/**", "/calcular-rota", "/buscar-cep");
+            }
+        };
+    }
+    
+    /**
+     * Admissão das requisições de baixa prioridade pelos serviços externos de
+     * que dependem; páginas, STOMP, sessões e geocercas não passam por ela
+     */
+    @Bean
+    public WebMvcConfigurer admissaoConfigurer(ControleAdmissao controleAdmissao) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(controleAdmissao.interceptor("viacep", "nominatim"))
+                        .addPathPatterns("/api/buscar", "/buscar-cep");
+                registry.addInterceptor(controleAdmissao.interceptor("viacep", "nominatim", "osrm"))
+                        .addPathPatterns("/calcular-rota", "/api/calcular-rota", "/api/calcular-rotas",
+                                "/api/isocrona");
+            }
+        };
+    }
+    
+    /**
+     * Negociação de conteúdo para formatos binários compactos:
+     * application/x-rota (rota codificada) e application/cbor (demais respostas).
+     * JSON continua sendo o padrão quando o cliente não pede outro formato.
+     */
+    @Bean
+    public WebMvcConfigurer formatosCompactosConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor()
+                        .mixIn(Rota.class, RotaCompactaMixIn.class)
+                        .build();
+                converters.add(new RotaHttpMessageConverter());
+                // Substitui o conversor CBOR padrão, que vem antes na lista e transmitiria dadosRotaCompleta
+                converters.removeIf(conversor -> conversor instanceof MappingJackson2CborHttpMessageConverter);
+                converters.add(new MappingJackson2CborHttpMessageConverter(cborMapper));
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.cwcdev.ia.configuratioin;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Broker STOMP embutido (Artemis, sem persistência) que substitui o broker
+ * externo ao testar vários nós na mesma máquina. Ativado com
+ * navegacao.broker.embutido=true em um dos nós.
+ */
+@Configuration
+@ConditionalOnProperty(name = "navegacao.broker.embutido", havingValue = "true")
+public class BrokerEmbutidoConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ brokerStompEmbutido(@Value("${navegacao.broker.porta:61613}") int porta) throws Exception {
+        ConfigurationImpl configuracao = new ConfigurationImpl();
+        configuracao.setPersistenceEnabled(false);
+        configuracao.setSecurityEnabled(false);
+        configuracao.setJMXManagementEnabled(false);
+        configuracao.addAcceptorConfiguration("stomp", "tcp://0.0.0.0:" + porta
+                + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuracao);
+        return broker;
+    }
+}
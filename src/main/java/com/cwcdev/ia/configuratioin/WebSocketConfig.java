@@ -1,19 +1,63 @@
 package com.cwcdev.ia.configuratioin;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import com.cwcdev.ia.gps.ControlePressaoGps;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${navegacao.broker.modo:simples}")
+    private String modoBroker;
+
+    @Value("${navegacao.broker.host:localhost}")
+    private String hostBroker;
+
+    @Value("${navegacao.broker.porta:61613}")
+    private int portaBroker;
+
+    @Value("${navegacao.broker.usuario:guest}")
+    private String usuarioBroker;
+
+    @Value("${navegacao.broker.senha:guest}")
+    private String senhaBroker;
+
+    @Autowired
+    private ControlePressaoGps controlePressaoGps;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // /queue recebe as mensagens direcionadas a uma única sessão (/user/queue/...)
+        if ("relay".equalsIgnoreCase(modoBroker)) {
+            // Assinaturas ficam no broker externo, compartilhado por todos os nós;
+            // destinos de usuário não resolvidos localmente são repassados aos demais nós
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(hostBroker)
+                    .setRelayPort(portaBroker)
+                    .setClientLogin(usuarioBroker)
+                    .setClientPasscode(senhaBroker)
+                    .setSystemLogin(usuarioBroker)
+                    .setSystemPasscode(senhaBroker)
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+        } else {
+            config.enableSimpleBroker("/topic", "/queue");
+        }
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(controlePressaoGps);
     }
 
     @Override
@@ -22,4 +66,4 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
-}
\ No newline at end of file
+}
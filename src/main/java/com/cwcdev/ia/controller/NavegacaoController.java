@@ -1,55 +1,202 @@
 package com.cwcdev.ia.controller;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.MimeType;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
 
+import com.cwcdev.ia.admissao.ControleAdmissao;
+import com.cwcdev.ia.codec.CodificadorRota;
+import com.cwcdev.ia.codec.RotaCompactaMixIn;
+import com.cwcdev.ia.endereco.EstatisticasCamada;
+import com.cwcdev.ia.endereco.ResolvedorEnderecos;
+import com.cwcdev.ia.geocerca.Geocerca;
+import com.cwcdev.ia.geocerca.IndiceGeocercas;
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.gps.LeitorFixGps;
+import com.cwcdev.ia.gps.MetricasGps;
+import com.cwcdev.ia.historico.HistoricoEnderecos;
 import com.cwcdev.ia.model.Endereco;
-import com.cwcdev.ia.model.InstrucaoNavegacao;
 import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.navegacao.EntregaProgressivaRotas;
+import com.cwcdev.ia.navegacao.EstadoSessao;
+import com.cwcdev.ia.navegacao.MotorNavegacao;
+import com.cwcdev.ia.navegacao.ProcessadorSessoes;
+import com.cwcdev.ia.navegacao.SessaoNavegacao;
+import com.cwcdev.ia.navegacao.TransferenciaSessoes;
+import com.cwcdev.ia.navegacao.VersoesRota;
+import com.cwcdev.ia.prazo.Prazo;
+import com.cwcdev.ia.service.IsocronaService;
 import com.cwcdev.ia.service.NavegacaoService;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.cwcdev.ia.service.OpcoesRotaService;
+import com.cwcdev.ia.viagem.LeitorViagens;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 @Controller
 public class NavegacaoController {
 
+    private static final Logger logger = LoggerFactory.getLogger(NavegacaoController.class);
+
     @Autowired
     private NavegacaoService navegacaoService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private LeitorFixGps leitorFixGps;
+
+    @Autowired
+    private MetricasGps metricasGps;
+
+    @Autowired
+    private ProcessadorSessoes processadorSessoes;
+
+    @Autowired
+    private TransferenciaSessoes transferenciaSessoes;
+
+    @Autowired
+    private LeitorViagens leitorViagens;
+
+    @Autowired
+    private HistoricoEnderecos historicoEnderecos;
+
+    @Autowired
+    private ResolvedorEnderecos resolvedorEnderecos;
+
+    @Autowired
+    private IndiceGeocercas indiceGeocercas;
+
+    @Autowired
+    private EntregaProgressivaRotas entregaProgressivaRotas;
+
+    @Autowired
+    private VersoesRota versoesRota;
+
+    @Autowired
+    private OpcoesRotaService opcoesRotaService;
+
+    @Autowired
+    private IsocronaService isocronaService;
+
+    @Autowired
+    private ControleAdmissao controleAdmissao;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private RequestMappingHandlerAdapter handlerAdapter;
+
+    private static final String COOKIE_USUARIO = "usuarioHistorico";
 
-    private List<Endereco> historicoGeral = new ArrayList<>();
-    private Rota rotaAtual;
-    private boolean navegacaoAtiva = false;
-    private int instrucaoAtualIndex = 0;
-    private PosicaoAtual posicaoUsuario;
+    private static final int ITERACOES_MAXIMAS_TAMANHOS = 10000;
+
+    // Mappers de /api/rota/tamanhos: JSON sem dadosRotaCompleta e o CBOR das respostas HTTP
+    private ObjectMapper mapperJsonCompacto;
+    private ObjectMapper mapperCbor;
+
+    // Rota da página (fluxo HTTP); as sessões STOMP guardam a sua em VersoesRota
+    private volatile Rota rotaAtual;
+
+    private static final MimeType TEXTO_UTF8 = new MimeType("text", "plain", StandardCharsets.UTF_8);
+    private static final byte[] ERRO_POSICAO_INVALIDA =
+            "ERRO: posição GPS inválida".getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<StringBuilder> RESPOSTA_POSICAO =
+            ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    // Tempo de cada handler STOMP na thread do canal de entrada
+    private Timer tempoPosicao;
+    private Timer tempoPosicaoBinaria;
+    private Timer tempoIniciar;
+    private Timer tempoParar;
+    private Timer tempoProxima;
+
+    @PostConstruct
+    public void registrarMetricas() {
+        tempoPosicao = timerHandler("gps.posicao");
+        tempoPosicaoBinaria = timerHandler("gps.posicao.bin");
+        tempoIniciar = timerHandler("navegacao.iniciar");
+        tempoParar = timerHandler("navegacao.parar");
+        tempoProxima = timerHandler("navegacao.proxima");
+
+        mapperJsonCompacto = objectMapper.copy().addMixIn(Rota.class, RotaCompactaMixIn.class);
+        mapperCbor = handlerAdapter.getMessageConverters().stream()
+                .filter(conversor -> conversor instanceof MappingJackson2CborHttpMessageConverter)
+                .map(conversor -> ((MappingJackson2CborHttpMessageConverter) conversor).getObjectMapper())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Conversor CBOR não registrado"));
+    }
+
+    private Timer timerHandler(String destino) {
+        return Timer.builder("stomp.handler")
+                .description("Tempo dos handlers STOMP")
+                .tag("handler", destino)
+                .register(meterRegistry);
+    }
 
     /**
      * API REST para buscar endereços (CEP ou texto)
      */
     @GetMapping("/api/buscar")
     @ResponseBody
-    public List<Endereco> buscarEnderecos(@RequestParam String query) {
-        System.out.println("🔍 Buscando: " + query);
+    public ResponseEntity<List<Endereco>> buscarEnderecos(@RequestParam String query) {
         List<Endereco> resultados = navegacaoService.buscarEnderecos(query);
-        System.out.println("✓ Encontrados: " + resultados.size() + " resultados");
-        return resultados;
+        logger.debug("Busca '{}': {} resultados", query, resultados.size());
+        if (resultados.isEmpty() && ControleAdmissao.recusouNaRequisicao()) {
+            return sobrecarregado(resultados);
+        }
+        return ResponseEntity.ok(resultados);
     }
 
     /**
@@ -61,66 +208,297 @@ public class NavegacaoController {
             @RequestParam double origemLat,
             @RequestParam double origemLng,
             @RequestParam double destinoLat,
-            @RequestParam double destinoLng) {
+            @RequestParam double destinoLng,
+            HttpServletResponse response) {
         
         try {
-            System.out.println("=== CALCULANDO ROTA ===");
+            Endereco origem = criarOrigemGps(origemLat, origemLng);
+            Endereco destino = criarDestino(destinoLat, destinoLng);
             
-            // Criar origem a partir da posição GPS
-            Endereco origem = new Endereco();
-            origem.setCep("GPS");
-            origem.setLogradouro("Posição Atual");
-            origem.setLocalidade("GPS");
-            origem.setUf("GPS");
-            origem.setLatitude(origemLat);
-            origem.setLongitude(origemLng);
-            origem.setErro(false);
-            
-            // Criar destino
-            Endereco destino = new Endereco();
-            destino.setLatitude(destinoLat);
-            destino.setLongitude(destinoLng);
-            destino.setErro(false);
-            
-            System.out.println("📍 Origem GPS: " + origemLat + ", " + origemLng);
-            System.out.println("🏁 Destino: " + destinoLat + ", " + destinoLng);
+            logger.debug("Calculando rota de {},{} para {},{}", origemLat, origemLng, destinoLat, destinoLng);
             
             rotaAtual = navegacaoService.calcularRota(origem, destino);
             
             if (rotaAtual != null) {
-                System.out.println("✓ Rota calculada!");
-                System.out.println("  - Distância: " + String.format("%.1f km", rotaAtual.getDistancia() / 1000));
-                System.out.println("  - Duração: " + String.format("%.0f min", rotaAtual.getDuracao() / 60));
-                System.out.println("  - Instruções: " + rotaAtual.getInstrucoes().size());
-                
-                navegacaoAtiva = false;
-                instrucaoAtualIndex = 0;
-                
                 return rotaAtual;
             } else {
                 throw new RuntimeException("Não foi possível calcular a rota");
             }
             
         } catch (Exception e) {
-            System.err.println("✗ Erro ao calcular rota: " + e.getMessage());
+            logger.warn("Erro ao calcular rota: {}", e.getMessage());
+            if (ControleAdmissao.recusouNaRequisicao()) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(controleAdmissao.getRetryAfterSegundos()));
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Serviço de rotas sobrecarregado");
+            }
+            if (prazoEsgotado()) {
+                throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                        "Prazo de " + Prazo.atual().getTotalMs() + " ms esgotado ao calcular rota");
+            }
             throw new RuntimeException("Erro ao calcular rota: " + e.getMessage());
         }
     }
 
+    /**
+     * Rotas de vários perfis OSRM (padrão: navegacao.opcoes.perfis) e suas
+     * alternativas, calculadas em paralelo e ordenadas pelo custo
+     * (segundos x pesoTempo + metros x pesoDistancia)
+     */
+    @PostMapping("/api/calcular-rotas")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> calcularRotasAPI(
+            @RequestParam double origemLat,
+            @RequestParam double origemLng,
+            @RequestParam double destinoLat,
+            @RequestParam double destinoLng,
+            @RequestParam(required = false) String perfis,
+            @RequestParam(defaultValue = "true") boolean alternativas,
+            @RequestParam(required = false) Double pesoTempo,
+            @RequestParam(required = false) Double pesoDistancia) throws InterruptedException {
+        try {
+            Map<String, Object> resultado = opcoesRotaService.calcular(criarOrigemGps(origemLat, origemLng),
+                    criarDestino(destinoLat, destinoLng), perfis, alternativas, pesoTempo, pesoDistancia);
+            if (((List<?>) resultado.get("opcoes")).isEmpty() && ControleAdmissao.recusouNaRequisicao()) {
+                return sobrecarregado(resultado);
+            }
+            return ResponseEntity.ok(resultado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("erro", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonMap("erro", e.getMessage()));
+        }
+    }
+
+    /**
+     * Área de onde se chega ao ponto em até {@code minutos} (ver
+     * {@link IsocronaService}); os vértices podem ser cadastrados como geocerca
+     */
+    @RequestMapping(value = "/api/isocrona", method = {RequestMethod.GET, RequestMethod.POST})
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> isocronaAPI(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "15") int minutos,
+            @RequestParam(defaultValue = "driving") String perfil) throws InterruptedException {
+        try {
+            return ResponseEntity.ok(isocronaService.calcular(latitude, longitude, minutos, perfil));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("erro", e.getMessage()));
+        } catch (IllegalStateException e) {
+            if (ControleAdmissao.recusouNaRequisicao()) {
+                return sobrecarregado(Collections.singletonMap("erro", "Serviço de rotas sobrecarregado"));
+            }
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body(Collections.singletonMap("erro", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonMap("erro", e.getMessage()));
+        }
+    }
+
+    /**
+     * Cálculo de rota com entrega progressiva em /user/queue/rota (ver
+     * {@link EntregaProgressivaRotas}). Payload:
+     * {"origemLat": ..., "origemLng": ..., "destinoLat": ..., "destinoLng": ...}
+     */
+    @MessageMapping("/rota.calcular")
+    @SendToUser(destinations = "/queue/rota", broadcast = false)
+    public String calcularRotaProgressiva(@Header("simpSessionId") String sessaoId,
+                                          @Payload Map<String, Double> pedido) {
+        Double origemLat = pedido.get("origemLat");
+        Double origemLng = pedido.get("origemLng");
+        Double destinoLat = pedido.get("destinoLat");
+        Double destinoLng = pedido.get("destinoLng");
+        if (origemLat == null || origemLng == null || destinoLat == null || destinoLng == null) {
+            return "{\"tipo\": \"ERRO\", \"mensagem\": \"Coordenadas de origem e destino obrigatórias\"}";
+        }
+        entregaProgressivaRotas.calcular(sessaoId, criarOrigemGps(origemLat, origemLng),
+                criarDestino(destinoLat, destinoLng));
+        return null;
+    }
+
+    /**
+     * Recálculo (desvio) com entrega da diferença para a versão que o cliente
+     * tem; mesmo payload de /app/rota.calcular mais "versao" (ausente se o
+     * cliente não tem rota). Respostas em /user/queue/rota: DIFF ou a rota completa.
+     */
+    @MessageMapping("/rota.recalcular")
+    @SendToUser(destinations = "/queue/rota", broadcast = false)
+    public String recalcularRota(@Header("simpSessionId") String sessaoId,
+                                 @Payload Map<String, Double> pedido) {
+        Double origemLat = pedido.get("origemLat");
+        Double origemLng = pedido.get("origemLng");
+        Double destinoLat = pedido.get("destinoLat");
+        Double destinoLng = pedido.get("destinoLng");
+        if (origemLat == null || origemLng == null || destinoLat == null || destinoLng == null) {
+            return "{\"tipo\": \"ERRO\", \"mensagem\": \"Coordenadas de origem e destino obrigatórias\"}";
+        }
+        Double versao = pedido.get("versao");
+        entregaProgressivaRotas.recalcular(sessaoId, criarOrigemGps(origemLat, origemLng),
+                criarDestino(destinoLat, destinoLng), versao != null ? versao.intValue() : null);
+        return null;
+    }
+
+    private static Endereco criarOrigemGps(double latitude, double longitude) {
+        Endereco origem = new Endereco();
+        origem.setCep("GPS");
+        origem.setLogradouro("Posição Atual");
+        origem.setLocalidade("GPS");
+        origem.setUf("GPS");
+        origem.setLatitude(latitude);
+        origem.setLongitude(longitude);
+        origem.setErro(false);
+        return origem;
+    }
+
+    private static Endereco criarDestino(double latitude, double longitude) {
+        Endereco destino = new Endereco();
+        destino.setLatitude(latitude);
+        destino.setLongitude(longitude);
+        destino.setErro(false);
+        return destino;
+    }
+
+    /**
+     * Rota atual; o formato segue o cabeçalho Accept
+     * (application/json, application/cbor ou application/x-rota)
+     */
+    @GetMapping("/api/rota")
+    @ResponseBody
+    public ResponseEntity<Rota> rotaAtualAPI() {
+        if (rotaAtual == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(rotaAtual);
+    }
+
+    /**
+     * Mede tamanho do payload e custo médio de serialização da rota atual em
+     * cada formato, com os mesmos mappers das respostas HTTP. Mede sobre uma
+     * cópia da rota; a codificação compacta em cache não é descartada.
+     */
+    @GetMapping("/api/rota/tamanhos")
+    @ResponseBody
+    public Map<String, Object> tamanhosRotaAPI(@RequestParam(defaultValue = "200") int iteracoes) throws Exception {
+        Map<String, Object> medidas = new LinkedHashMap<>();
+        Rota rota = rotaAtual;
+        if (rota == null) {
+            return medidas;
+        }
+        int n = Math.max(1, Math.min(iteracoes, ITERACOES_MAXIMAS_TAMANHOS));
+        Rota copia = copiarRota(rota);
+        medidas.put("iteracoes", n);
+
+        medidas.put("jsonBytes", objectMapper.writeValueAsBytes(copia).length);
+        medidas.put("jsonMicros", medirMicros(n, () -> objectMapper.writeValueAsBytes(copia).length));
+
+        medidas.put("jsonSemDadosCompletosBytes", mapperJsonCompacto.writeValueAsBytes(copia).length);
+        medidas.put("jsonSemDadosCompletosMicros",
+                medirMicros(n, () -> mapperJsonCompacto.writeValueAsBytes(copia).length));
+
+        medidas.put("cborBytes", mapperCbor.writeValueAsBytes(copia).length);
+        medidas.put("cborMicros", medirMicros(n, () -> mapperCbor.writeValueAsBytes(copia).length));
+
+        medidas.put("compactoBytes", CodificadorRota.codificar(copia).length);
+        medidas.put("compactoMicros", medirMicros(n, () -> {
+            copia.setCodificacaoCompacta(null);
+            return CodificadorRota.codificar(copia).length;
+        }));
+        medidas.put("compactoReutilizadoMicros", medirMicros(n, () -> CodificadorRota.codificar(copia).length));
+
+        return medidas;
+    }
+
+    private interface Serializacao {
+        int executar() throws Exception;
+    }
+
+    /**
+     * Média em microssegundos de {@code n} execuções, depois de {@code n}
+     * execuções de aquecimento
+     */
+    private static double medirMicros(int n, Serializacao serializacao) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < n; i++) {
+            bytes += serializacao.executar();
+        }
+        long inicio = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            bytes += serializacao.executar();
+        }
+        double micros = (System.nanoTime() - inicio) / 1000.0 / n;
+        // Usa o resultado para a serialização não ser eliminada pelo JIT
+        return bytes < 0 ? -1 : Math.round(micros * 100) / 100.0;
+    }
+
+    private static Rota copiarRota(Rota rota) {
+        Rota copia = new Rota();
+        copia.setOrigem(rota.getOrigem());
+        copia.setDestino(rota.getDestino());
+        copia.setInstrucoes(rota.getInstrucoes());
+        copia.setDistancia(rota.getDistancia());
+        copia.setDuracao(rota.getDuracao());
+        copia.setGeometria(rota.getGeometria());
+        copia.setDadosRotaCompleta(rota.getDadosRotaCompleta());
+        return copia;
+    }
+
+    /**
+     * Consultas, acertos, falhas e latência média de cada camada de busca por CEP
+     */
+    @GetMapping("/api/enderecos/camadas")
+    @ResponseBody
+    public List<EstatisticasCamada> estatisticasCamadas() {
+        return resolvedorEnderecos.getEstatisticas();
+    }
+
+    /**
+     * Cadastra geocercas em lote; um id já existente é substituído
+     */
+    @PostMapping("/api/geocercas")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> cadastrarGeocercas(@RequestBody List<Geocerca> geocercas) {
+        try {
+            indiceGeocercas.adicionarTodas(geocercas);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("erro", e.getMessage()));
+        }
+        Map<String, Object> resposta = new LinkedHashMap<>();
+        resposta.put("cadastradas", geocercas.size());
+        resposta.put("total", indiceGeocercas.getQuantidade());
+        return ResponseEntity.ok(resposta);
+    }
+
+    @GetMapping("/api/geocercas")
+    @ResponseBody
+    public List<Geocerca> listarGeocercas() {
+        return indiceGeocercas.listar();
+    }
+
+    @DeleteMapping("/api/geocercas/{id}")
+    @ResponseBody
+    public ResponseEntity<Void> removerGeocerca(@PathVariable String id) {
+        return indiceGeocercas.remover(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
     @PostMapping("/buscar-cep")
-    public String buscarPorCep(@RequestParam String cep, Model model) {
+    public String buscarPorCep(@RequestParam String cep,
+                               @CookieValue(value = COOKIE_USUARIO, required = false) String usuario,
+                               HttpServletResponse response,
+                               Model model) {
+        usuario = identificarUsuario(usuario, response);
         Endereco endereco = navegacaoService.buscarEnderecoPorCep(cep);
         
         if (!endereco.isErro()) {
-            adicionarAoHistorico(endereco);
+            historicoEnderecos.adicionar(usuario, endereco);
         }
         
         model.addAttribute("endereco", endereco);
         model.addAttribute("cepPesquisado", cep);
-        model.addAttribute("historico", historicoGeral);
+        model.addAttribute("historico", historicoEnderecos.listar(usuario));
         model.addAttribute("rota", rotaAtual);
-        model.addAttribute("navegacaoAtiva", navegacaoAtiva);
-        model.addAttribute("instrucaoAtualIndex", instrucaoAtualIndex);
+        adicionarEstadoNavegacao(model);
         
         return "index";
     }
@@ -129,12 +507,13 @@ public class NavegacaoController {
     public String calcularRota(
             @RequestParam String origemCep,
             @RequestParam String destinoCep,
+            @CookieValue(value = COOKIE_USUARIO, required = false) String usuario,
+            HttpServletResponse response,
             Model model) {
         
+        usuario = identificarUsuario(usuario, response);
         try {
-            System.out.println("=== CALCULANDO ROTA ===");
-            System.out.println("Origem: " + origemCep);
-            System.out.println("Destino: " + destinoCep);
+            logger.debug("Calculando rota de {} para {}", origemCep, destinoCep);
             
             Endereco origem;
             Endereco destino;
@@ -162,19 +541,35 @@ public class NavegacaoController {
                 return "index";
             }
             
-            rotaAtual = navegacaoService.calcularRota(origem, destino);
+            try {
+                rotaAtual = navegacaoService.calcularRota(origem, destino);
+            } catch (RuntimeException e) {
+                boolean recusada = ControleAdmissao.recusouNaRequisicao();
+                if (!(prazoEsgotado() || recusada) || origem.getLatitude() == null || destino.getLatitude() == null) {
+                    throw e;
+                }
+                // Sem tempo ou sem vaga no OSRM: endereços encontrados e distância em linha reta
+                double linhaReta = MotorNavegacao.calcularDistancia(origem.getLatitude(), origem.getLongitude(),
+                        destino.getLatitude(), destino.getLongitude());
+                model.addAttribute("erroRota", (recusada
+                        ? "Serviço de rotas sobrecarregado; tente novamente em "
+                                + controleAdmissao.getRetryAfterSegundos() + " s."
+                        : "Tempo limite esgotado ao calcular a rota.")
+                        + " Distância em linha reta: " + String.format("%.2f", linhaReta / 1000) + " km");
+                model.addAttribute("origem", origem);
+                model.addAttribute("destino", destino);
+                model.addAttribute("rota", rotaAtual);
+                model.addAttribute("historico", historicoEnderecos.listar(usuario));
+                adicionarEstadoNavegacao(model);
+                return "index";
+            }
             
             if (rotaAtual != null) {
-                System.out.println("✓ Rota calculada com sucesso!");
-                
-                adicionarAoHistorico(origem);
-                adicionarAoHistorico(destino);
+                historicoEnderecos.adicionar(usuario, origem);
+                historicoEnderecos.adicionar(usuario, destino);
                 
                 model.addAttribute("sucessoRota", "Rota calculada! Distância: " + 
                     String.format("%.2f", rotaAtual.getDistancia() / 1000) + " km");
-                
-                navegacaoAtiva = false;
-                instrucaoAtualIndex = 0;
             } else {
                 model.addAttribute("erroRota", "Não foi possível calcular a rota");
             }
@@ -182,19 +577,36 @@ public class NavegacaoController {
             model.addAttribute("origem", origem);
             model.addAttribute("destino", destino);
             model.addAttribute("rota", rotaAtual);
-            model.addAttribute("historico", historicoGeral);
-            model.addAttribute("navegacaoAtiva", navegacaoAtiva);
-            model.addAttribute("instrucaoAtualIndex", instrucaoAtualIndex);
+            model.addAttribute("historico", historicoEnderecos.listar(usuario));
+            adicionarEstadoNavegacao(model);
             
         } catch (Exception e) {
-            System.err.println("✗ Erro ao calcular rota: " + e.getMessage());
-            e.printStackTrace();
-            model.addAttribute("erroRota", "Erro ao calcular rota: " + e.getMessage());
+            logger.warn("Erro ao calcular rota de {} para {}: {}", origemCep, destinoCep, e.getMessage(), e);
+            model.addAttribute("erroRota", ControleAdmissao.recusouNaRequisicao()
+                    ? "Serviços de endereço e rota sobrecarregados. Tente novamente em "
+                            + controleAdmissao.getRetryAfterSegundos() + " s."
+                    : prazoEsgotado()
+                    ? "Tempo limite esgotado ao calcular a rota. Tente novamente."
+                    : "Erro ao calcular rota: " + e.getMessage());
         }
         
         return "index";
     }
 
+    /**
+     * 503 com Retry-After: a requisição foi admitida só com cache e o cache não bastou
+     */
+    private <T> ResponseEntity<T> sobrecarregado(T corpo) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(controleAdmissao.getRetryAfterSegundos()))
+                .body(corpo);
+    }
+
+    private static boolean prazoEsgotado() {
+        Prazo prazo = Prazo.atual();
+        return prazo != null && prazo.isEsgotado();
+    }
+
     // Método auxiliar para criar Endereco a partir de coordenadas
     private Endereco criarEnderecoDeCoordenadas(String coordString) {
         try {
@@ -217,7 +629,7 @@ public class NavegacaoController {
                 return endereco;
             }
         } catch (Exception e) {
-            System.err.println("Erro ao parsear coordenadas: " + e.getMessage());
+            logger.debug("Coordenadas inválidas '{}': {}", coordString, e.getMessage());
         }
         
         Endereco erro = new Endereco();
@@ -225,271 +637,196 @@ public class NavegacaoController {
         return erro;
     }
 
-    // WebSocket endpoints para navegação em tempo real
+    // WebSocket endpoints para navegação em tempo real.
+    // O estado de cada sessão é processado pelo fragmento dono dela (ProcessadorSessoes).
 
+    /**
+     * Inicia com a rota calculada pela própria sessão (/app/rota.calcular);
+     * sem ela, usa a rota da página (/calcular-rota)
+     */
     @MessageMapping("/navegacao.iniciar")
-    @SendTo("/topic/navegacao")
-    public String iniciarNavegacao() {
-        if (rotaAtual != null) {
-            navegacaoAtiva = true;
-            instrucaoAtualIndex = 0;
-            System.out.println("▶ Navegação iniciada");
-            
-            if (!rotaAtual.getInstrucoes().isEmpty()) {
-                String primeiraInstrucao = rotaAtual.getInstrucoes().get(0).getInstrucao();
-                messagingTemplate.convertAndSend("/topic/instrucoes", 
-                    criarRespostaInstrucao(primeiraInstrucao, 0));
-                System.out.println("  Primeira instrução: " + primeiraInstrucao);
-            }
-            
-            return "NAVEGACAO_INICIADA";
-        }
-        return "ERRO: Nenhuma rota definida";
+    public void iniciarNavegacao(@Header("simpSessionId") String sessaoId) {
+        long inicio = System.nanoTime();
+        Rota rota = versoesRota.rotaAtual(sessaoId);
+        processadorSessoes.iniciarNavegacao(sessaoId, rota != null ? rota : rotaAtual);
+        tempoIniciar.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
     }
 
     @MessageMapping("/navegacao.parar")
-    @SendTo("/topic/navegacao")
-    public String pararNavegacao() {
-        navegacaoAtiva = false;
-        instrucaoAtualIndex = 0;
-        System.out.println("■ Navegação parada");
-        return "NAVEGACAO_PARADA";
+    public void pararNavegacao(@Header("simpSessionId") String sessaoId) {
+        long inicio = System.nanoTime();
+        processadorSessoes.pararNavegacao(sessaoId);
+        tempoParar.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
     }
 
     @MessageMapping("/navegacao.proxima")
-    @SendTo("/topic/instrucoes")
-    public String proximaInstrucao() {
-        if (rotaAtual != null && navegacaoAtiva) {
-            if (instrucaoAtualIndex < rotaAtual.getInstrucoes().size() - 1) {
-                instrucaoAtualIndex++;
-                String instrucao = rotaAtual.getInstrucoes().get(instrucaoAtualIndex).getInstrucao();
-                System.out.println("→ Próxima instrução [" + instrucaoAtualIndex + "]: " + instrucao);
-                return criarRespostaInstrucao(instrucao, instrucaoAtualIndex);
-            } else {
-                navegacaoAtiva = false;
-                System.out.println("🏁 Chegada ao destino!");
-                return criarRespostaInstrucao("🎉 Você chegou ao destino!", instrucaoAtualIndex);
-            }
+    public void proximaInstrucao(@Header("simpSessionId") String sessaoId) {
+        long inicio = System.nanoTime();
+        processadorSessoes.proximaInstrucao(sessaoId);
+        tempoProxima.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retoma a navegação de uma sessão anterior após reconexão, inclusive quando
+     * o cliente foi atendido por outro nó. Payload com os dados recebidos em
+     * /user/queue/sessao: {"sessaoId": "...", "no": "http://...", "token": "..."}.
+     * A resposta (/user/queue/navegacao) é enviada quando a retomada termina,
+     * sem ocupar a thread do canal de entrada.
+     */
+    @MessageMapping("/navegacao.retomar")
+    public void retomarNavegacao(@Header("simpSessionId") String sessaoId, @Payload Map<String, String> sessaoAnterior) {
+        transferenciaSessoes.retomar(sessaoId,
+                sessaoAnterior.get("sessaoId"), sessaoAnterior.get("token"), sessaoAnterior.get("no"))
+                .thenAccept(retomada -> messagingTemplate.convertAndSendToUser(sessaoId, "/queue/navegacao",
+                        retomada ? "NAVEGACAO_RETOMADA" : "ERRO: Sessão anterior não encontrada",
+                        SessaoNavegacao.criarCabecalhos(sessaoId)));
+    }
+
+    /**
+     * Entrega (e remove deste nó) o estado de uma sessão para o nó que a
+     * assumirá; só para nós de navegacao.nos com o segredo compartilhado e o
+     * token de retomada da sessão
+     */
+    @PostMapping("/api/sessoes/{sessaoId}/estado")
+    @ResponseBody
+    public ResponseEntity<EstadoSessao> exportarSessao(@PathVariable String sessaoId,
+            @RequestParam String token,
+            @RequestHeader(value = TransferenciaSessoes.CABECALHO_NO, required = false) String no,
+            @RequestHeader(value = TransferenciaSessoes.CABECALHO_SEGREDO, required = false) String segredo)
+            throws Exception {
+        if (!transferenciaSessoes.isNoAutorizado(no, segredo)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        EstadoSessao estado = transferenciaSessoes.exportarLocal(sessaoId, token);
+        return estado != null ? ResponseEntity.ok(estado) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Exporta em GPX a trilha gravada de uma sessão (dia no formato yyyy-MM-dd;
+     * padrão hoje). Exige a chave de viagem entregue à sessão na identificação.
+     */
+    @GetMapping("/api/viagens/{sessaoId}/gpx")
+    public void exportarViagemGpx(@PathVariable String sessaoId,
+                                  @RequestParam String chave,
+                                  @RequestParam(required = false) String dia,
+                                  HttpServletResponse response) throws IOException {
+        if (!leitorViagens.chaveConfere(sessaoId, chave)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
         }
-        return "ERRO: Navegação não iniciada";
+        LocalDate data = dia != null ? LocalDate.parse(dia) : LocalDate.now();
+        response.setContentType("application/gpx+xml");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + sessaoId.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + data + ".gpx\"");
+        leitorViagens.exportarGpx(data, sessaoId, response.getWriter());
     }
 
+    /**
+     * Ingestão de fixes JSON com eco da posição em /user/queue/posicao. O eco
+     * é montado em bytes e enviado direto ao broker, sem passar por String.
+     */
     @MessageMapping("/gps.posicao")
-    @SendTo("/topic/posicao")
-    public String atualizarPosicao(String posicaoJson) {
+    public void atualizarPosicao(@Header("simpSessionId") String sessaoId, byte[] posicaoJson) {
+        long inicio = System.nanoTime();
         try {
-            JsonNode posicao = objectMapper.readTree(posicaoJson);
-            double lat = posicao.get("latitude").asDouble();
-            double lng = posicao.get("longitude").asDouble();
-            double accuracy = posicao.get("accuracy").asDouble();
-            double speed = posicao.has("speed") ? posicao.get("speed").asDouble() : 0;
-            
-            posicaoUsuario = new PosicaoAtual(lat, lng, accuracy, speed);
-            
-            System.out.println("📍 Posição: " + String.format("%.6f", lat) + ", " + 
-                             String.format("%.6f", lng) + " (±" + Math.round(accuracy) + "m) " +
-                             "Vel: " + String.format("%.1f", speed * 3.6) + " km/h");
-            
-            // Verificar proximidade com próxima manobra
-            if (rotaAtual != null && navegacaoAtiva && 
-                instrucaoAtualIndex < rotaAtual.getInstrucoes().size()) {
-                
-                InstrucaoNavegacao instrucaoAtual = rotaAtual.getInstrucoes().get(instrucaoAtualIndex);
-                
-                if (instrucaoAtual.getLatitude() != null && instrucaoAtual.getLongitude() != null) {
-                    double distancia = calcularDistancia(lat, lng, 
-                        instrucaoAtual.getLatitude(), instrucaoAtual.getLongitude());
-                    
-                    // Alerta de proximidade (200m)
-                    if (distancia < 200 && distancia > 100 && !instrucaoAtual.isAlertaEmitido()) {
-                        messagingTemplate.convertAndSend("/topic/alerta", 
-                            criarAlertaProximidade(distancia, instrucaoAtual.getInstrucao()));
-                        instrucaoAtual.setAlertaEmitido(true);
-                    }
-                    
-                    // Avançar instrução automaticamente (50m)
-                    if (distancia < 50 && instrucaoAtualIndex < rotaAtual.getInstrucoes().size() - 1) {
-                        proximaInstrucao();
-                    }
-                }
+            FixGps fix = FixGps.daThread();
+            if (!leitorFixGps.lerJson(posicaoJson, fix)) {
+                metricasGps.registrarInvalido();
+                responderPosicao(sessaoId, ERRO_POSICAO_INVALIDA);
+                return;
             }
-            
-            // Verificar proximidade com destino
-            if (rotaAtual != null && navegacaoAtiva) {
-                Endereco destino = rotaAtual.getDestino();
-                if (destino.getLatitude() != null && destino.getLongitude() != null) {
-                    double distanciaDestino = calcularDistancia(lat, lng, 
-                        destino.getLatitude(), destino.getLongitude());
-                    
-                    System.out.println("  Distância até destino: " + Math.round(distanciaDestino) + "m");
-                    
-                    if (distanciaDestino < 50) {
-                        messagingTemplate.convertAndSend("/topic/chegada", 
-                            "CHEGADA: Você está a " + Math.round(distanciaDestino) + "m do destino!");
-                        navegacaoAtiva = false;
-                    }
-                }
+            metricasGps.registrarJson();
+            metricasGps.amostrar(fix);
+            if (!processadorSessoes.publicarPosicao(sessaoId, fix)) {
+                metricasGps.registrarDescartado();
             }
-            
-            return criarRespostaPosicao(lat, lng, accuracy, speed);
-            
-        } catch (Exception e) {
-            System.err.println("✗ Erro ao processar posição GPS: " + e.getMessage());
-            return "ERRO: " + e.getMessage();
+            responderPosicao(sessaoId, fix.escreverJsonBytes(RESPOSTA_POSICAO.get()));
+        } finally {
+            tempoPosicao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Mesmo content-type das respostas em String de antes (clientes leem o corpo como texto)
+    private void responderPosicao(String sessaoId, byte[] corpo) {
+        SimpMessageHeaderAccessor cabecalhos = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        cabecalhos.setSessionId(sessaoId);
+        cabecalhos.setContentType(TEXTO_UTF8);
+        cabecalhos.setLeaveMutable(true);
+        messagingTemplate.send("/user/" + sessaoId + "/queue/posicao",
+                MessageBuilder.createMessage(corpo, cabecalhos.getMessageHeaders()));
+    }
+
+    /**
+     * Ingestão de frames binários compactos (ver {@link LeitorFixGps}); não há eco da posição
+     */
+    @MessageMapping("/gps.posicao.bin")
+    public void atualizarPosicaoBinaria(@Header("simpSessionId") String sessaoId, byte[] frame) {
+        long inicio = System.nanoTime();
+        try {
+            FixGps fix = FixGps.daThread();
+            if (!leitorFixGps.lerBinario(frame, fix)) {
+                metricasGps.registrarInvalido();
+                return;
+            }
+            metricasGps.registrarBinario();
+            metricasGps.amostrar(fix);
+            if (!processadorSessoes.publicarPosicao(sessaoId, fix)) {
+                metricasGps.registrarDescartado();
+            }
+        } finally {
+            tempoPosicaoBinaria.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
         }
     }
 
     @GetMapping("/limpar")
-    public String limpar(Model model) {
-        historicoGeral.clear();
+    public String limpar(@CookieValue(value = COOKIE_USUARIO, required = false) String usuario,
+                         HttpServletResponse response,
+                         Model model) {
+        usuario = identificarUsuario(usuario, response);
+        historicoEnderecos.limpar(usuario);
         rotaAtual = null;
-        navegacaoAtiva = false;
-        instrucaoAtualIndex = 0;
-        posicaoUsuario = null;
-        
-        System.out.println("🗑 Histórico e navegação limpos");
         
         model.addAttribute("endereco", new Endereco());
-        model.addAttribute("historico", historicoGeral);
+        model.addAttribute("historico", historicoEnderecos.listar(usuario));
         model.addAttribute("rota", null);
-        model.addAttribute("navegacaoAtiva", false);
-        model.addAttribute("instrucaoAtualIndex", 0);
+        adicionarEstadoNavegacao(model);
         
         return "index";
     }
 
     @GetMapping("/")
-    public String home(Model model) {
+    public String home(@CookieValue(value = COOKIE_USUARIO, required = false) String usuario,
+                       HttpServletResponse response,
+                       Model model) {
+        usuario = identificarUsuario(usuario, response);
         model.addAttribute("endereco", new Endereco());
-        model.addAttribute("historico", historicoGeral);
+        model.addAttribute("historico", historicoEnderecos.listar(usuario));
         model.addAttribute("rota", rotaAtual);
-        model.addAttribute("navegacaoAtiva", navegacaoAtiva);
-        model.addAttribute("instrucaoAtualIndex", instrucaoAtualIndex);
+        adicionarEstadoNavegacao(model);
         return "index";
     }
 
-    // Métodos auxiliares usando Streams Java 8
+    // Métodos auxiliares
     
-    private void adicionarAoHistorico(Endereco endereco) {
-        // Usar Stream para evitar duplicatas
-        boolean existe = historicoGeral.stream()
-            .anyMatch(e -> e.getCep() != null && e.getCep().equals(endereco.getCep()));
-        
-        if (!existe) {
-            historicoGeral.add(0, endereco);
-            
-            // Manter apenas 10 últimos usando Stream
-            if (historicoGeral.size() > 10) {
-                historicoGeral = historicoGeral.stream()
-                    .limit(10)
-                    .collect(Collectors.toList());
-            }
-        }
-    }
-
-    private String criarRespostaInstrucao(String instrucao, int index) {
-        try {
-            return objectMapper.writeValueAsString(new RespostaInstrucao(instrucao, index));
-        } catch (Exception e) {
-            return "{\"instrucao\": \"" + instrucao + "\", \"index\": " + index + "}";
-        }
-    }
-
-    private String criarRespostaPosicao(double lat, double lng, double accuracy, double speed) {
-        try {
-            return objectMapper.writeValueAsString(new RespostaPosicao(lat, lng, accuracy, speed));
-        } catch (Exception e) {
-            return "{\"latitude\": " + lat + ", \"longitude\": " + lng + 
-                   ", \"accuracy\": " + accuracy + ", \"speed\": " + speed + "}";
-        }
-    }
-
-    private String criarAlertaProximidade(double distancia, String instrucao) {
-        try {
-            AlertaProximidade alerta = new AlertaProximidade(
-                Math.round(distancia), 
-                instrucao,
-                "Em " + Math.round(distancia) + " metros, " + instrucao
-            );
-            return objectMapper.writeValueAsString(alerta);
-        } catch (Exception e) {
-            return "{\"distancia\": " + distancia + ", \"instrucao\": \"" + instrucao + "\"}";
-        }
+    // A navegação ativa pertence a cada sessão WebSocket; a página sempre parte do início
+    private void adicionarEstadoNavegacao(Model model) {
+        model.addAttribute("navegacaoAtiva", false);
+        model.addAttribute("instrucaoAtualIndex", 0);
     }
 
     /**
-     * Calcula distância usando fórmula de Haversine
+     * Usuário do histórico: identificador aleatório guardado em cookie persistente
      */
-    private double calcularDistancia(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371000; // Raio da Terra em metros
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon/2) * Math.sin(dLon/2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
-    }
-
-    // Classes internas para respostas JSON
-    
-    private static class RespostaInstrucao {
-        public String instrucao;
-        public int index;
-        public long timestamp;
-        
-        public RespostaInstrucao(String instrucao, int index) {
-            this.instrucao = instrucao;
-            this.index = index;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
-    private static class RespostaPosicao {
-        public double latitude;
-        public double longitude;
-        public double accuracy;
-        public double speed;
-        public long timestamp;
-        
-        public RespostaPosicao(double latitude, double longitude, double accuracy, double speed) {
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.accuracy = accuracy;
-            this.speed = speed;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
-    private static class AlertaProximidade {
-        public long distancia;
-        public String instrucao;
-        public String mensagem;
-        public String tipo;
-        public long timestamp;
-        
-        public AlertaProximidade(long distancia, String instrucao, String mensagem) {
-            this.distancia = distancia;
-            this.instrucao = instrucao;
-            this.mensagem = mensagem;
-            this.tipo = "PROXIMIDADE";
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
-    private static class PosicaoAtual {
-        public double latitude;
-        public double longitude;
-        public double accuracy;
-        public double speed;
-        public long timestamp;
-        
-        public PosicaoAtual(double latitude, double longitude, double accuracy, double speed) {
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.accuracy = accuracy;
-            this.speed = speed;
-            this.timestamp = System.currentTimeMillis();
+    private String identificarUsuario(String usuario, HttpServletResponse response) {
+        if (usuario != null && usuario.matches("[0-9a-f-]{36}")) {
+            return usuario;
         }
+        usuario = UUID.randomUUID().toString();
+        Cookie cookie = new Cookie(COOKIE_USUARIO, usuario);
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(365 * 24 * 3600);
+        response.addCookie(cookie);
+        return usuario;
     }
-}
\ No newline at end of file
+}
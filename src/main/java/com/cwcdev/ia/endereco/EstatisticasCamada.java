@@ -0,0 +1,55 @@
+package com.cwcdev.ia.endereco;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consultas, acertos, falhas e latência acumulada de uma camada de endereços
+ */
+public class EstatisticasCamada {
+
+    private final String nome;
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    public EstatisticasCamada(String nome) {
+        this.nome = nome;
+    }
+
+    void registrar(boolean acerto, long duracaoNanos) {
+        consultas.increment();
+        nanos.add(duracaoNanos);
+        if (acerto) {
+            acertos.increment();
+        }
+    }
+
+    void registrarFalha(long duracaoNanos) {
+        consultas.increment();
+        falhas.increment();
+        nanos.add(duracaoNanos);
+    }
+
+    public String getNome() { return nome; }
+
+    public long getConsultas() { return consultas.sum(); }
+
+    public long getAcertos() { return acertos.sum(); }
+
+    public long getFalhas() { return falhas.sum(); }
+
+    public double getTaxaAcerto() {
+        long total = consultas.sum();
+        return total == 0 ? 0 : (double) acertos.sum() / total;
+    }
+
+    public double getLatenciaTotalMs() {
+        return nanos.sum() / 1e6;
+    }
+
+    public double getLatenciaMediaMs() {
+        long total = consultas.sum();
+        return total == 0 ? 0 : nanos.sum() / 1e6 / total;
+    }
+}
@@ -0,0 +1,227 @@
+package com.cwcdev.ia.endereco;
+
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Normalização de CEPs, nomes de estado e textos de endereço sem expressões
+ * regulares nem mapas montados a cada chamada. Os textos intermediários usam
+ * um StringBuilder reaproveitado por thread; cada método aloca no máximo a
+ * String do resultado.
+ */
+public final class NormalizadorEndereco {
+
+    public static final int CEP_INVALIDO = -1;
+
+    // Dobra de acentos para U+00C0..U+00FF (minúsculas; ' ' = separador)
+    private static final String DOBRA_LATIN1 =
+        "aaaaaaaceeeeiiiidnooooo ouuuuyts" +
+        "aaaaaaaceeeeiiiidnooooo ouuuuyty";
+
+    private static final String[] ESTADOS = {
+        "acre", "AC", "alagoas", "AL", "amapa", "AP", "amazonas", "AM", "bahia", "BA",
+        "ceara", "CE", "distrito federal", "DF", "espirito santo", "ES", "goias", "GO",
+        "maranhao", "MA", "mato grosso", "MT", "mato grosso do sul", "MS", "minas gerais", "MG",
+        "para", "PA", "paraiba", "PB", "parana", "PR", "pernambuco", "PE", "piaui", "PI",
+        "rio de janeiro", "RJ", "rio grande do norte", "RN", "rio grande do sul", "RS",
+        "rondonia", "RO", "roraima", "RR", "santa catarina", "SC", "sao paulo", "SP",
+        "sergipe", "SE", "tocantins", "TO"
+    };
+
+    private static final ThreadLocal<StringBuilder> TEXTO = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private NormalizadorEndereco() {}
+
+    /**
+     * Extrai o CEP de um texto com ou sem máscara ("01310-100", "01310100")
+     *
+     * @return o CEP como inteiro ou {@link #CEP_INVALIDO} se não houver exatamente 8 dígitos
+     */
+    public static int parseCep(CharSequence texto) {
+        if (texto == null) {
+            return CEP_INVALIDO;
+        }
+        int cep = 0;
+        int digitos = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digitos > 8) {
+                    return CEP_INVALIDO;
+                }
+                cep = cep * 10 + (c - '0');
+            }
+        }
+        return digitos == 8 ? cep : CEP_INVALIDO;
+    }
+
+    /**
+     * CEP com 8 dígitos, sem máscara
+     */
+    public static String formatarCep(int cep) {
+        char[] digitos = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            digitos[i] = (char) ('0' + cep % 10);
+            cep /= 10;
+        }
+        return new String(digitos);
+    }
+
+    /**
+     * Sigla da UF a partir do nome do estado (sem diferenciar maiúsculas nem acentos);
+     * siglas são mantidas e nomes desconhecidos viram "BR"
+     */
+    public static String siglaEstado(String estado) {
+        if (estado == null) {
+            return "BR";
+        }
+        StringBuilder dobrado = dobrar(estado, TEXTO.get());
+        for (int i = 0; i < ESTADOS.length; i += 2) {
+            if (ESTADOS[i].contentEquals(dobrado)) {
+                return ESTADOS[i + 1];
+            }
+        }
+        return estado.length() <= 2 ? estado : "BR";
+    }
+
+    /**
+     * Sigla da UF se o texto for uma sigla ou um nome de estado conhecido, senão null
+     */
+    public static String ufConhecida(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        StringBuilder dobrado = dobrar(texto, TEXTO.get());
+        for (int i = 0; i < ESTADOS.length; i += 2) {
+            if (ESTADOS[i].contentEquals(dobrado)
+                    || (dobrado.length() == 2 && ESTADOS[i + 1].equalsIgnoreCase(dobrado.toString()))) {
+                return ESTADOS[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Texto em minúsculas, sem acentos, só com letras e dígitos separados por um espaço
+     */
+    public static String dobrarAcentos(CharSequence texto) {
+        return dobrar(texto, TEXTO.get()).toString();
+    }
+
+    /**
+     * Limpeza do logradouro para a busca do ViaCEP: mantém letras (com acento),
+     * dígitos, espaço, ponto e hífen; remove a numeração inicial e espaços repetidos
+     */
+    public static String limparLogradouro(String logradouro) {
+        StringBuilder destino = TEXTO.get();
+        destino.setLength(0);
+        boolean inicio = true;
+        boolean pulouNumero = false;
+        boolean espacoPendente = false;
+        for (int i = 0; i < logradouro.length(); i++) {
+            char c = logradouro.charAt(i);
+            if (Character.isWhitespace(c)) {
+                espacoPendente = destino.length() > 0;
+                inicio = inicio && !pulouNumero;
+                continue;
+            }
+            boolean digito = c >= '0' && c <= '9';
+            boolean valido = digito || c == '.' || c == '-'
+                || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= 'À' && c <= 'ÿ');
+            if (!valido) {
+                continue;
+            }
+            if (inicio && digito) {
+                // Numeração no início ("123 Rua X") e os espaços seguintes são descartados
+                pulouNumero = true;
+                continue;
+            }
+            inicio = false;
+            if (espacoPendente) {
+                destino.append(' ');
+                espacoPendente = false;
+            }
+            destino.append(c);
+        }
+        return destino.toString();
+    }
+
+    /**
+     * Texto de busca "logradouro, bairro, localidade, UF" (campos vazios omitidos)
+     */
+    public static String enderecoCompleto(Endereco endereco) {
+        StringBuilder destino = TEXTO.get();
+        destino.setLength(0);
+        juntar(destino, endereco.getLogradouro());
+        juntar(destino, endereco.getBairro());
+        juntar(destino, endereco.getLocalidade());
+        juntar(destino, endereco.getUf());
+        return destino.toString();
+    }
+
+    /**
+     * Chave canônica de cache para um endereço: campos dobrados separados por '|'
+     */
+    public static String chaveCanonica(Endereco endereco) {
+        StringBuilder destino = TEXTO.get();
+        destino.setLength(0);
+        acrescentarDobrado(endereco.getLogradouro(), destino);
+        destino.append('|');
+        acrescentarDobrado(endereco.getBairro(), destino);
+        destino.append('|');
+        acrescentarDobrado(endereco.getLocalidade(), destino);
+        destino.append('|');
+        acrescentarDobrado(endereco.getUf(), destino);
+        return destino.toString();
+    }
+
+    private static void juntar(StringBuilder destino, String campo) {
+        if (campo == null || campo.isEmpty()) {
+            return;
+        }
+        if (destino.length() > 0) {
+            destino.append(", ");
+        }
+        destino.append(campo);
+    }
+
+    private static StringBuilder dobrar(CharSequence texto, StringBuilder destino) {
+        destino.setLength(0);
+        acrescentarDobrado(texto, destino);
+        return destino;
+    }
+
+    private static void acrescentarDobrado(CharSequence texto, StringBuilder destino) {
+        if (texto == null) {
+            return;
+        }
+        int inicio = destino.length();
+        boolean espacoPendente = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            char d;
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    d = (char) (c + ('a' - 'A'));
+                } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                    d = c;
+                } else {
+                    d = ' ';
+                }
+            } else if (c >= 'À' && c <= 'ÿ') {
+                d = DOBRA_LATIN1.charAt(c - 0xC0);
+            } else {
+                d = Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ';
+            }
+
+            if (d == ' ') {
+                espacoPendente = destino.length() > inicio;
+            } else {
+                if (espacoPendente) {
+                    destino.append(' ');
+                    espacoPendente = false;
+                }
+                destino.append(d);
+            }
+        }
+    }
+}
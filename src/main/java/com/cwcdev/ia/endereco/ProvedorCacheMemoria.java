@@ -0,0 +1,50 @@
+package com.cwcdev.ia.endereco;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.cache.CacheLru;
+import com.cwcdev.ia.cache.CodecsCache;
+import com.cwcdev.ia.cache.SnapshotCaches;
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Camada 1: cache LRU em memória (com snapshot em disco) de endereços completos
+ */
+@Component
+@Order(10)
+public class ProvedorCacheMemoria implements ProvedorEndereco {
+
+    private final CacheLru<Endereco> cache;
+
+    public ProvedorCacheMemoria(SnapshotCaches snapshotCaches,
+                                @Value("${cache.cep.capacidade:200000}") int capacidade) {
+        this.cache = new CacheLru<>("cep", capacidade, CodecsCache.ENDERECO);
+        snapshotCaches.registrar(cache);
+    }
+
+    @Override
+    public String getNome() {
+        return "memoria";
+    }
+
+    @Override
+    public Endereco buscar(int cep, Endereco parcial) {
+        if (parcial != null) {
+            return null;
+        }
+        Endereco endereco = cache.obter(NormalizadorEndereco.formatarCep(cep));
+        return endereco != null ? endereco.copiar() : null;
+    }
+
+    @Override
+    public boolean isGravavel() {
+        return true;
+    }
+
+    @Override
+    public void armazenar(int cep, Endereco endereco) {
+        cache.colocar(NormalizadorEndereco.formatarCep(cep), endereco.copiar());
+    }
+}
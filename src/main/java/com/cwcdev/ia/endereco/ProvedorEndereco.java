@@ -0,0 +1,31 @@
+package com.cwcdev.ia.endereco;
+
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Camada de resolução de CEPs usada por {@link ResolvedorEnderecos}.
+ *
+ * As camadas são consultadas em ordem ({@code @Order}); cada uma recebe o
+ * resultado parcial das anteriores (endereço ainda sem coordenadas) e pode
+ * completá-lo. Camadas graváveis recebem de volta os endereços completos
+ * resolvidos pelas camadas mais lentas.
+ */
+public interface ProvedorEndereco {
+
+    String getNome();
+
+    /**
+     * @param cep CEP já validado (8 dígitos)
+     * @param parcial endereço encontrado pelas camadas anteriores, sem coordenadas, ou null
+     * @return endereço encontrado ou completado por esta camada, ou null se ela não puder ajudar
+     * @throws Exception falha de acesso à camada (contada separadamente de "não encontrado")
+     */
+    Endereco buscar(int cep, Endereco parcial) throws Exception;
+
+    default boolean isGravavel() {
+        return false;
+    }
+
+    default void armazenar(int cep, Endereco endereco) {
+    }
+}
@@ -0,0 +1,211 @@
+package com.cwcdev.ia.endereco;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.cwcdev.ia.cache.CacheLru;
+import com.cwcdev.ia.cache.CodecsCache;
+import com.cwcdev.ia.cache.SnapshotCaches;
+import com.cwcdev.ia.model.Endereco;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Camada 4: Nominatim remoto. Completa com coordenadas o endereço vindo das
+ * camadas anteriores ou, se nenhuma conhecer o CEP, procura o código postal.
+ * Também atende a busca textual e a geocodificação usadas no cálculo de rotas.
+ */
+@Component
+@Order(40)
+public class ProvedorNominatim implements ProvedorEndereco {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvedorNominatim.class);
+
+    private final RestTemplate restTemplate;
+    private final String urlNominatim;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CacheLru<double[]> cacheGeocodificacao;
+
+    public ProvedorNominatim(RestTemplate restTemplate, SnapshotCaches snapshotCaches,
+                             @Value("${cache.geocodificacao.capacidade:200000}") int capacidadeGeocodificacao,
+                             @Value("${upstream.nominatim.url:https://nominatim.openstreetmap.org/search}") String urlNominatim) {
+        this.restTemplate = restTemplate;
+        this.urlNominatim = urlNominatim;
+        this.cacheGeocodificacao = new CacheLru<>("geocodificacao", capacidadeGeocodificacao, CodecsCache.COORDENADAS);
+        snapshotCaches.registrar(cacheGeocodificacao);
+    }
+
+    @Override
+    public String getNome() {
+        return "nominatim";
+    }
+
+    @Override
+    public Endereco buscar(int cep, Endereco parcial) throws Exception {
+        if (parcial != null) {
+            Endereco completo = parcial.copiar();
+            return consultarCoordenadas(completo) ? completo : null;
+        }
+
+        String url = String.format("%s?format=json&postalcode=%s&addressdetails=1&limit=1&countrycodes=br",
+            urlNominatim, NormalizadorEndereco.formatarCep(cep));
+        JsonNode root = objectMapper.readTree(restTemplate.getForObject(url, String.class));
+        if (root.isArray() && root.size() > 0) {
+            Endereco endereco = jsonNodeParaEndereco(root.get(0));
+            if (endereco != null) {
+                endereco.setCep(NormalizadorEndereco.formatarCep(cep));
+            }
+            return endereco;
+        }
+        return null;
+    }
+
+    /**
+     * Preenche as coordenadas do endereço (cache de geocodificação ou Nominatim)
+     */
+    public boolean geocodificar(Endereco endereco) {
+        try {
+            return consultarCoordenadas(endereco);
+        } catch (Exception e) {
+            logger.warn("Erro ao buscar coordenadas: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Busca textual usando Nominatim com filtro para Brasil
+     */
+    public List<Endereco> buscarPorTexto(String query) {
+        try {
+            // Texto codificado uma única vez (como variável do template)
+            URI url = UriComponentsBuilder.fromHttpUrl(urlNominatim)
+                .query("format=json&q={q}&addressdetails=1&limit=10&countrycodes=br")
+                .encode()
+                .buildAndExpand(query)
+                .toUri();
+            
+            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            JsonNode root = objectMapper.readTree(response.getBody());
+            
+            // Usar Streams Java 8 para processar resultados
+            if (root.isArray()) {
+                return StreamSupport.stream(root.spliterator(), false)
+                    .map(this::jsonNodeParaEndereco)
+                    .filter(e -> e != null && !e.isErro())
+                    .collect(Collectors.toList());
+            }
+            
+        } catch (Exception e) {
+            logger.warn("Erro ao buscar por texto: {}", e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+
+    /**
+     * Converte JsonNode do Nominatim para Endereco usando Streams
+     */
+    private Endereco jsonNodeParaEndereco(JsonNode node) {
+        try {
+            Endereco endereco = new Endereco();
+            
+            // Extrair coordenadas
+            endereco.setLatitude(node.get("lat").asDouble());
+            endereco.setLongitude(node.get("lon").asDouble());
+            
+            // Extrair detalhes do endereço se disponível
+            if (node.has("address")) {
+                JsonNode address = node.get("address");
+                
+                // Usar Stream para encontrar o melhor campo para logradouro
+                String logradouro = Stream.of("road", "street", "pedestrian", "footway")
+                    .filter(address::has)
+                    .findFirst()
+                    .map(field -> address.get(field).asText())
+                    .orElse(node.has("display_name") ? 
+                        node.get("display_name").asText().split(",")[0] : "");
+                
+                endereco.setLogradouro(logradouro);
+                
+                // Bairro
+                if (address.has("suburb")) {
+                    endereco.setBairro(address.get("suburb").asText());
+                } else if (address.has("neighbourhood")) {
+                    endereco.setBairro(address.get("neighbourhood").asText());
+                }
+                
+                // Cidade
+                if (address.has("city")) {
+                    endereco.setLocalidade(address.get("city").asText());
+                } else if (address.has("town")) {
+                    endereco.setLocalidade(address.get("town").asText());
+                } else if (address.has("municipality")) {
+                    endereco.setLocalidade(address.get("municipality").asText());
+                }
+                
+                // Estado
+                if (address.has("state")) {
+                    String estado = address.get("state").asText();
+                    // Converter nome completo para sigla se necessário
+                    endereco.setUf(NormalizadorEndereco.siglaEstado(estado));
+                }
+                
+                // CEP se disponível
+                if (address.has("postcode")) {
+                    endereco.setCep(address.get("postcode").asText());
+                } else {
+                    endereco.setCep("N/A");
+                }
+            }
+            
+            endereco.setErro(false);
+            return endereco;
+            
+        } catch (Exception e) {
+            logger.warn("Erro ao converter JsonNode: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean consultarCoordenadas(Endereco endereco) throws Exception {
+        String enderecoCompleto = NormalizadorEndereco.enderecoCompleto(endereco);
+        String chave = NormalizadorEndereco.chaveCanonica(endereco);
+        
+        double[] emCache = cacheGeocodificacao.obter(chave);
+        if (emCache != null) {
+            endereco.setLatitude(emCache[0]);
+            endereco.setLongitude(emCache[1]);
+            return true;
+        }
+        
+        String url = String.format("%s?format=json&q=%s&limit=1&countrycodes=br", 
+            urlNominatim, 
+            java.net.URLEncoder.encode(enderecoCompleto, "UTF-8"));
+        
+        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+        JsonNode root = objectMapper.readTree(response.getBody());
+        
+        if (root.isArray() && root.size() > 0) {
+            JsonNode firstResult = root.get(0);
+            endereco.setLatitude(firstResult.get("lat").asDouble());
+            endereco.setLongitude(firstResult.get("lon").asDouble());
+            cacheGeocodificacao.colocar(chave,
+                new double[] { endereco.getLatitude(), endereco.getLongitude() });
+            return true;
+        }
+        return false;
+    }
+}
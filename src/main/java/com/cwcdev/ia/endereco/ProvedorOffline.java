@@ -0,0 +1,91 @@
+package com.cwcdev.ia.endereco;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Camada 2: base local de CEPs carregada de um arquivo separado por ';'
+ * ({@code cep;logradouro;bairro;localidade;uf;ibge;latitude;longitude}).
+ * Sem arquivo a camada fica vazia.
+ */
+@Component
+@Order(20)
+public class ProvedorOffline implements ProvedorEndereco {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvedorOffline.class);
+
+    private final Path arquivo;
+    private volatile Map<Integer, Endereco> enderecos = new HashMap<>();
+
+    public ProvedorOffline(@Value("${enderecos.offline.arquivo:dados/ceps.csv}") String arquivo) {
+        this.arquivo = Paths.get(arquivo);
+    }
+
+    @PostConstruct
+    public void carregar() {
+        if (!Files.exists(arquivo)) {
+            return;
+        }
+        Map<Integer, Endereco> carregados = new HashMap<>();
+        int linhaAtual = 0;
+        try (BufferedReader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                linhaAtual++;
+                String[] campos = linha.split(";", -1);
+                int cep = campos.length >= 5 ? NormalizadorEndereco.parseCep(campos[0]) : NormalizadorEndereco.CEP_INVALIDO;
+                if (cep == NormalizadorEndereco.CEP_INVALIDO) {
+                    continue; // cabeçalho ou linha inválida
+                }
+                Endereco endereco = new Endereco();
+                endereco.setCep(NormalizadorEndereco.formatarCep(cep));
+                endereco.setLogradouro(campos[1]);
+                endereco.setBairro(campos[2]);
+                endereco.setLocalidade(campos[3]);
+                endereco.setUf(campos[4]);
+                if (campos.length > 5 && !campos[5].isEmpty()) {
+                    endereco.setIbge(campos[5]);
+                }
+                if (campos.length > 7 && !campos[6].isEmpty() && !campos[7].isEmpty()) {
+                    endereco.setLatitude(Double.parseDouble(campos[6]));
+                    endereco.setLongitude(Double.parseDouble(campos[7]));
+                }
+                carregados.put(cep, endereco);
+            }
+            enderecos = carregados;
+            logger.info("Base offline de CEPs carregada: {} endereços", carregados.size());
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Falha ao carregar base offline de CEPs (linha {}): {}", linhaAtual, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getNome() {
+        return "offline";
+    }
+
+    @Override
+    public Endereco buscar(int cep, Endereco parcial) {
+        if (parcial != null) {
+            return null;
+        }
+        Endereco endereco = enderecos.get(cep);
+        return endereco != null ? endereco.copiar() : null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.cwcdev.ia.endereco;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Camada 3: ViaCEP remoto (endereço sem coordenadas)
+ */
+@Component
+@Order(30)
+public class ProvedorViaCep implements ProvedorEndereco {
+
+    private final RestTemplate restTemplate;
+    private final String urlViaCep;
+
+    public ProvedorViaCep(RestTemplate restTemplate,
+                          @Value("${upstream.viacep.url:https://viacep.com.br/ws/}") String urlViaCep) {
+        this.restTemplate = restTemplate;
+        this.urlViaCep = urlViaCep;
+    }
+
+    @Override
+    public String getNome() {
+        return "viacep";
+    }
+
+    @Override
+    public Endereco buscar(int cep, Endereco parcial) {
+        if (parcial != null) {
+            return null;
+        }
+        String url = urlViaCep + NormalizadorEndereco.formatarCep(cep) + "/json/";
+        Endereco endereco = restTemplate.getForObject(url, Endereco.class);
+        // ViaCEP responde {"erro": true} para CEP inexistente
+        if (endereco == null || endereco.getCep() == null || endereco.isErro()) {
+            return null;
+        }
+        return endereco;
+    }
+}
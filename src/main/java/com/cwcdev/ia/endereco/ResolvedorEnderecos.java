@@ -0,0 +1,104 @@
+package com.cwcdev.ia.endereco;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.cwcdev.ia.model.Endereco;
+import com.cwcdev.ia.prazo.Prazo;
+
+/**
+ * Ponto único de busca por CEP: percorre as camadas {@link ProvedorEndereco}
+ * em ordem até obter um endereço com coordenadas e grava o resultado de volta
+ * nas camadas graváveis mais rápidas que a que respondeu.
+ */
+@Service
+public class ResolvedorEnderecos {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResolvedorEnderecos.class);
+
+    private final List<ProvedorEndereco> camadas;
+    private final List<EstatisticasCamada> estatisticas = new ArrayList<>();
+
+    public ResolvedorEnderecos(List<ProvedorEndereco> camadas) {
+        this.camadas = camadas;
+        List<String> nomes = new ArrayList<>();
+        for (ProvedorEndereco camada : camadas) {
+            estatisticas.add(new EstatisticasCamada(camada.getNome()));
+            nomes.add(camada.getNome());
+        }
+        logger.info("Camadas de endereço: {}", nomes);
+    }
+
+    /**
+     * Busca o endereço do CEP (com ou sem máscara). Nunca retorna null: erros
+     * vêm como {@link Endereco#criarComErro(String)}. Um endereço sem
+     * coordenadas é devolvido quando nenhuma camada consegue geocodificá-lo
+     * ou quando o {@link Prazo} da requisição acaba antes.
+     */
+    public Endereco buscarPorCep(String cepInformado) {
+        int cep = NormalizadorEndereco.parseCep(cepInformado);
+        if (cep == NormalizadorEndereco.CEP_INVALIDO) {
+            return Endereco.criarComErro("CEP deve conter exatamente 8 dígitos. Formato esperado: 00000000");
+        }
+
+        Endereco resultado = null;
+        boolean houveFalha = false;
+        boolean esgotado = false;
+        int respondeu = -1;
+        Prazo prazo = Prazo.atual();
+        for (int i = 0; i < camadas.size(); i++) {
+            ProvedorEndereco camada = camadas.get(i);
+            if (prazo != null && prazo.isEsgotado()) {
+                esgotado = true;
+                logger.debug("Prazo esgotado antes da camada {} para o CEP {}", camada.getNome(), cepInformado);
+                break;
+            }
+            long inicio = System.nanoTime();
+            try {
+                Endereco encontrado = camada.buscar(cep, resultado);
+                estatisticas.get(i).registrar(encontrado != null, System.nanoTime() - inicio);
+                if (encontrado != null) {
+                    resultado = encontrado;
+                    if (isCompleto(resultado)) {
+                        respondeu = i;
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                estatisticas.get(i).registrarFalha(System.nanoTime() - inicio);
+                houveFalha = true;
+                logger.warn("Camada {} falhou para o CEP {}: {}", camada.getNome(), cepInformado, e.getMessage());
+            }
+        }
+
+        if (resultado == null) {
+            if (esgotado) {
+                return Endereco.criarComErro("Tempo limite da busca de CEP esgotado. Tente novamente.");
+            }
+            return houveFalha
+                ? Endereco.criarComErro("Erro de conexão com o serviço de CEP. Verifique sua internet e tente novamente.")
+                : Endereco.criarComErro("CEP " + NormalizadorEndereco.formatarCep(cep) + " não encontrado. Verifique se o CEP está correto.");
+        }
+
+        for (int i = 0; i < respondeu; i++) {
+            if (camadas.get(i).isGravavel()) {
+                camadas.get(i).armazenar(cep, resultado);
+            }
+        }
+        resultado.setErro(false);
+        resultado.setMensagemErro(null);
+        return resultado;
+    }
+
+    public List<EstatisticasCamada> getEstatisticas() {
+        return estatisticas;
+    }
+
+    private static boolean isCompleto(Endereco endereco) {
+        return endereco.getLatitude() != null && endereco.getLongitude() != null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.cwcdev.ia.geocerca;
+
+import com.cwcdev.ia.navegacao.MotorNavegacao;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Área monitorada (depósito, cliente, zona restrita): um círculo (centro e
+ * raio em metros) ou um polígono ({@code vertices} como pares [lat, lng]).
+ *
+ * Depois de {@link #preparar()} a área não muda; o retângulo envolvente
+ * descarta a maioria dos pontos antes do teste exato.
+ */
+public class Geocerca {
+
+    private static final double METROS_POR_GRAU = 111320;
+
+    private String id;
+    private String nome;
+    private String categoria;
+    private Double latitude;
+    private Double longitude;
+    private Double raio;
+    private double[][] vertices;
+
+    // Derivados em preparar()
+    private double[] poligono;
+    private double latMin;
+    private double latMax;
+    private double lngMin;
+    private double lngMax;
+    private volatile boolean removida;
+
+    public Geocerca() {}
+
+    /**
+     * Valida a área e calcula o retângulo envolvente
+     *
+     * @throws IllegalArgumentException se não for um círculo nem um polígono
+     *         válido, ou se alguma coordenada estiver fora de [-90, 90] x [-180, 180]
+     */
+    void preparar() {
+        if (id == null || id.trim().isEmpty()) {
+            throw new IllegalArgumentException("Geocerca sem id");
+        }
+        if (vertices != null) {
+            if (vertices.length < 3) {
+                throw new IllegalArgumentException("Polígono da geocerca " + id + " precisa de ao menos 3 vértices");
+            }
+            poligono = new double[vertices.length * 2];
+            latMin = lngMin = Double.POSITIVE_INFINITY;
+            latMax = lngMax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < vertices.length; i++) {
+                if (vertices[i] == null || vertices[i].length != 2) {
+                    throw new IllegalArgumentException("Vértice inválido na geocerca " + id);
+                }
+                double lat = vertices[i][0];
+                double lng = vertices[i][1];
+                validarCoordenada(lat, lng);
+                poligono[i * 2] = lat;
+                poligono[i * 2 + 1] = lng;
+                latMin = Math.min(latMin, lat);
+                latMax = Math.max(latMax, lat);
+                lngMin = Math.min(lngMin, lng);
+                lngMax = Math.max(lngMax, lng);
+            }
+        } else if (latitude != null && longitude != null && raio != null) {
+            validarCoordenada(latitude, longitude);
+            if (!(raio > 0) || Double.isInfinite(raio)) {
+                throw new IllegalArgumentException("Raio inválido na geocerca " + id + ": " + raio);
+            }
+            double dLat = raio / METROS_POR_GRAU;
+            double dLng = raio / (METROS_POR_GRAU * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+            latMin = latitude - dLat;
+            latMax = latitude + dLat;
+            lngMin = longitude - dLng;
+            lngMax = longitude + dLng;
+        } else {
+            throw new IllegalArgumentException("Geocerca " + id + " precisa de centro e raio ou de vértices");
+        }
+    }
+
+    // Comparações negadas para que NaN também seja recusado
+    private void validarCoordenada(double lat, double lng) {
+        if (!(lat >= -90 && lat <= 90) || !(lng >= -180 && lng <= 180)) {
+            throw new IllegalArgumentException("Coordenada fora do intervalo na geocerca " + id + ": " + lat + ", " + lng);
+        }
+    }
+
+    public boolean contem(double lat, double lng) {
+        if (lat < latMin || lat > latMax || lng < lngMin || lng > lngMax) {
+            return false;
+        }
+        if (poligono == null) {
+            return MotorNavegacao.calcularDistancia(lat, lng, latitude, longitude) <= raio;
+        }
+        // Ray casting na direção de longitude crescente
+        boolean dentro = false;
+        int n = poligono.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double latI = poligono[i * 2];
+            double lngI = poligono[i * 2 + 1];
+            double latJ = poligono[j * 2];
+            double lngJ = poligono[j * 2 + 1];
+            if ((latI > lat) != (latJ > lat)
+                    && lng < (lngJ - lngI) * (lat - latI) / (latJ - latI) + lngI) {
+                dentro = !dentro;
+            }
+        }
+        return dentro;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getNome() { return nome; }
+    public void setNome(String nome) { this.nome = nome; }
+
+    public String getCategoria() { return categoria; }
+    public void setCategoria(String categoria) { this.categoria = categoria; }
+
+    public Double getLatitude() { return latitude; }
+    public void setLatitude(Double latitude) { this.latitude = latitude; }
+
+    public Double getLongitude() { return longitude; }
+    public void setLongitude(Double longitude) { this.longitude = longitude; }
+
+    public Double getRaio() { return raio; }
+    public void setRaio(Double raio) { this.raio = raio; }
+
+    public double[][] getVertices() { return vertices; }
+    public void setVertices(double[][] vertices) { this.vertices = vertices; }
+
+    double getLatMin() { return latMin; }
+    double getLatMax() { return latMax; }
+    double getLngMin() { return lngMin; }
+    double getLngMax() { return lngMax; }
+
+    @JsonIgnore
+    public boolean isRemovida() { return removida; }
+    void marcarRemovida() { this.removida = true; }
+}
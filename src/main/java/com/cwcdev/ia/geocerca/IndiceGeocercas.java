@@ -0,0 +1,174 @@
+package com.cwcdev.ia.geocerca;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Índice espacial das geocercas em grade uniforme de latitude/longitude.
+ *
+ * Cada geocerca é registrada em todas as células que o seu retângulo
+ * envolvente cobre; um fix consulta apenas a célula onde está, então o custo
+ * por fix depende das geocercas próximas e não do total cadastrado.
+ *
+ * Leituras (threads dos fragmentos, a cada fix) não usam locks: cada célula
+ * guarda um array imutável, trocado por inteiro nas alterações. Inclusões e
+ * remoções são serializadas e só tocam as células da geocerca alterada.
+ */
+@Component
+public class IndiceGeocercas {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndiceGeocercas.class);
+
+    private static final Geocerca[] VAZIO = new Geocerca[0];
+
+    private final double tamanhoCelula;
+    private final int celulasMaximas;
+    private final Map<Long, Geocerca[]> celulas = new ConcurrentHashMap<>();
+    private final Map<String, Geocerca> geocercas = new ConcurrentHashMap<>();
+
+    public IndiceGeocercas(
+            @Value("${geocercas.celula-graus:0.01}") double tamanhoCelula,
+            @Value("${geocercas.celulas-maximas:10000}") int celulasMaximas) {
+        this.tamanhoCelula = tamanhoCelula;
+        this.celulasMaximas = celulasMaximas;
+    }
+
+    /**
+     * Inclui ou substitui (mesmo id) uma geocerca
+     *
+     * @throws IllegalArgumentException se a área for inválida ou grande demais para a grade
+     */
+    public synchronized void adicionar(Geocerca geocerca) {
+        validar(geocerca);
+        aplicar(geocerca);
+    }
+
+    /**
+     * Inclui o lote inteiro ou nada: todas as geocercas são validadas antes
+     * de a primeira ser aplicada
+     *
+     * @throws IllegalArgumentException se alguma geocerca do lote for inválida
+     */
+    public synchronized void adicionarTodas(Collection<Geocerca> novas) {
+        for (Geocerca geocerca : novas) {
+            validar(geocerca);
+        }
+        for (Geocerca geocerca : novas) {
+            aplicar(geocerca);
+        }
+        logger.info("{} geocercas cadastradas ({} no total, {} células)", novas.size(), geocercas.size(), celulas.size());
+    }
+
+    public synchronized boolean remover(String id) {
+        Geocerca geocerca = geocercas.remove(id);
+        if (geocerca == null) {
+            return false;
+        }
+        retirar(geocerca);
+        return true;
+    }
+
+    /**
+     * Geocercas registradas na célula do ponto (candidatas; o teste exato é
+     * {@link Geocerca#contem}). O array retornado não deve ser alterado.
+     */
+    public Geocerca[] candidatas(double lat, double lng) {
+        Geocerca[] candidatas = celulas.get(chave(celula(lng), celula(lat)));
+        return candidatas != null ? candidatas : VAZIO;
+    }
+
+    public Geocerca buscar(String id) {
+        return geocercas.get(id);
+    }
+
+    public List<Geocerca> listar() {
+        return new ArrayList<>(geocercas.values());
+    }
+
+    public int getQuantidade() {
+        return geocercas.size();
+    }
+
+    public int getCelulasOcupadas() {
+        return celulas.size();
+    }
+
+    private void validar(Geocerca geocerca) {
+        geocerca.preparar();
+        // Em long: com células pequenas ou áreas extensas a diferença passa de int
+        long largura = (long) celula(geocerca.getLngMax()) - celula(geocerca.getLngMin()) + 1;
+        long altura = (long) celula(geocerca.getLatMax()) - celula(geocerca.getLatMin()) + 1;
+        long quantidade = largura * altura;
+        if (quantidade > celulasMaximas) {
+            throw new IllegalArgumentException("Geocerca " + geocerca.getId() + " cobre " + quantidade
+                    + " células (máximo " + celulasMaximas + ")");
+        }
+    }
+
+    private void aplicar(Geocerca geocerca) {
+        Geocerca anterior = geocercas.put(geocerca.getId(), geocerca);
+        if (anterior != null) {
+            retirar(anterior);
+        }
+        for (int x = celula(geocerca.getLngMin()); x <= celula(geocerca.getLngMax()); x++) {
+            for (int y = celula(geocerca.getLatMin()); y <= celula(geocerca.getLatMax()); y++) {
+                celulas.merge(chave(x, y), new Geocerca[] {geocerca}, IndiceGeocercas::juntar);
+            }
+        }
+    }
+
+    private void retirar(Geocerca geocerca) {
+        geocerca.marcarRemovida();
+        for (int x = celula(geocerca.getLngMin()); x <= celula(geocerca.getLngMax()); x++) {
+            for (int y = celula(geocerca.getLatMin()); y <= celula(geocerca.getLatMax()); y++) {
+                celulas.computeIfPresent(chave(x, y), (chave, atuais) -> semGeocerca(atuais, geocerca));
+            }
+        }
+    }
+
+    private int celula(double grau) {
+        return (int) Math.floor(grau / tamanhoCelula);
+    }
+
+    private static long chave(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static Geocerca[] juntar(Geocerca[] atuais, Geocerca[] nova) {
+        Geocerca[] resultado = new Geocerca[atuais.length + 1];
+        System.arraycopy(atuais, 0, resultado, 0, atuais.length);
+        resultado[atuais.length] = nova[0];
+        return resultado;
+    }
+
+    /**
+     * Cópia sem a geocerca; null remove a célula do mapa
+     */
+    private static Geocerca[] semGeocerca(Geocerca[] atuais, Geocerca removida) {
+        int restantes = 0;
+        for (Geocerca geocerca : atuais) {
+            if (geocerca != removida) {
+                restantes++;
+            }
+        }
+        if (restantes == 0) {
+            return null;
+        }
+        Geocerca[] resultado = new Geocerca[restantes];
+        int i = 0;
+        for (Geocerca geocerca : atuais) {
+            if (geocerca != removida) {
+                resultado[i++] = geocerca;
+            }
+        }
+        return resultado;
+    }
+}
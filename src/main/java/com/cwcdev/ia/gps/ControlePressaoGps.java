@@ -0,0 +1,84 @@
+package com.cwcdev.ia.gps;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backpressure na entrada de fixes GPS do clientInboundChannel.
+ *
+ * Conta os frames /app/gps.posicao* aceitos e ainda não tratados (na fila do
+ * executor ou em execução). Acima do limite, novos fixes são descartados já na
+ * thread do WebSocket, sem entrar na fila; o cliente reenvia a posição no
+ * próximo intervalo. Demais mensagens STOMP nunca são descartadas. O fix
+ * deixa de contar quando o handler termina ou quando o envio falha.
+ */
+@Component
+public class ControlePressaoGps implements ExecutorChannelInterceptor {
+
+    private static final String PREFIXO_GPS = "/app/gps.posicao";
+
+    private final MetricasGps metricasGps;
+    private final int limitePendentes;
+    private final AtomicInteger pendentes = new AtomicInteger();
+
+    @Autowired
+    public ControlePressaoGps(MetricasGps metricasGps,
+            @Value("${navegacao.gps.limite-pendentes:2000}") int limitePendentes) {
+        this.metricasGps = metricasGps;
+        this.limitePendentes = limitePendentes;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!isFixGps(message)) {
+            return message;
+        }
+        if (pendentes.incrementAndGet() > limitePendentes) {
+            pendentes.decrementAndGet();
+            metricasGps.registrarDescartado();
+            return null;
+        }
+        return message;
+    }
+
+    /**
+     * Chamado uma vez por handler inscrito no canal (métodos anotados, destinos
+     * de usuário, broker); o fix conta como tratado só no handler dos métodos
+     * anotados, o único que atende /app/...
+     */
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (handler instanceof SimpAnnotationMethodMessageHandler && isFixGps(message)) {
+            pendentes.decrementAndGet();
+        }
+    }
+
+    /**
+     * Envio que falhou depois do preSend (executor do canal recusou a tarefa,
+     * interceptor seguinte descartou a mensagem): nenhum handler tratará o fix
+     */
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if ((!sent || ex != null) && isFixGps(message)) {
+            pendentes.decrementAndGet();
+        }
+    }
+
+    public int getPendentes() {
+        return pendentes.get();
+    }
+
+    private static boolean isFixGps(Message<?> message) {
+        String destino = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        return destino != null && destino.startsWith(PREFIXO_GPS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.cwcdev.ia.gps;
+
+/**
+ * Posição GPS em campos primitivos, reutilizável entre mensagens para
+ * evitar alocação por fix no caminho de ingestão.
+ */
+public class FixGps {
+
+    private static final ThreadLocal<FixGps> POR_THREAD = ThreadLocal.withInitial(FixGps::new);
+
+    public double latitude;
+    public double longitude;
+    public double precisao; // metros
+    public double velocidade; // m/s
+    public long timestamp;
+    public long sequencia; // opcional ("seq"): devolvida no eco e na ETA para correlacionar respostas
+
+    /**
+     * Instância reutilizável da thread atual
+     */
+    public static FixGps daThread() {
+        return POR_THREAD.get();
+    }
+
+    public void limpar() {
+        latitude = Double.NaN;
+        longitude = Double.NaN;
+        precisao = 0;
+        velocidade = 0;
+        timestamp = 0;
+        sequencia = 0;
+    }
+
+    public boolean isValido() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude)
+                && latitude >= -90 && latitude <= 90
+                && longitude >= -180 && longitude <= 180;
+    }
+
+    public void copiarDe(FixGps outro) {
+        this.latitude = outro.latitude;
+        this.longitude = outro.longitude;
+        this.precisao = outro.precisao;
+        this.velocidade = outro.velocidade;
+        this.timestamp = outro.timestamp;
+        this.sequencia = outro.sequencia;
+    }
+
+    /**
+     * Escreve o eco JSON da posição no builder informado
+     */
+    public StringBuilder escreverJson(StringBuilder sb) {
+        sb.append("{\"latitude\":").append(latitude)
+          .append(",\"longitude\":").append(longitude)
+          .append(",\"accuracy\":").append(precisao)
+          .append(",\"speed\":").append(velocidade)
+          .append(",\"timestamp\":").append(timestamp);
+        if (sequencia != 0) {
+            sb.append(",\"seq\":").append(sequencia);
+        }
+        sb.append('}');
+        return sb;
+    }
+
+    /**
+     * Eco JSON da posição em bytes (ASCII), montado no rascunho informado. O
+     * array devolvido é o único objeto alocado: vira o payload da mensagem,
+     * que ainda será lida pela thread de saída depois do próximo fix.
+     */
+    public byte[] escreverJsonBytes(StringBuilder rascunho) {
+        rascunho.setLength(0);
+        escreverJson(rascunho);
+        byte[] bytes = new byte[rascunho.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) rascunho.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,315 @@
+package com.cwcdev.ia.gps;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Leitura de fixes GPS diretamente para um {@link FixGps} reutilizável.
+ *
+ * Aceita dois formatos:
+ * <ul>
+ * <li>JSON ({"latitude":..,"longitude":..,"accuracy":..,"speed":..,"seq":..},
+ * "seq" opcional) varrido
+ * byte a byte sem criar parser, strings ou árvore: nomes comparados com os
+ * bytes esperados e números convertidos direto para double (campos
+ * desconhecidos, inclusive objetos e listas, são pulados);</li>
+ * <li>frame binário de 13 bytes (big-endian): versao:byte(1),
+ * latitude:int32 (1e7), longitude:int32 (1e7), precisao:uint16 (dm),
+ * velocidade:uint16 (cm/s).</li>
+ * </ul>
+ * A alocação por fix é verificada por {@code BancadaAlocacaoGps} (perfil Maven bancada-gps).
+ */
+@Component
+public class LeitorFixGps {
+
+    public static final int VERSAO_BINARIO = 1;
+    public static final int TAMANHO_BINARIO = 13;
+
+    private static final double ESCALA_COORDENADA = 1e7;
+
+    private static final int CAMPO_OUTRO = 0;
+    private static final int CAMPO_LATITUDE = 1;
+    private static final int CAMPO_LONGITUDE = 2;
+    private static final int CAMPO_PRECISAO = 3;
+    private static final int CAMPO_VELOCIDADE = 4;
+    private static final int CAMPO_SEQUENCIA = 5;
+
+    private static final byte[][] NOMES_CAMPOS = {
+        null,
+        "latitude".getBytes(StandardCharsets.US_ASCII),
+        "longitude".getBytes(StandardCharsets.US_ASCII),
+        "accuracy".getBytes(StandardCharsets.US_ASCII),
+        "speed".getBytes(StandardCharsets.US_ASCII),
+        "seq".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    // Potências de 10 representáveis exatamente em double
+    private static final double[] POTENCIAS_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Lê um fix em JSON; retorna false se o payload for inválido
+     */
+    public boolean lerJson(byte[] payload, FixGps destino) {
+        destino.limpar();
+        destino.timestamp = System.currentTimeMillis();
+        if (payload == null) {
+            return false;
+        }
+
+        int n = payload.length;
+        int i = pularEspacos(payload, 0);
+        if (i >= n || payload[i] != '{') {
+            return false;
+        }
+        i = pularEspacos(payload, i + 1);
+        if (i < n && payload[i] == '}') {
+            return destino.isValido();
+        }
+        while (true) {
+            if (i >= n || payload[i] != '"') {
+                return false;
+            }
+            int fimNome = fimTexto(payload, i + 1);
+            if (fimNome < 0) {
+                return false;
+            }
+            int campo = identificarCampo(payload, i + 1, fimNome);
+            i = pularEspacos(payload, fimNome + 1);
+            if (i >= n || payload[i] != ':') {
+                return false;
+            }
+            i = pularEspacos(payload, i + 1);
+            if (i >= n) {
+                return false;
+            }
+            byte c = payload[i];
+            // Valores não numéricos (texto, objeto, lista, literais) são ignorados
+            i = c == '-' || (c >= '0' && c <= '9') ? lerNumero(payload, i, destino, campo) : pularValor(payload, i);
+            if (i < 0) {
+                return false;
+            }
+            i = pularEspacos(payload, i);
+            if (i >= n) {
+                return false;
+            }
+            if (payload[i] == '}') {
+                break;
+            }
+            if (payload[i] != ',') {
+                return false;
+            }
+            i = pularEspacos(payload, i + 1);
+        }
+
+        return destino.isValido();
+    }
+
+    /**
+     * Lê um frame binário compacto; retorna false se o frame for inválido
+     */
+    public boolean lerBinario(byte[] frame, FixGps destino) {
+        destino.limpar();
+        if (frame == null || frame.length < TAMANHO_BINARIO || frame[0] != VERSAO_BINARIO) {
+            return false;
+        }
+
+        destino.latitude = lerInt(frame, 1) / ESCALA_COORDENADA;
+        destino.longitude = lerInt(frame, 5) / ESCALA_COORDENADA;
+        destino.precisao = lerUnsignedShort(frame, 9) / 10.0;
+        destino.velocidade = lerUnsignedShort(frame, 11) / 100.0;
+        destino.timestamp = System.currentTimeMillis();
+
+        return destino.isValido();
+    }
+
+    private static int lerInt(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    private static int lerUnsignedShort(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF);
+    }
+
+    private static int pularEspacos(byte[] b, int i) {
+        while (i < b.length && (b[i] == ' ' || b[i] == '\n' || b[i] == '\r' || b[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Posição das aspas que fecham o texto iniciado em {@code i}, ou -1
+     */
+    private static int fimTexto(byte[] b, int i) {
+        while (i < b.length) {
+            if (b[i] == '\\') {
+                i += 2;
+            } else if (b[i] == '"') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int identificarCampo(byte[] b, int inicio, int fim) {
+        for (int campo = CAMPO_LATITUDE; campo < NOMES_CAMPOS.length; campo++) {
+            byte[] nome = NOMES_CAMPOS[campo];
+            if (nome.length != fim - inicio) {
+                continue;
+            }
+            int j = 0;
+            while (j < nome.length && nome[j] == b[inicio + j]) {
+                j++;
+            }
+            if (j == nome.length) {
+                return campo;
+            }
+        }
+        return CAMPO_OUTRO;
+    }
+
+    /**
+     * Pula um valor que não é número; retorna a posição seguinte ou -1
+     */
+    private static int pularValor(byte[] b, int i) {
+        if (b[i] == '"') {
+            int fim = fimTexto(b, i + 1);
+            return fim < 0 ? -1 : fim + 1;
+        }
+        if (b[i] == '{' || b[i] == '[') {
+            int profundidade = 0;
+            while (i < b.length) {
+                byte c = b[i];
+                if (c == '"') {
+                    int fim = fimTexto(b, i + 1);
+                    if (fim < 0) {
+                        return -1;
+                    }
+                    i = fim + 1;
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    profundidade++;
+                } else if ((c == '}' || c == ']') && --profundidade == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+            return -1;
+        }
+        // true, false ou null
+        int inicio = i;
+        while (i < b.length && b[i] >= 'a' && b[i] <= 'z') {
+            i++;
+        }
+        return i > inicio ? i : -1;
+    }
+
+    /**
+     * Converte o número iniciado em {@code i} e o guarda no campo do fix.
+     * Com mantissa de até 53 bits e expoente decimal até 22 a conversão é
+     * exata com uma única operação em double; fora disso (raro em GPS) usa
+     * Double.parseDouble.
+     *
+     * @return posição seguinte ao número, ou -1 se não for um número
+     */
+    private static int lerNumero(byte[] b, int i, FixGps destino, int campo) {
+        int inicio = i;
+        int n = b.length;
+        boolean negativo = b[i] == '-';
+        if (negativo) {
+            i++;
+        }
+        long mantissa = 0;
+        int significativos = 0;
+        int expoente = 0;
+        boolean temDigito = false;
+        while (i < n && b[i] >= '0' && b[i] <= '9') {
+            if (significativos < 18) {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                if (mantissa != 0) {
+                    significativos++;
+                }
+            } else {
+                expoente++;
+            }
+            temDigito = true;
+            i++;
+        }
+        if (i < n && b[i] == '.') {
+            i++;
+            while (i < n && b[i] >= '0' && b[i] <= '9') {
+                if (significativos < 18) {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    if (mantissa != 0) {
+                        significativos++;
+                    }
+                    expoente--;
+                }
+                temDigito = true;
+                i++;
+            }
+        }
+        if (!temDigito) {
+            return -1;
+        }
+        if (i < n && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean expoenteNegativo = false;
+            if (i < n && (b[i] == '+' || b[i] == '-')) {
+                expoenteNegativo = b[i] == '-';
+                i++;
+            }
+            int valorExpoente = 0;
+            boolean temDigitoExpoente = false;
+            while (i < n && b[i] >= '0' && b[i] <= '9') {
+                if (valorExpoente < 10000) {
+                    valorExpoente = valorExpoente * 10 + (b[i] - '0');
+                }
+                temDigitoExpoente = true;
+                i++;
+            }
+            if (!temDigitoExpoente) {
+                return -1;
+            }
+            expoente += expoenteNegativo ? -valorExpoente : valorExpoente;
+        }
+
+        double valor;
+        if (mantissa < (1L << 53) && expoente >= -22 && expoente <= 22) {
+            valor = expoente < 0 ? mantissa / POTENCIAS_10[-expoente] : mantissa * POTENCIAS_10[expoente];
+            if (negativo) {
+                valor = -valor;
+            }
+        } else {
+            valor = Double.parseDouble(new String(b, inicio, i - inicio, StandardCharsets.US_ASCII));
+        }
+
+        switch (campo) {
+            case CAMPO_LATITUDE:
+                destino.latitude = valor;
+                break;
+            case CAMPO_LONGITUDE:
+                destino.longitude = valor;
+                break;
+            case CAMPO_PRECISAO:
+                destino.precisao = valor;
+                break;
+            case CAMPO_VELOCIDADE:
+                destino.velocidade = valor;
+                break;
+            case CAMPO_SEQUENCIA:
+                destino.sequencia = (long) valor;
+                break;
+            default:
+                break;
+        }
+        return i;
+    }
+}
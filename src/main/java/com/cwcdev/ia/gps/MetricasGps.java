@@ -0,0 +1,65 @@
+package com.cwcdev.ia.gps;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Contadores do caminho de ingestão GPS. Substitui o log por fix: um resumo é
+ * registrado no máximo uma vez por intervalo de amostragem.
+ */
+@Component
+public class MetricasGps {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricasGps.class);
+    private static final long INTERVALO_AMOSTRA_MS = 10_000;
+
+    private final LongAdder fixesJson = new LongAdder();
+    private final LongAdder fixesBinarios = new LongAdder();
+    private final LongAdder fixesInvalidos = new LongAdder();
+    private final LongAdder fixesDescartados = new LongAdder();
+    private final AtomicLong proximaAmostra = new AtomicLong();
+
+    public void registrarJson() {
+        fixesJson.increment();
+    }
+
+    public void registrarBinario() {
+        fixesBinarios.increment();
+    }
+
+    public void registrarInvalido() {
+        fixesInvalidos.increment();
+    }
+
+    public void registrarDescartado() {
+        fixesDescartados.increment();
+    }
+
+    /**
+     * Registra em log a última posição processada, respeitando o intervalo de amostragem
+     */
+    public void amostrar(FixGps fix) {
+        long agora = System.currentTimeMillis();
+        long proxima = proximaAmostra.get();
+        if (agora < proxima || !proximaAmostra.compareAndSet(proxima, agora + INTERVALO_AMOSTRA_MS)) {
+            return;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("GPS: json={} binario={} invalidos={} descartados={} ultima=({}, {}) ±{}m {} km/h",
+                    fixesJson.sum(), fixesBinarios.sum(), fixesInvalidos.sum(), fixesDescartados.sum(),
+                    fix.latitude, fix.longitude, Math.round(fix.precisao), Math.round(fix.velocidade * 3.6));
+        }
+    }
+
+    public long getFixesJson() { return fixesJson.sum(); }
+
+    public long getFixesBinarios() { return fixesBinarios.sum(); }
+
+    public long getFixesInvalidos() { return fixesInvalidos.sum(); }
+
+    public long getFixesDescartados() { return fixesDescartados.sum(); }
+}
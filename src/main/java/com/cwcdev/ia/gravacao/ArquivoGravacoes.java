@@ -0,0 +1,161 @@
+package com.cwcdev.ia.gravacao;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.codec.LeitorBytes;
+
+/**
+ * Arquivo append-only de respostas gravadas, indexado em memória pela chave
+ * normalizada da requisição.
+ *
+ * Formato:
+ * <pre>
+ * magico:int32 versao:byte | n x (tamanho:int32 chave:texto status:varint latenciaMs:varint
+ *                                 tipo:texto tamanhoCorpo:varint corpo:bytes)
+ * </pre>
+ * Ao abrir, só os cabeçalhos dos registros são lidos para montar o índice
+ * (chave -> posição do corpo); os corpos são lidos do disco sob demanda. Uma
+ * chave gravada de novo substitui a anterior no índice. Um registro
+ * incompleto no fim (gravação interrompida) é descartado.
+ */
+class ArquivoGravacoes implements AutoCloseable {
+
+    private static final int MAGICO = 0x47524156; // "GRAV"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 5;
+
+    private final FileChannel canal;
+    private final Map<String, Registro> indice = new ConcurrentHashMap<>();
+    private long fim;
+
+    ArquivoGravacoes(Path arquivo) throws IOException {
+        if (arquivo.getParent() != null) {
+            Files.createDirectories(arquivo.getParent());
+        }
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (canal.size() == 0) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+                cabecalho.putInt(MAGICO).put((byte) VERSAO).flip();
+                escreverTudo(cabecalho, 0);
+                fim = TAMANHO_CABECALHO;
+            } else {
+                fim = indexar();
+                canal.truncate(fim);
+            }
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    private long indexar() throws IOException {
+        ByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        if (dados.remaining() < TAMANHO_CABECALHO || dados.getInt() != MAGICO || dados.get() != VERSAO) {
+            throw new IOException("arquivo de gravações com formato diferente");
+        }
+        long posicao = TAMANHO_CABECALHO;
+        while (dados.remaining() >= 4) {
+            int tamanho = dados.getInt();
+            if (tamanho <= 0 || tamanho > dados.remaining()) {
+                break;
+            }
+            int inicio = dados.position();
+            try {
+                LeitorBytes leitor = new LeitorBytes(dados);
+                String chave = leitor.lerTexto();
+                int status = leitor.lerVarint();
+                int latenciaMs = leitor.lerVarint();
+                String tipo = leitor.lerTexto();
+                int tamanhoCorpo = leitor.lerVarint();
+                indice.put(chave, new Registro(status, latenciaMs, tipo, dados.position(), tamanhoCorpo));
+            } catch (BufferUnderflowException | IllegalStateException e) {
+                break;
+            }
+            dados.position(inicio + tamanho);
+            posicao = dados.position();
+        }
+        return posicao;
+    }
+
+    Registro buscar(String chave) {
+        return indice.get(chave);
+    }
+
+    byte[] lerCorpo(Registro registro) throws IOException {
+        ByteBuffer corpo = ByteBuffer.allocate(registro.tamanhoCorpo);
+        while (corpo.hasRemaining()) {
+            if (canal.read(corpo, registro.posicaoCorpo + corpo.position()) < 0) {
+                throw new IOException("arquivo de gravações truncado");
+            }
+        }
+        return corpo.array();
+    }
+
+    void gravar(String chave, int status, int latenciaMs, String tipo, byte[] corpo) throws IOException {
+        BufferBytes registro = new BufferBytes(corpo.length + chave.length() + 64);
+        registro.escreverTexto(chave);
+        registro.escreverVarint(status);
+        registro.escreverVarint(latenciaMs);
+        registro.escreverTexto(tipo);
+        registro.escreverVarint(corpo.length);
+        int tamanhoCabecalho = registro.tamanho();
+        registro.escreverBytes(corpo, 0, corpo.length);
+
+        ByteBuffer tamanho = ByteBuffer.allocate(4);
+        tamanho.putInt(registro.tamanho()).flip();
+        synchronized (this) {
+            long inicio = fim;
+            escreverTudo(tamanho, inicio);
+            escreverTudo(registro.comoByteBuffer(), inicio + 4);
+            fim = inicio + 4 + registro.tamanho();
+            indice.put(chave, new Registro(status, latenciaMs, tipo, inicio + 4 + tamanhoCabecalho, corpo.length));
+        }
+    }
+
+    int quantidade() {
+        return indice.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.force(false);
+        canal.close();
+    }
+
+    private void escreverTudo(ByteBuffer buffer, long posicao) throws IOException {
+        while (buffer.hasRemaining()) {
+            posicao += canal.write(buffer, posicao);
+        }
+    }
+
+    /**
+     * Metadados de uma resposta gravada; o corpo fica no arquivo
+     */
+    static final class Registro {
+
+        final int status;
+        final int latenciaMs;
+        final String tipo;
+        final long posicaoCorpo;
+        final int tamanhoCorpo;
+
+        Registro(int status, int latenciaMs, String tipo, long posicaoCorpo, int tamanhoCorpo) {
+            this.status = status;
+            this.latenciaMs = latenciaMs;
+            this.tipo = tipo;
+            this.posicaoCorpo = posicaoCorpo;
+            this.tamanhoCorpo = tamanhoCorpo;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.cwcdev.ia.gravacao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import com.cwcdev.ia.service.NavegacaoService;
+
+/**
+ * Gravação e reprodução das chamadas do RestTemplate aos serviços externos
+ * (ViaCEP, Nominatim, OSRM), para medir desempenho offline e de forma
+ * determinística com tráfego real.
+ *
+ * <ul>
+ * <li>gravar: chama o serviço e grava a resposta (exceto 5xx) com a latência observada;</li>
+ * <li>reproduzir: responde somente do arquivo, esperando a latência gravada
+ * multiplicada pelo fator configurado mais a latência extra; requisição sem
+ * gravação falha como um erro de rede.</li>
+ * </ul>
+ * A chave é a requisição normalizada: método, serviço (pelo prefixo de
+ * upstream.*.url), caminho após o prefixo e parâmetros em ordem alfabética.
+ * Assim gravações feitas contra os serviços reais valem também com as URLs
+ * trocadas (perfil "stubs", outro host). Chamadas a outras URLs passam direto,
+ * sem gravação nem reprodução.
+ */
+@Component
+public class GravacaoUpstream implements ClientHttpRequestInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(GravacaoUpstream.class);
+
+    // O segundo prefixo do OSRM (sem o perfil) cobre os perfis além do
+    // configurado; o terceiro (raiz do servidor), os outros serviços (table)
+    private static final String[] SERVICOS = {"viacep", "nominatim", "osrm", "osrm", "osrm"};
+
+    private final String modo;
+    private final String arquivo;
+    private final double fatorLatencia;
+    private final int latenciaExtraMs;
+    private final String[] prefixos;
+    private final LongAdder gravadas = new LongAdder();
+    private final LongAdder reproduzidas = new LongAdder();
+    private final LongAdder ausentes = new LongAdder();
+    private ArquivoGravacoes gravacoes;
+
+    public GravacaoUpstream(
+            @Value("${upstream.gravacao.modo:desligado}") String modo,
+            @Value("${upstream.gravacao.arquivo:dados/upstream.grav}") String arquivo,
+            @Value("${upstream.gravacao.fator-latencia:1.0}") double fatorLatencia,
+            @Value("${upstream.gravacao.latencia-extra-ms:0}") int latenciaExtraMs,
+            @Value("${upstream.viacep.url:https://viacep.com.br/ws/}") String urlViaCep,
+            @Value("${upstream.nominatim.url:https://nominatim.openstreetmap.org/search}") String urlNominatim,
+            @Value("${upstream.osrm.url:https://router.project-osrm.org/route/v1/driving/}") String urlOsrm) {
+        this.modo = modo.trim().toLowerCase(Locale.ROOT);
+        this.arquivo = arquivo;
+        this.fatorLatencia = fatorLatencia;
+        this.latenciaExtraMs = latenciaExtraMs;
+        this.prefixos = new String[] {urlViaCep, urlNominatim, urlOsrm, NavegacaoService.urlSemPerfil(urlOsrm),
+                NavegacaoService.urlRaizOsrm(urlOsrm)};
+        if (!this.modo.equals("desligado") && !this.modo.equals("gravar") && !this.modo.equals("reproduzir")) {
+            throw new IllegalArgumentException("upstream.gravacao.modo inválido: " + modo);
+        }
+    }
+
+    @PostConstruct
+    public void abrir() throws IOException {
+        if (!isAtivo()) {
+            return;
+        }
+        gravacoes = new ArquivoGravacoes(Paths.get(arquivo));
+        logger.info("Gravação de serviços externos em modo {}: {} respostas em {}",
+                modo, gravacoes.quantidade(), arquivo);
+    }
+
+    @PreDestroy
+    public void fechar() {
+        if (gravacoes == null) {
+            return;
+        }
+        try {
+            gravacoes.close();
+        } catch (IOException e) {
+            logger.warn("Falha ao fechar arquivo de gravações: {}", e.getMessage());
+        }
+    }
+
+    public boolean isAtivo() {
+        return !modo.equals("desligado");
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String chave = chave(request);
+        if (chave == null) {
+            // Fora dos serviços externos (ex.: chamadas entre nós): segue sem gravar
+            return execution.execute(request, body);
+        }
+        return modo.equals("reproduzir") ? reproduzir(chave) : gravar(chave, request, body, execution);
+    }
+
+    private ClientHttpResponse reproduzir(String chave) throws IOException {
+        ArquivoGravacoes.Registro registro = gravacoes.buscar(chave);
+        if (registro == null) {
+            ausentes.increment();
+            throw new IOException("Sem gravação para " + chave);
+        }
+        byte[] corpo = gravacoes.lerCorpo(registro);
+        long espera = Math.round(registro.latenciaMs * fatorLatencia) + latenciaExtraMs;
+        if (espera > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(espera);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reprodução interrompida");
+            }
+        }
+        HttpHeaders cabecalhos = new HttpHeaders();
+        if (registro.tipo != null) {
+            cabecalhos.setContentType(MediaType.parseMediaType(registro.tipo));
+        }
+        cabecalhos.setContentLength(corpo.length);
+        reproduzidas.increment();
+        return new RespostaGravada(registro.status, cabecalhos, corpo);
+    }
+
+    private ClientHttpResponse gravar(String chave, HttpRequest request, byte[] body,
+                                      ClientHttpRequestExecution execution) throws IOException {
+        long inicio = System.nanoTime();
+        int status;
+        HttpHeaders cabecalhos;
+        byte[] corpo;
+        try (ClientHttpResponse resposta = execution.execute(request, body)) {
+            status = resposta.getRawStatusCode();
+            cabecalhos = resposta.getHeaders();
+            corpo = StreamUtils.copyToByteArray(resposta.getBody());
+        }
+        int latenciaMs = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        if (status < 500) {
+            MediaType tipo = cabecalhos.getContentType();
+            try {
+                gravacoes.gravar(chave, status, latenciaMs, tipo != null ? tipo.toString() : null, corpo);
+                gravadas.increment();
+            } catch (IOException e) {
+                logger.warn("Falha ao gravar resposta de {}: {}", chave, e.getMessage());
+            }
+        }
+        return new RespostaGravada(status, cabecalhos, corpo);
+    }
+
+    /**
+     * Chave normalizada: "GET osrm -46.63,-23.55;-46.66,-23.56?annotations=true&geometries=polyline&...",
+     * ou null se a URL não é de um serviço conhecido
+     */
+    private String chave(HttpRequest request) {
+        String url = request.getURI().toString();
+        String servico = null;
+        for (int i = 0; i < prefixos.length; i++) {
+            if (url.startsWith(prefixos[i])) {
+                servico = SERVICOS[i];
+                url = url.substring(prefixos[i].length());
+                break;
+            }
+        }
+        if (servico == null) {
+            return null;
+        }
+        StringBuilder chave = new StringBuilder(url.length() + 16)
+                .append(request.getMethodValue()).append(' ').append(servico).append(' ');
+        int consulta = url.indexOf('?');
+        if (consulta < 0) {
+            return chave.append(url).toString();
+        }
+        String[] parametros = url.substring(consulta + 1).split("&");
+        Arrays.sort(parametros);
+        chave.append(url, 0, consulta).append('?');
+        for (int i = 0; i < parametros.length; i++) {
+            if (i > 0) {
+                chave.append('&');
+            }
+            chave.append(parametros[i]);
+        }
+        return chave.toString();
+    }
+
+    public long getGravadas() {
+        return gravadas.sum();
+    }
+
+    public long getReproduzidas() {
+        return reproduzidas.sum();
+    }
+
+    public long getAusentes() {
+        return ausentes.sum();
+    }
+}
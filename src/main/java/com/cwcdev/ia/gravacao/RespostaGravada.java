@@ -0,0 +1,56 @@
+package com.cwcdev.ia.gravacao;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Resposta HTTP com o corpo já em memória: a resposta gravada em disco ou a
+ * resposta real depois de lida para gravação
+ */
+class RespostaGravada implements ClientHttpResponse {
+
+    private final int status;
+    private final HttpHeaders cabecalhos;
+    private final byte[] corpo;
+
+    RespostaGravada(int status, HttpHeaders cabecalhos, byte[] corpo) {
+        this.status = status;
+        this.cabecalhos = cabecalhos;
+        this.corpo = corpo;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() {
+        return HttpStatus.valueOf(status);
+    }
+
+    @Override
+    public int getRawStatusCode() {
+        return status;
+    }
+
+    @Override
+    public String getStatusText() {
+        HttpStatus conhecido = HttpStatus.resolve(status);
+        return conhecido != null ? conhecido.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return cabecalhos;
+    }
+
+    @Override
+    public InputStream getBody() {
+        return new ByteArrayInputStream(corpo);
+    }
+
+    @Override
+    public void close() {
+        // nada a liberar
+    }
+}
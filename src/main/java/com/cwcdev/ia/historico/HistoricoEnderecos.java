@@ -0,0 +1,330 @@
+package com.cwcdev.ia.historico;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.cache.CodecsCache;
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.codec.LeitorBytes;
+import com.cwcdev.ia.model.Endereco;
+
+/**
+ * Histórico de endereços recentes por usuário.
+ *
+ * Cada usuário tem um {@link LinkedHashMap} limitado, indexado pela chave do
+ * endereço (CEP ou coordenada): inserção, deduplicação e descarte do mais
+ * antigo são O(1). As alterações são acrescentadas a um log binário
+ * ({@code tamanho:varint | operacao:byte | usuario:texto | [endereco]}) que é
+ * relido na inicialização e compactado quando acumula registros obsoletos.
+ * A renderização da página só lê a memória.
+ *
+ * O monitor protege apenas a memória: gravação no log e compactação (com
+ * fsync e troca do arquivo) rodam numa thread própria, na ordem em que as
+ * alterações foram feitas. A compactação grava uma cópia das entradas tirada
+ * sob o monitor.
+ */
+@Component
+public class HistoricoEnderecos {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricoEnderecos.class);
+
+    private static final int ADICIONAR = 1;
+    private static final int LIMPAR = 2;
+    private static final int COMPACTACAO_MINIMA = 1000;
+
+    private final int tamanhoMaximo;
+    private final Path arquivo;
+    private final Map<String, HistoricoUsuario> usuarios;
+    private final ExecutorService gravador;
+    private int registrosNoLog;
+    private int entradasVivas;
+
+    // Usados apenas pela thread que grava o log (ou por carregar, antes dela)
+    private final BufferBytes registro = new BufferBytes(512);
+    private final BufferBytes tamanhoRegistro = new BufferBytes(16);
+    private FileChannel log;
+
+    public HistoricoEnderecos(
+            @Value("${historico.tamanho:10}") int tamanhoMaximo,
+            @Value("${historico.usuarios-maximos:10000}") int usuariosMaximos,
+            @Value("${historico.arquivo:dados/historico.log}") String arquivo) {
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.arquivo = Paths.get(arquivo);
+        // Ordem de acesso: o usuário inativo há mais tempo é descartado primeiro
+        this.usuarios = new LinkedHashMap<String, HistoricoUsuario>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HistoricoUsuario> maisAntigo) {
+                if (size() > usuariosMaximos) {
+                    entradasVivas -= maisAntigo.getValue().size();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.gravador = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "historico-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public synchronized void carregar() {
+        try {
+            Path diretorio = arquivo.toAbsolutePath().getParent();
+            if (diretorio != null) {
+                Files.createDirectories(diretorio);
+            }
+            if (Files.exists(arquivo)) {
+                reproduzirLog();
+            }
+            // Parte sempre de um log compacto
+            List<Map.Entry<String, Endereco>> entradas = copiarEntradas();
+            compactar(entradas);
+            registrosNoLog = entradas.size();
+            logger.info("Histórico carregado: {} usuários, {} endereços", usuarios.size(), entradasVivas);
+        } catch (IOException e) {
+            logger.warn("Histórico persistente indisponível: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() throws InterruptedException {
+        gravador.shutdown();
+        if (!gravador.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.warn("Gravações pendentes do histórico descartadas");
+            gravador.shutdownNow();
+        }
+        fecharLog();
+    }
+
+    private void fecharLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.warn("Falha ao fechar log do histórico: {}", e.getMessage());
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Endereços do usuário, do mais recente para o mais antigo
+     */
+    public synchronized List<Endereco> listar(String usuario) {
+        HistoricoUsuario historico = usuarios.get(usuario);
+        if (historico == null || historico.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Endereco> lista = new ArrayList<>(historico.values());
+        Collections.reverse(lista);
+        return lista;
+    }
+
+    /**
+     * Adiciona o endereço ao histórico do usuário; endereços já presentes são ignorados
+     */
+    public synchronized void adicionar(String usuario, Endereco endereco) {
+        if (!aplicarAdicao(usuario, endereco)) {
+            return;
+        }
+        agendarGravacao(ADICIONAR, usuario, endereco);
+    }
+
+    public synchronized void limpar(String usuario) {
+        HistoricoUsuario historico = usuarios.remove(usuario);
+        if (historico == null) {
+            return;
+        }
+        entradasVivas -= historico.size();
+        agendarGravacao(LIMPAR, usuario, null);
+    }
+
+    private boolean aplicarAdicao(String usuario, Endereco endereco) {
+        String chave = chave(endereco);
+        HistoricoUsuario historico = usuarios.get(usuario);
+        if (historico == null) {
+            historico = new HistoricoUsuario(tamanhoMaximo);
+            usuarios.put(usuario, historico);
+        } else if (historico.containsKey(chave)) {
+            return false;
+        }
+        int antes = historico.size();
+        historico.put(chave, endereco);
+        entradasVivas += historico.size() - antes;
+        return true;
+    }
+
+    private static String chave(Endereco endereco) {
+        if (endereco.getCep() != null) {
+            return endereco.getCep();
+        }
+        return endereco.getLatitude() + "," + endereco.getLongitude();
+    }
+
+    // Chamado sob o monitor: só enfileira, a escrita acontece na thread do log
+    private void agendarGravacao(int operacao, String usuario, Endereco endereco) {
+        registrosNoLog++;
+        if (registrosNoLog > COMPACTACAO_MINIMA && registrosNoLog > 2 * entradasVivas) {
+            // A cópia já contém esta alteração; o log antigo é substituído por ela
+            List<Map.Entry<String, Endereco>> entradas = copiarEntradas();
+            registrosNoLog = entradas.size();
+            executarNoGravador(() -> compactar(entradas));
+        } else {
+            executarNoGravador(() -> acrescentarAoLog(operacao, usuario, endereco));
+        }
+    }
+
+    private void executarNoGravador(TarefaLog tarefa) {
+        try {
+            gravador.execute(() -> {
+                try {
+                    tarefa.executar();
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Falha ao gravar histórico: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Histórico encerrado; alteração não gravada");
+        }
+    }
+
+    private List<Map.Entry<String, Endereco>> copiarEntradas() {
+        List<Map.Entry<String, Endereco>> entradas = new ArrayList<>(entradasVivas);
+        for (Map.Entry<String, HistoricoUsuario> usuario : usuarios.entrySet()) {
+            for (Endereco endereco : usuario.getValue().values()) {
+                entradas.add(new AbstractMap.SimpleImmutableEntry<>(usuario.getKey(), endereco));
+            }
+        }
+        return entradas;
+    }
+
+    private void acrescentarAoLog(int operacao, String usuario, Endereco endereco) throws IOException {
+        if (log == null) {
+            return;
+        }
+        registro.limpar();
+        registro.escreverByte(operacao);
+        registro.escreverTexto(usuario);
+        if (operacao == ADICIONAR) {
+            CodecsCache.ENDERECO.escrever(registro, endereco);
+        }
+        escreverRegistro(log);
+    }
+
+    private void escreverRegistro(FileChannel canal) throws IOException {
+        tamanhoRegistro.limpar();
+        tamanhoRegistro.escreverVarint(registro.tamanho());
+        escreverTudo(canal, tamanhoRegistro.comoByteBuffer());
+        escreverTudo(canal, registro.comoByteBuffer());
+    }
+
+    private void reproduzirLog() throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            LeitorBytes leitor = new LeitorBytes(dados);
+            while (leitor.temDados()) {
+                int inicio = leitor.posicao();
+                try {
+                    int tamanho = leitor.lerVarint();
+                    if (dados.remaining() < tamanho) {
+                        break;
+                    }
+                    int fim = leitor.posicao() + tamanho;
+                    int operacao = leitor.lerByte();
+                    String usuario = leitor.lerTexto();
+                    if (operacao == ADICIONAR) {
+                        aplicarAdicao(usuario, CodecsCache.ENDERECO.ler(leitor));
+                    } else if (operacao == LIMPAR) {
+                        HistoricoUsuario historico = usuarios.remove(usuario);
+                        if (historico != null) {
+                            entradasVivas -= historico.size();
+                        }
+                    }
+                    dados.position(fim);
+                } catch (RuntimeException e) {
+                    // Registro incompleto ou corrompido no final: a compactação o descarta
+                    logger.warn("Log do histórico truncado na posição {}", inicio);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reescreve o log apenas com as entradas copiadas (arquivo temporário + troca atômica)
+     */
+    private void compactar(List<Map.Entry<String, Endereco>> entradas) throws IOException {
+        fecharLog();
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Endereco> entrada : entradas) {
+                registro.limpar();
+                registro.escreverByte(ADICIONAR);
+                registro.escreverTexto(entrada.getKey());
+                CodecsCache.ENDERECO.escrever(registro, entrada.getValue());
+                escreverRegistro(canal);
+            }
+            canal.force(false);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(arquivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @FunctionalInterface
+    private interface TarefaLog {
+        void executar() throws IOException;
+    }
+
+    private static void escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    /**
+     * Endereços de um usuário em ordem de inserção, limitado ao tamanho máximo
+     */
+    private static final class HistoricoUsuario extends LinkedHashMap<String, Endereco> {
+
+        private static final long serialVersionUID = 1L;
+        private final int tamanhoMaximo;
+
+        HistoricoUsuario(int tamanhoMaximo) {
+            super(tamanhoMaximo * 2);
+            this.tamanhoMaximo = tamanhoMaximo;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Endereco> maisAntigo) {
+            return size() > tamanhoMaximo;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.cwcdev.ia.metricas;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.admissao.ControleAdmissao;
+import com.cwcdev.ia.cache.CacheLru;
+import com.cwcdev.ia.cache.SnapshotCaches;
+import com.cwcdev.ia.endereco.EstatisticasCamada;
+import com.cwcdev.ia.endereco.ResolvedorEnderecos;
+import com.cwcdev.ia.geocerca.IndiceGeocercas;
+import com.cwcdev.ia.gps.ControlePressaoGps;
+import com.cwcdev.ia.gravacao.GravacaoUpstream;
+import com.cwcdev.ia.gps.MetricasGps;
+import com.cwcdev.ia.navegacao.ProcessadorSessoes;
+import com.cwcdev.ia.navegacao.VersoesRota;
+import com.cwcdev.ia.perfil.PerfisVelocidade;
+import com.cwcdev.ia.service.IsocronaService;
+import com.cwcdev.ia.service.OpcoesRotaService;
+import com.cwcdev.ia.viagem.GravadorViagens;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * Expõe no registro do Micrometer os contadores que os componentes já mantêm
+ * (LongAdders, tamanhos de anéis e filas). Nada é registrado no caminho dos
+ * fixes: os valores são lidos somente quando o endpoint é consultado. As filas
+ * dos canais STOMP (clientInbound/OutboundChannelExecutor) já são publicadas
+ * pelo Spring Boot como executor.queued e executor.active.
+ *
+ * O registro ocorre após a criação de todos os beans, quando os caches e as
+ * camadas de endereço já estão configurados.
+ */
+@Component
+public class MetricasNavegacao {
+
+    private final MeterRegistry registry;
+    private final SnapshotCaches snapshotCaches;
+    private final ResolvedorEnderecos resolvedorEnderecos;
+    private final ProcessadorSessoes processadorSessoes;
+    private final ControlePressaoGps controlePressaoGps;
+    private final MetricasGps metricasGps;
+    private final GravadorViagens gravadorViagens;
+    private final PerfisVelocidade perfisVelocidade;
+    private final GravacaoUpstream gravacaoUpstream;
+    private final IndiceGeocercas indiceGeocercas;
+    private final VersoesRota versoesRota;
+    private final OpcoesRotaService opcoesRotaService;
+    private final IsocronaService isocronaService;
+    private final ControleAdmissao controleAdmissao;
+
+    public MetricasNavegacao(MeterRegistry registry, SnapshotCaches snapshotCaches,
+            ResolvedorEnderecos resolvedorEnderecos, ProcessadorSessoes processadorSessoes,
+            ControlePressaoGps controlePressaoGps, MetricasGps metricasGps,
+            GravadorViagens gravadorViagens, PerfisVelocidade perfisVelocidade,
+            GravacaoUpstream gravacaoUpstream, IndiceGeocercas indiceGeocercas, VersoesRota versoesRota,
+            OpcoesRotaService opcoesRotaService, IsocronaService isocronaService,
+            ControleAdmissao controleAdmissao) {
+        this.registry = registry;
+        this.snapshotCaches = snapshotCaches;
+        this.resolvedorEnderecos = resolvedorEnderecos;
+        this.processadorSessoes = processadorSessoes;
+        this.controlePressaoGps = controlePressaoGps;
+        this.metricasGps = metricasGps;
+        this.gravadorViagens = gravadorViagens;
+        this.perfisVelocidade = perfisVelocidade;
+        this.gravacaoUpstream = gravacaoUpstream;
+        this.indiceGeocercas = indiceGeocercas;
+        this.versoesRota = versoesRota;
+        this.opcoesRotaService = opcoesRotaService;
+        this.isocronaService = isocronaService;
+        this.controleAdmissao = controleAdmissao;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void registrar() {
+        for (CacheLru<?> cache : snapshotCaches.getCaches()) {
+            new MetricasCache(cache).bindTo(registry);
+        }
+        registrarCamadas();
+        registrarSessoes();
+        Gauge.builder("stomp.gps.pendentes", controlePressaoGps, ControlePressaoGps::getPendentes)
+                .description("Fixes GPS aceitos e ainda não tratados no canal de entrada")
+                .register(registry);
+        registrarGps();
+        registrarAdmissao();
+        if (gravacaoUpstream.isAtivo()) {
+            registrarGravacao();
+        }
+    }
+
+    private void registrarAdmissao() {
+        for (String servico : controleAdmissao.getServicos()) {
+            Tags tags = Tags.of("servico", servico);
+            Gauge.builder("admissao.em.andamento", controleAdmissao, c -> c.getEmAndamento(servico))
+                    .description("Chamadas abertas ao serviço externo")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("admissao.latencia.media", controleAdmissao, c -> c.getLatenciaMediaMs(servico))
+                    .description("Média móvel da latência do serviço externo (ms)")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("admissao.saturado", controleAdmissao, c -> c.isSaturado(servico) ? 1 : 0)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("admissao.recusas", controleAdmissao, c -> c.getRecusas(servico))
+                    .description("Chamadas recusadas em requisições admitidas só com cache")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+
+    private void registrarCamadas() {
+        for (EstatisticasCamada camada : resolvedorEnderecos.getEstatisticas()) {
+            Tags tags = Tags.of("camada", camada.getNome());
+            FunctionTimer.builder("enderecos.camada", camada,
+                    EstatisticasCamada::getConsultas, EstatisticasCamada::getLatenciaTotalMs, TimeUnit.MILLISECONDS)
+                    .description("Consultas de CEP por camada")
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("enderecos.camada.acertos", camada, EstatisticasCamada::getAcertos)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("enderecos.camada.falhas", camada, EstatisticasCamada::getFalhas)
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+
+    private void registrarSessoes() {
+        Gauge.builder("navegacao.sessoes", processadorSessoes, ProcessadorSessoes::getSessoesAtivas)
+                .description("Sessões WebSocket com estado de navegação neste nó")
+                .register(registry);
+        Gauge.builder("navegacao.sessoes.retidas", processadorSessoes, ProcessadorSessoes::getSessoesRetidas)
+                .description("Sessões desconectadas aguardando retomada")
+                .register(registry);
+        Gauge.builder("navegacao.sessoes.ativas", processadorSessoes, ProcessadorSessoes::getSessoesNavegando)
+                .description("Sessões com navegação em andamento")
+                .register(registry);
+        Gauge.builder("navegacao.eventos.pendentes", processadorSessoes, ProcessadorSessoes::getEventosPendentes)
+                .description("Eventos aguardando nos anéis dos fragmentos")
+                .register(registry);
+        FunctionCounter.builder("navegacao.eventos.descartados", processadorSessoes, ProcessadorSessoes::getEventosDescartados)
+                .register(registry);
+        FunctionCounter.builder("navegacao.fixes.coalescidos", processadorSessoes, ProcessadorSessoes::getFixesCoalescidos)
+                .register(registry);
+        Gauge.builder("geocercas.quantidade", indiceGeocercas, IndiceGeocercas::getQuantidade)
+                .register(registry);
+        Gauge.builder("geocercas.celulas", indiceGeocercas, IndiceGeocercas::getCelulasOcupadas)
+                .register(registry);
+        Gauge.builder("rotas.versoes.sessoes", versoesRota, VersoesRota::getSessoes)
+                .description("Sessões com versão de rota guardada para diferenças")
+                .register(registry);
+        Gauge.builder("rotas.opcoes.fila", opcoesRotaService, OpcoesRotaService::getPendentes)
+                .description("Cálculos de perfil aguardando thread do pool de opções de rota")
+                .register(registry);
+        Gauge.builder("isocronas.fila", isocronaService, IsocronaService::getPendentes)
+                .description("Lotes de matriz aguardando thread do pool de isócronas")
+                .register(registry);
+    }
+
+    private void registrarGps() {
+        FunctionCounter.builder("gps.fixes", metricasGps, MetricasGps::getFixesJson)
+                .tags("formato", "json").register(registry);
+        FunctionCounter.builder("gps.fixes", metricasGps, MetricasGps::getFixesBinarios)
+                .tags("formato", "binario").register(registry);
+        FunctionCounter.builder("gps.fixes.invalidos", metricasGps, MetricasGps::getFixesInvalidos)
+                .register(registry);
+        FunctionCounter.builder("gps.fixes.descartados", metricasGps, MetricasGps::getFixesDescartados)
+                .register(registry);
+
+        FunctionCounter.builder("viagens.registros", gravadorViagens, GravadorViagens::getRegistrosGravados)
+                .register(registry);
+        FunctionCounter.builder("viagens.registros.descartados", gravadorViagens, GravadorViagens::getRegistrosDescartados)
+                .register(registry);
+        FunctionCounter.builder("viagens.bytes", gravadorViagens, GravadorViagens::getBytesGravados)
+                .baseUnit("bytes").register(registry);
+
+        Gauge.builder("perfis.trechos", perfisVelocidade, PerfisVelocidade::getTrechosConhecidos)
+                .register(registry);
+        FunctionCounter.builder("perfis.trechos.substituidos", perfisVelocidade, PerfisVelocidade::getTrechosSubstituidos)
+                .register(registry);
+        FunctionCounter.builder("perfis.amostras.descartadas", perfisVelocidade, PerfisVelocidade::getAmostrasDescartadas)
+                .register(registry);
+    }
+
+    private void registrarGravacao() {
+        FunctionCounter.builder("upstream.gravacao", gravacaoUpstream, GravacaoUpstream::getGravadas)
+                .tags("resultado", "gravada").register(registry);
+        FunctionCounter.builder("upstream.gravacao", gravacaoUpstream, GravacaoUpstream::getReproduzidas)
+                .tags("resultado", "reproduzida").register(registry);
+        FunctionCounter.builder("upstream.gravacao", gravacaoUpstream, GravacaoUpstream::getAusentes)
+                .tags("resultado", "ausente").register(registry);
+    }
+
+    /**
+     * Métricas padrão de cache (cache.gets, cache.puts, cache.evictions, cache.size)
+     * a partir dos contadores do {@link CacheLru}
+     */
+    private static final class MetricasCache extends CacheMeterBinder<CacheLru<?>> {
+
+        MetricasCache(CacheLru<?> cache) {
+            super(cache, cache.getNome(), Collections.emptyList());
+        }
+
+        @Override
+        protected Long size() {
+            CacheLru<?> cache = getCache();
+            return cache != null ? (long) cache.tamanho() : null;
+        }
+
+        @Override
+        protected long hitCount() {
+            CacheLru<?> cache = getCache();
+            return cache != null ? cache.getAcertos() : 0;
+        }
+
+        @Override
+        protected Long missCount() {
+            CacheLru<?> cache = getCache();
+            return cache != null ? cache.getFaltas() : null;
+        }
+
+        @Override
+        protected Long evictionCount() {
+            CacheLru<?> cache = getCache();
+            return cache != null ? cache.getDescartes() : null;
+        }
+
+        @Override
+        protected long putCount() {
+            CacheLru<?> cache = getCache();
+            return cache != null ? cache.getInsercoes() : 0;
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            CacheLru<?> cache = getCache();
+            if (cache != null) {
+                Gauge.builder("cache.capacidade", cache, CacheLru::getCapacidade)
+                        .tags(getTagsWithCacheName())
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.cwcdev.ia.metricas;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mede a latência de cada chamada externa do RestTemplate, por serviço
+ * (viacep, nominatim, osrm) e resultado (2xx, 3xx, 4xx, 5xx, erro), do envio
+ * até a chegada dos cabeçalhos da resposta. O serviço é identificado pelo
+ * prefixo da URL configurada (upstream.*.url), o que também vale para os stubs locais.
+ *
+ * Os timers são criados uma única vez e escolhidos por índice, sem montar
+ * tags nem consultar o registro a cada requisição. A URI não entra nas tags
+ * para não gerar uma série por CEP ou coordenada.
+ */
+public class MetricasUpstreamInterceptor implements ClientHttpRequestInterceptor {
+
+    static final String NOME = "upstream.requisicoes";
+
+    private static final String[] UPSTREAMS = {"viacep", "nominatim", "osrm", "outro"};
+    private static final String[] RESULTADOS = {"2xx", "3xx", "4xx", "5xx", "erro"};
+    private static final int ERRO = 4;
+
+    private final String[] prefixos;
+    private final Timer[][] timers = new Timer[UPSTREAMS.length][RESULTADOS.length];
+
+    public MetricasUpstreamInterceptor(MeterRegistry registry, String urlViaCep, String urlNominatim, String urlOsrm) {
+        this.prefixos = new String[] {urlViaCep, urlNominatim, urlOsrm};
+        for (int u = 0; u < UPSTREAMS.length; u++) {
+            for (int r = 0; r < RESULTADOS.length; r++) {
+                timers[u][r] = Timer.builder(NOME)
+                        .description("Latência das chamadas aos serviços externos")
+                        .tag("upstream", UPSTREAMS[u])
+                        .tag("resultado", RESULTADOS[r])
+                        .register(registry);
+            }
+        }
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        int upstream = upstream(request.getURI().toString());
+        long inicio = System.nanoTime();
+        int resultado = ERRO;
+        try {
+            ClientHttpResponse resposta = execution.execute(request, body);
+            int faixa = resposta.getRawStatusCode() / 100 - 2;
+            resultado = faixa >= 0 && faixa < ERRO ? faixa : ERRO;
+            return resposta;
+        } finally {
+            timers[upstream][resultado].record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private int upstream(String url) {
+        for (int i = 0; i < prefixos.length; i++) {
+            if (url.startsWith(prefixos[i])) {
+                return i;
+            }
+        }
+        return prefixos.length;
+    }
+}
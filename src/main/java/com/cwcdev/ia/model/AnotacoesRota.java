@@ -0,0 +1,192 @@
+package com.cwcdev.ia.model;
+
+import java.util.Arrays;
+
+import com.cwcdev.ia.codec.Polyline;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Anotações por segmento da rota OSRM (annotations=true) em arrays primitivos.
+ *
+ * O segmento i liga os pontos i e i+1 da geometria. As somas de prefixo de
+ * distância e duração permitem obter distância percorrida e ETA em O(1) a
+ * partir de um segmento, e localizar um ponto da rota por distância em
+ * O(log n).
+ */
+public class AnotacoesRota {
+
+    private static final double METROS_POR_UNIDADE = 6371000 * Math.PI / 180 / Polyline.ESCALA;
+
+    private final int[] pontos; // lat/lng intercalados, ponto fixo 1e5
+    private final double[] distanciaAcumulada; // n+1 posições
+    private final double[] duracaoAcumulada; // n+1 posições
+    private final long[] chavesSegmento; // identifica o trecho entre dois nós OSM; 0 se desconhecido
+
+    AnotacoesRota(int[] pontos, double[] distanciaAcumulada, double[] duracaoAcumulada, long[] chavesSegmento) {
+        this.pontos = pontos;
+        this.distanciaAcumulada = distanciaAcumulada;
+        this.duracaoAcumulada = duracaoAcumulada;
+        this.chavesSegmento = chavesSegmento;
+    }
+
+    /**
+     * Monta as anotações a partir de uma rota OSRM (overview=full, polyline).
+     * Retorna null se a resposta não trouxer anotações coerentes com a geometria.
+     */
+    public static AnotacoesRota de(JsonNode route) {
+        if (route == null || !route.has("geometry") || !route.has("legs")) {
+            return null;
+        }
+        int[] pontos = Polyline.decodificar(route.get("geometry").asText());
+
+        int segmentos = 0;
+        for (JsonNode leg : route.get("legs")) {
+            segmentos += leg.path("annotation").path("distance").size();
+        }
+        if (segmentos == 0 || pontos.length / 2 != segmentos + 1) {
+            return null;
+        }
+
+        double[] distancia = new double[segmentos + 1];
+        double[] duracao = new double[segmentos + 1];
+        long[] chaves = new long[segmentos];
+        int i = 0;
+        for (JsonNode leg : route.get("legs")) {
+            JsonNode distancias = leg.path("annotation").path("distance");
+            JsonNode duracoes = leg.path("annotation").path("duration");
+            JsonNode nos = leg.path("annotation").path("nodes");
+            for (int j = 0; j < distancias.size(); j++, i++) {
+                distancia[i + 1] = distancia[i] + distancias.get(j).asDouble();
+                duracao[i + 1] = duracao[i] + duracoes.path(j).asDouble();
+                if (nos.size() > j + 1) {
+                    chaves[i] = chaveSegmento(nos.get(j).asLong(), nos.get(j + 1).asLong());
+                }
+            }
+        }
+        return new AnotacoesRota(pontos, distancia, duracao, chaves);
+    }
+
+    /**
+     * Chave de um trecho direcional entre dois nós OSM (nunca 0)
+     */
+    static long chaveSegmento(long noOrigem, long noDestino) {
+        long h = noOrigem * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(noDestino, 31) * 0xC2B2AE3D27D4EB4FL;
+        return h != 0 ? h : 1;
+    }
+
+    public int getSegmentos() {
+        return distanciaAcumulada.length - 1;
+    }
+
+    public double getDistanciaTotal() {
+        return distanciaAcumulada[distanciaAcumulada.length - 1];
+    }
+
+    public double getDuracaoTotal() {
+        return duracaoAcumulada[duracaoAcumulada.length - 1];
+    }
+
+    public int[] getPontos() {
+        return pontos;
+    }
+
+    public long getChaveSegmento(int segmento) {
+        return chavesSegmento[segmento];
+    }
+
+    public double getDistanciaSegmento(int segmento) {
+        return distanciaAcumulada[segmento + 1] - distanciaAcumulada[segmento];
+    }
+
+    public double getDuracaoSegmento(int segmento) {
+        return duracaoAcumulada[segmento + 1] - duracaoAcumulada[segmento];
+    }
+
+    /**
+     * Projeta a posição no segmento mais próximo, procurando primeiro numa janela
+     * à frente do último segmento conhecido; se a posição estiver longe dessa
+     * janela, procura na rota inteira.
+     */
+    public void projetar(double latitude, double longitude, int segmentoInicial, int janela,
+            double distanciaMaximaJanela, Projecao destino) {
+        int inicio = Math.max(0, segmentoInicial - 2);
+        int fim = Math.min(getSegmentos(), segmentoInicial + janela);
+        projetarIntervalo(latitude, longitude, inicio, fim, destino);
+        if (destino.distanciaDaRota > distanciaMaximaJanela && (inicio > 0 || fim < getSegmentos())) {
+            projetarIntervalo(latitude, longitude, 0, getSegmentos(), destino);
+        }
+    }
+
+    /**
+     * Distância percorrida ao longo da rota até a projeção
+     */
+    public double distanciaPercorrida(Projecao projecao) {
+        return distanciaAcumulada[projecao.segmento] + projecao.fracao * getDistanciaSegmento(projecao.segmento);
+    }
+
+    /**
+     * Tempo previsto (s) para percorrer a rota desde o início até a distância informada
+     */
+    public double duracaoNaDistancia(double distancia) {
+        if (distancia <= 0) {
+            return 0;
+        }
+        if (distancia >= getDistanciaTotal()) {
+            return getDuracaoTotal();
+        }
+        int indice = Arrays.binarySearch(distanciaAcumulada, distancia);
+        if (indice >= 0) {
+            return duracaoAcumulada[indice];
+        }
+        int segmento = -indice - 2;
+        double comprimento = getDistanciaSegmento(segmento);
+        double fracao = comprimento > 0 ? (distancia - distanciaAcumulada[segmento]) / comprimento : 0;
+        return duracaoAcumulada[segmento] + fracao * getDuracaoSegmento(segmento);
+    }
+
+    /**
+     * Substitui as durações por segmento e recalcula as somas de prefixo
+     */
+    public void ajustarDuracoes(double[] duracoesSegmento) {
+        for (int i = 0; i < duracoesSegmento.length && i < getSegmentos(); i++) {
+            duracaoAcumulada[i + 1] = duracaoAcumulada[i] + duracoesSegmento[i];
+        }
+    }
+
+    private void projetarIntervalo(double latitude, double longitude, int inicio, int fim, Projecao destino) {
+        double latE5 = latitude * Polyline.ESCALA;
+        double lngE5 = longitude * Polyline.ESCALA;
+        double escalaLng = Math.cos(Math.toRadians(latitude)) * METROS_POR_UNIDADE;
+
+        double melhor = Double.MAX_VALUE;
+        for (int s = inicio; s < fim; s++) {
+            double ax = (pontos[2 * s + 1] - lngE5) * escalaLng;
+            double ay = (pontos[2 * s] - latE5) * METROS_POR_UNIDADE;
+            double bx = (pontos[2 * s + 3] - lngE5) * escalaLng;
+            double by = (pontos[2 * s + 2] - latE5) * METROS_POR_UNIDADE;
+            double dx = bx - ax;
+            double dy = by - ay;
+            double comprimento2 = dx * dx + dy * dy;
+            double t = comprimento2 > 0 ? -(ax * dx + ay * dy) / comprimento2 : 0;
+            t = Math.max(0, Math.min(1, t));
+            double px = ax + t * dx;
+            double py = ay + t * dy;
+            double distancia2 = px * px + py * py;
+            if (distancia2 < melhor) {
+                melhor = distancia2;
+                destino.segmento = s;
+                destino.fracao = t;
+            }
+        }
+        destino.distanciaDaRota = Math.sqrt(melhor);
+    }
+
+    /**
+     * Resultado reutilizável de {@link #projetar}
+     */
+    public static class Projecao {
+        public int segmento;
+        public double fracao;
+        public double distanciaDaRota;
+    }
+}
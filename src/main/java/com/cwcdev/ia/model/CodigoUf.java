@@ -0,0 +1,55 @@
+package com.cwcdev.ia.model;
+
+import java.util.Arrays;
+
+/**
+ * Código de um byte para a UF de {@link Endereco}: 1..27 são as siglas
+ * oficiais; outros valores curtos ("BR", "GPS"...) recebem códigos a partir
+ * de 28 conforme aparecem, até o limite de um byte (depois disso a UF fica nula).
+ */
+final class CodigoUf {
+
+    static final byte NENHUMA = 0;
+
+    private static final int MAXIMO = 255;
+    private static volatile String[] valores = {
+        null, "AC", "AL", "AP", "AM", "BA", "CE", "DF", "ES", "GO", "MA", "MT", "MS", "MG",
+        "PA", "PB", "PR", "PE", "PI", "RJ", "RN", "RS", "RO", "RR", "SC", "SP", "SE", "TO"
+    };
+
+    private CodigoUf() {}
+
+    static byte codificar(String uf) {
+        if (uf == null) {
+            return NENHUMA;
+        }
+        String[] atuais = valores;
+        for (int i = 1; i < atuais.length; i++) {
+            if (atuais[i].equals(uf)) {
+                return (byte) i;
+            }
+        }
+        return registrar(uf);
+    }
+
+    static String decodificar(byte codigo) {
+        return valores[codigo & 0xFF];
+    }
+
+    private static synchronized byte registrar(String uf) {
+        String[] atuais = valores;
+        for (int i = 1; i < atuais.length; i++) {
+            if (atuais[i].equals(uf)) {
+                return (byte) i;
+            }
+        }
+        if (atuais.length > MAXIMO) {
+            // Só acontece com entradas anômalas; a UF fica em branco
+            return NENHUMA;
+        }
+        String[] novos = Arrays.copyOf(atuais, atuais.length + 1);
+        novos[atuais.length] = uf;
+        valores = novos;
+        return (byte) atuais.length;
+    }
+}
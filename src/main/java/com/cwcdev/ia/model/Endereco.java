@@ -2,6 +2,11 @@ package com.cwcdev.ia.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Endereço de um CEP. Campos de baixa cardinalidade são guardados canônicos
+ * ({@link PoolTextos}); UF e código IBGE ficam como byte e int, pois milhões de
+ * endereços podem ficar retidos nos caches.
+ */
 public class Endereco {
     
     @JsonProperty("cep")
@@ -19,11 +24,9 @@ public class Endereco {
     @JsonProperty("localidade")
     private String localidade;
     
-    @JsonProperty("uf")
-    private String uf;
-    
-    @JsonProperty("ibge")
-    private String ibge;
+    // Expostos como "uf" e "ibge" pelos getters/setters
+    private byte codigoUf;
+    private int codigoIbge;
     
     @JsonProperty("gia")
     private String gia;
@@ -48,14 +51,14 @@ public class Endereco {
                    String localidade, String uf, String ibge, String gia, String ddd, String siafi) {
         this.cep = cep;
         this.logradouro = logradouro;
-        this.complemento = complemento;
-        this.bairro = bairro;
-        this.localidade = localidade;
-        this.uf = uf;
-        this.ibge = ibge;
-        this.gia = gia;
-        this.ddd = ddd;
-        this.siafi = siafi;
+        setComplemento(complemento);
+        setBairro(bairro);
+        setLocalidade(localidade);
+        setUf(uf);
+        setIbge(ibge);
+        setGia(gia);
+        setDdd(ddd);
+        setSiafi(siafi);
         this.erro = false;
         this.mensagemErro = null;
     }
@@ -68,6 +71,26 @@ public class Endereco {
         return endereco;
     }
 
+    // Cópia independente (usada para não compartilhar instâncias guardadas em cache)
+    public Endereco copiar() {
+        Endereco copia = new Endereco();
+        copia.cep = cep;
+        copia.logradouro = logradouro;
+        copia.complemento = complemento;
+        copia.bairro = bairro;
+        copia.localidade = localidade;
+        copia.codigoUf = codigoUf;
+        copia.codigoIbge = codigoIbge;
+        copia.gia = gia;
+        copia.ddd = ddd;
+        copia.siafi = siafi;
+        copia.erro = erro;
+        copia.mensagemErro = mensagemErro;
+        copia.latitude = latitude;
+        copia.longitude = longitude;
+        return copia;
+    }
+
     // Método para verificar se o endereço é válido
     public boolean isValido() {
         return !erro && cep != null && !cep.trim().isEmpty();
@@ -91,6 +114,7 @@ public class Endereco {
             if (sb.length() > 0) sb.append(" - ");
             sb.append(localidade);
         }
+        String uf = getUf();
         if (uf != null && !uf.trim().isEmpty()) {
             if (sb.length() > 0) sb.append("/");
             sb.append(uf);
@@ -117,28 +141,29 @@ public class Endereco {
     public void setLogradouro(String logradouro) { this.logradouro = logradouro; }
 
     public String getComplemento() { return complemento; }
-    public void setComplemento(String complemento) { this.complemento = complemento; }
+    public void setComplemento(String complemento) { this.complemento = PoolTextos.ENDERECOS.canonico(complemento); }
 
     public String getBairro() { return bairro; }
-    public void setBairro(String bairro) { this.bairro = bairro; }
+    public void setBairro(String bairro) { this.bairro = PoolTextos.ENDERECOS.canonico(bairro); }
 
     public String getLocalidade() { return localidade; }
-    public void setLocalidade(String localidade) { this.localidade = localidade; }
+    public void setLocalidade(String localidade) { this.localidade = PoolTextos.ENDERECOS.canonico(localidade); }
 
-    public String getUf() { return uf; }
-    public void setUf(String uf) { this.uf = uf; }
+    public String getUf() { return CodigoUf.decodificar(codigoUf); }
+    public void setUf(String uf) { this.codigoUf = CodigoUf.codificar(uf); }
 
-    public String getIbge() { return ibge; }
-    public void setIbge(String ibge) { this.ibge = ibge; }
+    // Códigos IBGE são numéricos (7 dígitos); vazio ou não numérico fica nulo
+    public String getIbge() { return codigoIbge != 0 ? Integer.toString(codigoIbge) : null; }
+    public void setIbge(String ibge) { this.codigoIbge = converterIbge(ibge); }
 
     public String getGia() { return gia; }
-    public void setGia(String gia) { this.gia = gia; }
+    public void setGia(String gia) { this.gia = PoolTextos.ENDERECOS.canonico(gia); }
 
     public String getDdd() { return ddd; }
-    public void setDdd(String ddd) { this.ddd = ddd; }
+    public void setDdd(String ddd) { this.ddd = PoolTextos.ENDERECOS.canonico(ddd); }
 
     public String getSiafi() { return siafi; }
-    public void setSiafi(String siafi) { this.siafi = siafi; }
+    public void setSiafi(String siafi) { this.siafi = PoolTextos.ENDERECOS.canonico(siafi); }
 
     public boolean isErro() { return erro; }
     public void setErro(boolean erro) { this.erro = erro; }
@@ -152,6 +177,21 @@ public class Endereco {
     public Double getLongitude() { return longitude; }
     public void setLongitude(Double longitude) { this.longitude = longitude; }
 
+    private static int converterIbge(String ibge) {
+        if (ibge == null || ibge.isEmpty() || ibge.length() > 9) {
+            return 0;
+        }
+        int codigo = 0;
+        for (int i = 0; i < ibge.length(); i++) {
+            char c = ibge.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            codigo = codigo * 10 + (c - '0');
+        }
+        return codigo;
+    }
+
     @Override
     public String toString() {
         if (erro) {
@@ -164,7 +204,7 @@ public class Endereco {
                 ", complemento='" + complemento + '\'' +
                 ", bairro='" + bairro + '\'' +
                 ", localidade='" + localidade + '\'' +
-                ", uf='" + uf + '\'' +
+                ", uf='" + getUf() + '\'' +
                 (latitude != null ? ", latitude=" + latitude : "") +
                 (longitude != null ? ", longitude=" + longitude : "") +
                 '}';
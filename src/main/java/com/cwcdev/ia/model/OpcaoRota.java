@@ -0,0 +1,39 @@
+package com.cwcdev.ia.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Uma rota candidata: perfil OSRM, posição entre as alternativas do perfil
+ * (0 = principal) e custo usado na ordenação (menor é melhor).
+ */
+public class OpcaoRota {
+
+    private String perfil;
+    private int alternativa;
+    private double custo;
+
+    // A árvore OSRM é a mesma para todas as opções do perfil e não é transmitida
+    @JsonIgnoreProperties("dadosRotaCompleta")
+    private Rota rota;
+
+    public OpcaoRota() {}
+
+    public OpcaoRota(String perfil, int alternativa, double custo, Rota rota) {
+        this.perfil = perfil;
+        this.alternativa = alternativa;
+        this.custo = custo;
+        this.rota = rota;
+    }
+
+    public String getPerfil() { return perfil; }
+    public void setPerfil(String perfil) { this.perfil = perfil; }
+
+    public int getAlternativa() { return alternativa; }
+    public void setAlternativa(int alternativa) { this.alternativa = alternativa; }
+
+    public double getCusto() { return custo; }
+    public void setCusto(double custo) { this.custo = custo; }
+
+    public Rota getRota() { return rota; }
+    public void setRota(Rota rota) { this.rota = rota; }
+}
@@ -0,0 +1,43 @@
+package com.cwcdev.ia.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool limitado de textos canônicos para campos de baixa cardinalidade
+ * (bairro, localidade, DDD...). Cada valor distinto fica guardado uma única
+ * vez; atingida a capacidade, valores novos deixam de ser incluídos e são
+ * usados como vieram.
+ */
+public final class PoolTextos {
+
+    static final PoolTextos ENDERECOS = new PoolTextos(1 << 18, 64);
+
+    private final ConcurrentHashMap<String, String> textos;
+    private final int capacidade;
+    private final int tamanhoMaximo;
+
+    PoolTextos(int capacidade, int tamanhoMaximo) {
+        this.textos = new ConcurrentHashMap<>(1024);
+        this.capacidade = capacidade;
+        this.tamanhoMaximo = tamanhoMaximo;
+    }
+
+    public String canonico(String texto) {
+        if (texto == null || texto.length() > tamanhoMaximo) {
+            return texto;
+        }
+        String existente = textos.get(texto);
+        if (existente != null) {
+            return existente;
+        }
+        if (textos.size() >= capacidade) {
+            return texto;
+        }
+        existente = textos.putIfAbsent(texto, texto);
+        return existente != null ? existente : texto;
+    }
+
+    public int tamanho() {
+        return textos.size();
+    }
+}
@@ -2,6 +2,7 @@ package com.cwcdev.ia.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 
 public class Rota {
@@ -13,25 +14,41 @@ public class Rota {
     private String geometria; // GeoJSON da rota
     private JsonNode dadosRotaCompleta; // Dados completos da rota
     
+    // Bytes da codificação compacta, gerados uma vez e reutilizados
+    @JsonIgnore
+    private transient volatile byte[] codificacaoCompacta;
+    
+    // Somas de prefixo das anotações OSRM, para ETA incremental
+    @JsonIgnore
+    private transient AnotacoesRota anotacoes;
+    
     // Getters e Setters
     public Endereco getOrigem() { return origem; }
-    public void setOrigem(Endereco origem) { this.origem = origem; }
+    public void setOrigem(Endereco origem) { this.origem = origem; this.codificacaoCompacta = null; }
     
     public Endereco getDestino() { return destino; }
-    public void setDestino(Endereco destino) { this.destino = destino; }
+    public void setDestino(Endereco destino) { this.destino = destino; this.codificacaoCompacta = null; }
     
     public List<InstrucaoNavegacao> getInstrucoes() { return instrucoes; }
-    public void setInstrucoes(List<InstrucaoNavegacao> instrucoes) { this.instrucoes = instrucoes; }
+    public void setInstrucoes(List<InstrucaoNavegacao> instrucoes) { this.instrucoes = instrucoes; this.codificacaoCompacta = null; }
     
     public double getDistancia() { return distancia; }
-    public void setDistancia(double distancia) { this.distancia = distancia; }
+    public void setDistancia(double distancia) { this.distancia = distancia; this.codificacaoCompacta = null; }
     
     public double getDuracao() { return duracao; }
-    public void setDuracao(double duracao) { this.duracao = duracao; }
+    public void setDuracao(double duracao) { this.duracao = duracao; this.codificacaoCompacta = null; }
     
     public String getGeometria() { return geometria; }
-    public void setGeometria(String geometria) { this.geometria = geometria; }
+    public void setGeometria(String geometria) { this.geometria = geometria; this.codificacaoCompacta = null; }
     
     public JsonNode getDadosRotaCompleta() { return dadosRotaCompleta; }
     public void setDadosRotaCompleta(JsonNode dadosRotaCompleta) { this.dadosRotaCompleta = dadosRotaCompleta; }
-}
\ No newline at end of file
+    
+    @JsonIgnore
+    public byte[] getCodificacaoCompacta() { return codificacaoCompacta; }
+    public void setCodificacaoCompacta(byte[] codificacaoCompacta) { this.codificacaoCompacta = codificacaoCompacta; }
+    
+    @JsonIgnore
+    public AnotacoesRota getAnotacoes() { return anotacoes; }
+    public void setAnotacoes(AnotacoesRota anotacoes) { this.anotacoes = anotacoes; }
+}
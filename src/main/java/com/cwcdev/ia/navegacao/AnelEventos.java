@@ -0,0 +1,104 @@
+package com.cwcdev.ia.navegacao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ring buffer limitado, sem locks, para vários produtores e um único consumidor.
+ *
+ * Os slots são pré-alocados e reutilizados: o produtor reserva uma posição,
+ * preenche o slot e publica; o consumidor processa em ordem de publicação.
+ * Cada slot tem um número de sequência que indica se está livre (seq == pos),
+ * publicado (seq == pos + 1) ou ainda em uso pela volta anterior.
+ */
+public final class AnelEventos<E> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequencias;
+    private final int mascara;
+    private final AtomicLong cauda = new AtomicLong();
+    private volatile long cabeca; // escrito apenas pelo consumidor
+
+    public AnelEventos(int capacidadeMinima, Supplier<E> fabrica) {
+        int capacidade = Integer.highestOneBit(Math.max(2, capacidadeMinima - 1)) << 1;
+        this.slots = new Object[capacidade];
+        this.sequencias = new AtomicLongArray(capacidade);
+        this.mascara = capacidade - 1;
+        for (int i = 0; i < capacidade; i++) {
+            slots[i] = fabrica.get();
+            sequencias.set(i, i);
+        }
+    }
+
+    /**
+     * Reserva uma posição para escrita.
+     *
+     * @return a posição reservada, ou -1 se o anel estiver cheio
+     */
+    public long reservar() {
+        long pos = cauda.get();
+        for (;;) {
+            long seq = sequencias.get((int) (pos & mascara));
+            long diferenca = seq - pos;
+            if (diferenca == 0) {
+                if (cauda.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = cauda.get();
+            } else if (diferenca < 0) {
+                return -1;
+            } else {
+                pos = cauda.get();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E slot(long posicao) {
+        return (E) slots[(int) (posicao & mascara)];
+    }
+
+    /**
+     * Torna o slot reservado visível ao consumidor
+     */
+    public void publicar(long posicao) {
+        sequencias.lazySet((int) (posicao & mascara), posicao + 1);
+    }
+
+    /**
+     * Processa até {@code maximo} eventos publicados, em ordem. Somente a thread
+     * consumidora pode chamar este método.
+     *
+     * @return quantidade de eventos processados
+     */
+    public int drenar(Consumer<E> consumidor, int maximo) {
+        long pos = cabeca;
+        int processados = 0;
+        while (processados < maximo) {
+            int indice = (int) (pos & mascara);
+            if (sequencias.get(indice) != pos + 1) {
+                break;
+            }
+            consumidor.accept(slot(pos));
+            sequencias.lazySet(indice, pos + mascara + 1);
+            pos++;
+            processados++;
+        }
+        cabeca = pos;
+        return processados;
+    }
+
+    public boolean isVazio() {
+        return sequencias.get((int) (cabeca & mascara)) != cabeca + 1;
+    }
+
+    public int tamanho() {
+        return (int) Math.max(0, cauda.get() - cabeca);
+    }
+
+    public int capacidade() {
+        return mascara + 1;
+    }
+}
@@ -0,0 +1,390 @@
+package com.cwcdev.ia.navegacao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.codec.Polyline;
+import com.cwcdev.ia.model.Endereco;
+import com.cwcdev.ia.model.InstrucaoNavegacao;
+import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.service.NavegacaoService;
+import com.cwcdev.ia.service.OuvinteRota;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cálculo de rota com entrega progressiva em /user/queue/rota: o cliente
+ * começa a guiar com as primeiras instruções enquanto o restante da resposta
+ * OSRM ainda está sendo lido.
+ *
+ * Mensagens, numeradas em "sequencia" (o canal de saída não garante ordem):
+ * <ul>
+ * <li>RESUMO: distância e duração totais do OSRM;</li>
+ * <li>INSTRUCOES: primeiro lote pequeno, depois lotes maiores;</li>
+ * <li>GEOMETRIA: partes da polyline (cada parte repete o último ponto da
+ * anterior), enviadas depois do primeiro lote de instruções;</li>
+ * <li>CONCLUIDA: totais finais (duração já ajustada pelos perfis) e a versão
+ * da rota; a rota passa a valer para /app/navegacao.iniciar da mesma sessão
+ * ({@link VersoesRota#rotaAtual});</li>
+ * <li>ERRO: o cálculo falhou.</li>
+ * </ul>
+ * No recálculo, se o cliente ainda tem a versão anterior, só o trecho alterado
+ * é enviado (ver {@link VersoesRota}): uma mensagem DIFF com as posições a
+ * substituir, seguida das instruções e partes de geometria novas e de
+ * CONCLUIDA. Senão a rota é entregue de novo por completo. Em ambos os casos
+ * a rota nova é passada ao fragmento dono da sessão, que troca a rota se a
+ * navegação estiver ativa.
+ *
+ * O cálculo roda em um pool próprio e limitado, fora da thread do canal de entrada.
+ */
+@Component
+public class EntregaProgressivaRotas {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntregaProgressivaRotas.class);
+
+    private static final String DESTINO = "/queue/rota";
+
+    private final NavegacaoService navegacaoService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final VersoesRota versoesRota;
+    private final ProcessadorSessoes processadorSessoes;
+    private final int primeirasInstrucoes;
+    private final int instrucoesPorLote;
+    private final int pontosPorParte;
+    private final ThreadPoolExecutor executor;
+    private final Timer tempoPrimeiraInstrucao;
+    private final Timer tempoConclusao;
+    private final Counter recalculosDiff;
+    private final Counter recalculosCompletos;
+    private final DistributionSummary bytesDiff;
+    private final DistributionSummary bytesCompletos;
+
+    public EntregaProgressivaRotas(NavegacaoService navegacaoService, SimpMessagingTemplate messagingTemplate,
+            ObjectMapper objectMapper, VersoesRota versoesRota, ProcessadorSessoes processadorSessoes,
+            MeterRegistry registry,
+            @Value("${navegacao.rotas.primeiras-instrucoes:3}") int primeirasInstrucoes,
+            @Value("${navegacao.rotas.instrucoes-por-lote:20}") int instrucoesPorLote,
+            @Value("${navegacao.rotas.pontos-por-parte:500}") int pontosPorParte,
+            @Value("${navegacao.rotas.threads:4}") int threads,
+            @Value("${navegacao.rotas.fila:64}") int fila) {
+        this.navegacaoService = navegacaoService;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.versoesRota = versoesRota;
+        this.processadorSessoes = processadorSessoes;
+        this.primeirasInstrucoes = Math.max(1, primeirasInstrucoes);
+        this.instrucoesPorLote = Math.max(1, instrucoesPorLote);
+        this.pontosPorParte = Math.max(2, pontosPorParte);
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fila), r -> {
+                    Thread thread = new Thread(r, "rota-progressiva-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.tempoPrimeiraInstrucao = Timer.builder("rotas.progressivas")
+                .description("Tempo desde o pedido até cada etapa da entrega progressiva")
+                .tag("etapa", "primeira_instrucao")
+                .register(registry);
+        this.tempoConclusao = Timer.builder("rotas.progressivas")
+                .description("Tempo desde o pedido até cada etapa da entrega progressiva")
+                .tag("etapa", "concluida")
+                .register(registry);
+        this.recalculosDiff = Counter.builder("rotas.recalculos")
+                .description("Recálculos de rota por forma de entrega")
+                .tag("resposta", "diff")
+                .register(registry);
+        this.recalculosCompletos = Counter.builder("rotas.recalculos")
+                .description("Recálculos de rota por forma de entrega")
+                .tag("resposta", "completa")
+                .register(registry);
+        this.bytesDiff = DistributionSummary.builder("rotas.recalculos.bytes")
+                .description("Bytes enviados por recálculo de rota")
+                .baseUnit("bytes")
+                .tag("resposta", "diff")
+                .register(registry);
+        this.bytesCompletos = DistributionSummary.builder("rotas.recalculos.bytes")
+                .description("Bytes enviados por recálculo de rota")
+                .baseUnit("bytes")
+                .tag("resposta", "completa")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Agenda o cálculo; a rota concluída fica registrada como versão da sessão
+     */
+    public void calcular(String sessaoId, Endereco origem, Endereco destino) {
+        calcular(new Envio(sessaoId, origem, destino, false));
+    }
+
+    /**
+     * Recalcula a rota de uma sessão que tem a versão {@code versaoCliente}
+     * (null se não tem nenhuma). A rota nova só é transmitida por completo se
+     * o cliente não estiver na versão atual ou se nada dela for aproveitável.
+     */
+    public void recalcular(String sessaoId, Endereco origem, Endereco destino, Integer versaoCliente) {
+        Envio envio = new Envio(sessaoId, origem, destino, true);
+        if (versaoCliente == null || !versoesRota.possui(sessaoId, versaoCliente)) {
+            // Sem base para a diferença: entrega completa, já durante a leitura
+            calcular(envio);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Rota rota = navegacaoService.calcularRota(origem, destino);
+                    VersoesRota.Diferenca diferenca = versoesRota.diferenca(sessaoId, versaoCliente, rota);
+                    if (diferenca != null) {
+                        envio.enviarDiferenca(diferenca, rota);
+                    } else {
+                        envio.reproduzir(rota);
+                    }
+                    processadorSessoes.atualizarRota(sessaoId, rota);
+                } catch (RuntimeException e) {
+                    envio.falhar(e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            envio.falhar("Muitas rotas em cálculo; tente novamente");
+        }
+    }
+
+    private void calcular(Envio envio) {
+        Endereco origem = envio.origem;
+        Endereco destino = envio.destino;
+        try {
+            executor.execute(() -> {
+                try {
+                    Rota rota = navegacaoService.calcularRota(origem, destino, envio);
+                    envio.concluir(rota);
+                    if (envio.recalculo) {
+                        processadorSessoes.atualizarRota(envio.sessaoId, rota);
+                    }
+                } catch (RuntimeException e) {
+                    envio.falhar(e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            envio.falhar("Muitas rotas em cálculo; tente novamente");
+        }
+    }
+
+    /**
+     * Estado da entrega de uma rota; usado só pela thread que a calcula
+     */
+    private final class Envio implements OuvinteRota {
+
+        private final String sessaoId;
+        private final Endereco origem;
+        private final Endereco destino;
+        private final boolean recalculo;
+        private final long inicio = System.nanoTime();
+        private final List<InstrucaoNavegacao> pendentes = new ArrayList<>();
+        private int sequencia;
+        private int instrucoesEnviadas;
+        private int inicioInstrucoes;
+        private int partesGeometria;
+        private String geometriaPendente;
+        private long bytesEnviados;
+
+        Envio(String sessaoId, Endereco origem, Endereco destino, boolean recalculo) {
+            this.sessaoId = sessaoId;
+            this.origem = origem;
+            this.destino = destino;
+            this.recalculo = recalculo;
+        }
+
+        @Override
+        public void aoCalcularResumo(double distancia, double duracao) {
+            Map<String, Object> resumo = mensagem("RESUMO");
+            resumo.put("distancia", distancia);
+            resumo.put("duracao", duracao);
+            resumo.put("origem", coordenadas(origem));
+            resumo.put("destino", coordenadas(destino));
+            enviar(resumo);
+        }
+
+        @Override
+        public void aoReceberGeometria(String polyline) {
+            if (instrucoesEnviadas > 0) {
+                enviarGeometria(polyline);
+            } else {
+                // As primeiras instruções têm prioridade sobre a geometria
+                geometriaPendente = polyline;
+            }
+        }
+
+        @Override
+        public void aoReceberInstrucao(InstrucaoNavegacao instrucao) {
+            pendentes.add(instrucao);
+            int limite = instrucoesEnviadas == 0 ? primeirasInstrucoes : instrucoesPorLote;
+            if (pendentes.size() >= limite) {
+                enviarInstrucoes();
+            }
+        }
+
+        void concluir(Rota rota) {
+            enviarInstrucoes();
+            if (geometriaPendente != null) {
+                enviarGeometria(geometriaPendente);
+            }
+            finalizar(rota, versoesRota.registrar(sessaoId, rota));
+            if (recalculo) {
+                bytesCompletos.record(bytesEnviados);
+                recalculosCompletos.increment();
+            }
+        }
+
+        /**
+         * Só o trecho alterado em relação à versão que o cliente tem; as
+         * instruções trazem em "inicio" a posição na lista nova
+         */
+        void enviarDiferenca(VersoesRota.Diferenca diferenca, Rota rota) {
+            Map<String, Object> geometria = new LinkedHashMap<>();
+            geometria.put("inicio", diferenca.inicioPontos);
+            geometria.put("removidos", diferenca.pontosRemovidos);
+            geometria.put("pontos", diferenca.fimPontos - diferenca.inicioPontos);
+            Map<String, Object> instrucoes = new LinkedHashMap<>();
+            instrucoes.put("inicio", diferenca.inicioInstrucoes);
+            instrucoes.put("removidas", diferenca.instrucoesRemovidas);
+            instrucoes.put("novas", diferenca.instrucoes.size());
+            instrucoes.put("ajusteDistancia", diferenca.ajusteDistancia);
+            Map<String, Object> cabecalho = mensagem("DIFF");
+            cabecalho.put("versaoBase", diferenca.versaoBase);
+            cabecalho.put("versao", diferenca.versao);
+            cabecalho.put("geometria", geometria);
+            cabecalho.put("instrucoes", instrucoes);
+            enviar(cabecalho);
+
+            inicioInstrucoes = diferenca.inicioInstrucoes;
+            for (InstrucaoNavegacao instrucao : diferenca.instrucoes) {
+                aoReceberInstrucao(instrucao);
+            }
+            enviarInstrucoes();
+            if (diferenca.fimPontos > diferenca.inicioPontos) {
+                enviarGeometria(diferenca.pontos, diferenca.inicioPontos, diferenca.fimPontos);
+            }
+            finalizar(rota, diferenca.versao);
+            bytesDiff.record(bytesEnviados);
+            recalculosDiff.increment();
+        }
+
+        private void finalizar(Rota rota, int versao) {
+            Map<String, Object> conclusao = mensagem("CONCLUIDA");
+            conclusao.put("distancia", rota.getDistancia());
+            conclusao.put("duracao", rota.getDuracao());
+            conclusao.put("instrucoes", instrucoesEnviadas);
+            conclusao.put("partesGeometria", partesGeometria);
+            conclusao.put("versao", versao);
+            enviar(conclusao);
+            tempoConclusao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Entrega completa de uma rota já calculada
+         */
+        void reproduzir(Rota rota) {
+            aoCalcularResumo(rota.getDistancia(), rota.getDuracao());
+            aoReceberGeometria(rota.getGeometria());
+            for (InstrucaoNavegacao instrucao : rota.getInstrucoes()) {
+                aoReceberInstrucao(instrucao);
+            }
+            concluir(rota);
+        }
+
+        void falhar(String motivo) {
+            Map<String, Object> erro = mensagem("ERRO");
+            erro.put("mensagem", motivo);
+            enviar(erro);
+        }
+
+        private void enviarInstrucoes() {
+            if (pendentes.isEmpty()) {
+                return;
+            }
+            Map<String, Object> lote = mensagem("INSTRUCOES");
+            lote.put("inicio", inicioInstrucoes + instrucoesEnviadas);
+            lote.put("instrucoes", new ArrayList<>(pendentes));
+            enviar(lote);
+            if (instrucoesEnviadas == 0) {
+                tempoPrimeiraInstrucao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            }
+            instrucoesEnviadas += pendentes.size();
+            pendentes.clear();
+
+            if (geometriaPendente != null) {
+                String polyline = geometriaPendente;
+                geometriaPendente = null;
+                enviarGeometria(polyline);
+            }
+        }
+
+        private void enviarGeometria(String polyline) {
+            int[] pontos = Polyline.decodificar(polyline);
+            enviarGeometria(pontos, 0, pontos.length / 2);
+        }
+
+        private void enviarGeometria(int[] pontos, int primeiro, int fim) {
+            int inicioParte = primeiro;
+            do {
+                int fimParte = Math.min(fim, inicioParte + pontosPorParte);
+                Map<String, Object> parte = mensagem("GEOMETRIA");
+                parte.put("parte", partesGeometria++);
+                parte.put("pontos", Polyline.codificar(pontos, inicioParte, fimParte));
+                enviar(parte);
+                inicioParte = fimParte - 1;
+            } while (inicioParte < fim - 1);
+        }
+
+        private Map<String, Object> mensagem(String tipo) {
+            Map<String, Object> mensagem = new LinkedHashMap<>();
+            mensagem.put("tipo", tipo);
+            mensagem.put("sequencia", sequencia++);
+            return mensagem;
+        }
+
+        private void enviar(Map<String, Object> mensagem) {
+            try {
+                byte[] json = objectMapper.writeValueAsBytes(mensagem);
+                messagingTemplate.convertAndSendToUser(sessaoId, DESTINO, new String(json, StandardCharsets.UTF_8),
+                        SessaoNavegacao.criarCabecalhos(sessaoId));
+                bytesEnviados += json.length;
+            } catch (Exception e) {
+                logger.warn("Falha ao enviar parte da rota à sessão {}: {}", sessaoId, e.getMessage());
+            }
+        }
+
+        private Map<String, Double> coordenadas(Endereco endereco) {
+            Map<String, Double> coordenadas = new LinkedHashMap<>();
+            coordenadas.put("latitude", endereco.getLatitude());
+            coordenadas.put("longitude", endereco.getLongitude());
+            return coordenadas;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cwcdev.ia.navegacao;
+
+import com.cwcdev.ia.model.AnotacoesRota;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Retrato do estado de uma sessão de navegação, usado para transferir a
+ * sessão entre nós quando o cliente reconecta em outra instância.
+ */
+public class EstadoSessao {
+
+    private String sessaoId;
+    private Rota rota;
+    private boolean ativa;
+    private int instrucaoAtualIndex;
+    private int indiceUltimoAlerta = -1;
+    private Double latitude;
+    private Double longitude;
+    // Versão da rota entregue ao cliente (0 se nenhuma) e a rota dela, se
+    // diferente da rota em navegação
+    private int versaoRota;
+    private Rota rotaVersao;
+
+    public EstadoSessao() {}
+
+    static EstadoSessao de(SessaoNavegacao sessao) {
+        EstadoSessao estado = new EstadoSessao();
+        estado.sessaoId = sessao.getId();
+        estado.rota = sessao.getRota();
+        estado.ativa = sessao.isAtiva();
+        estado.instrucaoAtualIndex = sessao.getInstrucaoAtualIndex();
+        estado.indiceUltimoAlerta = sessao.getIndiceUltimoAlerta();
+        if (sessao.getPosicao().isValido()) {
+            estado.latitude = sessao.getPosicao().latitude;
+            estado.longitude = sessao.getPosicao().longitude;
+        }
+        return estado;
+    }
+
+    void aplicarEm(SessaoNavegacao sessao) {
+        // Anotações não trafegam em JSON; são refeitas a partir dos dados OSRM
+        if (rota != null && rota.getAnotacoes() == null && rota.getDadosRotaCompleta() != null) {
+            rota.setAnotacoes(AnotacoesRota.de(rota.getDadosRotaCompleta().path("routes").path(0)));
+        }
+        sessao.reiniciar(rota);
+        sessao.setAtiva(ativa && rota != null);
+        sessao.setInstrucaoAtualIndex(instrucaoAtualIndex);
+        sessao.setIndiceUltimoAlerta(indiceUltimoAlerta);
+        if (latitude != null && longitude != null) {
+            sessao.getPosicao().latitude = latitude;
+            sessao.getPosicao().longitude = longitude;
+        }
+    }
+
+    public String getSessaoId() { return sessaoId; }
+    public void setSessaoId(String sessaoId) { this.sessaoId = sessaoId; }
+
+    public Rota getRota() { return rota; }
+    public void setRota(Rota rota) { this.rota = rota; }
+
+    public boolean isAtiva() { return ativa; }
+    public void setAtiva(boolean ativa) { this.ativa = ativa; }
+
+    public int getInstrucaoAtualIndex() { return instrucaoAtualIndex; }
+    public void setInstrucaoAtualIndex(int instrucaoAtualIndex) { this.instrucaoAtualIndex = instrucaoAtualIndex; }
+
+    public int getIndiceUltimoAlerta() { return indiceUltimoAlerta; }
+    public void setIndiceUltimoAlerta(int indiceUltimoAlerta) { this.indiceUltimoAlerta = indiceUltimoAlerta; }
+
+    public Double getLatitude() { return latitude; }
+    public void setLatitude(Double latitude) { this.latitude = latitude; }
+
+    public Double getLongitude() { return longitude; }
+    public void setLongitude(Double longitude) { this.longitude = longitude; }
+
+    public int getVersaoRota() { return versaoRota; }
+    public void setVersaoRota(int versaoRota) { this.versaoRota = versaoRota; }
+
+    public Rota getRotaVersao() { return rotaVersao; }
+    public void setRotaVersao(Rota rotaVersao) { this.rotaVersao = rotaVersao; }
+}
@@ -0,0 +1,35 @@
+package com.cwcdev.ia.navegacao;
+
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Slot reutilizável do anel de eventos de um fragmento
+ */
+final class EventoSessao {
+
+    static final int INICIAR = 1;
+    static final int PARAR = 2;
+    static final int PROXIMA = 3;
+    static final int POSICAO = 4;
+    static final int ENCERRAR = 5;
+    static final int EXPORTAR = 6;
+    static final int IMPORTAR = 7;
+    static final int CONECTAR = 8;
+    static final int ROTA = 9;
+
+    int tipo;
+    String sessaoId;
+    Rota rota;
+    Object anexo;
+    String token;
+    final FixGps fix = new FixGps();
+
+    void limpar() {
+        tipo = 0;
+        sessaoId = null;
+        rota = null;
+        anexo = null;
+        token = null;
+    }
+}
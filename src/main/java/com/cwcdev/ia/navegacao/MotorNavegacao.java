@@ -0,0 +1,443 @@
+package com.cwcdev.ia.navegacao;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.geocerca.Geocerca;
+import com.cwcdev.ia.geocerca.IndiceGeocercas;
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.model.AnotacoesRota;
+import com.cwcdev.ia.model.Endereco;
+import com.cwcdev.ia.model.InstrucaoNavegacao;
+import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.perfil.PerfisVelocidade;
+import com.cwcdev.ia.viagem.GravadorViagens;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Regras de navegação em tempo real (início, parada, avanço de instrução,
+ * alertas de proximidade e chegada). Executado sempre pela thread do fragmento
+ * dono da sessão.
+ */
+@Component
+public class MotorNavegacao {
+
+    private static final Logger logger = LoggerFactory.getLogger(MotorNavegacao.class);
+
+    // Limites do intervalo de envio de posições recomendado ao cliente
+    static final int INTERVALO_MINIMO_MS = 1000;
+    static final int INTERVALO_MAXIMO_MS = 30000;
+    static final int INTERVALO_SEM_NAVEGACAO_MS = 5000;
+    private static final double DISTANCIA_ALERTA = 200;
+
+    // Casamento da posição com os segmentos da rota
+    private static final int JANELA_SEGMENTOS = 50;
+    private static final double DISTANCIA_MAXIMA_JANELA = 75;
+    private static final double DISTANCIA_MAXIMA_PERFIL = 30;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final String urlNoLocal;
+    private final double limiarEtaSegundos;
+    private final PerfisVelocidade perfisVelocidade;
+    private final GravadorViagens gravadorViagens;
+    private final IndiceGeocercas indiceGeocercas;
+    private final Timer tempoPosicao;
+    private final Counter desvios;
+    private final Counter entradasGeocerca;
+    private final Counter saidasGeocerca;
+
+    @Autowired
+    public MotorNavegacao(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper,
+            PerfisVelocidade perfisVelocidade, GravadorViagens gravadorViagens,
+            IndiceGeocercas indiceGeocercas, MeterRegistry registry,
+            @Value("${navegacao.no.url:}") String urlNoLocal,
+            @Value("${navegacao.eta.limiar-segundos:30}") double limiarEtaSegundos) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.perfisVelocidade = perfisVelocidade;
+        this.gravadorViagens = gravadorViagens;
+        this.indiceGeocercas = indiceGeocercas;
+        this.urlNoLocal = urlNoLocal;
+        this.limiarEtaSegundos = limiarEtaSegundos;
+        this.tempoPosicao = Timer.builder("navegacao.posicao")
+            .description("Processamento de um fix GPS pela thread do fragmento")
+            .register(registry);
+        this.desvios = Counter.builder("navegacao.desvios")
+            .description("Saídas da rota detectadas durante a navegação")
+            .register(registry);
+        this.entradasGeocerca = Counter.builder("geocercas.eventos").tag("tipo", "entrada").register(registry);
+        this.saidasGeocerca = Counter.builder("geocercas.eventos").tag("tipo", "saida").register(registry);
+    }
+
+    public void iniciar(SessaoNavegacao sessao, Rota rota) {
+        if (rota == null) {
+            enviar(sessao, "/queue/navegacao", "ERRO: Nenhuma rota definida");
+            return;
+        }
+
+        sessao.reiniciar(rota);
+        logger.debug("Navegação iniciada na sessão {}", sessao.getId());
+
+        if (!rota.getInstrucoes().isEmpty()) {
+            gravadorViagens.registrarInstrucao(sessao.getId(), 0);
+            String primeiraInstrucao = rota.getInstrucoes().get(0).getInstrucao();
+            enviar(sessao, "/queue/instrucoes", criarRespostaInstrucao(primeiraInstrucao, 0));
+        }
+
+        enviar(sessao, "/queue/navegacao", "NAVEGACAO_INICIADA");
+        enviarIdentificacao(sessao);
+    }
+
+    /**
+     * Passa a guiar pela rota recalculada, a partir da primeira instrução. O
+     * cliente já recebeu a rota nova em /user/queue/rota.
+     */
+    public void trocarRota(SessaoNavegacao sessao, Rota rota) {
+        sessao.reiniciar(rota);
+        logger.debug("Rota da sessão {} trocada pelo recálculo", sessao.getId());
+        if (!rota.getInstrucoes().isEmpty()) {
+            gravadorViagens.registrarInstrucao(sessao.getId(), 0);
+        }
+    }
+
+    /**
+     * Informa ao cliente a sessão, o nó que a processa e o token de retomada;
+     * ao reconectar (mesmo em outro nó) o cliente envia esses dados para
+     * /app/navegacao.retomar. A chave de viagem autoriza a exportação da
+     * trilha gravada (/api/viagens/{sessaoId}/gpx).
+     */
+    public void enviarIdentificacao(SessaoNavegacao sessao) {
+        Map<String, String> identificacao = new LinkedHashMap<>();
+        identificacao.put("sessaoId", sessao.getId());
+        identificacao.put("no", urlNoLocal);
+        identificacao.put("token", sessao.getTokenRetomada());
+        identificacao.put("chaveViagem", gravadorViagens.chaveExportacao(sessao.getId()));
+        enviar(sessao, "/queue/sessao", identificacao);
+    }
+
+    /**
+     * A sessão deixou este nó (desconexão ou transferência): fecha a trilha gravada
+     */
+    public void encerrar(SessaoNavegacao sessao) {
+        gravadorViagens.encerrarSessao(sessao.getId());
+    }
+
+    public void parar(SessaoNavegacao sessao) {
+        sessao.setAtiva(false);
+        sessao.setInstrucaoAtualIndex(0);
+        logger.debug("Navegação parada na sessão {}", sessao.getId());
+        enviar(sessao, "/queue/navegacao", "NAVEGACAO_PARADA");
+    }
+
+    public void proximaInstrucao(SessaoNavegacao sessao) {
+        Rota rota = sessao.getRota();
+        if (rota == null || !sessao.isAtiva()) {
+            enviar(sessao, "/queue/instrucoes", "ERRO: Navegação não iniciada");
+            return;
+        }
+
+        int indice = sessao.getInstrucaoAtualIndex();
+        if (indice < rota.getInstrucoes().size() - 1) {
+            indice++;
+            sessao.setInstrucaoAtualIndex(indice);
+            gravadorViagens.registrarInstrucao(sessao.getId(), indice);
+            String instrucao = rota.getInstrucoes().get(indice).getInstrucao();
+            enviar(sessao, "/queue/instrucoes", criarRespostaInstrucao(instrucao, indice));
+        } else {
+            sessao.setAtiva(false);
+            enviar(sessao, "/queue/instrucoes", criarRespostaInstrucao("🎉 Você chegou ao destino!", indice));
+        }
+    }
+
+    public void processarPosicao(SessaoNavegacao sessao, FixGps fix) {
+        long inicio = System.nanoTime();
+        try {
+            aplicarPosicao(sessao, fix);
+        } finally {
+            tempoPosicao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void aplicarPosicao(SessaoNavegacao sessao, FixGps fix) {
+        sessao.getPosicao().copiarDe(fix);
+        gravadorViagens.registrarPosicao(sessao.getId(), fix);
+        verificarGeocercas(sessao, fix);
+
+        Rota rota = sessao.getRota();
+        if (rota == null || !sessao.isAtiva()) {
+            atualizarIntervalo(sessao, INTERVALO_SEM_NAVEGACAO_MS);
+            return;
+        }
+        double distanciaManobra = Double.NaN;
+
+        double lat = fix.latitude;
+        double lng = fix.longitude;
+        List<InstrucaoNavegacao> instrucoes = rota.getInstrucoes();
+        int indice = sessao.getInstrucaoAtualIndex();
+
+        // Verificar proximidade com próxima manobra
+        if (indice < instrucoes.size()) {
+            InstrucaoNavegacao instrucaoAtual = instrucoes.get(indice);
+
+            if (instrucaoAtual.getLatitude() != null && instrucaoAtual.getLongitude() != null) {
+                double distancia = calcularDistancia(lat, lng,
+                    instrucaoAtual.getLatitude(), instrucaoAtual.getLongitude());
+                distanciaManobra = distancia;
+
+                // Alerta de proximidade (200m)
+                if (distancia < 200 && distancia > 100 && sessao.getIndiceUltimoAlerta() != indice) {
+                    enviar(sessao, "/queue/alerta", criarAlertaProximidade(distancia, instrucaoAtual.getInstrucao()));
+                    sessao.setIndiceUltimoAlerta(indice);
+                    gravadorViagens.registrarAlerta(sessao.getId(), indice);
+                }
+
+                // Avançar instrução automaticamente (50m)
+                if (distancia < 50 && indice < instrucoes.size() - 1) {
+                    sessao.setInstrucaoAtualIndex(indice + 1);
+                    gravadorViagens.registrarInstrucao(sessao.getId(), indice + 1);
+                }
+            }
+        }
+
+        // Verificar proximidade com destino
+        Endereco destino = rota.getDestino();
+        if (destino.getLatitude() != null && destino.getLongitude() != null) {
+            double distanciaDestino = calcularDistancia(lat, lng,
+                destino.getLatitude(), destino.getLongitude());
+
+            if (distanciaDestino < 50) {
+                enviar(sessao, "/queue/chegada", "CHEGADA: Você está a " + Math.round(distanciaDestino) + "m do destino!");
+                sessao.setAtiva(false);
+            }
+        }
+
+        if (sessao.isAtiva()) {
+            atualizarEta(sessao, rota, fix);
+        }
+
+        atualizarIntervalo(sessao, sessao.isAtiva()
+            ? calcularIntervaloRecomendado(fix.velocidade, distanciaManobra)
+            : INTERVALO_SEM_NAVEGACAO_MS);
+    }
+
+    /**
+     * Eventos de entrada e saída das geocercas, com ou sem navegação ativa.
+     * Só as geocercas da célula do fix são testadas; as que a sessão já
+     * ocupa são testadas diretamente (e removidas geram saída).
+     */
+    private void verificarGeocercas(SessaoNavegacao sessao, FixGps fix) {
+        double lat = fix.latitude;
+        double lng = fix.longitude;
+        for (int i = sessao.getQuantidadeGeocercas() - 1; i >= 0; i--) {
+            Geocerca geocerca = sessao.getGeocerca(i);
+            if (geocerca.isRemovida() || !geocerca.contem(lat, lng)) {
+                sessao.sairDe(i);
+                saidasGeocerca.increment();
+                enviarEventoGeocerca(sessao, "SAIDA", geocerca, fix);
+            }
+        }
+        for (Geocerca geocerca : indiceGeocercas.candidatas(lat, lng)) {
+            if (!geocerca.isRemovida() && geocerca.contem(lat, lng) && !sessao.estaEm(geocerca)) {
+                sessao.entrarEm(geocerca);
+                entradasGeocerca.increment();
+                enviarEventoGeocerca(sessao, "ENTRADA", geocerca, fix);
+            }
+        }
+    }
+
+    /**
+     * Evento apenas para a própria sessão (/user/queue/geocercas): a posição
+     * e o id de uma sessão não são repassados a outros clientes
+     */
+    private void enviarEventoGeocerca(SessaoNavegacao sessao, String tipo, Geocerca geocerca, FixGps fix) {
+        String evento;
+        try {
+            evento = objectMapper.writeValueAsString(new EventoGeocerca(tipo, geocerca, sessao.getId(), fix));
+        } catch (Exception e) {
+            evento = "{\"tipo\": \"" + tipo + "\", \"geocerca\": \"" + geocerca.getId() + "\"}";
+        }
+        enviar(sessao, "/queue/geocercas", evento);
+    }
+
+    /**
+     * Atualiza distância restante e ETA a partir das anotações OSRM da rota.
+     * A nova ETA só é enviada à sessão quando difere da última enviada mais
+     * que o limiar configurado.
+     */
+    private void atualizarEta(SessaoNavegacao sessao, Rota rota, FixGps fix) {
+        AnotacoesRota anotacoes = rota.getAnotacoes();
+        if (anotacoes == null) {
+            return;
+        }
+
+        AnotacoesRota.Projecao projecao = sessao.getProjecao();
+        anotacoes.projetar(fix.latitude, fix.longitude, projecao.segmento,
+            JANELA_SEGMENTOS, DISTANCIA_MAXIMA_JANELA, projecao);
+
+        // Fix confiável sobre a rota alimenta o perfil histórico do trecho
+        if (projecao.distanciaDaRota < DISTANCIA_MAXIMA_PERFIL && fix.precisao < DISTANCIA_MAXIMA_PERFIL) {
+            perfisVelocidade.registrar(anotacoes.getChaveSegmento(projecao.segmento), fix.velocidade, fix.timestamp);
+        }
+
+        boolean foraDaRota = projecao.distanciaDaRota > DISTANCIA_MAXIMA_JANELA;
+        if (foraDaRota && !sessao.isForaDaRota()) {
+            desvios.increment();
+        }
+        sessao.setForaDaRota(foraDaRota);
+
+        double percorrida = anotacoes.distanciaPercorrida(projecao);
+        double distanciaRestante = Math.max(0, anotacoes.getDistanciaTotal() - percorrida);
+        double duracaoRestante = Math.max(0, anotacoes.getDuracaoTotal() - anotacoes.duracaoNaDistancia(percorrida));
+
+        double ultima = sessao.getUltimaEtaEnviada();
+        if (!Double.isNaN(ultima) && Math.abs(duracaoRestante - ultima) <= limiarEtaSegundos) {
+            return;
+        }
+        sessao.setUltimaEtaEnviada(duracaoRestante);
+        // "seq" identifica o fix que gerou a ETA (os anteriores ainda pendentes foram coalescidos nele)
+        enviar(sessao, "/queue/eta", "{\"distanciaRestante\": " + Math.round(distanciaRestante)
+            + ", \"duracaoRestante\": " + Math.round(duracaoRestante)
+            + ", \"chegadaPrevista\": " + (System.currentTimeMillis() + Math.round(duracaoRestante * 1000))
+            + ", \"foraDaRota\": " + foraDaRota
+            + (fix.sequencia != 0 ? ", \"seq\": " + fix.sequencia : "") + "}");
+    }
+
+    /**
+     * Intervalo entre fixes que o cliente deveria usar: frequente perto da
+     * manobra, espaçado quando ela está longe ou o veículo está parado.
+     * Busca-se ao menos 4 fixes antes de entrar na faixa de alerta (200m).
+     */
+    static int calcularIntervaloRecomendado(double velocidade, double distanciaManobra) {
+        if (Double.isNaN(distanciaManobra) || distanciaManobra < DISTANCIA_ALERTA) {
+            return INTERVALO_MINIMO_MS;
+        }
+        if (velocidade < 0.5) {
+            // Parado (semáforo, trânsito): basta perceber quando voltar a andar
+            return distanciaManobra > 1000 ? 15000 : INTERVALO_SEM_NAVEGACAO_MS;
+        }
+        double segundos = (distanciaManobra - DISTANCIA_ALERTA) / velocidade / 4;
+        long intervalo = Math.round(segundos * 1000);
+        return (int) Math.max(INTERVALO_MINIMO_MS, Math.min(INTERVALO_MAXIMO_MS, intervalo));
+    }
+
+    /**
+     * Envia o intervalo recomendado somente quando ele muda de forma relevante (>20%)
+     */
+    private void atualizarIntervalo(SessaoNavegacao sessao, int intervaloMs) {
+        int anterior = sessao.getIntervaloRecomendadoMs();
+        if (anterior != 0 && Math.abs(intervaloMs - anterior) <= anterior / 5) {
+            return;
+        }
+        sessao.setIntervaloRecomendadoMs(intervaloMs);
+        enviar(sessao, "/queue/intervalo", "{\"intervaloMs\": " + intervaloMs + "}");
+    }
+
+    /**
+     * Envia somente para a sessão dona da mensagem (/user/queue/... no cliente)
+     */
+    private void enviar(SessaoNavegacao sessao, String destino, Object payload) {
+        messagingTemplate.convertAndSendToUser(sessao.getId(), destino, payload,
+            SessaoNavegacao.criarCabecalhos(sessao.getId()));
+    }
+
+    private String criarRespostaInstrucao(String instrucao, int index) {
+        try {
+            return objectMapper.writeValueAsString(new RespostaInstrucao(instrucao, index));
+        } catch (Exception e) {
+            return "{\"instrucao\": \"" + instrucao + "\", \"index\": " + index + "}";
+        }
+    }
+
+    private String criarAlertaProximidade(double distancia, String instrucao) {
+        try {
+            AlertaProximidade alerta = new AlertaProximidade(
+                Math.round(distancia),
+                instrucao,
+                "Em " + Math.round(distancia) + " metros, " + instrucao
+            );
+            return objectMapper.writeValueAsString(alerta);
+        } catch (Exception e) {
+            return "{\"distancia\": " + distancia + ", \"instrucao\": \"" + instrucao + "\"}";
+        }
+    }
+
+    /**
+     * Calcula distância usando fórmula de Haversine
+     */
+    public static double calcularDistancia(double lat1, double lon1, double lat2, double lon2) {
+        final int R = 6371000; // Raio da Terra em metros
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLon/2) * Math.sin(dLon/2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+        return R * c;
+    }
+
+    // Classes internas para respostas JSON
+
+    private static class RespostaInstrucao {
+        public String instrucao;
+        public int index;
+        public long timestamp;
+
+        public RespostaInstrucao(String instrucao, int index) {
+            this.instrucao = instrucao;
+            this.index = index;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    private static class EventoGeocerca {
+        public String tipo;
+        public String geocerca;
+        public String nome;
+        public String categoria;
+        public String sessaoId;
+        public double latitude;
+        public double longitude;
+        public long timestamp;
+
+        public EventoGeocerca(String tipo, Geocerca geocerca, String sessaoId, FixGps fix) {
+            this.tipo = tipo;
+            this.geocerca = geocerca.getId();
+            this.nome = geocerca.getNome();
+            this.categoria = geocerca.getCategoria();
+            this.sessaoId = sessaoId;
+            this.latitude = fix.latitude;
+            this.longitude = fix.longitude;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    private static class AlertaProximidade {
+        public long distancia;
+        public String instrucao;
+        public String mensagem;
+        public String tipo;
+        public long timestamp;
+
+        public AlertaProximidade(long distancia, String instrucao, String mensagem) {
+            this.distancia = distancia;
+            this.instrucao = instrucao;
+            this.mensagem = mensagem;
+            this.tipo = "PROXIMIDADE";
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.cwcdev.ia.navegacao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Processamento das sessões de navegação particionado em fragmentos.
+ *
+ * Cada sessão é associada a um fragmento pelo hash do id da sessão STOMP. Cada
+ * fragmento tem uma única thread que drena seu {@link AnelEventos}; assim o
+ * estado de uma sessão é tocado por uma só thread, sem locks, e a ordem dos
+ * eventos de uma mesma sessão é preservada.
+ *
+ * Fixes GPS são coalescidos: dentro de um lote drenado, apenas o último fix
+ * de cada sessão é processado. Quando o fragmento está em dia, cada lote tem
+ * no máximo um fix por sessão e nada é descartado; quando atrasa, os fixes
+ * intermediários são substituídos pelo mais recente. Se o anel enche, novos
+ * fixes são descartados em vez de enfileirados.
+ *
+ * Ao desconectar, uma sessão com rota fica retida por
+ * navegacao.sessoes.retencao-ms: a troca de nó começa com a queda do socket, e
+ * o cliente só pede a retomada depois de reconectar (talvez em outro nó).
+ * Sessões retidas não recebem fixes e só podem ser exportadas; passado o
+ * prazo, são descartadas.
+ */
+@Component
+public class ProcessadorSessoes {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessadorSessoes.class);
+    private static final int LOTE_DRENAGEM = 256;
+    private static final int TENTATIVAS_EVENTO_CONTROLE = 1000;
+    private static final long ESPERA_OCIOSA_NANOS = 1_000_000;
+    private static final long INTERVALO_EXPIRACAO_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MotorNavegacao motor;
+    private final int quantidadeFragmentos;
+    private final int capacidadeAnel;
+    private final long retencaoNanos;
+    private final AtomicInteger sessoesAtivas = new AtomicInteger();
+    private final AtomicInteger sessoesRetidas = new AtomicInteger();
+    private final AtomicInteger sessoesNavegando = new AtomicInteger();
+    private final LongAdder eventosDescartados = new LongAdder();
+    private final LongAdder fixesCoalescidos = new LongAdder();
+
+    private Fragmento[] fragmentos;
+
+    @Autowired
+    public ProcessadorSessoes(MotorNavegacao motor,
+            @Value("${navegacao.fragmentos:0}") int fragmentos,
+            @Value("${navegacao.capacidade-anel:4096}") int capacidadeAnel,
+            @Value("${navegacao.sessoes.retencao-ms:120000}") long retencaoMs) {
+        this.motor = motor;
+        this.quantidadeFragmentos = fragmentos > 0 ? fragmentos : Runtime.getRuntime().availableProcessors();
+        this.capacidadeAnel = capacidadeAnel;
+        this.retencaoNanos = TimeUnit.MILLISECONDS.toNanos(retencaoMs);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        fragmentos = new Fragmento[quantidadeFragmentos];
+        for (int i = 0; i < quantidadeFragmentos; i++) {
+            fragmentos[i] = new Fragmento(i);
+            fragmentos[i].thread.start();
+        }
+        logger.info("Processador de sessões iniciado com {} fragmentos", quantidadeFragmentos);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        for (Fragmento fragmento : fragmentos) {
+            fragmento.executando = false;
+            LockSupport.unpark(fragmento.thread);
+        }
+    }
+
+    public void iniciarNavegacao(String sessaoId, Rota rota) {
+        publicarControle(sessaoId, EventoSessao.INICIAR, rota, null);
+    }
+
+    /**
+     * Troca a rota de uma sessão em navegação (recálculo); sessões paradas ou
+     * inexistentes não são afetadas
+     */
+    public void atualizarRota(String sessaoId, Rota rota) {
+        publicarControle(sessaoId, EventoSessao.ROTA, rota, null);
+    }
+
+    public void pararNavegacao(String sessaoId) {
+        publicarControle(sessaoId, EventoSessao.PARAR, null, null);
+    }
+
+    public void proximaInstrucao(String sessaoId) {
+        publicarControle(sessaoId, EventoSessao.PROXIMA, null, null);
+    }
+
+    /**
+     * Retira a sessão deste nó (conectada ou retida após desconexão) e devolve
+     * seu estado, para que seja retomada em outra sessão; null se a sessão não
+     * existir ou o token de retomada não conferir
+     */
+    public CompletableFuture<EstadoSessao> exportar(String sessaoId, String token) {
+        CompletableFuture<EstadoSessao> resultado = new CompletableFuture<>();
+        if (!publicarControle(sessaoId, EventoSessao.EXPORTAR, null, resultado, token)) {
+            resultado.completeExceptionally(new IllegalStateException("Processador de sessões saturado"));
+        }
+        return resultado;
+    }
+
+    /**
+     * Assume o estado transferido de outra sessão (possivelmente de outro nó)
+     */
+    public void importar(String sessaoId, EstadoSessao estado) {
+        publicarControle(sessaoId, EventoSessao.IMPORTAR, null, estado);
+    }
+
+    /**
+     * Enfileira um fix GPS; retorna false se o fragmento estiver saturado
+     */
+    public boolean publicarPosicao(String sessaoId, FixGps fix) {
+        Fragmento fragmento = fragmentoDe(sessaoId);
+        long pos = fragmento.anel.reservar();
+        if (pos < 0) {
+            eventosDescartados.increment();
+            return false;
+        }
+        EventoSessao evento = fragmento.anel.slot(pos);
+        evento.tipo = EventoSessao.POSICAO;
+        evento.sessaoId = sessaoId;
+        evento.fix.copiarDe(fix);
+        fragmento.publicar(pos);
+        return true;
+    }
+
+    /**
+     * Cria a sessão ao receber o CONNECT, antes de qualquer frame seguinte da
+     * mesma conexão; fixes de clientes que não navegam também são processados
+     * (gravação da viagem, geocercas, intervalo recomendado)
+     */
+    @EventListener
+    public void aoConectar(SessionConnectEvent evento) {
+        String sessaoId = SimpMessageHeaderAccessor.getSessionId(evento.getMessage().getHeaders());
+        if (sessaoId != null) {
+            publicarControle(sessaoId, EventoSessao.CONECTAR, null, null);
+        }
+    }
+
+    @EventListener
+    public void aoDesconectar(SessionDisconnectEvent evento) {
+        publicarControle(evento.getSessionId(), EventoSessao.ENCERRAR, null, null);
+    }
+
+    public int getSessoesAtivas() {
+        return sessoesAtivas.get();
+    }
+
+    /**
+     * Sessões desconectadas aguardando retomada
+     */
+    public int getSessoesRetidas() {
+        return sessoesRetidas.get();
+    }
+
+    /**
+     * Sessões com navegação em andamento (rota iniciada e destino não alcançado)
+     */
+    public int getSessoesNavegando() {
+        return sessoesNavegando.get();
+    }
+
+    public long getEventosDescartados() {
+        return eventosDescartados.sum();
+    }
+
+    public long getFixesCoalescidos() {
+        return fixesCoalescidos.sum();
+    }
+
+    public int getQuantidadeFragmentos() {
+        return quantidadeFragmentos;
+    }
+
+    /**
+     * Eventos pendentes em todos os fragmentos
+     */
+    public int getEventosPendentes() {
+        int total = 0;
+        for (Fragmento fragmento : fragmentos) {
+            total += fragmento.anel.tamanho();
+        }
+        return total;
+    }
+
+    private boolean publicarControle(String sessaoId, int tipo, Rota rota, Object anexo) {
+        return publicarControle(sessaoId, tipo, rota, anexo, null);
+    }
+
+    private boolean publicarControle(String sessaoId, int tipo, Rota rota, Object anexo, String token) {
+        Fragmento fragmento = fragmentoDe(sessaoId);
+        for (int tentativa = 0; tentativa < TENTATIVAS_EVENTO_CONTROLE; tentativa++) {
+            long pos = fragmento.anel.reservar();
+            if (pos >= 0) {
+                EventoSessao evento = fragmento.anel.slot(pos);
+                evento.tipo = tipo;
+                evento.sessaoId = sessaoId;
+                evento.rota = rota;
+                evento.anexo = anexo;
+                evento.token = token;
+                fragmento.publicar(pos);
+                return true;
+            }
+            Thread.yield();
+        }
+        eventosDescartados.increment();
+        logger.warn("Fragmento {} saturado; evento {} da sessão {} descartado", fragmento.indice, tipo, sessaoId);
+        return false;
+    }
+
+    private Fragmento fragmentoDe(String sessaoId) {
+        int h = sessaoId.hashCode();
+        h ^= (h >>> 16);
+        return fragmentos[(h & 0x7fffffff) % fragmentos.length];
+    }
+
+    private final class Fragmento implements Runnable {
+
+        final int indice;
+        final AnelEventos<EventoSessao> anel = new AnelEventos<>(capacidadeAnel, EventoSessao::new);
+        final Map<String, SessaoNavegacao> sessoes = new HashMap<>();
+        // Em ordem de desconexão, que com prazo único é a ordem de expiração
+        final Map<String, SessaoNavegacao> retidas = new LinkedHashMap<>();
+        final List<SessaoNavegacao> comFixPendente = new ArrayList<>();
+        final Thread thread;
+        final Consumer<EventoSessao> processador = this::processar;
+        volatile boolean executando = true;
+        volatile boolean ocioso;
+        long proximaExpiracao;
+
+        Fragmento(int indice) {
+            this.indice = indice;
+            this.thread = new Thread(this, "navegacao-fragmento-" + indice);
+            this.thread.setDaemon(true);
+        }
+
+        void publicar(long pos) {
+            anel.publicar(pos);
+            if (ocioso) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (executando) {
+                int processados = anel.drenar(processador, LOTE_DRENAGEM);
+                aplicarFixesPendentes();
+                if (!retidas.isEmpty()) {
+                    expirarRetidas();
+                }
+                if (processados == 0) {
+                    ocioso = true;
+                    if (anel.isVazio()) {
+                        LockSupport.parkNanos(this, ESPERA_OCIOSA_NANOS);
+                    }
+                    ocioso = false;
+                }
+            }
+        }
+
+        private void processar(EventoSessao evento) {
+            boolean navegavaAntes = false;
+            try {
+                if (evento.tipo == EventoSessao.POSICAO) {
+                    // Fixes ainda no anel quando a sessão foi encerrada não a recriam
+                    SessaoNavegacao sessao = sessoes.get(evento.sessaoId);
+                    if (sessao != null) {
+                        guardarFix(sessao, evento);
+                    }
+                    return;
+                }
+
+                // Mantém a ordem da sessão: o fix pendente é aplicado antes do comando
+                SessaoNavegacao existente = sessoes.get(evento.sessaoId);
+                if (existente != null) {
+                    aplicarFixPendente(existente);
+                }
+                navegavaAntes = existente != null && existente.isAtiva();
+
+                // Só conexão, início de navegação e importação criam a sessão
+                switch (evento.tipo) {
+                    case EventoSessao.CONECTAR:
+                        obterOuCriar(evento.sessaoId);
+                        break;
+                    case EventoSessao.INICIAR:
+                        motor.iniciar(obterOuCriar(evento.sessaoId), evento.rota);
+                        break;
+                    case EventoSessao.ROTA:
+                        if (existente != null && existente.isAtiva()) {
+                            motor.trocarRota(existente, evento.rota);
+                        }
+                        break;
+                    case EventoSessao.PARAR:
+                        if (existente != null) {
+                            motor.parar(existente);
+                        }
+                        break;
+                    case EventoSessao.PROXIMA:
+                        if (existente != null) {
+                            motor.proximaInstrucao(existente);
+                        }
+                        break;
+                    case EventoSessao.ENCERRAR:
+                        if (existente != null) {
+                            motor.encerrar(existente);
+                        }
+                        reter(remover(evento.sessaoId));
+                        break;
+                    case EventoSessao.EXPORTAR:
+                        exportar(evento);
+                        break;
+                    case EventoSessao.IMPORTAR:
+                        SessaoNavegacao importada = obterOuCriar(evento.sessaoId);
+                        ((EstadoSessao) evento.anexo).aplicarEm(importada);
+                        // Novo id e novo token para uma próxima retomada
+                        motor.enviarIdentificacao(importada);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Erro ao processar evento {} da sessão {}: {}", evento.tipo, evento.sessaoId, e.getMessage(), e);
+            } finally {
+                if (evento.tipo != EventoSessao.POSICAO) {
+                    SessaoNavegacao atual = sessoes.get(evento.sessaoId);
+                    contarNavegacao(navegavaAntes, atual != null && atual.isAtiva());
+                }
+                evento.limpar();
+            }
+        }
+
+        private void guardarFix(SessaoNavegacao sessao, EventoSessao evento) {
+            if (sessao.isTemFixPendente()) {
+                fixesCoalescidos.increment();
+            } else {
+                sessao.setTemFixPendente(true);
+                comFixPendente.add(sessao);
+            }
+            sessao.getFixPendente().copiarDe(evento.fix);
+        }
+
+        private void aplicarFixesPendentes() {
+            for (int i = 0; i < comFixPendente.size(); i++) {
+                aplicarFixPendente(comFixPendente.get(i));
+            }
+            comFixPendente.clear();
+        }
+
+        private void aplicarFixPendente(SessaoNavegacao sessao) {
+            if (!sessao.isTemFixPendente()) {
+                return;
+            }
+            sessao.setTemFixPendente(false);
+            boolean navegavaAntes = sessao.isAtiva();
+            try {
+                motor.processarPosicao(sessao, sessao.getFixPendente());
+            } catch (RuntimeException e) {
+                logger.error("Erro ao processar posição da sessão {}: {}", sessao.getId(), e.getMessage(), e);
+            }
+            contarNavegacao(navegavaAntes, sessao.isAtiva());
+        }
+
+        private void contarNavegacao(boolean antes, boolean depois) {
+            if (antes != depois) {
+                sessoesNavegando.addAndGet(depois ? 1 : -1);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void exportar(EventoSessao evento) {
+            CompletableFuture<EstadoSessao> resultado = (CompletableFuture<EstadoSessao>) evento.anexo;
+            SessaoNavegacao sessao = sessoes.get(evento.sessaoId);
+            boolean retida = sessao == null;
+            if (retida) {
+                sessao = retidas.get(evento.sessaoId);
+            }
+            if (sessao == null || !sessao.tokenConfere(evento.token)) {
+                resultado.complete(null);
+                return;
+            }
+            if (retida) {
+                retidas.remove(evento.sessaoId);
+                sessoesRetidas.decrementAndGet();
+            } else {
+                remover(evento.sessaoId);
+                motor.encerrar(sessao);
+            }
+            resultado.complete(EstadoSessao.de(sessao));
+        }
+
+        /**
+         * Guarda a sessão desconectada para retomada; sem rota não há o que retomar
+         */
+        private void reter(SessaoNavegacao sessao) {
+            if (sessao == null || sessao.getRota() == null || retencaoNanos <= 0) {
+                return;
+            }
+            sessao.setDesconectadaEm(System.nanoTime());
+            if (retidas.put(sessao.getId(), sessao) == null) {
+                sessoesRetidas.incrementAndGet();
+            }
+        }
+
+        private void expirarRetidas() {
+            long agora = System.nanoTime();
+            if (agora - proximaExpiracao < 0) {
+                return;
+            }
+            proximaExpiracao = agora + INTERVALO_EXPIRACAO_NANOS;
+            Iterator<SessaoNavegacao> iterador = retidas.values().iterator();
+            while (iterador.hasNext()) {
+                SessaoNavegacao sessao = iterador.next();
+                if (agora - sessao.getDesconectadaEm() < retencaoNanos) {
+                    break;
+                }
+                iterador.remove();
+                sessoesRetidas.decrementAndGet();
+                logger.debug("Sessão {} não retomada em {} ms; descartada", sessao.getId(),
+                        TimeUnit.NANOSECONDS.toMillis(retencaoNanos));
+            }
+        }
+
+        private SessaoNavegacao remover(String sessaoId) {
+            SessaoNavegacao sessao = sessoes.remove(sessaoId);
+            if (sessao != null) {
+                sessao.setTemFixPendente(false);
+                sessoesAtivas.decrementAndGet();
+            }
+            return sessao;
+        }
+
+        private SessaoNavegacao obterOuCriar(String sessaoId) {
+            SessaoNavegacao sessao = sessoes.get(sessaoId);
+            if (sessao == null) {
+                sessao = new SessaoNavegacao(sessaoId);
+                sessoes.put(sessaoId, sessao);
+                sessoesAtivas.incrementAndGet();
+            }
+            return sessao;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.cwcdev.ia.navegacao;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+
+import com.cwcdev.ia.geocerca.Geocerca;
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.model.AnotacoesRota;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Estado de navegação de uma sessão STOMP.
+ *
+ * Cada sessão pertence a um único fragmento de {@link ProcessadorSessoes} e só
+ * é lida/alterada pela thread desse fragmento, por isso não há sincronização.
+ */
+public class SessaoNavegacao {
+
+    private final String id;
+    // Entregue só ao cliente dono da sessão; exigido para retomá-la após reconexão
+    private final String tokenRetomada = UUID.randomUUID().toString();
+    private Rota rota;
+    private boolean ativa;
+    private int instrucaoAtualIndex;
+    private int indiceUltimoAlerta = -1;
+    private final FixGps posicao = new FixGps();
+    private final FixGps fixPendente = new FixGps();
+    private boolean temFixPendente;
+    private int intervaloRecomendadoMs;
+    private final AnotacoesRota.Projecao projecao = new AnotacoesRota.Projecao();
+    private double ultimaEtaEnviada = Double.NaN;
+    private boolean foraDaRota;
+    // Geocercas em que o veículo está (poucas; busca linear)
+    private Geocerca[] geocercas = new Geocerca[4];
+    private int quantidadeGeocercas;
+    // System.nanoTime() da desconexão, enquanto a sessão aguarda retomada
+    private long desconectadaEm;
+
+    public SessaoNavegacao(String id) {
+        this.id = id;
+        this.posicao.limpar();
+    }
+
+    /**
+     * Cabeçalhos para entrega direcionada à sessão (sem usuário autenticado,
+     * o destino /user é resolvido pelo id da sessão). Um novo conjunto por
+     * envio, pois o template torna os cabeçalhos imutáveis ao enviar.
+     */
+    public static MessageHeaders criarCabecalhos(String sessaoId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessaoId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    public void reiniciar(Rota rota) {
+        this.rota = rota;
+        this.ativa = rota != null;
+        this.instrucaoAtualIndex = 0;
+        this.indiceUltimoAlerta = -1;
+        this.projecao.segmento = 0;
+        this.projecao.fracao = 0;
+        this.ultimaEtaEnviada = Double.NaN;
+        this.foraDaRota = false;
+    }
+
+    public String getId() { return id; }
+
+    public String getTokenRetomada() { return tokenRetomada; }
+
+    /**
+     * Compara o token informado com o da sessão em tempo constante
+     */
+    public boolean tokenConfere(String token) {
+        return token != null && MessageDigest.isEqual(tokenRetomada.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Rota getRota() { return rota; }
+
+    public boolean isAtiva() { return ativa; }
+    public void setAtiva(boolean ativa) { this.ativa = ativa; }
+
+    public int getInstrucaoAtualIndex() { return instrucaoAtualIndex; }
+    public void setInstrucaoAtualIndex(int instrucaoAtualIndex) { this.instrucaoAtualIndex = instrucaoAtualIndex; }
+
+    public int getIndiceUltimoAlerta() { return indiceUltimoAlerta; }
+    public void setIndiceUltimoAlerta(int indiceUltimoAlerta) { this.indiceUltimoAlerta = indiceUltimoAlerta; }
+
+    public FixGps getPosicao() { return posicao; }
+
+    public FixGps getFixPendente() { return fixPendente; }
+
+    public boolean isTemFixPendente() { return temFixPendente; }
+    public void setTemFixPendente(boolean temFixPendente) { this.temFixPendente = temFixPendente; }
+
+    public AnotacoesRota.Projecao getProjecao() { return projecao; }
+
+    public double getUltimaEtaEnviada() { return ultimaEtaEnviada; }
+    public void setUltimaEtaEnviada(double ultimaEtaEnviada) { this.ultimaEtaEnviada = ultimaEtaEnviada; }
+
+    public boolean isForaDaRota() { return foraDaRota; }
+    public void setForaDaRota(boolean foraDaRota) { this.foraDaRota = foraDaRota; }
+
+    public Geocerca getGeocerca(int indice) { return geocercas[indice]; }
+
+    public int getQuantidadeGeocercas() { return quantidadeGeocercas; }
+
+    public boolean estaEm(Geocerca geocerca) {
+        for (int i = 0; i < quantidadeGeocercas; i++) {
+            if (geocercas[i] == geocerca) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void entrarEm(Geocerca geocerca) {
+        if (quantidadeGeocercas == geocercas.length) {
+            geocercas = Arrays.copyOf(geocercas, geocercas.length * 2);
+        }
+        geocercas[quantidadeGeocercas++] = geocerca;
+    }
+
+    /**
+     * Remove a geocerca da posição informada (a última ocupa o seu lugar)
+     */
+    public void sairDe(int indice) {
+        geocercas[indice] = geocercas[--quantidadeGeocercas];
+        geocercas[quantidadeGeocercas] = null;
+    }
+
+    public long getDesconectadaEm() { return desconectadaEm; }
+    public void setDesconectadaEm(long desconectadaEm) { this.desconectadaEm = desconectadaEm; }
+
+    public int getIntervaloRecomendadoMs() { return intervaloRecomendadoMs; }
+    public void setIntervaloRecomendadoMs(int intervaloRecomendadoMs) { this.intervaloRecomendadoMs = intervaloRecomendadoMs; }
+}
@@ -0,0 +1,214 @@
+package com.cwcdev.ia.navegacao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Transferência do estado de navegação entre nós. Quando um cliente reconecta
+ * em outro nó, o novo nó busca o estado da sessão anterior no nó de origem
+ * (POST /api/sessoes/{id}/estado), que o remove, e o assume na nova sessão.
+ * A sessão anterior pode já estar desconectada: o nó de origem a retém por
+ * navegacao.sessoes.retencao-ms, junto com a versão de rota do cliente.
+ *
+ * A retomada roda num pool próprio, fora do canal de entrada STOMP que leva
+ * os fixes. A chamada entre nós usa um RestTemplate só dela, com timeouts
+ * curtos (navegacao.transferencia.*-ms) e sem os interceptores dos serviços
+ * externos (admissão, métricas, gravação).
+ *
+ * Retomar exige o token de retomada entregue só ao cliente dono da sessão
+ * (/user/queue/sessao). Entre nós, a exportação exige ainda o segredo
+ * compartilhado (navegacao.transferencia.segredo) e um nó de origem listado
+ * em navegacao.nos; sem segredo configurado só a retomada local funciona.
+ */
+@Service
+public class TransferenciaSessoes {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferenciaSessoes.class);
+    private static final long ESPERA_EXPORTACAO_MS = 2000;
+    private static final int THREADS = 2;
+    private static final int FILA = 64;
+
+    public static final String CABECALHO_NO = "X-No-Navegacao";
+    public static final String CABECALHO_SEGREDO = "X-Segredo-Navegacao";
+
+    private final ProcessadorSessoes processadorSessoes;
+    private final VersoesRota versoesRota;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final String urlNoLocal;
+    private final Set<String> nosAutorizados;
+    private final byte[] segredo;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public TransferenciaSessoes(ProcessadorSessoes processadorSessoes, VersoesRota versoesRota,
+            ObjectMapper objectMapper,
+            @Value("${navegacao.no.url:}") String urlNoLocal,
+            @Value("${navegacao.nos:}") String nos,
+            @Value("${navegacao.transferencia.segredo:}") String segredo,
+            @Value("${navegacao.transferencia.conexao-ms:1000}") int conexaoMs,
+            @Value("${navegacao.transferencia.leitura-ms:2000}") int leituraMs) {
+        this.processadorSessoes = processadorSessoes;
+        this.versoesRota = versoesRota;
+        SimpleClientHttpRequestFactory fabrica = new SimpleClientHttpRequestFactory();
+        fabrica.setConnectTimeout(conexaoMs);
+        fabrica.setReadTimeout(leituraMs);
+        this.restTemplate = new RestTemplate(fabrica);
+        this.objectMapper = objectMapper;
+        this.urlNoLocal = normalizar(urlNoLocal);
+        this.segredo = segredo.getBytes(StandardCharsets.UTF_8);
+        this.nosAutorizados = new HashSet<>();
+        for (String no : Arrays.asList(nos.split(","))) {
+            if (!no.trim().isEmpty()) {
+                nosAutorizados.add(normalizar(no));
+            }
+        }
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(FILA), r -> {
+                    Thread thread = new Thread(r, "transferencia-sessoes-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    public String getUrlNoLocal() {
+        return urlNoLocal;
+    }
+
+    /**
+     * Exporta (e remove deste nó) o estado de uma sessão local; null se a
+     * sessão não existir ou o token não conferir
+     */
+    public EstadoSessao exportarLocal(String sessaoId, String token) throws Exception {
+        return exportar(sessaoId, token).get(ESPERA_EXPORTACAO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pedido de exportação vindo de outro nó: segredo configurado e igual ao
+     * informado, e nó solicitante listado em navegacao.nos
+     */
+    public boolean isNoAutorizado(String no, String segredoInformado) {
+        return segredo.length > 0 && segredoInformado != null
+                && MessageDigest.isEqual(segredo, segredoInformado.getBytes(StandardCharsets.UTF_8))
+                && nosAutorizados.contains(normalizar(no));
+    }
+
+    /**
+     * Retoma na sessão atual o estado da sessão anterior, local ou de outro nó,
+     * sem bloquear a thread chamadora
+     *
+     * @return true se algum estado foi encontrado, o token conferiu e o estado foi assumido
+     */
+    public CompletableFuture<Boolean> retomar(String sessaoAtual, String sessaoAnterior, String token, String noOrigem) {
+        if (sessaoAnterior == null || token == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        String origem = normalizar(noOrigem);
+        CompletableFuture<EstadoSessao> exportacao;
+        try {
+            if (origem.isEmpty() || origem.equals(urlNoLocal)) {
+                exportacao = exportar(sessaoAnterior, token);
+            } else if (nosAutorizados.contains(origem) && segredo.length > 0) {
+                exportacao = CompletableFuture.supplyAsync(() -> exportarRemoto(origem, sessaoAnterior, token), executor);
+            } else {
+                logger.warn("Nó de origem não autorizado para transferência: {}", noOrigem);
+                return CompletableFuture.completedFuture(false);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.warn("Muitas retomadas em andamento; sessão {} não retomada", sessaoAnterior);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // Assume fora da thread que concluiu a exportação (fragmento ou pool)
+        return exportacao.thenApplyAsync(estado -> {
+            if (estado == null) {
+                return false;
+            }
+            versoesRota.importar(sessaoAtual, estado);
+            processadorSessoes.importar(sessaoAtual, estado);
+            logger.info("Sessão {} retomada como {} (origem: {})", sessaoAnterior, sessaoAtual,
+                    origem.isEmpty() ? "local" : origem);
+            return true;
+        }, executor).exceptionally(erro -> {
+            Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+            logger.warn("Falha ao retomar sessão {}: {}", sessaoAnterior, causa.getMessage());
+            return false;
+        });
+    }
+
+    /**
+     * Exportação local; concluída pela thread do fragmento da sessão
+     */
+    private CompletableFuture<EstadoSessao> exportar(String sessaoId, String token) {
+        return processadorSessoes.exportar(sessaoId, token).thenApply(estado -> {
+            if (estado != null) {
+                versoesRota.exportar(sessaoId, estado);
+            }
+            return estado;
+        });
+    }
+
+    private EstadoSessao exportarRemoto(String origem, String sessaoId, String token) {
+        HttpHeaders cabecalhos = new HttpHeaders();
+        cabecalhos.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        cabecalhos.set(CABECALHO_NO, urlNoLocal);
+        cabecalhos.set(CABECALHO_SEGREDO, new String(segredo, StandardCharsets.UTF_8));
+        MultiValueMap<String, String> formulario = new LinkedMultiValueMap<>();
+        formulario.add("token", token);
+        try {
+            String corpo = restTemplate.postForObject(origem + "/api/sessoes/{id}/estado",
+                    new HttpEntity<>(formulario, cabecalhos), String.class, sessaoId);
+            return corpo != null ? objectMapper.readValue(corpo, EstadoSessao.class) : null;
+        } catch (HttpClientErrorException.NotFound e) {
+            return null;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static String normalizar(String url) {
+        if (url == null) {
+            return "";
+        }
+        String limpa = url.trim();
+        while (limpa.endsWith("/")) {
+            limpa = limpa.substring(0, limpa.length() - 1);
+        }
+        return limpa;
+    }
+}
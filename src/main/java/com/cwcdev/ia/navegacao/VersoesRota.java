@@ -0,0 +1,249 @@
+package com.cwcdev.ia.navegacao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.cwcdev.ia.codec.Polyline;
+import com.cwcdev.ia.model.InstrucaoNavegacao;
+import com.cwcdev.ia.model.Rota;
+
+/**
+ * Última versão de rota entregue a cada sessão, base das diferenças enviadas
+ * no recálculo e rota usada quando a sessão inicia a navegação.
+ *
+ * Uma diferença substitui um único trecho contíguo da geometria e da lista de
+ * instruções: o que sobra entre o maior prefixo e o maior sufixo em comum com
+ * a versão anterior. Num desvio típico o destino não muda e o fim da rota é
+ * igual, então só o começo é transmitido.
+ *
+ * A versão de uma sessão desconectada é guardada pelo mesmo prazo de retenção
+ * da sessão ({@link ProcessadorSessoes}) e passa para a sessão que a retomar,
+ * para que o recálculo depois da retomada ainda chegue como diferença.
+ */
+@Component
+public class VersoesRota {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersoesRota.class);
+
+    private final Map<String, Versao> porSessao = new ConcurrentHashMap<>();
+    // Sessão desconectada -> System.nanoTime() da desconexão
+    private final Map<String, Long> desconectadas = new ConcurrentHashMap<>();
+    private final long retencaoNanos;
+
+    @Autowired
+    public VersoesRota(@Value("${navegacao.sessoes.retencao-ms:120000}") long retencaoMs) {
+        this.retencaoNanos = TimeUnit.MILLISECONDS.toNanos(retencaoMs);
+    }
+
+    /**
+     * Registra a rota como nova versão da sessão (entregue por completo) e retorna o número dela
+     */
+    public int registrar(String sessaoId, Rota rota) {
+        return porSessao.compute(sessaoId, (id, atual) -> new Versao(atual != null ? atual.numero + 1 : 1, rota)).numero;
+    }
+
+    /**
+     * Rota da versão atual da sessão, ou null se nenhuma foi concluída
+     */
+    public Rota rotaAtual(String sessaoId) {
+        Versao atual = porSessao.get(sessaoId);
+        return atual != null ? atual.rota : null;
+    }
+
+    public boolean possui(String sessaoId, int versao) {
+        Versao atual = porSessao.get(sessaoId);
+        return atual != null && atual.numero == versao;
+    }
+
+    /**
+     * Diferença da versão {@code versaoBase} para a rota nova, que passa a ser
+     * a versão atual. Retorna null, sem registrar nada, se a sessão não estiver
+     * na versão base ou se as rotas não tiverem início nem fim em comum (o
+     * chamador envia então a rota completa).
+     */
+    Diferenca diferenca(String sessaoId, int versaoBase, Rota rota) {
+        AtomicReference<Diferenca> resultado = new AtomicReference<>();
+        porSessao.computeIfPresent(sessaoId, (id, base) -> {
+            if (base.numero != versaoBase) {
+                return base;
+            }
+            Versao nova = new Versao(base.numero + 1, rota);
+            Diferenca diferenca = comparar(base, nova);
+            if (diferenca == null) {
+                return base;
+            }
+            resultado.set(diferenca);
+            return nova;
+        });
+        return resultado.get();
+    }
+
+    /**
+     * Retira a versão da sessão exportada e a anota no estado transferido
+     */
+    void exportar(String sessaoId, EstadoSessao estado) {
+        desconectadas.remove(sessaoId);
+        Versao versao = porSessao.remove(sessaoId);
+        if (versao != null) {
+            estado.setVersaoRota(versao.numero);
+            // A rota da versão costuma ser a mesma da navegação; não é repetida
+            estado.setRotaVersao(versao.rota != estado.getRota() ? versao.rota : null);
+        }
+    }
+
+    /**
+     * Assume na sessão que retomou a versão que o cliente já tem
+     */
+    void importar(String sessaoId, EstadoSessao estado) {
+        Rota rota = estado.getRotaVersao() != null ? estado.getRotaVersao() : estado.getRota();
+        if (estado.getVersaoRota() > 0 && rota != null) {
+            porSessao.putIfAbsent(sessaoId, new Versao(estado.getVersaoRota(), rota));
+        }
+    }
+
+    @EventListener
+    public void aoDesconectar(SessionDisconnectEvent evento) {
+        String sessaoId = evento.getSessionId();
+        if (retencaoNanos <= 0) {
+            porSessao.remove(sessaoId);
+        } else if (porSessao.containsKey(sessaoId)) {
+            desconectadas.put(sessaoId, System.nanoTime());
+        }
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public void expirarDesconectadas() {
+        long agora = System.nanoTime();
+        desconectadas.entrySet().removeIf(entrada -> {
+            if (agora - entrada.getValue() < retencaoNanos) {
+                return false;
+            }
+            porSessao.remove(entrada.getKey());
+            return true;
+        });
+    }
+
+    public int getSessoes() {
+        return porSessao.size();
+    }
+
+    private static Diferenca comparar(Versao base, Versao nova) {
+        int pontosBase = base.pontos.length / 2;
+        int pontosNova = nova.pontos.length / 2;
+        int prefixoPontos = 0;
+        while (prefixoPontos < pontosBase && prefixoPontos < pontosNova
+                && mesmoPonto(base.pontos, prefixoPontos, nova.pontos, prefixoPontos)) {
+            prefixoPontos++;
+        }
+        int sufixoPontos = 0;
+        while (sufixoPontos < pontosBase - prefixoPontos && sufixoPontos < pontosNova - prefixoPontos
+                && mesmoPonto(base.pontos, pontosBase - 1 - sufixoPontos, nova.pontos, pontosNova - 1 - sufixoPontos)) {
+            sufixoPontos++;
+        }
+        if (prefixoPontos == 0 && sufixoPontos == 0) {
+            return null;
+        }
+
+        List<InstrucaoNavegacao> anteriores = base.instrucoes;
+        List<InstrucaoNavegacao> novas = nova.instrucoes;
+        int prefixoInstrucoes = 0;
+        while (prefixoInstrucoes < anteriores.size() && prefixoInstrucoes < novas.size()
+                && mesmaInstrucao(anteriores.get(prefixoInstrucoes), novas.get(prefixoInstrucoes))) {
+            prefixoInstrucoes++;
+        }
+        int sufixoInstrucoes = 0;
+        while (sufixoInstrucoes < anteriores.size() - prefixoInstrucoes && sufixoInstrucoes < novas.size() - prefixoInstrucoes
+                && mesmaInstrucao(anteriores.get(anteriores.size() - 1 - sufixoInstrucoes),
+                        novas.get(novas.size() - 1 - sufixoInstrucoes))) {
+            sufixoInstrucoes++;
+        }
+
+        Diferenca diferenca = new Diferenca();
+        diferenca.versaoBase = base.numero;
+        diferenca.versao = nova.numero;
+        diferenca.pontos = nova.pontos;
+        diferenca.inicioPontos = prefixoPontos;
+        diferenca.fimPontos = pontosNova - sufixoPontos;
+        diferenca.pontosRemovidos = pontosBase - prefixoPontos - sufixoPontos;
+        diferenca.inicioInstrucoes = prefixoInstrucoes;
+        diferenca.instrucoes = novas.subList(prefixoInstrucoes, novas.size() - sufixoInstrucoes);
+        diferenca.instrucoesRemovidas = anteriores.size() - prefixoInstrucoes - sufixoInstrucoes;
+        // Instruções mantidas no fim ficam a outra distância da origem
+        diferenca.ajusteDistancia = sufixoInstrucoes > 0
+                ? novas.get(novas.size() - sufixoInstrucoes).getDistanciaAcumulada()
+                        - anteriores.get(anteriores.size() - sufixoInstrucoes).getDistanciaAcumulada()
+                : 0;
+        logger.debug("Diferença {} -> {}: {} de {} pontos e {} de {} instruções novos", base.numero, nova.numero,
+                diferenca.fimPontos - prefixoPontos, pontosNova, diferenca.instrucoes.size(), novas.size());
+        return diferenca;
+    }
+
+    private static boolean mesmoPonto(int[] a, int i, int[] b, int j) {
+        return a[2 * i] == b[2 * j] && a[2 * i + 1] == b[2 * j + 1];
+    }
+
+    /**
+     * Igualdade sem a distância acumulada e o ponto de alerta, que dependem da origem
+     */
+    private static boolean mesmaInstrucao(InstrucaoNavegacao a, InstrucaoNavegacao b) {
+        return a.getDistancia() == b.getDistancia()
+                && a.getDuracao() == b.getDuracao()
+                && Objects.equals(a.getTipo(), b.getTipo())
+                && Objects.equals(a.getDirecao(), b.getDirecao())
+                && Objects.equals(a.getNomeRua(), b.getNomeRua())
+                && Objects.equals(a.getInstrucao(), b.getInstrucao())
+                && Objects.equals(a.getLatitude(), b.getLatitude())
+                && Objects.equals(a.getLongitude(), b.getLongitude());
+    }
+
+    /**
+     * Trecho alterado: na geometria da versão base, {@code pontosRemovidos}
+     * pontos a partir de {@code inicioPontos} dão lugar aos pontos
+     * [inicioPontos, fimPontos) de {@code pontos}; o mesmo vale para as
+     * instruções. As instruções mantidas depois do trecho somam
+     * {@code ajusteDistancia} à distância acumulada.
+     */
+    static final class Diferenca {
+        int versaoBase;
+        int versao;
+        int[] pontos;
+        int inicioPontos;
+        int fimPontos;
+        int pontosRemovidos;
+        int inicioInstrucoes;
+        List<InstrucaoNavegacao> instrucoes;
+        int instrucoesRemovidas;
+        double ajusteDistancia;
+    }
+
+    /**
+     * O que o cliente tem de uma versão: a rota, a geometria decodificada e as instruções
+     */
+    private static final class Versao {
+        final int numero;
+        final Rota rota;
+        final int[] pontos;
+        final List<InstrucaoNavegacao> instrucoes;
+
+        Versao(int numero, Rota rota) {
+            this.numero = numero;
+            this.rota = rota;
+            this.pontos = Polyline.decodificar(rota.getGeometria());
+            this.instrucoes = rota.getInstrucoes() != null ? rota.getInstrucoes() : new ArrayList<>();
+        }
+    }
+}
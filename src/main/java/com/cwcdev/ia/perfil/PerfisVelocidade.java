@@ -0,0 +1,464 @@
+package com.cwcdev.ia.perfil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.model.AnotacoesRota;
+import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.navegacao.AnelEventos;
+
+/**
+ * Perfis históricos de velocidade por trecho da malha e faixa horária da semana.
+ *
+ * As velocidades medidas pelos fixes GPS chegam por um anel e são agregadas por
+ * uma única thread em uma tabela de endereçamento aberto fora do heap
+ * (ByteBuffer direto). Cada trecho ocupa um slot de tamanho fixo:
+ * <pre>
+ * chave:long | ultimaHora:int | 42 faixas x (amostras:uint16, media:uint16 em cm/s)
+ * </pre>
+ * As 42 faixas são 7 dias x 6 blocos de 4 horas; ultimaHora é a hora (desde a
+ * época) da amostra mais recente. A tabela nunca cresce: na ocupação máxima, um
+ * trecho novo entra no lugar do trecho sem amostras há mais tempo numa amostra
+ * de slots tomada por um ponteiro circular (LRU aproximado), desde que esse
+ * trecho seja de hora anterior; senão a amostra é descartada. A remoção
+ * desloca para trás os trechos seguintes do agrupamento, mantendo as
+ * sequências de sondagem sem marcadores de remoção.
+ *
+ * Um snapshot é gravado periodicamente em disco e recarregado na
+ * inicialização; se a capacidade mudou (ou o snapshot é do formato anterior,
+ * sem ultimaHora), os trechos são reinseridos um a um.
+ *
+ * Amostras abaixo da velocidade mínima (veículo parado, ruído do GPS) são
+ * ignoradas, e no ajuste a velocidade do perfil nunca fica abaixo de uma
+ * fração da velocidade do OSRM no trecho: um trecho contaminado pode alongar a
+ * ETA, mas não por ordens de grandeza.
+ */
+@Component
+public class PerfisVelocidade {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfisVelocidade.class);
+
+    static final int FAIXAS = 7 * 6;
+    private static final int INICIO_FAIXAS = 12;
+    private static final int TAMANHO_SLOT = INICIO_FAIXAS + FAIXAS * 4;
+    private static final int MAGICO = 0x50524632; // "PRF2"
+    // Formato anterior: slot sem ultimaHora
+    private static final int MAGICO_V1 = 0x50455246; // "PERF"
+    private static final int INICIO_FAIXAS_V1 = 8;
+    // Slots ocupados examinados para escolher o trecho substituído
+    private static final int AMOSTRA_SUBSTITUICAO = 16;
+    private static final int AMOSTRAS_MAXIMAS = 1000; // a média passa a se comportar como média móvel
+    private static final double OCUPACAO_MAXIMA = 0.75;
+    private static final long MS_POR_HORA = 3_600_000L;
+
+    private final int capacidade;
+    private final int mascara;
+    private final int minimoAmostras;
+    private final double velocidadeMinima;
+    private final double fracaoMinimaOsrm;
+    private final Path arquivo;
+    private final ByteBuffer tabela;
+    private final AnelEventos<Amostra> anel;
+    private final Consumer<Amostra> agregador = this::agregar;
+    private final LongAdder amostrasDescartadas = new LongAdder();
+    private final LongAdder trechosSubstituidos = new LongAdder();
+    private volatile int ocupados;
+    private int ponteiroSubstituicao;
+    private volatile boolean executando = true;
+    private Thread thread;
+
+    public PerfisVelocidade(
+            @Value("${navegacao.perfis.capacidade:65536}") int capacidadeMinima,
+            @Value("${navegacao.perfis.amostras-minimas:5}") int minimoAmostras,
+            @Value("${navegacao.perfis.velocidade-minima:1.0}") double velocidadeMinima,
+            @Value("${navegacao.perfis.fracao-minima-osrm:0.2}") double fracaoMinimaOsrm,
+            @Value("${navegacao.perfis.arquivo:dados/perfis-velocidade.bin}") String arquivo) {
+        this.capacidade = Integer.highestOneBit(Math.max(2, capacidadeMinima - 1)) << 1;
+        this.mascara = capacidade - 1;
+        this.minimoAmostras = minimoAmostras;
+        this.velocidadeMinima = velocidadeMinima;
+        this.fracaoMinimaOsrm = fracaoMinimaOsrm;
+        this.arquivo = Paths.get(arquivo);
+        this.tabela = ByteBuffer.allocateDirect(capacidade * TAMANHO_SLOT);
+        this.anel = new AnelEventos<>(8192, Amostra::new);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        carregarSnapshot();
+        thread = new Thread(this::executar, "perfis-velocidade");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executando = false;
+        LockSupport.unpark(thread);
+        gravarSnapshot();
+    }
+
+    /**
+     * Registra a velocidade observada em um trecho; nunca bloqueia (descarta se
+     * o anel estiver cheio). Velocidades abaixo de navegacao.perfis.velocidade-minima
+     * (m/s) são ignoradas.
+     */
+    public void registrar(long chaveSegmento, double velocidade, long timestamp) {
+        if (chaveSegmento == 0 || !(velocidade >= velocidadeMinima)) {
+            return;
+        }
+        long pos = anel.reservar();
+        if (pos < 0) {
+            amostrasDescartadas.increment();
+            return;
+        }
+        Amostra amostra = anel.slot(pos);
+        amostra.chave = chaveSegmento;
+        amostra.velocidade = (float) velocidade;
+        amostra.timestamp = timestamp;
+        anel.publicar(pos);
+    }
+
+    /**
+     * Substitui as durações por segmento da rota pelas do perfil histórico,
+     * considerando o horário previsto de passagem em cada trecho. Trechos sem
+     * amostras suficientes mantêm a estimativa do OSRM; nos demais a velocidade
+     * fica limitada a no mínimo navegacao.perfis.fracao-minima-osrm da do OSRM.
+     *
+     * @return quantidade de segmentos ajustados
+     */
+    public int ajustar(Rota rota, long partida) {
+        AnotacoesRota anotacoes = rota.getAnotacoes();
+        if (anotacoes == null || ocupados == 0) {
+            return 0;
+        }
+
+        int segmentos = anotacoes.getSegmentos();
+        double[] duracoes = new double[segmentos];
+        double decorrido = 0;
+        int ajustados = 0;
+        for (int i = 0; i < segmentos; i++) {
+            double duracao = anotacoes.getDuracaoSegmento(i);
+            double velocidade = velocidadeMedia(anotacoes.getChaveSegmento(i),
+                    partida + Math.round(decorrido * 1000));
+            if (velocidade > 0) {
+                double distancia = anotacoes.getDistanciaSegmento(i);
+                if (duracao > 0) {
+                    velocidade = Math.max(velocidade, distancia / duracao * fracaoMinimaOsrm);
+                }
+                duracao = distancia / velocidade;
+                ajustados++;
+            }
+            duracoes[i] = duracao;
+            decorrido += duracao;
+        }
+
+        if (ajustados > 0) {
+            anotacoes.ajustarDuracoes(duracoes);
+            rota.setDuracao(anotacoes.getDuracaoTotal());
+        }
+        return ajustados;
+    }
+
+    /**
+     * Velocidade média (m/s) do trecho na faixa horária do instante informado,
+     * ou 0 se não houver amostras suficientes
+     */
+    public double velocidadeMedia(long chaveSegmento, long instante) {
+        int slot = localizar(chaveSegmento);
+        if (slot < 0) {
+            return 0;
+        }
+        int posicao = slot * TAMANHO_SLOT + INICIO_FAIXAS + faixa(instante) * 4;
+        int amostras = tabela.getShort(posicao) & 0xFFFF;
+        return amostras >= minimoAmostras ? (tabela.getShort(posicao + 2) & 0xFFFF) / 100.0 : 0;
+    }
+
+    public int getTrechosConhecidos() {
+        return ocupados;
+    }
+
+    public int getCapacidade() {
+        return capacidade;
+    }
+
+    public long getAmostrasDescartadas() {
+        return amostrasDescartadas.sum();
+    }
+
+    public long getTrechosSubstituidos() {
+        return trechosSubstituidos.sum();
+    }
+
+    /**
+     * Grava o snapshot da tabela (cópia aproximada: a agregação continua durante a gravação)
+     */
+    @Scheduled(fixedDelayString = "${navegacao.perfis.intervalo-snapshot-ms:600000}",
+            initialDelayString = "${navegacao.perfis.intervalo-snapshot-ms:600000}")
+    public void gravarSnapshot() {
+        if (ocupados == 0) {
+            return;
+        }
+        try {
+            Path diretorio = arquivo.toAbsolutePath().getParent();
+            if (diretorio != null) {
+                Files.createDirectories(diretorio);
+            }
+            Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(12);
+                cabecalho.putInt(MAGICO).putInt(capacidade).putInt(ocupados);
+                cabecalho.flip();
+                escreverTudo(canal, cabecalho);
+                escreverTudo(canal, tabela.duplicate());
+                canal.force(false);
+            }
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Snapshot de perfis de velocidade gravado: {} trechos", ocupados);
+        } catch (IOException e) {
+            logger.warn("Falha ao gravar snapshot de perfis de velocidade: {}", e.getMessage());
+        }
+    }
+
+    private void carregarSnapshot() {
+        if (!Files.exists(arquivo)) {
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(12);
+            lerTudo(canal, cabecalho);
+            cabecalho.flip();
+            int magico = cabecalho.getInt();
+            int capacidadeSnapshot = cabecalho.getInt();
+            int ocupadosSnapshot = cabecalho.getInt();
+            if (magico != MAGICO && magico != MAGICO_V1) {
+                logger.warn("Snapshot de perfis ignorado: formato desconhecido");
+                return;
+            }
+            if (magico == MAGICO && capacidadeSnapshot == capacidade) {
+                ByteBuffer destino = tabela.duplicate();
+                lerTudo(canal, destino);
+                ocupados = ocupadosSnapshot;
+                logger.info("Perfis de velocidade carregados: {} trechos", ocupados);
+                return;
+            }
+            // Trechos do formato anterior contam como vistos quando o snapshot foi gravado
+            int horaArquivo = (int) (Files.getLastModifiedTime(arquivo).toMillis() / MS_POR_HORA);
+            reinserir(canal, magico == MAGICO ? INICIO_FAIXAS : INICIO_FAIXAS_V1, horaArquivo);
+            logger.info("Perfis de velocidade reinseridos: {} de {} trechos (capacidade {} -> {})",
+                    ocupados, ocupadosSnapshot, capacidadeSnapshot, capacidade);
+        } catch (IOException e) {
+            logger.warn("Falha ao carregar snapshot de perfis de velocidade: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Lê os slots do snapshot em sequência e insere cada trecho na tabela
+     * atual; executado antes da thread de agregação iniciar
+     */
+    private void reinserir(FileChannel canal, int inicioFaixas, int horaPadrao) throws IOException {
+        int tamanhoSlot = inicioFaixas + FAIXAS * 4;
+        ByteBuffer lote = ByteBuffer.allocate(tamanhoSlot * 1024);
+        boolean fim = false;
+        while (!fim) {
+            fim = canal.read(lote) < 0;
+            lote.flip();
+            while (lote.remaining() >= tamanhoSlot) {
+                int base = lote.position();
+                long chave = lote.getLong(base);
+                int hora = inicioFaixas == INICIO_FAIXAS ? lote.getInt(base + 8) : horaPadrao;
+                int slot = chave != 0 ? localizarOuInserir(chave, hora) : -1;
+                if (slot >= 0) {
+                    int destino = slot * TAMANHO_SLOT;
+                    tabela.putInt(destino + 8, hora);
+                    for (int i = 0; i < FAIXAS * 4; i += 4) {
+                        tabela.putInt(destino + INICIO_FAIXAS + i, lote.getInt(base + inicioFaixas + i));
+                    }
+                }
+                lote.position(base + tamanhoSlot);
+            }
+            lote.compact();
+        }
+    }
+
+    private void executar() {
+        while (executando) {
+            if (anel.drenar(agregador, 1024) == 0) {
+                LockSupport.parkNanos(this, 5_000_000);
+            }
+        }
+    }
+
+    // Executado apenas pela thread de agregação
+    private void agregar(Amostra amostra) {
+        int hora = (int) (amostra.timestamp / MS_POR_HORA);
+        int slot = localizarOuInserir(amostra.chave, hora);
+        if (slot < 0) {
+            amostrasDescartadas.increment();
+            return;
+        }
+        if (tabela.getInt(slot * TAMANHO_SLOT + 8) < hora) {
+            tabela.putInt(slot * TAMANHO_SLOT + 8, hora);
+        }
+        int posicao = slot * TAMANHO_SLOT + INICIO_FAIXAS + faixa(amostra.timestamp) * 4;
+        int amostras = tabela.getShort(posicao) & 0xFFFF;
+        int media = tabela.getShort(posicao + 2) & 0xFFFF;
+        int velocidade = Math.min(0xFFFF, Math.round(amostra.velocidade * 100));
+        int n = Math.min(AMOSTRAS_MAXIMAS, amostras + 1);
+        media = (int) Math.round(media + (velocidade - media) / (double) n);
+        tabela.putShort(posicao, (short) n);
+        tabela.putShort(posicao + 2, (short) media);
+    }
+
+    private int localizar(long chave) {
+        int slot = (int) espalhar(chave) & mascara;
+        for (int tentativas = 0; tentativas < capacidade; tentativas++) {
+            long atual = tabela.getLong(slot * TAMANHO_SLOT);
+            if (atual == chave) {
+                return slot;
+            }
+            if (atual == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mascara;
+        }
+        return -1;
+    }
+
+    /**
+     * Slot do trecho, inserido se novo (na ocupação máxima, no lugar de um
+     * trecho mais antigo que a hora informada); -1 se não houver lugar
+     */
+    private int localizarOuInserir(long chave, int hora) {
+        int slot = localizar(chave);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (ocupados >= capacidade * OCUPACAO_MAXIMA && !liberarSlot(hora)) {
+            return -1;
+        }
+        slot = (int) espalhar(chave) & mascara;
+        while (tabela.getLong(slot * TAMANHO_SLOT) != 0) {
+            slot = (slot + 1) & mascara;
+        }
+        tabela.putLong(slot * TAMANHO_SLOT, chave);
+        ocupados++;
+        return slot;
+    }
+
+    /**
+     * Remove o trecho sem amostras há mais tempo entre os próximos slots
+     * ocupados a partir do ponteiro circular, se for de hora anterior à informada
+     */
+    private boolean liberarSlot(int hora) {
+        int substituto = -1;
+        int horaSubstituto = hora;
+        for (int vistos = 0, i = 0; vistos < AMOSTRA_SUBSTITUICAO && i < capacidade; i++) {
+            int slot = ponteiroSubstituicao;
+            ponteiroSubstituicao = (ponteiroSubstituicao + 1) & mascara;
+            if (tabela.getLong(slot * TAMANHO_SLOT) == 0) {
+                continue;
+            }
+            vistos++;
+            int horaSlot = tabela.getInt(slot * TAMANHO_SLOT + 8);
+            if (horaSlot < horaSubstituto) {
+                substituto = slot;
+                horaSubstituto = horaSlot;
+            }
+        }
+        if (substituto < 0) {
+            return false;
+        }
+        remover(substituto);
+        trechosSubstituidos.increment();
+        return true;
+    }
+
+    /**
+     * Remoção por deslocamento: cada trecho seguinte do agrupamento cuja
+     * posição de origem não fica entre a lacuna e ele é movido para a lacuna.
+     * Leitores concorrentes podem não achar um trecho durante o deslocamento
+     * (a ETA usa então a estimativa do OSRM).
+     */
+    private void remover(int slot) {
+        int lacuna = slot;
+        int atual = slot;
+        while (true) {
+            atual = (atual + 1) & mascara;
+            long chave = tabela.getLong(atual * TAMANHO_SLOT);
+            if (chave == 0) {
+                break;
+            }
+            int origem = (int) espalhar(chave) & mascara;
+            if (((atual - origem) & mascara) >= ((atual - lacuna) & mascara)) {
+                // Dados antes da chave: quem achar a chave na lacuna já lê o perfil dela
+                for (int i = 8; i < TAMANHO_SLOT; i += 4) {
+                    tabela.putInt(lacuna * TAMANHO_SLOT + i, tabela.getInt(atual * TAMANHO_SLOT + i));
+                }
+                tabela.putLong(lacuna * TAMANHO_SLOT, chave);
+                lacuna = atual;
+            }
+        }
+        tabela.putLong(lacuna * TAMANHO_SLOT, 0);
+        for (int i = 8; i < TAMANHO_SLOT; i += 4) {
+            tabela.putInt(lacuna * TAMANHO_SLOT + i, 0);
+        }
+        ocupados--;
+    }
+
+    /**
+     * Faixa horária da semana no fuso local: segunda 00h-04h = 0 ... domingo 20h-24h = 41
+     */
+    static int faixa(long instante) {
+        long local = instante + TimeZone.getDefault().getOffset(instante);
+        long horas = Math.floorDiv(local, MS_POR_HORA);
+        int hora = (int) Math.floorMod(horas, 24L);
+        // 01/01/1970 foi quinta-feira (índice 3 com segunda = 0)
+        int dia = (int) Math.floorMod(Math.floorDiv(horas, 24L) + 3, 7L);
+        return dia * 6 + hora / 4;
+    }
+
+    private static long espalhar(long chave) {
+        long h = chave ^ (chave >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    private static void escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    private static void lerTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && canal.read(buffer) >= 0) {
+            // continua até preencher o buffer ou o arquivo acabar
+        }
+    }
+
+    static final class Amostra {
+        long chave;
+        float velocidade;
+        long timestamp;
+    }
+}
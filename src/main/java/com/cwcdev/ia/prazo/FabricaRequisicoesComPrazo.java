@@ -0,0 +1,47 @@
+package com.cwcdev.ia.prazo;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+/**
+ * Conexões HTTP com timeouts limitados pelo {@link Prazo} da thread: uma
+ * chamada externa nunca espera mais que o restante do prazo, e nem começa
+ * se ele já acabou. Sem prazo, valem os timeouts configurados.
+ *
+ * O timeout de leitura vale para cada leitura do socket; como as respostas
+ * externas são pequenas, na prática limita a chamada inteira.
+ */
+public class FabricaRequisicoesComPrazo extends SimpleClientHttpRequestFactory {
+
+    private final int conexaoMs;
+    private final int leituraMs;
+
+    public FabricaRequisicoesComPrazo(int conexaoMs, int leituraMs) {
+        this.conexaoMs = conexaoMs;
+        this.leituraMs = leituraMs;
+        setConnectTimeout(conexaoMs);
+        setReadTimeout(leituraMs);
+    }
+
+    @Override
+    protected void prepareConnection(HttpURLConnection conexao, String metodo) throws IOException {
+        super.prepareConnection(conexao, metodo);
+        Prazo prazo = Prazo.atual();
+        if (prazo == null) {
+            return;
+        }
+        long restante = prazo.getRestanteMs();
+        if (restante <= 0) {
+            throw new PrazoEsgotadoException(prazo.getTotalMs());
+        }
+        conexao.setConnectTimeout(limitar(conexaoMs, restante));
+        conexao.setReadTimeout(limitar(leituraMs, restante));
+    }
+
+    // Timeout 0 é "sem limite" no HttpURLConnection
+    private static int limitar(int configuradoMs, long restanteMs) {
+        return (int) (configuradoMs > 0 ? Math.min(configuradoMs, restanteMs) : restanteMs);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cwcdev.ia.prazo;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Abre um {@link Prazo} de navegacao.prazo.requisicao-ms para cada requisição
+ * interceptada e o fecha no fim, inclusive quando o handler passa a ser
+ * assíncrono (a thread volta ao pool sem o prazo).
+ */
+@Component
+public class InterceptorPrazo implements AsyncHandlerInterceptor {
+
+    private static final String ATRIBUTO = InterceptorPrazo.class.getName() + ".escopo";
+
+    private final long requisicaoMs;
+
+    public InterceptorPrazo(@Value("${navegacao.prazo.requisicao-ms:8000}") long requisicaoMs) {
+        this.requisicaoMs = requisicaoMs;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (requisicaoMs > 0) {
+            request.setAttribute(ATRIBUTO, Prazo.iniciar(requisicaoMs));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        fechar(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        fechar(request);
+    }
+
+    private static void fechar(HttpServletRequest request) {
+        Object escopo = request.getAttribute(ATRIBUTO);
+        if (escopo != null) {
+            request.removeAttribute(ATRIBUTO);
+            ((Prazo.Escopo) escopo).close();
+        }
+    }
+}
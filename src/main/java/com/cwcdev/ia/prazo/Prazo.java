@@ -0,0 +1,103 @@
+package com.cwcdev.ia.prazo;
+
+/**
+ * Prazo total de uma requisição, guardado na thread que a atende.
+ *
+ * Criado na entrada da requisição ({@link InterceptorPrazo}) e consultado por
+ * toda chamada externa feita na mesma thread: o timeout de cada conexão é o
+ * tempo que ainda resta ({@link FabricaRequisicoesComPrazo}), então a soma das
+ * chamadas encadeadas nunca passa do prazo. Trabalho repassado a outras
+ * threads leva o prazo junto com {@link #usar(Prazo)}.
+ */
+public final class Prazo {
+
+    private static final ThreadLocal<Prazo> ATUAL = new ThreadLocal<>();
+
+    private final long limiteNanos;
+    private final long totalMs;
+
+    private Prazo(long totalMs) {
+        this.totalMs = totalMs;
+        this.limiteNanos = System.nanoTime() + totalMs * 1_000_000L;
+    }
+
+    /**
+     * Prazo da thread atual, ou null se não houver
+     */
+    public static Prazo atual() {
+        return ATUAL.get();
+    }
+
+    /**
+     * Inicia um prazo de {@code ms} na thread atual. Se já houver um prazo
+     * menor, ele continua valendo. Fechar o escopo restaura o anterior.
+     */
+    public static Escopo iniciar(long ms) {
+        Prazo anterior = ATUAL.get();
+        Prazo novo = new Prazo(ms);
+        return usar(anterior != null && anterior.limiteNanos - novo.limiteNanos < 0 ? anterior : novo);
+    }
+
+    /**
+     * Aplica {@code prazo} (pode ser null) na thread atual até o escopo ser fechado
+     */
+    public static Escopo usar(Prazo prazo) {
+        Escopo escopo = new Escopo(ATUAL.get());
+        if (prazo != null) {
+            ATUAL.set(prazo);
+        } else {
+            ATUAL.remove();
+        }
+        return escopo;
+    }
+
+    public long getRestanteMs() {
+        return Math.max(0, (limiteNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    public boolean isEsgotado() {
+        return limiteNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @throws PrazoEsgotadoException se o prazo já tiver acabado
+     */
+    public void verificar() {
+        if (isEsgotado()) {
+            throw new PrazoEsgotadoException(totalMs);
+        }
+    }
+
+    /**
+     * Menor entre {@code ms} e o restante do prazo da thread (ms, se não houver prazo)
+     */
+    public static long limitar(long ms) {
+        Prazo prazo = ATUAL.get();
+        return prazo != null ? Math.min(ms, prazo.getRestanteMs()) : ms;
+    }
+
+    /**
+     * Restaura o prazo anterior da thread ao ser fechado
+     */
+    public static final class Escopo implements AutoCloseable {
+
+        private final Prazo anterior;
+
+        private Escopo(Prazo anterior) {
+            this.anterior = anterior;
+        }
+
+        @Override
+        public void close() {
+            if (anterior != null) {
+                ATUAL.set(anterior);
+            } else {
+                ATUAL.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.cwcdev.ia.prazo;
+
+/**
+ * O prazo da requisição acabou antes de uma chamada externa começar
+ */
+public class PrazoEsgotadoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PrazoEsgotadoException(long totalMs) {
+        super("Prazo de " + totalMs + " ms esgotado");
+    }
+}
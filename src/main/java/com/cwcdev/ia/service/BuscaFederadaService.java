@@ -0,0 +1,306 @@
+package com.cwcdev.ia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.cwcdev.ia.endereco.NormalizadorEndereco;
+import com.cwcdev.ia.endereco.ProvedorNominatim;
+import com.cwcdev.ia.model.Endereco;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Busca textual em duas fontes ao mesmo tempo: a busca por logradouro do
+ * ViaCEP (quando o texto traz logradouro, cidade e UF, como "Avenida
+ * Paulista, São Paulo, SP") e o Nominatim.
+ *
+ * As duas consultas correm no {@link PoolLimitado} com um prazo comum; uma
+ * fonte que não responde a tempo fica de fora. Os resultados são mesclados
+ * por CEP e logradouro (o ViaCEP traz CEP e bairro, o Nominatim traz as
+ * coordenadas) e ordenados pela cobertura dos termos buscados, com vantagem
+ * para os confirmados pelas duas fontes e os que já têm coordenadas.
+ */
+@Service
+public class BuscaFederadaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BuscaFederadaService.class);
+
+    private static final String VIACEP = "viacep";
+    private static final String NOMINATIM = "nominatim";
+    private static final String[] FONTES = {VIACEP, NOMINATIM};
+    private static final String[] RESULTADOS = {"ok", "vazio", "falha", "prazo"};
+
+    // Abreviações comuns do tipo de logradouro
+    private static final Map<String, String> TIPOS = new HashMap<>();
+    static {
+        TIPOS.put("av", "avenida");
+        TIPOS.put("r", "rua");
+        TIPOS.put("al", "alameda");
+        TIPOS.put("pc", "praca");
+        TIPOS.put("pca", "praca");
+        TIPOS.put("tv", "travessa");
+        TIPOS.put("estr", "estrada");
+        TIPOS.put("rod", "rodovia");
+    }
+
+    private final ViaCepService viaCepService;
+    private final ProvedorNominatim provedorNominatim;
+    private final long prazoMs;
+    private final int limite;
+    private final PoolLimitado pool;
+    private final Timer tempoBusca;
+    private final Counter[][] consultas = new Counter[FONTES.length][RESULTADOS.length];
+
+    public BuscaFederadaService(ViaCepService viaCepService, ProvedorNominatim provedorNominatim,
+            MeterRegistry registry,
+            @Value("${navegacao.busca.prazo-ms:3000}") long prazoMs,
+            @Value("${navegacao.busca.limite:10}") int limite,
+            @Value("${navegacao.busca.threads:8}") int threads,
+            @Value("${navegacao.busca.fila:64}") int fila) {
+        this.viaCepService = viaCepService;
+        this.provedorNominatim = provedorNominatim;
+        this.prazoMs = prazoMs;
+        this.limite = limite;
+        this.pool = new PoolLimitado("busca-federada", threads, fila);
+        this.tempoBusca = Timer.builder("enderecos.busca")
+                .description("Tempo da busca textual federada (ViaCEP e Nominatim)")
+                .register(registry);
+        for (int f = 0; f < FONTES.length; f++) {
+            for (int r = 0; r < RESULTADOS.length; r++) {
+                consultas[f][r] = Counter.builder("enderecos.busca.fontes")
+                        .description("Consultas da busca textual por fonte e resultado")
+                        .tag("fonte", FONTES[f])
+                        .tag("resultado", RESULTADOS[r])
+                        .register(registry);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        pool.encerrar();
+    }
+
+    /**
+     * Endereços das fontes que responderam no prazo, mesclados e ordenados
+     * (no máximo navegacao.busca.limite)
+     */
+    public List<Endereco> buscar(String consulta) {
+        long inicio = System.nanoTime();
+        String[] logradouro = separarLogradouro(consulta);
+        List<String> fontes = logradouro != null ? Arrays.asList(VIACEP, NOMINATIM) : Arrays.asList(NOMINATIM);
+
+        Map<String, List<Endereco>> respostas = new ConcurrentHashMap<>();
+        List<String> esgotadas;
+        try {
+            esgotadas = pool.executar(fontes, fontes.size(), prazoMs, fonte -> {
+                try {
+                    List<Endereco> enderecos = fonte.equals(VIACEP)
+                            ? viaCepService.buscarPorLogradouro(logradouro[0], logradouro[1], logradouro[2])
+                            : provedorNominatim.buscarPorTexto(consulta);
+                    respostas.put(fonte, enderecos);
+                    contar(fonte, enderecos.isEmpty() ? 1 : 0);
+                } catch (RuntimeException e) {
+                    contar(fonte, 2);
+                    logger.warn("Busca '{}' no {} falhou: {}", consulta, fonte, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool saturado: só o Nominatim, na thread da requisição
+            logger.warn("Pool da busca federada saturado; consultando só o Nominatim");
+            return provedorNominatim.buscarPorTexto(consulta);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        for (String fonte : esgotadas) {
+            contar(fonte, 3);
+        }
+
+        List<Candidato> candidatos = new ArrayList<>();
+        Map<String, Candidato> porCep = new HashMap<>();
+        Map<String, Candidato> porRua = new HashMap<>();
+        // ViaCEP primeiro: os campos dele prevalecem na mescla
+        for (String fonte : FONTES) {
+            List<Endereco> enderecos = esgotadas.contains(fonte) ? null : respostas.get(fonte);
+            if (enderecos == null) {
+                continue;
+            }
+            for (int i = 0; i < enderecos.size(); i++) {
+                mesclar(enderecos.get(i), fonte.equals(VIACEP), i, candidatos, porCep, porRua);
+            }
+        }
+
+        Set<String> termos = new HashSet<>(Arrays.asList(NormalizadorEndereco.dobrarAcentos(consulta).split(" ")));
+        termos.removeIf(termo -> termo.length() < 2);
+        for (Candidato candidato : candidatos) {
+            candidato.pontuar(termos);
+        }
+        candidatos.sort(Comparator.comparingDouble((Candidato c) -> -c.pontuacao).thenComparingInt(c -> c.ordem));
+
+        List<Endereco> resultados = new ArrayList<>();
+        for (int i = 0; i < candidatos.size() && i < limite; i++) {
+            resultados.add(candidatos.get(i).endereco);
+        }
+        tempoBusca.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        logger.debug("Busca '{}': {} resultados de {} fontes ({} fora do prazo)", consulta, resultados.size(),
+                respostas.size(), esgotadas.size());
+        return resultados;
+    }
+
+    /**
+     * UF, cidade e logradouro de um texto "logradouro[, número][, bairro], cidade, UF"
+     * (separadores: vírgula, barra, ponto e vírgula ou " - "), ou null se o
+     * texto não tiver essa forma
+     */
+    static String[] separarLogradouro(String consulta) {
+        String[] partes = consulta.trim().split("\\s+-\\s+|[,/;]");
+        List<String> preenchidas = new ArrayList<>();
+        for (String parte : partes) {
+            if (!parte.trim().isEmpty()) {
+                preenchidas.add(parte.trim());
+            }
+        }
+        for (int i = preenchidas.size() - 1; i >= 2; i--) {
+            String uf = NormalizadorEndereco.ufConhecida(preenchidas.get(i));
+            if (uf != null) {
+                String cidade = preenchidas.get(i - 1);
+                String logradouro = NormalizadorEndereco.limparLogradouro(preenchidas.get(0));
+                // O ViaCEP exige ao menos 3 caracteres em cidade e logradouro
+                return cidade.length() >= 3 && logradouro.length() >= 3
+                        ? new String[] {uf, cidade, logradouro}
+                        : null;
+            }
+        }
+        return null;
+    }
+
+    private static void mesclar(Endereco endereco, boolean viaCep, int ordem, List<Candidato> candidatos,
+                                Map<String, Candidato> porCep, Map<String, Candidato> porRua) {
+        String rua = chaveRua(endereco.getLogradouro());
+        int cep = NormalizadorEndereco.parseCep(endereco.getCep());
+        String chaveCep = cep != NormalizadorEndereco.CEP_INVALIDO ? cep + "|" + rua : null;
+        String chaveRua = rua.isEmpty() ? null
+                : rua + "|" + NormalizadorEndereco.dobrarAcentos(endereco.getLocalidade() != null ? endereco.getLocalidade() : "");
+
+        Candidato existente = chaveCep != null ? porCep.get(chaveCep) : null;
+        if (existente == null && chaveRua != null) {
+            // Mesma rua só se junta quando um dos lados não tem CEP (senão são faixas diferentes)
+            Candidato mesmaRua = porRua.get(chaveRua);
+            if (mesmaRua != null && (chaveCep == null || !mesmaRua.cepValido)) {
+                existente = mesmaRua;
+            }
+        }
+
+        if (existente != null) {
+            existente.juntar(endereco, viaCep);
+            if (chaveCep != null) {
+                porCep.putIfAbsent(chaveCep, existente);
+            }
+            return;
+        }
+        Candidato novo = new Candidato(endereco, viaCep, ordem, chaveCep != null);
+        candidatos.add(novo);
+        if (chaveCep != null) {
+            porCep.put(chaveCep, novo);
+        }
+        if (chaveRua != null) {
+            porRua.putIfAbsent(chaveRua, novo);
+        }
+    }
+
+    /**
+     * Logradouro dobrado, com o tipo abreviado por extenso ("Av. Paulista" -> "avenida paulista")
+     */
+    private static String chaveRua(String logradouro) {
+        String dobrado = NormalizadorEndereco.dobrarAcentos(logradouro != null ? logradouro : "");
+        int espaco = dobrado.indexOf(' ');
+        if (espaco > 0) {
+            String tipo = TIPOS.get(dobrado.substring(0, espaco));
+            if (tipo != null) {
+                return tipo + dobrado.substring(espaco);
+            }
+        }
+        return dobrado;
+    }
+
+    private void contar(String fonte, int resultado) {
+        consultas[fonte.equals(VIACEP) ? 0 : 1][resultado].increment();
+    }
+
+    /**
+     * Um endereço distinto e as fontes que o trouxeram
+     */
+    private static final class Candidato {
+        Endereco endereco;
+        boolean viaCep;
+        boolean nominatim;
+        boolean cepValido;
+        final int ordem;
+        double pontuacao;
+
+        Candidato(Endereco endereco, boolean viaCep, int ordem, boolean cepValido) {
+            this.endereco = endereco;
+            this.viaCep = viaCep;
+            this.nominatim = !viaCep;
+            this.ordem = ordem;
+            this.cepValido = cepValido;
+        }
+
+        /**
+         * Completa o endereço com o de outra fonte: campos do ViaCEP e coordenadas do Nominatim
+         */
+        void juntar(Endereco outro, boolean outroViaCep) {
+            if (outroViaCep && !viaCep) {
+                Endereco base = outro.copiar();
+                base.setLatitude(endereco.getLatitude());
+                base.setLongitude(endereco.getLongitude());
+                endereco = base;
+                cepValido = true;
+            } else if (endereco.getLatitude() == null && outro.getLatitude() != null) {
+                endereco.setLatitude(outro.getLatitude());
+                endereco.setLongitude(outro.getLongitude());
+            }
+            viaCep |= outroViaCep;
+            nominatim |= !outroViaCep;
+        }
+
+        /**
+         * Fração dos termos buscados presentes no endereço, mais bônus por
+         * confirmação nas duas fontes, coordenadas e CEP
+         */
+        void pontuar(Set<String> termos) {
+            String texto = NormalizadorEndereco.dobrarAcentos(
+                    NormalizadorEndereco.enderecoCompleto(endereco) + " " + endereco.getCep());
+            Set<String> palavras = new HashSet<>(Arrays.asList(texto.split(" ")));
+            int encontrados = 0;
+            for (String termo : termos) {
+                if (palavras.contains(termo) || palavras.contains(TIPOS.getOrDefault(termo, termo))) {
+                    encontrados++;
+                }
+            }
+            pontuacao = (termos.isEmpty() ? 0 : (double) encontrados / termos.size())
+                    + (viaCep && nominatim ? 0.5 : 0)
+                    + (endereco.getLatitude() != null ? 0.25 : 0)
+                    + (cepValido ? 0.1 : 0);
+        }
+    }
+}
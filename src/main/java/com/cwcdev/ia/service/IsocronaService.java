@@ -0,0 +1,324 @@
+package com.cwcdev.ia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import com.cwcdev.ia.cache.CacheLru;
+import com.cwcdev.ia.cache.CodecsCache;
+import com.cwcdev.ia.cache.SnapshotCaches;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Área de onde se chega a um ponto (depósito) em até N minutos.
+ *
+ * Os pontos de amostra ficam em {@code direcoes} raios e {@code aneis} anéis
+ * ao redor do centro, até a distância que o perfil percorre no tempo dado.
+ * Os tempos de cada amostra até o centro vêm do serviço table do OSRM, em
+ * lotes executados em paralelo num {@link PoolLimitado}. Em cada raio o
+ * contorno fica entre o anel mais externo alcançado e o seguinte, por
+ * interpolação linear do tempo.
+ *
+ * O centro é arredondado para o meio da sua célula da grade, e o resultado
+ * fica em cache por perfil, minutos e célula: pedidos próximos do mesmo
+ * depósito não consultam o OSRM de novo.
+ */
+@Service
+public class IsocronaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IsocronaService.class);
+
+    private static final double METROS_POR_GRAU = 111320;
+
+    private final RestTemplate restTemplate;
+    private final String urlTabela;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    private final Map<String, Double> velocidades = new LinkedHashMap<>();
+    private final int direcoes;
+    private final int aneis;
+    private final int minutosMax;
+    private final int pontosPorLote;
+    private final int paralelismoPorPedido;
+    private final long prazoMs;
+    private final double celulaGraus;
+    private final PoolLimitado pool;
+
+    // Resultados completos em CBOR, gravados em disco com os demais caches
+    private final CacheLru<byte[]> cache;
+
+    private final Timer tempoCalculo;
+    private final Timer tempoCache;
+
+    public IsocronaService(RestTemplate restTemplate, SnapshotCaches snapshotCaches, MeterRegistry registry,
+            @Value("${upstream.osrm.url:https://router.project-osrm.org/route/v1/driving/}") String urlOsrm,
+            @Value("${navegacao.isocrona.velocidades-kmh:driving:80,cycling:25,walking:6}") String velocidadesKmh,
+            @Value("${navegacao.isocrona.direcoes:24}") int direcoes,
+            @Value("${navegacao.isocrona.aneis:8}") int aneis,
+            @Value("${navegacao.isocrona.minutos-max:60}") int minutosMax,
+            @Value("${navegacao.isocrona.pontos-por-lote:50}") int pontosPorLote,
+            @Value("${navegacao.isocrona.paralelismo-por-pedido:4}") int paralelismoPorPedido,
+            @Value("${navegacao.isocrona.threads:8}") int threads,
+            @Value("${navegacao.isocrona.fila:64}") int fila,
+            @Value("${navegacao.isocrona.prazo-ms:15000}") long prazoMs,
+            @Value("${navegacao.isocrona.celula-graus:0.005}") double celulaGraus,
+            @Value("${cache.isocronas.capacidade:2000}") int capacidade) {
+        this.restTemplate = restTemplate;
+        this.urlTabela = NavegacaoService.urlRaizOsrm(urlOsrm) + "table/v1/";
+        this.objectMapper = new ObjectMapper();
+        this.cborMapper = new ObjectMapper(new CBORFactory());
+        for (String item : velocidadesKmh.split(",")) {
+            String[] partes = item.trim().split(":");
+            if (partes.length == 2) {
+                velocidades.put(partes[0].trim(), Double.parseDouble(partes[1].trim()) / 3.6);
+            }
+        }
+        this.direcoes = Math.max(3, direcoes);
+        this.aneis = Math.max(1, aneis);
+        this.minutosMax = minutosMax;
+        this.pontosPorLote = Math.max(1, pontosPorLote);
+        this.paralelismoPorPedido = Math.max(1, paralelismoPorPedido);
+        this.prazoMs = prazoMs;
+        this.celulaGraus = celulaGraus;
+        this.pool = new PoolLimitado("isocrona", threads, fila);
+        this.cache = new CacheLru<>("isocronas", capacidade, CodecsCache.BYTES);
+        snapshotCaches.registrar(cache);
+        this.tempoCalculo = Timer.builder("isocronas")
+                .description("Tempo para obter uma isócrona")
+                .tag("origem", "calculo")
+                .register(registry);
+        this.tempoCache = Timer.builder("isocronas")
+                .description("Tempo para obter uma isócrona")
+                .tag("origem", "cache")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        pool.encerrar();
+    }
+
+    /**
+     * Isócrona de {@code minutos} em torno de (latitude, longitude)
+     *
+     * @return perfil, minutos, centro [lat, lng] usado, raioMaximo (m),
+     *         amostras, alcancaveis, parcial (algum lote falhou ou não terminou
+     *         no prazo), emCache e vertices ([lat, lng], no formato das geocercas)
+     * @throws IllegalArgumentException se o perfil não tiver velocidade
+     *         configurada ou os minutos estiverem fora de 1..minutos-max
+     * @throws RejectedExecutionException se o pool estiver saturado
+     * @throws IllegalStateException se nenhum lote for respondido
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> calcular(double latitude, double longitude, int minutos, String perfil)
+            throws InterruptedException {
+        long inicio = System.nanoTime();
+        Double velocidade = velocidades.get(perfil);
+        if (velocidade == null) {
+            throw new IllegalArgumentException("Perfil sem velocidade configurada: " + perfil);
+        }
+        if (minutos < 1 || minutos > minutosMax) {
+            throw new IllegalArgumentException("Minutos devem estar entre 1 e " + minutosMax);
+        }
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            throw new IllegalArgumentException("Coordenadas inválidas");
+        }
+
+        long celulaLat = (long) Math.floor(latitude / celulaGraus);
+        long celulaLng = (long) Math.floor(longitude / celulaGraus);
+        String chave = perfil + ":" + minutos + ":" + celulaLat + ":" + celulaLng;
+        byte[] emCache = cache.obter(chave);
+        if (emCache != null) {
+            try {
+                Map<String, Object> resultado = cborMapper.readValue(emCache, LinkedHashMap.class);
+                resultado.put("emCache", true);
+                tempoCache.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                return resultado;
+            } catch (Exception e) {
+                logger.warn("Isócrona em cache ilegível ({}): {}", chave, e.getMessage());
+                cache.remover(chave);
+            }
+        }
+
+        double latCentro = (celulaLat + 0.5) * celulaGraus;
+        double lngCentro = (celulaLng + 0.5) * celulaGraus;
+        double limite = minutos * 60.0;
+        double raioMaximo = velocidade * limite;
+        double[] amostras = amostrar(latCentro, lngCentro, raioMaximo);
+        int total = amostras.length / 2;
+
+        List<Integer> lotes = new ArrayList<>();
+        for (int i = 0; i < total; i += pontosPorLote) {
+            lotes.add(i);
+        }
+        Map<Integer, double[]> respostas = new ConcurrentHashMap<>();
+        AtomicInteger falhas = new AtomicInteger();
+        List<Integer> esgotados = pool.executar(lotes, paralelismoPorPedido, prazoMs, primeiro -> {
+            try {
+                respostas.put(primeiro, consultar(perfil, latCentro, lngCentro, amostras, primeiro,
+                        Math.min(total, primeiro + pontosPorLote)));
+            } catch (RuntimeException e) {
+                falhas.incrementAndGet();
+                logger.warn("Falha no lote {} da isócrona {}: {}", primeiro, chave, e.getMessage());
+            }
+        });
+
+        // Sem resposta: NaN; inalcançável: infinito
+        double[] duracoes = new double[total];
+        Arrays.fill(duracoes, Double.NaN);
+        for (Integer primeiro : lotes) {
+            double[] lote = esgotados.contains(primeiro) ? null : respostas.get(primeiro);
+            if (lote != null) {
+                System.arraycopy(lote, 0, duracoes, primeiro, lote.length);
+            }
+        }
+        boolean parcial = falhas.get() > 0 || !esgotados.isEmpty();
+        if (parcial && falhas.get() + esgotados.size() == lotes.size()) {
+            throw new IllegalStateException("Nenhum lote da matriz OSRM respondeu");
+        }
+
+        int alcancaveis = 0;
+        for (double duracao : duracoes) {
+            if (duracao <= limite) {
+                alcancaveis++;
+            }
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("perfil", perfil);
+        resultado.put("minutos", minutos);
+        resultado.put("centro", new double[] {latCentro, lngCentro});
+        resultado.put("raioMaximo", Math.round(raioMaximo));
+        resultado.put("amostras", total);
+        resultado.put("alcancaveis", alcancaveis);
+        resultado.put("parcial", parcial);
+        resultado.put("vertices", contornar(latCentro, lngCentro, raioMaximo, duracoes, limite));
+        if (!parcial) {
+            try {
+                cache.colocar(chave, cborMapper.writeValueAsBytes(resultado));
+            } catch (Exception e) {
+                logger.warn("Erro ao guardar isócrona {}: {}", chave, e.getMessage());
+            }
+        }
+        resultado.put("emCache", false);
+        tempoCalculo.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        logger.debug("Isócrona {}: {} de {} amostras alcançáveis em {} lotes{}", chave, alcancaveis, total,
+                lotes.size(), parcial ? " (parcial)" : "");
+        return resultado;
+    }
+
+    public int getPendentes() {
+        return pool.getPendentes();
+    }
+
+    /**
+     * Amostras [lat, lng] em sequência: raio d, anel k (de dentro para fora)
+     * no índice d x aneis + k
+     */
+    private double[] amostrar(double latCentro, double lngCentro, double raioMaximo) {
+        double[] amostras = new double[direcoes * aneis * 2];
+        double metrosPorGrauLng = METROS_POR_GRAU * Math.max(0.01, Math.cos(Math.toRadians(latCentro)));
+        for (int d = 0; d < direcoes; d++) {
+            double angulo = 2 * Math.PI * d / direcoes;
+            for (int k = 0; k < aneis; k++) {
+                double raio = raioMaximo * (k + 1) / aneis;
+                int i = (d * aneis + k) * 2;
+                amostras[i] = latCentro + raio * Math.cos(angulo) / METROS_POR_GRAU;
+                amostras[i + 1] = lngCentro + raio * Math.sin(angulo) / metrosPorGrauLng;
+            }
+        }
+        return amostras;
+    }
+
+    /**
+     * Tempos (s) das amostras [primeiro, fim) até o centro numa chamada table
+     */
+    private double[] consultar(String perfil, double latCentro, double lngCentro, double[] amostras,
+                               int primeiro, int fim) {
+        StringBuilder url = new StringBuilder(urlTabela).append(perfil).append('/')
+                .append(String.format(Locale.ROOT, "%.6f,%.6f", lngCentro, latCentro));
+        for (int i = primeiro; i < fim; i++) {
+            url.append(String.format(Locale.ROOT, ";%.6f,%.6f", amostras[i * 2 + 1], amostras[i * 2]));
+        }
+        url.append("?destinations=0&sources=");
+        for (int i = primeiro; i < fim; i++) {
+            url.append(i > primeiro ? ";" : "").append(i - primeiro + 1);
+        }
+
+        JsonNode root = restTemplate.execute(url.toString(), HttpMethod.GET, null,
+                resposta -> objectMapper.readTree(resposta.getBody()));
+        if (root == null || !"Ok".equals(root.path("code").asText())) {
+            throw new RuntimeException("Erro OSRM: " + (root != null ? root.path("message").asText() : "sem resposta"));
+        }
+        JsonNode linhas = root.path("durations");
+        double[] duracoes = new double[fim - primeiro];
+        for (int i = 0; i < duracoes.length; i++) {
+            JsonNode duracao = linhas.path(i).path(0);
+            duracoes[i] = duracao.isNumber() ? duracao.asDouble() : Double.POSITIVE_INFINITY;
+        }
+        return duracoes;
+    }
+
+    /**
+     * Um vértice por raio, na distância em que o tempo interpolado atinge o limite
+     */
+    private double[][] contornar(double latCentro, double lngCentro, double raioMaximo, double[] duracoes,
+                                 double limite) {
+        double metrosPorGrauLng = METROS_POR_GRAU * Math.max(0.01, Math.cos(Math.toRadians(latCentro)));
+        double passo = raioMaximo / aneis;
+        double[][] vertices = new double[direcoes][];
+        for (int d = 0; d < direcoes; d++) {
+            int base = d * aneis;
+            int ultimo = -1;
+            for (int k = 0; k < aneis; k++) {
+                if (duracoes[base + k] <= limite) {
+                    ultimo = k;
+                }
+            }
+
+            double raio;
+            if (ultimo == aneis - 1) {
+                raio = raioMaximo;
+            } else {
+                // Entre o anel alcançado (ou o centro, tempo 0) e o seguinte
+                double raioDentro = (ultimo + 1) * passo;
+                double tempoDentro = ultimo >= 0 ? duracoes[base + ultimo] : 0;
+                double tempoFora = duracoes[base + ultimo + 1];
+                raio = Double.isNaN(tempoFora) || Double.isInfinite(tempoFora) || tempoFora <= tempoDentro
+                        ? raioDentro
+                        : raioDentro + passo * (limite - tempoDentro) / (tempoFora - tempoDentro);
+            }
+
+            double angulo = 2 * Math.PI * d / direcoes;
+            vertices[d] = new double[] {
+                    arredondar(latCentro + raio * Math.cos(angulo) / METROS_POR_GRAU),
+                    arredondar(lngCentro + raio * Math.sin(angulo) / metrosPorGrauLng)};
+        }
+        return vertices;
+    }
+
+    private static double arredondar(double grau) {
+        return Math.round(grau * 1e6) / 1e6;
+    }
+}
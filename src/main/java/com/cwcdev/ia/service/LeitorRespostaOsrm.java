@@ -0,0 +1,132 @@
+package com.cwcdev.ia.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Leitura incremental da resposta OSRM: monta a mesma árvore que
+ * {@code readTree}, mas avisa o destino assim que a geometria, o resumo da
+ * rota e cada passo (routes[0].legs[0].steps[i]) são lidos, sem esperar o fim
+ * do corpo. Só o caminho até os passos é percorrido token a token; o restante
+ * (anotações, waypoints) é lido como subárvore.
+ */
+class LeitorRespostaOsrm {
+
+    /**
+     * Recebe as partes da primeira rota na ordem em que aparecem na resposta
+     */
+    interface Destino {
+        void aoLerGeometria(String polyline);
+
+        void aoLerResumo(double distancia, double duracao);
+
+        void aoLerPasso(JsonNode passo);
+    }
+
+    // Níveis do caminho raiz -> routes -> [0] -> legs -> [0] -> steps -> [i]
+    private static final int RAIZ = 0;
+    private static final int ROTAS = 1;
+    private static final int ROTA = 2;
+    private static final int PERNAS = 3;
+    private static final int PERNA = 4;
+    private static final int PASSOS = 5;
+    private static final int FORA = -1;
+
+    private final ObjectMapper objectMapper;
+    private final Destino destino;
+
+    LeitorRespostaOsrm(ObjectMapper objectMapper, Destino destino) {
+        this.objectMapper = objectMapper;
+        this.destino = destino;
+    }
+
+    JsonNode ler(InputStream corpo) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(corpo)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Resposta OSRM não é um objeto JSON");
+            }
+            return lerObjeto(parser, RAIZ);
+        }
+    }
+
+    /**
+     * Emite as mesmas notificações a partir de uma resposta já em memória (cache)
+     */
+    void percorrer(JsonNode raiz) {
+        JsonNode rota = raiz.path("routes").path(0);
+        if (rota.has("geometry")) {
+            destino.aoLerGeometria(rota.get("geometry").asText());
+        }
+        if (rota.has("distance") && rota.has("duration")) {
+            destino.aoLerResumo(rota.get("distance").asDouble(), rota.get("duration").asDouble());
+        }
+        for (JsonNode passo : rota.path("legs").path(0).path("steps")) {
+            destino.aoLerPasso(passo);
+        }
+    }
+
+    private ObjectNode lerObjeto(JsonParser parser, int nivel) throws IOException {
+        ObjectNode objeto = objectMapper.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = parser.getCurrentName();
+            parser.nextToken();
+            int filho = nivelDoCampo(nivel, campo);
+            JsonNode valor = filho != FORA && parser.currentToken() == JsonToken.START_ARRAY
+                    ? lerArray(parser, filho)
+                    : objectMapper.readTree(parser);
+            objeto.set(campo, valor);
+            if (nivel == ROTA) {
+                notificarRota(objeto, campo);
+            }
+        }
+        return objeto;
+    }
+
+    private ArrayNode lerArray(JsonParser parser, int nivel) throws IOException {
+        ArrayNode array = objectMapper.createArrayNode();
+        int indice = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode valor;
+            if (nivel != PASSOS && indice == 0 && parser.currentToken() == JsonToken.START_OBJECT) {
+                valor = lerObjeto(parser, nivel + 1);
+            } else {
+                valor = objectMapper.readTree(parser);
+                if (nivel == PASSOS) {
+                    destino.aoLerPasso(valor);
+                }
+            }
+            array.add(valor);
+            indice++;
+        }
+        return array;
+    }
+
+    private static int nivelDoCampo(int nivel, String campo) {
+        if (nivel == RAIZ && campo.equals("routes")) {
+            return ROTAS;
+        }
+        if (nivel == ROTA && campo.equals("legs")) {
+            return PERNAS;
+        }
+        if (nivel == PERNA && campo.equals("steps")) {
+            return PASSOS;
+        }
+        return FORA;
+    }
+
+    private void notificarRota(ObjectNode rota, String campo) {
+        if (campo.equals("geometry")) {
+            destino.aoLerGeometria(rota.get("geometry").asText());
+        } else if ((campo.equals("distance") || campo.equals("duration"))
+                && rota.has("distance") && rota.has("duration")) {
+            destino.aoLerResumo(rota.get("distance").asDouble(), rota.get("duration").asDouble());
+        }
+    }
+}
@@ -2,35 +2,67 @@ package com.cwcdev.ia.service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.Locale;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import com.cwcdev.ia.cache.CacheLru;
+import com.cwcdev.ia.cache.CodecsCache;
+import com.cwcdev.ia.cache.SnapshotCaches;
+import com.cwcdev.ia.endereco.NormalizadorEndereco;
+import com.cwcdev.ia.endereco.ProvedorNominatim;
+import com.cwcdev.ia.endereco.ResolvedorEnderecos;
+import com.cwcdev.ia.model.AnotacoesRota;
 import com.cwcdev.ia.model.Endereco;
 import com.cwcdev.ia.model.InstrucaoNavegacao;
 import com.cwcdev.ia.model.Rota;
+import com.cwcdev.ia.perfil.PerfisVelocidade;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 @Service
 public class NavegacaoService {
 
-    private static final String VIA_CEP_URL = "https://viacep.com.br/ws/";
-    private static final String NOMINATIM_URL = "https://nominatim.openstreetmap.org/search";
-    private static final String OSRM_URL = "https://router.project-osrm.org/route/v1/driving/";
-    
+    private static final Logger logger = LoggerFactory.getLogger(NavegacaoService.class);
+
     private final RestTemplate restTemplate;
+    private final String urlOsrm;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    private final PerfisVelocidade perfisVelocidade;
+
+    private final ResolvedorEnderecos resolvedorEnderecos;
+    private final ProvedorNominatim provedorNominatim;
+    private final BuscaFederadaService buscaFederada;
+
+    // Respostas OSRM em CBOR, gravadas em disco e restauradas na inicialização
+    private final CacheLru<byte[]> cacheRotas;
 
     @Autowired
-    public NavegacaoService(RestTemplate restTemplate) {
+    public NavegacaoService(RestTemplate restTemplate, PerfisVelocidade perfisVelocidade,
+                            ResolvedorEnderecos resolvedorEnderecos,
+                            ProvedorNominatim provedorNominatim,
+                            BuscaFederadaService buscaFederada,
+                            SnapshotCaches snapshotCaches,
+                            @Value("${cache.rotas.capacidade:5000}") int capacidadeRotas,
+                            @Value("${upstream.osrm.url:https://router.project-osrm.org/route/v1/driving/}") String urlOsrm) {
         this.restTemplate = restTemplate;
+        this.urlOsrm = urlOsrm;
         this.objectMapper = new ObjectMapper();
+        this.cborMapper = new ObjectMapper(new CBORFactory());
+        this.perfisVelocidade = perfisVelocidade;
+        this.resolvedorEnderecos = resolvedorEnderecos;
+        this.provedorNominatim = provedorNominatim;
+        this.buscaFederada = buscaFederada;
+        this.cacheRotas = new CacheLru<>("rotas", capacidadeRotas, CodecsCache.BYTES);
+        snapshotCaches.registrar(cacheRotas);
     }
 
     /**
@@ -43,11 +75,11 @@ public class NavegacaoService {
         String queryLimpa = query.trim();
         
         // Verificar se é CEP (apenas números, 8 dígitos)
-        String apenasNumeros = queryLimpa.replaceAll("[^0-9]", "");
+        int cep = NormalizadorEndereco.parseCep(queryLimpa);
         
-        if (apenasNumeros.length() == 8) {
+        if (cep != NormalizadorEndereco.CEP_INVALIDO) {
             // É um CEP
-            Endereco endereco = buscarEnderecoPorCep(apenasNumeros);
+            Endereco endereco = buscarEnderecoPorCep(NormalizadorEndereco.formatarCep(cep));
             if (!endereco.isErro()) {
                 resultados.add(endereco);
             }
@@ -60,344 +92,267 @@ public class NavegacaoService {
     }
 
     /**
-     * Busca por CEP no ViaCEP
+     * Busca por CEP nas camadas de endereço (cache, base offline, ViaCEP, Nominatim)
      */
     public Endereco buscarEnderecoPorCep(String cep) {
-        cep = cep.replaceAll("[^0-9]", "");
-        
-        if (cep.length() != 8) {
-            return criarEnderecoComErro("CEP inválido");
-        }
-        
-        String url = VIA_CEP_URL + cep + "/json/";
-        
-        try {
-            ResponseEntity<Endereco> response = restTemplate.getForEntity(url, Endereco.class);
-            Endereco endereco = response.getBody();
-            
-            if (endereco != null && endereco.getCep() == null) {
-                endereco.setErro(true);
-                return endereco;
-            }
-            
-            if (endereco != null && !endereco.isErro()) {
-                buscarCoordenadas(endereco);
-            }
-            
-            return endereco;
-            
-        } catch (Exception e) {
-            System.err.println("Erro ao buscar CEP: " + e.getMessage());
-            return criarEnderecoComErro("Erro na busca do CEP");
-        }
+        return resolvedorEnderecos.buscarPorCep(cep);
     }
 
     /**
-     * Busca textual usando Nominatim com filtro para Brasil
+     * Busca textual no Nominatim e, quando o texto traz cidade e UF, na busca
+     * por logradouro do ViaCEP, em paralelo ({@link BuscaFederadaService})
      */
     public List<Endereco> buscarPorTexto(String query) {
+        return buscaFederada.buscar(query);
+    }
+
+    /**
+     * Calcula rota entre origem e destino
+     */
+    public Rota calcularRota(Endereco origem, Endereco destino) {
+        return calcularRota(origem, destino, OuvinteRota.NENHUM);
+    }
+
+    /**
+     * Calcula a rota avisando o ouvinte de cada parte assim que ela é lida da
+     * resposta OSRM (resumo, geometria, instruções), antes de a resposta
+     * terminar de chegar
+     */
+    public Rota calcularRota(Endereco origem, Endereco destino, OuvinteRota ouvinte) {
         try {
-            String url = String.format("%s?format=json&q=%s&addressdetails=1&limit=10&countrycodes=br", 
-                NOMINATIM_URL, 
-                java.net.URLEncoder.encode(query, "UTF-8"));
-            
-            // Configurar User-Agent
-            restTemplate.getInterceptors().clear();
-            restTemplate.getInterceptors().add((request, body, execution) -> {
-                request.getHeaders().set("User-Agent", "GPS-Navegacao-App/1.0");
-                return execution.execute(request, body);
-            });
+            garantirCoordenadas(origem, destino);
             
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            JsonNode root = objectMapper.readTree(response.getBody());
+            MontadorInstrucoes montador = new MontadorInstrucoes(ouvinte);
+            JsonNode root = obterRespostaOsrm(origem, destino, montador);
             
-            // Usar Streams Java 8 para processar resultados
-            if (root.isArray()) {
-                return StreamSupport.stream(root.spliterator(), false)
-                    .map(this::jsonNodeParaEndereco)
-                    .filter(e -> e != null && !e.isErro())
-                    .collect(Collectors.toList());
+            if (root.get("code").asText().equals("Ok")) {
+                // Instruções montadas durante a leitura, mais a de chegada
+                return montarRota(origem, destino, root, root.get("routes").get(0), montador.concluir(), true);
+            } else {
+                throw new RuntimeException("Erro OSRM: " + root.get("message").asText());
             }
             
         } catch (Exception e) {
-            System.err.println("Erro ao buscar por texto: " + e.getMessage());
+            logger.warn("Erro ao calcular rota: {}", e.getMessage());
+            throw new RuntimeException("Erro ao calcular rota: " + e.getMessage());
         }
-        
-        return new ArrayList<>();
     }
-
+    
     /**
-     * Converte JsonNode do Nominatim para Endereco usando Streams
+     * Rotas de um perfil OSRM (driving, cycling, walking...): a principal e
+     * até {@code alternativas} alternativas, na ordem do OSRM. Uma única
+     * chamada ao serviço; os perfis históricos de velocidade só ajustam driving.
      */
-    private Endereco jsonNodeParaEndereco(JsonNode node) {
+    public List<Rota> calcularRotas(Endereco origem, Endereco destino, String perfil, int alternativas) {
         try {
-            Endereco endereco = new Endereco();
-            
-            // Extrair coordenadas
-            endereco.setLatitude(node.get("lat").asDouble());
-            endereco.setLongitude(node.get("lon").asDouble());
+            garantirCoordenadas(origem, destino);
             
-            // Extrair detalhes do endereço se disponível
-            if (node.has("address")) {
-                JsonNode address = node.get("address");
-                
-                // Usar Stream para encontrar o melhor campo para logradouro
-                String logradouro = Stream.of("road", "street", "pedestrian", "footway")
-                    .filter(address::has)
-                    .findFirst()
-                    .map(field -> address.get(field).asText())
-                    .orElse(node.has("display_name") ? 
-                        node.get("display_name").asText().split(",")[0] : "");
-                
-                endereco.setLogradouro(logradouro);
-                
-                // Bairro
-                if (address.has("suburb")) {
-                    endereco.setBairro(address.get("suburb").asText());
-                } else if (address.has("neighbourhood")) {
-                    endereco.setBairro(address.get("neighbourhood").asText());
-                }
-                
-                // Cidade
-                if (address.has("city")) {
-                    endereco.setLocalidade(address.get("city").asText());
-                } else if (address.has("town")) {
-                    endereco.setLocalidade(address.get("town").asText());
-                } else if (address.has("municipality")) {
-                    endereco.setLocalidade(address.get("municipality").asText());
+            String coordenadas = String.format(Locale.ROOT, "%.6f,%.6f;%.6f,%.6f",
+                origem.getLongitude(), origem.getLatitude(),
+                destino.getLongitude(), destino.getLatitude());
+            String chave = perfil + ":" + alternativas + ":" + coordenadas;
+            byte[] emCache = cacheRotas.obter(chave);
+            JsonNode root;
+            if (emCache != null) {
+                root = cborMapper.readTree(emCache);
+            } else {
+                String url = urlSemPerfil(urlOsrm) + perfil + "/" + coordenadas
+                    + "?overview=full&steps=true&geometries=polyline&annotations=true"
+                    + (alternativas > 0 ? "&alternatives=" + alternativas : "");
+                root = restTemplate.execute(url, HttpMethod.GET, null, resposta -> objectMapper.readTree(resposta.getBody()));
+                if (root == null || !"Ok".equals(root.path("code").asText())) {
+                    throw new RuntimeException("Erro OSRM: " + (root != null ? root.path("message").asText() : "sem resposta"));
                 }
-                
-                // Estado
-                if (address.has("state")) {
-                    String estado = address.get("state").asText();
-                    // Converter nome completo para sigla se necessário
-                    endereco.setUf(converterEstadoParaSigla(estado));
+                cacheRotas.colocar(chave, cborMapper.writeValueAsBytes(root));
+            }
+            
+            List<Rota> rotas = new ArrayList<>();
+            for (JsonNode route : root.path("routes")) {
+                if (rotas.size() > alternativas) {
+                    break;
                 }
-                
-                // CEP se disponível
-                if (address.has("postcode")) {
-                    endereco.setCep(address.get("postcode").asText());
-                } else {
-                    endereco.setCep("N/A");
+                MontadorInstrucoes montador = new MontadorInstrucoes(OuvinteRota.NENHUM);
+                for (JsonNode step : route.path("legs").path(0).path("steps")) {
+                    montador.aoLerPasso(step);
                 }
+                rotas.add(montarRota(origem, destino, root, route, montador.concluir(), perfil.equals("driving")));
             }
-            
-            endereco.setErro(false);
-            return endereco;
+            return rotas;
             
         } catch (Exception e) {
-            System.err.println("Erro ao converter JsonNode: " + e.getMessage());
-            return null;
+            logger.warn("Erro ao calcular rotas {}: {}", perfil, e.getMessage());
+            throw new RuntimeException("Erro ao calcular rotas " + perfil + ": " + e.getMessage());
         }
     }
-
+    
     /**
-     * Converte nome de estado para sigla
+     * Parte de upstream.osrm.url antes do perfil: ".../route/v1/driving/" -> ".../route/v1/"
      */
-    private String converterEstadoParaSigla(String estado) {
-        // Map de estados para siglas usando Java 8
-        java.util.Map<String, String> estadosMap = new java.util.HashMap<>();
-        estadosMap.put("Acre", "AC");
-        estadosMap.put("Alagoas", "AL");
-        estadosMap.put("Amapá", "AP");
-        estadosMap.put("Amazonas", "AM");
-        estadosMap.put("Bahia", "BA");
-        estadosMap.put("Ceará", "CE");
-        estadosMap.put("Distrito Federal", "DF");
-        estadosMap.put("Espírito Santo", "ES");
-        estadosMap.put("Goiás", "GO");
-        estadosMap.put("Maranhão", "MA");
-        estadosMap.put("Mato Grosso", "MT");
-        estadosMap.put("Mato Grosso do Sul", "MS");
-        estadosMap.put("Minas Gerais", "MG");
-        estadosMap.put("Pará", "PA");
-        estadosMap.put("Paraíba", "PB");
-        estadosMap.put("Paraná", "PR");
-        estadosMap.put("Pernambuco", "PE");
-        estadosMap.put("Piauí", "PI");
-        estadosMap.put("Rio de Janeiro", "RJ");
-        estadosMap.put("Rio Grande do Norte", "RN");
-        estadosMap.put("Rio Grande do Sul", "RS");
-        estadosMap.put("Rondônia", "RO");
-        estadosMap.put("Roraima", "RR");
-        estadosMap.put("Santa Catarina", "SC");
-        estadosMap.put("São Paulo", "SP");
-        estadosMap.put("Sergipe", "SE");
-        estadosMap.put("Tocantins", "TO");
-        
-        return estadosMap.getOrDefault(estado, estado.length() <= 2 ? estado : "BR");
+    public static String urlSemPerfil(String urlOsrm) {
+        String semBarra = urlOsrm.endsWith("/") ? urlOsrm.substring(0, urlOsrm.length() - 1) : urlOsrm;
+        return semBarra.substring(0, semBarra.lastIndexOf('/') + 1);
     }
-
+    
     /**
-     * Busca coordenadas de um endereço usando Nominatim
+     * Raiz do servidor OSRM, antes do serviço: ".../route/v1/driving/" -> ".../"
+     * (base dos outros serviços, como table)
      */
-    private boolean buscarCoordenadas(Endereco endereco) {
-        try {
-            String enderecoCompleto = construirEnderecoCompleto(endereco);
-            
-            String url = String.format("%s?format=json&q=%s&limit=1&countrycodes=br", 
-                NOMINATIM_URL, 
-                java.net.URLEncoder.encode(enderecoCompleto, "UTF-8"));
-            
-            restTemplate.getInterceptors().clear();
-            restTemplate.getInterceptors().add((request, body, execution) -> {
-                request.getHeaders().set("User-Agent", "GPS-Navegacao-App/1.0");
-                return execution.execute(request, body);
-            });
-            
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            JsonNode root = objectMapper.readTree(response.getBody());
-            
-            if (root.isArray() && root.size() > 0) {
-                JsonNode firstResult = root.get(0);
-                endereco.setLatitude(firstResult.get("lat").asDouble());
-                endereco.setLongitude(firstResult.get("lon").asDouble());
-                return true;
+    public static String urlRaizOsrm(String urlOsrm) {
+        int servico = urlOsrm.lastIndexOf("route/");
+        return servico >= 0 ? urlOsrm.substring(0, servico) : urlSemPerfil(urlOsrm);
+    }
+    
+    private void garantirCoordenadas(Endereco origem, Endereco destino) {
+        if (origem.getLatitude() == null || origem.getLongitude() == null) {
+            if (!provedorNominatim.geocodificar(origem)) {
+                throw new RuntimeException("Não foi possível obter coordenadas da origem");
+            }
+        }
+        
+        if (destino.getLatitude() == null || destino.getLongitude() == null) {
+            if (!provedorNominatim.geocodificar(destino)) {
+                throw new RuntimeException("Não foi possível obter coordenadas do destino");
             }
-        } catch (Exception e) {
-            System.err.println("Erro ao buscar coordenadas: " + e.getMessage());
         }
-        return false;
     }
-
+    
+    private Rota montarRota(Endereco origem, Endereco destino, JsonNode root, JsonNode route,
+                            List<InstrucaoNavegacao> instrucoes, boolean ajustarPerfis) {
+        Rota rota = new Rota();
+        rota.setOrigem(origem);
+        rota.setDestino(destino);
+        rota.setDistancia(route.get("distance").asDouble());
+        rota.setDuracao(route.get("duration").asDouble());
+        rota.setGeometria(route.path("geometry").asText(null));
+        rota.setDadosRotaCompleta(root);
+        rota.setAnotacoes(AnotacoesRota.de(route));
+        
+        // Substituir estimativa de fluxo livre do OSRM pelo histórico medido
+        if (ajustarPerfis) {
+            int ajustados = perfisVelocidade.ajustar(rota, System.currentTimeMillis());
+            if (ajustados > 0) {
+                logger.debug("Duração ajustada por perfis históricos em {} trechos", ajustados);
+            }
+        }
+        
+        rota.setInstrucoes(instrucoes);
+        
+        logger.debug("Rota de {},{} a {},{}: {} m, {} s", origem.getLatitude(), origem.getLongitude(),
+                destino.getLatitude(), destino.getLongitude(), Math.round(rota.getDistancia()), Math.round(rota.getDuracao()));
+        return rota;
+    }
+    
     /**
-     * Constrói endereço completo usando Streams
+     * Resposta OSRM da rota, do cache (chave com coordenadas arredondadas a ~1 m)
+     * ou do serviço; só respostas "Ok" são guardadas. A resposta do serviço é
+     * lida de forma incremental e o destino recebe cada parte assim que ela chega.
      */
-    private String construirEnderecoCompleto(Endereco endereco) {
-        return Stream.of(
-                endereco.getLogradouro(),
-                endereco.getBairro(),
-                endereco.getLocalidade(),
-                endereco.getUf()
-            )
-            .filter(s -> s != null && !s.isEmpty())
-            .collect(Collectors.joining(", "));
+    private JsonNode obterRespostaOsrm(Endereco origem, Endereco destino,
+                                       LeitorRespostaOsrm.Destino partes) throws Exception {
+        LeitorRespostaOsrm leitor = new LeitorRespostaOsrm(objectMapper, partes);
+        String chave = String.format(Locale.ROOT, "%.5f,%.5f;%.5f,%.5f",
+            origem.getLongitude(), origem.getLatitude(),
+            destino.getLongitude(), destino.getLatitude());
+        byte[] emCache = cacheRotas.obter(chave);
+        if (emCache != null) {
+            JsonNode root = cborMapper.readTree(emCache);
+            leitor.percorrer(root);
+            return root;
+        }
+        
+        String coordenadas = String.format("%s,%s;%s,%s", 
+            origem.getLongitude(), origem.getLatitude(),
+            destino.getLongitude(), destino.getLatitude());
+        
+        String url = urlOsrm + coordenadas + "?overview=full&steps=true&geometries=polyline&annotations=true";
+        
+        JsonNode root = restTemplate.execute(url, HttpMethod.GET, null, resposta -> leitor.ler(resposta.getBody()));
+        if ("Ok".equals(root.path("code").asText())) {
+            cacheRotas.colocar(chave, cborMapper.writeValueAsBytes(root));
+        }
+        return root;
     }
-
+    
     /**
-     * Calcula rota entre origem e destino
+     * Converte os passos OSRM em instruções de navegação conforme são lidos,
+     * descartando os muito curtos, e repassa cada instrução ao ouvinte
      */
-    public Rota calcularRota(Endereco origem, Endereco destino) {
-        try {
-            // Garantir coordenadas
-            if (origem.getLatitude() == null || origem.getLongitude() == null) {
-                if (!buscarCoordenadas(origem)) {
-                    throw new RuntimeException("Não foi possível obter coordenadas da origem");
-                }
-            }
-            
-            if (destino.getLatitude() == null || destino.getLongitude() == null) {
-                if (!buscarCoordenadas(destino)) {
-                    throw new RuntimeException("Não foi possível obter coordenadas do destino");
-                }
+    private final class MontadorInstrucoes implements LeitorRespostaOsrm.Destino {
+
+        private final OuvinteRota ouvinte;
+        private final List<InstrucaoNavegacao> instrucoes = new ArrayList<>();
+        private double distanciaAcumulada;
+
+        MontadorInstrucoes(OuvinteRota ouvinte) {
+            this.ouvinte = ouvinte;
+        }
+
+        @Override
+        public void aoLerGeometria(String polyline) {
+            ouvinte.aoReceberGeometria(polyline);
+        }
+
+        @Override
+        public void aoLerResumo(double distancia, double duracao) {
+            ouvinte.aoCalcularResumo(distancia, duracao);
+        }
+
+        @Override
+        public void aoLerPasso(JsonNode step) {
+            double distancia = step.path("distance").asDouble();
+            if (distancia < 10) {
+                return; // Filtrar instruções muito curtas
             }
+            InstrucaoNavegacao instrucao = new InstrucaoNavegacao();
+            double duracao = step.path("duration").asDouble();
             
-            System.out.println("📍 Origem: " + origem.getLatitude() + ", " + origem.getLongitude());
-            System.out.println("🏁 Destino: " + destino.getLatitude() + ", " + destino.getLongitude());
-            
-            String coordenadas = String.format("%s,%s;%s,%s", 
-                origem.getLongitude(), origem.getLatitude(),
-                destino.getLongitude(), destino.getLatitude());
+            instrucao.setDistancia(distancia);
+            instrucao.setDuracao(duracao);
+            instrucao.setDistanciaAcumulada(distanciaAcumulada);
             
-            String url = OSRM_URL + coordenadas + "?overview=full&steps=true&geometries=polyline&annotations=true";
+            distanciaAcumulada += distancia;
             
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            JsonNode root = objectMapper.readTree(response.getBody());
+            JsonNode maneuver = step.get("maneuver");
+            String tipo = maneuver.get("type").asText();
+            String direcao = maneuver.has("modifier") ? maneuver.get("modifier").asText() : "";
+            String nomeRua = step.path("name").asText();
             
-            if (root.get("code").asText().equals("Ok")) {
-                JsonNode route = root.get("routes").get(0);
-                
-                Rota rota = new Rota();
-                rota.setOrigem(origem);
-                rota.setDestino(destino);
-                rota.setDistancia(route.get("distance").asDouble());
-                rota.setDuracao(route.get("duration").asDouble());
-                rota.setDadosRotaCompleta(root);
-                
-                // Processar instruções usando Streams
-                List<InstrucaoNavegacao> instrucoes = processarInstrucoesComStreams(route);
-                rota.setInstrucoes(instrucoes);
-                
-                System.out.println("✓ Rota: " + String.format("%.1f km", rota.getDistancia() / 1000) + 
-                                 " - " + String.format("%.0f min", rota.getDuracao() / 60));
-                
-                return rota;
-            } else {
-                throw new RuntimeException("Erro OSRM: " + root.get("message").asText());
+            // Coordenadas da manobra
+            if (maneuver.has("location")) {
+                JsonNode location = maneuver.get("location");
+                instrucao.setLongitude(location.get(0).asDouble());
+                instrucao.setLatitude(location.get(1).asDouble());
             }
             
-        } catch (Exception e) {
-            System.err.println("✗ Erro ao calcular rota: " + e.getMessage());
-            throw new RuntimeException("Erro ao calcular rota: " + e.getMessage());
-        }
-    }
-    
-    /**
-     * Processa instruções de navegação usando Streams Java 8
-     */
-    private List<InstrucaoNavegacao> processarInstrucoesComStreams(JsonNode route) {
-        try {
-            JsonNode steps = route.get("legs").get(0).get("steps");
-            
-            final double[] distanciaAcumulada = {0.0}; // Array para usar em lambda
+            if (nomeRua == null || nomeRua.isEmpty()) {
+                nomeRua = "estrada";
+            }
             
-            // Converter steps em Stream e processar
-            List<InstrucaoNavegacao> instrucoes = StreamSupport.stream(steps.spliterator(), false)
-                .filter(step -> step.get("distance").asDouble() >= 10) // Filtrar instruções muito curtas
-                .map(step -> {
-                    InstrucaoNavegacao instrucao = new InstrucaoNavegacao();
-                    
-                    double distancia = step.get("distance").asDouble();
-                    double duracao = step.get("duration").asDouble();
-                    
-                    instrucao.setDistancia(distancia);
-                    instrucao.setDuracao(duracao);
-                    instrucao.setDistanciaAcumulada(distanciaAcumulada[0]);
-                    
-                    distanciaAcumulada[0] += distancia;
-                    
-                    JsonNode maneuver = step.get("maneuver");
-                    String tipo = maneuver.get("type").asText();
-                    String direcao = maneuver.has("modifier") ? maneuver.get("modifier").asText() : "";
-                    String nomeRua = step.get("name").asText();
-                    
-                    // Coordenadas da manobra
-                    if (maneuver.has("location")) {
-                        JsonNode location = maneuver.get("location");
-                        instrucao.setLongitude(location.get(0).asDouble());
-                        instrucao.setLatitude(location.get(1).asDouble());
-                    }
-                    
-                    if (nomeRua == null || nomeRua.isEmpty()) {
-                        nomeRua = "estrada";
-                    }
-                    
-                    instrucao.setTipo(tipo);
-                    instrucao.setDirecao(direcao);
-                    instrucao.setNomeRua(nomeRua);
-                    instrucao.setInstrucao(gerarInstrucaoTexto(tipo, direcao, nomeRua, distancia));
-                    instrucao.setDistanciaAlerta(Math.max(0, distanciaAcumulada[0] - 200));
-                    
-                    return instrucao;
-                })
-                .collect(Collectors.toList());
+            instrucao.setTipo(tipo);
+            instrucao.setDirecao(direcao);
+            instrucao.setNomeRua(nomeRua);
+            instrucao.setInstrucao(gerarInstrucaoTexto(tipo, direcao, nomeRua, distancia));
+            instrucao.setDistanciaAlerta(Math.max(0, distanciaAcumulada - 200));
             
-            // Adicionar instrução de chegada
+            instrucoes.add(instrucao);
+            ouvinte.aoReceberInstrucao(instrucao);
+        }
+
+        /**
+         * Instruções lidas mais a de chegada
+         */
+        List<InstrucaoNavegacao> concluir() {
             if (!instrucoes.isEmpty()) {
                 InstrucaoNavegacao chegada = new InstrucaoNavegacao();
                 chegada.setTipo("arrive");
                 chegada.setInstrucao("Você chegou ao seu destino!");
                 chegada.setDistancia(0);
                 chegada.setDuracao(0);
-                chegada.setDistanciaAcumulada(distanciaAcumulada[0]);
+                chegada.setDistanciaAcumulada(distanciaAcumulada);
                 instrucoes.add(chegada);
+                ouvinte.aoReceberInstrucao(chegada);
             }
-            
             return instrucoes;
-            
-        } catch (Exception e) {
-            System.err.println("Erro ao processar instruções: " + e.getMessage());
-            return new ArrayList<>();
         }
     }
     
@@ -469,10 +424,4 @@ public class NavegacaoService {
             default: return "Continue";
         }
     }
-    
-    private Endereco criarEnderecoComErro(String mensagem) {
-        Endereco enderecoErro = new Endereco();
-        enderecoErro.setErro(true);
-        return enderecoErro;
-    }
 }
\ No newline at end of file
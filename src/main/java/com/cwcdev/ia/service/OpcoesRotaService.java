@@ -0,0 +1,150 @@
+package com.cwcdev.ia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.cwcdev.ia.model.Endereco;
+import com.cwcdev.ia.model.OpcaoRota;
+import com.cwcdev.ia.model.Rota;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Rotas de vários perfis OSRM (e as alternativas de cada um) calculadas em
+ * paralelo e ordenadas por custo.
+ *
+ * Cada perfil é uma chamada ao OSRM, feita num {@link PoolLimitado}: um
+ * pedido usa no máximo {@code paralelismo-por-pedido} threads do pool, então
+ * um pedido com muitos perfis não ocupa o pool inteiro. Um perfil que falha
+ * ou não termina no prazo entra em "falhas" sem derrubar os demais.
+ */
+@Service
+public class OpcoesRotaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpcoesRotaService.class);
+
+    private final NavegacaoService navegacaoService;
+    private final List<String> perfisPadrao;
+    private final int alternativas;
+    private final int paralelismoPorPedido;
+    private final long prazoMs;
+    private final double pesoTempo;
+    private final double pesoDistancia;
+    private final PoolLimitado pool;
+    private final Timer tempoPedido;
+
+    public OpcoesRotaService(NavegacaoService navegacaoService, MeterRegistry registry,
+            @Value("${navegacao.opcoes.perfis:driving,cycling,walking}") String perfisPadrao,
+            @Value("${navegacao.opcoes.alternativas:2}") int alternativas,
+            @Value("${navegacao.opcoes.paralelismo-por-pedido:2}") int paralelismoPorPedido,
+            @Value("${navegacao.opcoes.threads:8}") int threads,
+            @Value("${navegacao.opcoes.fila:64}") int fila,
+            @Value("${navegacao.opcoes.prazo-ms:15000}") long prazoMs,
+            @Value("${navegacao.opcoes.custo.peso-tempo:1.0}") double pesoTempo,
+            @Value("${navegacao.opcoes.custo.peso-distancia:0.0}") double pesoDistancia) {
+        this.navegacaoService = navegacaoService;
+        this.perfisPadrao = separar(perfisPadrao);
+        this.alternativas = Math.max(0, alternativas);
+        this.paralelismoPorPedido = Math.max(1, paralelismoPorPedido);
+        this.prazoMs = prazoMs;
+        this.pesoTempo = pesoTempo;
+        this.pesoDistancia = pesoDistancia;
+        this.pool = new PoolLimitado("rota-opcoes", threads, fila);
+        this.tempoPedido = Timer.builder("rotas.opcoes")
+                .description("Tempo para calcular e ordenar as rotas de todos os perfis de um pedido")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        pool.encerrar();
+    }
+
+    /**
+     * Custo de uma rota: segundos x peso do tempo + metros x peso da distância.
+     * Pesos nulos usam os configurados em navegacao.opcoes.custo.*
+     */
+    public double custo(Rota rota, Double pesoTempo, Double pesoDistancia) {
+        return rota.getDuracao() * (pesoTempo != null ? pesoTempo : this.pesoTempo)
+                + rota.getDistancia() * (pesoDistancia != null ? pesoDistancia : this.pesoDistancia);
+    }
+
+    /**
+     * Calcula e ordena por custo as rotas dos perfis pedidos (todos os
+     * configurados se {@code perfis} for vazio)
+     *
+     * @return "opcoes" (lista de {@link OpcaoRota}) e "falhas" (perfil -> motivo)
+     * @throws IllegalArgumentException se um perfil tiver caracteres fora de [A-Za-z0-9_-]
+     * @throws RejectedExecutionException se o pool estiver saturado
+     */
+    public Map<String, Object> calcular(Endereco origem, Endereco destino, String perfis, boolean comAlternativas,
+                                        Double pesoTempo, Double pesoDistancia) throws InterruptedException {
+        long inicio = System.nanoTime();
+        List<String> pedidos = perfis == null || perfis.trim().isEmpty() ? perfisPadrao : separar(perfis);
+        int quantidadeAlternativas = comAlternativas ? alternativas : 0;
+
+        Queue<OpcaoRota> opcoes = new ConcurrentLinkedQueue<>();
+        Map<String, String> falhas = new ConcurrentHashMap<>();
+        List<String> esgotados = pool.executar(pedidos, paralelismoPorPedido, prazoMs, perfil -> {
+            try {
+                List<Rota> rotas = navegacaoService.calcularRotas(origem, destino, perfil, quantidadeAlternativas);
+                for (int i = 0; i < rotas.size(); i++) {
+                    opcoes.add(new OpcaoRota(perfil, i, custo(rotas.get(i), pesoTempo, pesoDistancia), rotas.get(i)));
+                }
+            } catch (RuntimeException e) {
+                falhas.put(perfil, String.valueOf(e.getMessage()));
+            }
+        });
+        for (String perfil : esgotados) {
+            falhas.put(perfil, "Prazo esgotado");
+        }
+
+        // Opções de um perfil que terminou depois do prazo são descartadas
+        List<OpcaoRota> ordenadas = new ArrayList<>(opcoes);
+        ordenadas.removeIf(opcao -> esgotados.contains(opcao.getPerfil()));
+        ordenadas.sort(Comparator.comparingDouble(OpcaoRota::getCusto));
+        tempoPedido.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        logger.debug("{} opções de rota em {} perfis ({} falhas)", ordenadas.size(), pedidos.size(), falhas.size());
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("opcoes", ordenadas);
+        resultado.put("falhas", new LinkedHashMap<>(falhas));
+        return resultado;
+    }
+
+    public int getPendentes() {
+        return pool.getPendentes();
+    }
+
+    private static List<String> separar(String perfis) {
+        return Arrays.stream(perfis.split(","))
+                .map(String::trim)
+                .filter(perfil -> !perfil.isEmpty())
+                .peek(perfil -> {
+                    // O perfil vai para o caminho da URL do OSRM
+                    if (!perfil.matches("[A-Za-z0-9_-]+")) {
+                        throw new IllegalArgumentException("Perfil inválido: " + perfil);
+                    }
+                })
+                .distinct()
+                .collect(Collectors.toList());
+    }
+}
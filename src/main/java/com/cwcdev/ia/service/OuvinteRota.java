@@ -0,0 +1,23 @@
+package com.cwcdev.ia.service;
+
+import com.cwcdev.ia.model.InstrucaoNavegacao;
+
+/**
+ * Partes da rota entregues durante o cálculo, na ordem em que ficam prontas
+ * (ver {@link NavegacaoService#calcularRota(com.cwcdev.ia.model.Endereco,
+ * com.cwcdev.ia.model.Endereco, OuvinteRota)}). A rota retornada ao fim
+ * contém as mesmas instruções.
+ */
+public interface OuvinteRota {
+
+    OuvinteRota NENHUM = new OuvinteRota() {};
+
+    /**
+     * Distância e duração totais informadas pelo OSRM (antes do ajuste pelos perfis históricos)
+     */
+    default void aoCalcularResumo(double distancia, double duracao) {}
+
+    default void aoReceberGeometria(String polyline) {}
+
+    default void aoReceberInstrucao(InstrucaoNavegacao instrucao) {}
+}
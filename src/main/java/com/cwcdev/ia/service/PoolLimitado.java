@@ -0,0 +1,122 @@
+package com.cwcdev.ia.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cwcdev.ia.admissao.ControleAdmissao;
+import com.cwcdev.ia.prazo.Prazo;
+
+/**
+ * Pool de threads compartilhado por pedidos que disparam várias chamadas
+ * externas de uma vez (perfis de rota, lotes de matriz), com paralelismo
+ * limitado por pedido.
+ *
+ * Os itens de um pedido ficam numa fila própria, consumida por no máximo
+ * {@code paralelismo} threads do pool; os demais pedidos continuam tendo
+ * threads livres mesmo quando um pedido tem muitos itens. O {@link Prazo} da
+ * thread que chama vale também nas threads do pool e encurta a espera; a
+ * restrição de admissão ({@link ControleAdmissao}) também é repassada.
+ */
+public class PoolLimitado {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolLimitado.class);
+
+    private final ThreadPoolExecutor executor;
+
+    public PoolLimitado(String nome, int threads, int fila) {
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fila), r -> {
+                    Thread thread = new Thread(r, nome + "-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Executa {@code acao} para cada item (itens distintos) e espera todos
+     * terminarem ou o prazo acabar. A ação trata as próprias falhas; uma
+     * exceção que escape dela só é registrada no log.
+     *
+     * @return itens que não terminaram no prazo (os ainda não iniciados não
+     *         são mais executados)
+     * @throws RejectedExecutionException se nenhuma thread puder ser reservada
+     */
+    public <T> List<T> executar(Collection<T> itens, int paralelismo, long prazoMs, Consumer<T> acao)
+            throws InterruptedException {
+        Queue<T> pendentes = new ConcurrentLinkedQueue<>(itens);
+        Set<T> terminados = ConcurrentHashMap.newKeySet();
+        CountDownLatch concluidos = new CountDownLatch(itens.size());
+        AtomicBoolean encerrado = new AtomicBoolean();
+        Prazo prazo = Prazo.atual();
+        ControleAdmissao.Restricao restricao = ControleAdmissao.atual();
+
+        Runnable trabalhador = () -> {
+            T item;
+            while (!encerrado.get() && (item = pendentes.poll()) != null) {
+                try (Prazo.Escopo escopo = Prazo.usar(prazo);
+                        ControleAdmissao.Escopo admissao = ControleAdmissao.usar(restricao)) {
+                    acao.accept(item);
+                } catch (RuntimeException e) {
+                    logger.warn("Falha não tratada em {}: {}", item, e.getMessage());
+                } finally {
+                    terminados.add(item);
+                    concluidos.countDown();
+                }
+            }
+        };
+
+        int trabalhadores = Math.min(Math.max(1, paralelismo), itens.size());
+        int iniciados = 0;
+        for (int i = 0; i < trabalhadores; i++) {
+            try {
+                executor.execute(trabalhador);
+                iniciados++;
+            } catch (RejectedExecutionException e) {
+                // Os trabalhadores já iniciados consomem a fila inteira
+                break;
+            }
+        }
+        if (iniciados == 0 && !itens.isEmpty()) {
+            throw new RejectedExecutionException("Pool saturado");
+        }
+
+        List<T> esgotados = new ArrayList<>();
+        if (!concluidos.await(Prazo.limitar(prazoMs), TimeUnit.MILLISECONDS)) {
+            encerrado.set(true);
+            for (T item : itens) {
+                if (!terminados.contains(item)) {
+                    esgotados.add(item);
+                }
+            }
+        }
+        return esgotados;
+    }
+
+    /**
+     * Trabalhadores aguardando thread livre
+     */
+    public int getPendentes() {
+        return executor.getQueue().size();
+    }
+
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -1,10 +1,19 @@
 package com.cwcdev.ia.service;
 
+import com.cwcdev.ia.endereco.NormalizadorEndereco;
+import com.cwcdev.ia.endereco.ResolvedorEnderecos;
 import com.cwcdev.ia.model.Endereco;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,55 +21,25 @@ import org.slf4j.LoggerFactory;
 public class ViaCepService {
 
     private static final Logger logger = LoggerFactory.getLogger(ViaCepService.class);
-    private static final String VIA_CEP_URL = "https://viacep.com.br/ws/";
     
     private final RestTemplate restTemplate;
+    private final String urlViaCep;
+    private final ResolvedorEnderecos resolvedorEnderecos;
 
     @Autowired
-    public ViaCepService(RestTemplate restTemplate) {
+    public ViaCepService(RestTemplate restTemplate, ResolvedorEnderecos resolvedorEnderecos,
+                         @Value("${upstream.viacep.url:https://viacep.com.br/ws/}") String urlViaCep) {
         this.restTemplate = restTemplate;
+        this.urlViaCep = urlViaCep;
+        this.resolvedorEnderecos = resolvedorEnderecos;
     }
 
+    /**
+     * Mesma busca por CEP usada pela navegação (camadas de {@link ResolvedorEnderecos})
+     */
     public Endereco buscarEnderecoPorCep(String cep) {
         logger.info("Buscando endereço para o CEP: {}", cep);
-        
-        // Limpa e valida o CEP
-        cep = cep.replaceAll("[^0-9]", "");
-        
-        if (cep.length() != 8) {
-            logger.warn("CEP inválido: {}", cep);
-            return Endereco.criarComErro("CEP deve conter exatamente 8 dígitos. Formato esperado: 00000000");
-        }
-        
-        String url = VIA_CEP_URL + cep + "/json/";
-        logger.debug("URL da requisição: {}", url);
-        
-        try {
-            ResponseEntity<Endereco> response = restTemplate.getForEntity(url, Endereco.class);
-            Endereco endereco = response.getBody();
-            
-            logger.debug("Resposta da API: {}", endereco);
-            
-            if (endereco == null) {
-                logger.warn("Resposta nula da API para CEP: {}", cep);
-                return Endereco.criarComErro("Serviço temporariamente indisponível. Tente novamente em alguns instantes.");
-            }
-            
-            // Verifica se o CEP foi encontrado (ViaCEP retorna campo "erro": true quando não encontra)
-            if (endereco.getCep() == null || endereco.isErro()) {
-                logger.warn("CEP não encontrado: {}", cep);
-                return Endereco.criarComErro("CEP " + cep + " não encontrado. Verifique se o CEP está correto.");
-            }
-            
-            logger.info("CEP encontrado com sucesso: {}", cep);
-            endereco.setErro(false);
-            endereco.setMensagemErro(null);
-            return endereco;
-            
-        } catch (Exception e) {
-            logger.error("Erro ao buscar CEP {}: {}", cep, e.getMessage(), e);
-            return Endereco.criarComErro("Erro de conexão com o serviço de CEP. Verifique sua internet e tente novamente.");
-        }
+        return resolvedorEnderecos.buscarPorCep(cep);
     }
 
     public Endereco buscarEnderecoPorLogradouro(String uf, String localidade, String logradouro) {
@@ -86,28 +65,17 @@ public class ViaCepService {
             }
             
             // Limpa o logradouro mantendo caracteres válidos
-            logradouro = logradouro.replaceAll("[^a-zA-ZÀ-ÿ0-9\\s\\.\\-]", "");
-            logradouro = logradouro.replaceAll("^\\d+\\s*", "");
-            logradouro = logradouro.replaceAll("\\s+", " ").trim();
+            logradouro = NormalizadorEndereco.limparLogradouro(logradouro);
             
             if (logradouro.isEmpty()) {
                 return Endereco.criarComErro("Logradouro contém apenas caracteres inválidos");
             }
             
-            // Codifica o logradouro para URL
-            String logradouroCodificado = java.net.URLEncoder.encode(logradouro, "UTF-8");
-            String url = VIA_CEP_URL + uf + "/" + localidade + "/" + logradouroCodificado + "/json/";
-            
-            logger.debug("URL da busca: {}", url);
+            List<Endereco> enderecos = buscarPorLogradouro(uf, localidade, logradouro);
             
-            ResponseEntity<Endereco[]> response = restTemplate.getForEntity(url, Endereco[].class);
-            Endereco[] enderecos = response.getBody();
-            
-            if (enderecos != null && enderecos.length > 0 && enderecos[0].getCep() != null) {
-                logger.info("Endereço encontrado por logradouro: {}", enderecos[0].getCep());
-                enderecos[0].setErro(false);
-                enderecos[0].setMensagemErro(null);
-                return enderecos[0];
+            if (!enderecos.isEmpty()) {
+                logger.info("Endereço encontrado por logradouro: {}", enderecos.get(0).getCep());
+                return enderecos.get(0);
             } else {
                 logger.warn("Nenhum endereço encontrado para os parâmetros informados");
                 return Endereco.criarComErro("Nenhum endereço encontrado para '" + logradouro + 
@@ -120,4 +88,32 @@ public class ViaCepService {
             return Endereco.criarComErro("Erro ao buscar endereço. Tente novamente mais tarde.");
         }
     }
+
+    /**
+     * Todos os endereços da busca por logradouro do ViaCEP (um por faixa de
+     * CEP), sem validação dos parâmetros; lista vazia se nada for encontrado
+     */
+    public List<Endereco> buscarPorLogradouro(String uf, String localidade, String logradouro) {
+        // Cada parte codificada como segmento de caminho (espaços e acentos)
+        URI uri = UriComponentsBuilder.fromHttpUrl(urlViaCep)
+                .pathSegment(uf, localidade, logradouro, "json")
+                .path("/")
+                .build()
+                .encode()
+                .toUri();
+        logger.debug("URL da busca: {}", uri);
+        
+        Endereco[] resposta = restTemplate.getForObject(uri, Endereco[].class);
+        List<Endereco> enderecos = new ArrayList<>();
+        if (resposta != null) {
+            Arrays.stream(resposta)
+                .filter(endereco -> endereco != null && endereco.getCep() != null)
+                .forEach(endereco -> {
+                    endereco.setErro(false);
+                    endereco.setMensagemErro(null);
+                    enderecos.add(endereco);
+                });
+        }
+        return enderecos;
+    }
 }
\ No newline at end of file
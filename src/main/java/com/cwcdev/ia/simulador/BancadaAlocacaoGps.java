@@ -0,0 +1,100 @@
+package com.cwcdev.ia.simulador;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.gps.LeitorFixGps;
+
+/**
+ * Verificação de alocação do caminho de ingestão de GPS: bytes alocados por
+ * fix na leitura JSON, na leitura binária e no eco, medidos pelo contador de
+ * alocação da própria thread (com.sun.management.ThreadMXBean) depois de um
+ * aquecimento para o JIT compilar e aplicar escape analysis.
+ *
+ * Não sobe o contexto Spring: roda pelo perfil Maven "bancada-gps" e termina
+ * com código 1 se leitura JSON ou binária passar do limite por fix:
+ * <pre>
+ * mvn -Pbancada-gps -Dbancada.iteracoes=2000000 -Dbancada.limite-bytes=64
+ * </pre>
+ */
+public class BancadaAlocacaoGps {
+
+    private static final Logger logger = LoggerFactory.getLogger(BancadaAlocacaoGps.class);
+
+    private static final byte[] FIX_JSON =
+            "{\"latitude\":-23.550520,\"longitude\":-46.633308,\"accuracy\":5,\"speed\":12.5}"
+                    .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIX_BINARIO = {
+        LeitorFixGps.VERSAO_BINARIO,
+        (byte) 0xF1, (byte) 0xF6, (byte) 0x79, (byte) 0xD0, // -23.5505200 x 1e7
+        (byte) 0xE4, (byte) 0x34, (byte) 0x52, (byte) 0x68, // -46.6333080 x 1e7
+        0, 50,                                               // 5.0 m
+        4, (byte) 0xE2                                       // 12.5 m/s
+    };
+
+    private final LeitorFixGps leitor = new LeitorFixGps();
+    private final FixGps fix = new FixGps();
+    private final StringBuilder rascunho = new StringBuilder(128);
+    private long sumidouro;
+
+    public static void main(String[] args) {
+        int iteracoes = Integer.getInteger("bancada.iteracoes", 1_000_000);
+        long limite = Long.getLong("bancada.limite-bytes", 64);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            logger.error("JVM sem contador de alocação por thread");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        BancadaAlocacaoGps bancada = new BancadaAlocacaoGps();
+        double json = bancada.medir(threads, iteracoes, bancada::lerJson);
+        double binario = bancada.medir(threads, iteracoes, bancada::lerBinario);
+        double eco = bancada.medir(threads, iteracoes, bancada::eco);
+
+        logger.info(String.format(Locale.ROOT,
+                "Bytes alocados por fix (%d iterações): json=%.1f binario=%.1f eco=%.1f (limite de leitura: %d)",
+                iteracoes, json, binario, eco, limite));
+        // Consome os resultados para o JIT não eliminar as operações medidas
+        logger.debug("Soma de verificação: {}", bancada.sumidouro);
+        if (json > limite || binario > limite) {
+            logger.error("Leitura de fix alocando acima do limite de {} bytes por fix", limite);
+            System.exit(1);
+        }
+    }
+
+    private double medir(com.sun.management.ThreadMXBean threads, int iteracoes, Runnable operacao) {
+        for (int i = 0; i < iteracoes; i++) {
+            operacao.run();
+        }
+        long idThread = Thread.currentThread().getId();
+        long antes = threads.getThreadAllocatedBytes(idThread);
+        for (int i = 0; i < iteracoes; i++) {
+            operacao.run();
+        }
+        return (threads.getThreadAllocatedBytes(idThread) - antes) / (double) iteracoes;
+    }
+
+    private void lerJson() {
+        if (leitor.lerJson(FIX_JSON, fix)) {
+            sumidouro += (long) fix.latitude;
+        }
+    }
+
+    private void lerBinario() {
+        if (leitor.lerBinario(FIX_BINARIO, fix)) {
+            sumidouro += (long) fix.longitude;
+        }
+    }
+
+    private void eco() {
+        sumidouro += fix.escreverJsonBytes(rascunho).length;
+    }
+}
@@ -0,0 +1,362 @@
+package com.cwcdev.ia.simulador;
+
+import java.lang.reflect.Type;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+
+import com.cwcdev.ia.codec.Polyline;
+import com.cwcdev.ia.navegacao.MotorNavegacao;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Um motorista do simulador: uma sessão STOMP que calcula a própria rota
+ * (/app/rota.calcular, guardada por sessão no nó), inicia a navegação e
+ * percorre a geometria enviando fixes na velocidade e no intervalo
+ * configurados. Ao chegar ao fim, calcula uma nova rota.
+ *
+ * Cada fix leva um número de sequência ("seq"), devolvido no eco e na ETA.
+ * As latências são medidas a partir do instante em que o fix deveria ter
+ * sido enviado (agenda de taxa fixa), não de quando o envio aconteceu, para
+ * que atrasos do próprio gerador não escondam a espera (coordinated omission):
+ * <ul>
+ * <li>eco: até o retorno do mesmo fix em /user/queue/posicao;</li>
+ * <li>instrução: até a ETA que responde ao fix. Fixes coalescidos pelo
+ * fragmento da sessão são respondidos pela ETA de um fix posterior, e cada
+ * um conta a própria espera até ela.</li>
+ * </ul>
+ */
+class MotoristaSimulado extends StompSessionHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MotoristaSimulado.class);
+
+    private static final String[] FILAS_MOTOR = {"/user/queue/alerta", "/user/queue/instrucoes", "/user/queue/chegada"};
+    // Fixes em voo lembrados para correlação (potência de 2)
+    private static final int JANELA_FIXES = 1024;
+
+    private final SimuladorFrota simulador;
+    private final int indice;
+    private volatile StompSession sessao;
+    // Aberto depois das assinaturas: a sessão não aceita envios concorrentes
+    // e a resposta da rota precisa encontrar /user/queue/rota já assinada
+    private final CountDownLatch inscrito = new CountDownLatch(1);
+    private volatile CountDownLatch navegacaoIniciada;
+    private volatile RotaRecebida rotaEmCalculo;
+
+    // Rota atual: pontos em ponto fixo 1e5 e distância acumulada até cada ponto
+    private int[] pontos;
+    private double[] acumulada;
+    private double percorrida;
+    private int rotaAtual;
+
+    // Sequência -> instante previsto do envio, para os últimos JANELA_FIXES fixes
+    private final AtomicLongArray sequencias = new AtomicLongArray(JANELA_FIXES);
+    private final AtomicLongArray previstos = new AtomicLongArray(JANELA_FIXES);
+    private long proximaSequencia = 1;
+    private long proximoEnvioPrevisto;
+    private long ultimaRespondidaMotor;
+
+    MotoristaSimulado(SimuladorFrota simulador, int indice) {
+        this.simulador = simulador;
+        this.indice = indice;
+        this.rotaAtual = indice;
+    }
+
+    @Override
+    public void afterConnected(StompSession sessao, StompHeaders cabecalhos) {
+        this.sessao = sessao;
+        sessao.subscribe("/user/queue/posicao", new Receptor(this::aoReceberEco));
+        sessao.subscribe("/user/queue/eta", new Receptor(this::aoReceberEta));
+        sessao.subscribe("/user/queue/rota", new Receptor(this::aoReceberRota));
+        sessao.subscribe("/user/queue/navegacao", new Receptor(this::aoReceberNavegacao));
+        for (String fila : FILAS_MOTOR) {
+            sessao.subscribe(fila, new Receptor(payload -> { }));
+        }
+        inscrito.countDown();
+    }
+
+    @Override
+    public void handleTransportError(StompSession sessao, Throwable erro) {
+        simulador.registrarErro();
+        logger.debug("Motorista {}: erro de transporte: {}", indice, erro.getMessage());
+    }
+
+    boolean isConectado() {
+        StompSession atual = sessao;
+        return atual != null && atual.isConnected();
+    }
+
+    /**
+     * Calcula a rota desta sessão e inicia a navegação com ela. Como a rota
+     * fica guardada por sessão no nó, motoristas iniciam rotas em paralelo.
+     */
+    boolean iniciarRota() throws InterruptedException {
+        if (!inscrito.await(10, TimeUnit.SECONDS)) {
+            return false;
+        }
+        RotaRecebida recebida = new RotaRecebida();
+        rotaEmCalculo = recebida;
+        StompHeaders cabecalhos = new StompHeaders();
+        cabecalhos.setDestination("/app/rota.calcular");
+        cabecalhos.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        sessao.send(cabecalhos, simulador.pedidoRota(rotaAtual));
+        int[] novosPontos = recebida.aguardar();
+        rotaEmCalculo = null;
+        if (novosPontos == null || novosPontos.length < 4) {
+            simulador.registrarErro();
+            return false;
+        }
+        double[] novaAcumulada = new double[novosPontos.length / 2];
+        for (int i = 1; i < novaAcumulada.length; i++) {
+            novaAcumulada[i] = novaAcumulada[i - 1] + MotorNavegacao.calcularDistancia(
+                novosPontos[i * 2 - 2] / Polyline.ESCALA, novosPontos[i * 2 - 1] / Polyline.ESCALA,
+                novosPontos[i * 2] / Polyline.ESCALA, novosPontos[i * 2 + 1] / Polyline.ESCALA);
+        }
+
+        navegacaoIniciada = new CountDownLatch(1);
+        sessao.send("/app/navegacao.iniciar", "");
+        if (!navegacaoIniciada.await(10, TimeUnit.SECONDS)) {
+            return false;
+        }
+        synchronized (this) {
+            pontos = novosPontos;
+            acumulada = novaAcumulada;
+            percorrida = 0;
+            proximoEnvioPrevisto = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Avança o veículo um intervalo e envia o fix correspondente.
+     *
+     * @return false quando a rota terminou (o chamador calcula outra)
+     */
+    boolean enviarFix(double velocidade, int intervaloMs) {
+        double lat;
+        double lng;
+        long sequencia;
+        long previsto;
+        synchronized (this) {
+            if (pontos == null) {
+                return true;
+            }
+            percorrida += velocidade * intervaloMs / 1000.0;
+            double total = acumulada[acumulada.length - 1];
+            if (percorrida >= total) {
+                pontos = null;
+                rotaAtual += simulador.getRotasDistintas();
+                return false;
+            }
+            int i = 1;
+            while (acumulada[i] < percorrida) {
+                i++;
+            }
+            double trecho = acumulada[i] - acumulada[i - 1];
+            double f = trecho > 0 ? (percorrida - acumulada[i - 1]) / trecho : 0;
+            lat = (pontos[i * 2 - 2] + (pontos[i * 2] - pontos[i * 2 - 2]) * f) / Polyline.ESCALA;
+            lng = (pontos[i * 2 - 1] + (pontos[i * 2 + 1] - pontos[i * 2 - 1]) * f) / Polyline.ESCALA;
+
+            // Agenda de taxa fixa a partir do primeiro fix da rota
+            if (proximoEnvioPrevisto == 0) {
+                proximoEnvioPrevisto = System.nanoTime();
+            }
+            previsto = proximoEnvioPrevisto;
+            proximoEnvioPrevisto += TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+            sequencia = proximaSequencia++;
+        }
+
+        int slot = (int) (sequencia & (JANELA_FIXES - 1));
+        previstos.set(slot, previsto);
+        sequencias.set(slot, sequencia);
+        String fix = String.format(Locale.ROOT,
+            "{\"latitude\":%.6f,\"longitude\":%.6f,\"accuracy\":5,\"speed\":%.1f,\"seq\":%d}",
+            lat, lng, velocidade, sequencia);
+        try {
+            sessao.send("/app/gps.posicao", fix);
+            simulador.registrarEnvio();
+        } catch (RuntimeException e) {
+            simulador.registrarErro();
+        }
+        return true;
+    }
+
+    void desconectar() {
+        StompSession atual = sessao;
+        if (atual != null && atual.isConnected()) {
+            try {
+                atual.disconnect();
+            } catch (RuntimeException e) {
+                logger.debug("Motorista {}: falha ao desconectar: {}", indice, e.getMessage());
+            }
+        }
+    }
+
+    private void aoReceberEco(Object payload) {
+        long sequencia = lerSequencia((String) payload);
+        long previsto = previstoDe(sequencia);
+        if (previsto != 0) {
+            simulador.registrarEco(System.nanoTime() - previsto);
+        }
+    }
+
+    /**
+     * A ETA responde ao fix indicado e aos anteriores ainda sem resposta
+     */
+    private synchronized void aoReceberEta(Object payload) {
+        long sequencia = lerSequencia((String) payload);
+        if (sequencia <= ultimaRespondidaMotor) {
+            return;
+        }
+        long agora = System.nanoTime();
+        for (long s = Math.max(ultimaRespondidaMotor + 1, sequencia - JANELA_FIXES + 1); s <= sequencia; s++) {
+            long previsto = previstoDe(s);
+            if (previsto != 0) {
+                simulador.registrarInstrucao(agora - previsto);
+            }
+        }
+        ultimaRespondidaMotor = sequencia;
+    }
+
+    private long previstoDe(long sequencia) {
+        int slot = (int) (sequencia & (JANELA_FIXES - 1));
+        long previsto = previstos.get(slot);
+        return sequencia > 0 && sequencias.get(slot) == sequencia ? previsto : 0;
+    }
+
+    /**
+     * Valor de "seq" no JSON, ou 0 se ausente
+     */
+    static long lerSequencia(String json) {
+        int i = json.indexOf("\"seq\":");
+        if (i < 0) {
+            return 0;
+        }
+        i += 6;
+        while (i < json.length() && json.charAt(i) == ' ') {
+            i++;
+        }
+        long valor = 0;
+        while (i < json.length() && Character.isDigit(json.charAt(i))) {
+            valor = valor * 10 + (json.charAt(i++) - '0');
+        }
+        return valor;
+    }
+
+    private void aoReceberRota(Object payload) {
+        RotaRecebida recebida = rotaEmCalculo;
+        if (recebida != null) {
+            recebida.receber((String) payload);
+        }
+    }
+
+    private void aoReceberNavegacao(Object payload) {
+        CountDownLatch iniciada = navegacaoIniciada;
+        if (iniciada != null && "NAVEGACAO_INICIADA".equals(payload)) {
+            iniciada.countDown();
+        }
+    }
+
+    /**
+     * Remonta a geometria entregue em partes por /user/queue/rota. As
+     * mensagens podem chegar fora de ordem: a rota está completa quando
+     * CONCLUIDA chegou e todas as partes que ela anuncia também.
+     */
+    private final class RotaRecebida {
+
+        private final Map<Integer, String> partes = new TreeMap<>();
+        private final CountDownLatch completa = new CountDownLatch(1);
+        private int partesEsperadas = -1;
+        private boolean falhou;
+
+        synchronized void receber(String payload) {
+            JsonNode mensagem;
+            try {
+                mensagem = simulador.lerJson(payload);
+            } catch (Exception e) {
+                return;
+            }
+            switch (mensagem.path("tipo").asText()) {
+                case "GEOMETRIA":
+                    partes.put(mensagem.path("parte").asInt(), mensagem.path("pontos").asText());
+                    break;
+                case "CONCLUIDA":
+                    partesEsperadas = mensagem.path("partesGeometria").asInt();
+                    break;
+                case "ERRO":
+                    falhou = true;
+                    logger.debug("Motorista {}: rota não calculada: {}", indice, mensagem.path("mensagem").asText());
+                    break;
+                default:
+                    break;
+            }
+            if (falhou || partes.size() == partesEsperadas) {
+                completa.countDown();
+            }
+        }
+
+        int[] aguardar() throws InterruptedException {
+            if (!completa.await(30, TimeUnit.SECONDS)) {
+                return null;
+            }
+            synchronized (this) {
+                return falhou ? null : juntarPartes();
+            }
+        }
+
+        // Cada parte repete o último ponto da anterior
+        private int[] juntarPartes() {
+            int[][] decodificadas = new int[partes.size()][];
+            int total = 0;
+            int i = 0;
+            for (String parte : partes.values()) {
+                decodificadas[i] = Polyline.decodificar(parte);
+                total += decodificadas[i].length - (i > 0 ? 2 : 0);
+                i++;
+            }
+            int[] resultado = new int[total];
+            int posicao = 0;
+            for (int j = 0; j < decodificadas.length; j++) {
+                int pular = j > 0 ? 2 : 0;
+                System.arraycopy(decodificadas[j], pular, resultado, posicao, decodificadas[j].length - pular);
+                posicao += decodificadas[j].length - pular;
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Assinatura que só contabiliza e repassa o payload (texto)
+     */
+    private final class Receptor implements StompFrameHandler {
+
+        private final Consumer<Object> destino;
+
+        Receptor(Consumer<Object> destino) {
+            this.destino = destino;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders cabecalhos) {
+            return String.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders cabecalhos, Object payload) {
+            simulador.registrarRecebimento();
+            destino.accept(payload);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.cwcdev.ia.simulador;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.Transport;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Gerador de carga para o fluxo de navegação STOMP (/ws-gps). Executa etapas
+ * com quantidades crescentes de motoristas simulados contra um nó em
+ * execução e, ao fim de cada etapa, informa p50/p99 das latências fix -> eco e
+ * fix -> instrução, vazão de mensagens, heap e CPU média do nó (via actuator).
+ * O broker STOMP é o simples, em processo: a CPU do nó inclui a do broker.
+ *
+ * Não sobe o contexto Spring: roda pelo perfil Maven "simulador", de
+ * preferência contra um nó com o perfil Spring "stubs" (serviços externos locais):
+ * <pre>
+ * java -jar target/gps.war --spring.profiles.active=stubs
+ * mvn -Psimulador exec:java -Dsimulador.motoristas=50,100,200,400
+ * </pre>
+ * Parâmetros (propriedades de sistema): simulador.alvo, simulador.motoristas,
+ * simulador.duracao-s, simulador.intervalo-ms, simulador.velocidade,
+ * simulador.rotas.
+ */
+public class SimuladorFrota {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimuladorFrota.class);
+
+    // Origens e destinos sorteados em torno do centro de São Paulo
+    private static final double LATITUDE_CENTRO = -23.5505;
+    private static final double LONGITUDE_CENTRO = -46.6333;
+    private static final double RAIO_GRAUS = 0.03;
+
+    private final String alvo;
+    private final int duracaoSegundos;
+    private final int intervaloMs;
+    private final double velocidade;
+    private final int rotasDistintas;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebSocketStompClient stompClient;
+    private final ScheduledExecutorService agendador;
+    private final ExecutorService inicializador = Executors.newFixedThreadPool(4);
+    private final List<MotoristaSimulado> motoristas = Collections.synchronizedList(new ArrayList<>());
+
+    private final LongAdder enviados = new LongAdder();
+    private final LongAdder recebidos = new LongAdder();
+    private final LongAdder erros = new LongAdder();
+    private volatile Timer latenciaEco;
+    private volatile Timer latenciaInstrucao;
+
+    public SimuladorFrota(String alvo, int duracaoSegundos, int intervaloMs, double velocidade, int rotasDistintas) {
+        this.alvo = alvo;
+        this.duracaoSegundos = duracaoSegundos;
+        this.intervaloMs = intervaloMs;
+        this.velocidade = velocidade;
+        this.rotasDistintas = rotasDistintas;
+
+        List<Transport> transportes = Collections.singletonList(new WebSocketTransport(new StandardWebSocketClient()));
+        this.stompClient = new WebSocketStompClient(new SockJsClient(transportes));
+        this.stompClient.setMessageConverter(new ConversorTexto());
+
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.agendador = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "simulador-fixes");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Medidas da formação da frota, descartadas ao início de cada etapa
+        SimpleMeterRegistry registro = new SimpleMeterRegistry();
+        this.latenciaEco = criarTimer(registro, "eco");
+        this.latenciaInstrucao = criarTimer(registro, "instrucao");
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Sem contexto Spring o Logback ficaria em DEBUG e registraria cada frame STOMP
+        LoggingSystem logging = LoggingSystem.get(SimuladorFrota.class.getClassLoader());
+        logging.setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        logging.setLogLevel(SimuladorFrota.class.getName(), LogLevel.INFO);
+        // Respostas que chegam depois do encerramento das sessões, sem interesse
+        logging.setLogLevel("org.springframework.web.socket.sockjs.client", LogLevel.OFF);
+
+        String alvo = System.getProperty("simulador.alvo", "http://localhost:8080");
+        String[] etapas = System.getProperty("simulador.motoristas", "10,50,100,200").split(",");
+        SimuladorFrota simulador = new SimuladorFrota(alvo,
+                Integer.getInteger("simulador.duracao-s", 30),
+                Integer.getInteger("simulador.intervalo-ms", 1000),
+                Double.parseDouble(System.getProperty("simulador.velocidade", "13.9")),
+                Integer.getInteger("simulador.rotas", 20));
+        try {
+            logger.info(String.format(Locale.ROOT, "%10s %10s %10s %10s %10s %10s %10s %10s %8s %8s",
+                    "motoristas", "eco p50", "eco p99", "instr p50", "instr p99",
+                    "fixes/s", "msgs/s", "heap MB", "cpu nó", "erros"));
+            for (String etapa : etapas) {
+                simulador.executarEtapa(Integer.parseInt(etapa.trim()));
+            }
+        } finally {
+            simulador.encerrar();
+        }
+    }
+
+    /**
+     * Completa a frota até a quantidade informada, zera as medidas, aguarda a
+     * duração da etapa (amostrando a CPU do nó a cada segundo) e imprime o resultado
+     */
+    void executarEtapa(int quantidade) throws InterruptedException {
+        for (int i = motoristas.size(); i < quantidade; i++) {
+            adicionarMotorista(i);
+        }
+
+        SimpleMeterRegistry registro = new SimpleMeterRegistry();
+        latenciaEco = criarTimer(registro, "eco");
+        latenciaInstrucao = criarTimer(registro, "instrucao");
+        long enviadosAntes = enviados.sum();
+        long recebidosAntes = recebidos.sum();
+        long errosAntes = erros.sum();
+        long inicio = System.nanoTime();
+
+        double somaCpu = 0;
+        int amostrasCpu = 0;
+        for (int i = 0; i < duracaoSegundos; i++) {
+            TimeUnit.SECONDS.sleep(1);
+            double cpu = metricaAlvo("process.cpu.usage");
+            if (cpu >= 0) {
+                somaCpu += cpu;
+                amostrasCpu++;
+            }
+        }
+
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        HistogramSnapshot eco = latenciaEco.takeSnapshot();
+        HistogramSnapshot instrucao = latenciaInstrucao.takeSnapshot();
+        logger.info(String.format(Locale.ROOT, "%10d %10s %10s %10s %10s %10.0f %10.0f %10s %8s %8d",
+                quantidade,
+                milissegundos(eco, 0), milissegundos(eco, 1),
+                milissegundos(instrucao, 0), milissegundos(instrucao, 1),
+                (enviados.sum() - enviadosAntes) / segundos,
+                (recebidos.sum() - recebidosAntes) / segundos,
+                heapAlvoMb(),
+                amostrasCpu > 0 ? String.format(Locale.ROOT, "%.0f%%", somaCpu / amostrasCpu * 100) : "-",
+                erros.sum() - errosAntes));
+    }
+
+    private void adicionarMotorista(int indice) throws InterruptedException {
+        MotoristaSimulado motorista = new MotoristaSimulado(this, indice);
+        try {
+            stompClient.connect(alvo + "/ws-gps", motorista).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            erros.increment();
+            logger.warn("Motorista {} não conectou: {}", indice, e.getMessage());
+            return;
+        }
+        motoristas.add(motorista);
+        if (!motorista.iniciarRota()) {
+            logger.warn("Motorista {} não iniciou a navegação", indice);
+        }
+        // Fixes espalhados no intervalo para não chegarem todos no mesmo instante
+        agendador.scheduleAtFixedRate(() -> avancar(motorista),
+                ThreadLocalRandom.current().nextInt(intervaloMs), intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void avancar(MotoristaSimulado motorista) {
+        if (motorista.isConectado() && !motorista.enviarFix(velocidade, intervaloMs)) {
+            inicializador.execute(() -> {
+                try {
+                    motorista.iniciarRota();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Pedido de /app/rota.calcular para a rota de índice informado (origem e
+     * destino determinísticos, para que as rotas se repitam e o cache do nó
+     * seja exercitado)
+     */
+    String pedidoRota(int indiceRota) {
+        int rota = Math.floorMod(indiceRota, rotasDistintas);
+        double angulo = 2 * Math.PI * rota / rotasDistintas;
+        double origemLat = LATITUDE_CENTRO + RAIO_GRAUS * Math.sin(angulo);
+        double origemLng = LONGITUDE_CENTRO + RAIO_GRAUS * Math.cos(angulo);
+        double destinoLat = LATITUDE_CENTRO - RAIO_GRAUS * Math.sin(angulo + 0.7);
+        double destinoLng = LONGITUDE_CENTRO - RAIO_GRAUS * Math.cos(angulo + 0.7);
+        return String.format(Locale.ROOT,
+                "{\"origemLat\":%.6f,\"origemLng\":%.6f,\"destinoLat\":%.6f,\"destinoLng\":%.6f}",
+                origemLat, origemLng, destinoLat, destinoLng);
+    }
+
+    JsonNode lerJson(String json) throws IOException {
+        return objectMapper.readTree(json);
+    }
+
+    private String heapAlvoMb() {
+        double heap = metricaAlvo("jvm.memory.used?tag=area:heap");
+        return heap < 0 ? "-" : String.format(Locale.ROOT, "%.0f", heap / 1048576);
+    }
+
+    /**
+     * Primeira medida da métrica do actuator no nó alvo, ou -1 se indisponível
+     */
+    private double metricaAlvo(String metrica) {
+        try {
+            JsonNode resposta = objectMapper.readTree(restTemplate.getForObject(
+                    alvo + "/actuator/metrics/" + metrica, String.class));
+            return resposta.path("measurements").path(0).path("value").asDouble(-1);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    void encerrar() throws InterruptedException {
+        // Sem envios em andamento: a sessão não aceita um DISCONNECT no meio de um frame
+        agendador.shutdownNow();
+        inicializador.shutdownNow();
+        agendador.awaitTermination(5, TimeUnit.SECONDS);
+        inicializador.awaitTermination(5, TimeUnit.SECONDS);
+        synchronized (motoristas) {
+            for (MotoristaSimulado motorista : motoristas) {
+                motorista.desconectar();
+            }
+        }
+        stompClient.stop();
+    }
+
+    int getRotasDistintas() {
+        return rotasDistintas;
+    }
+
+    void registrarEnvio() {
+        enviados.increment();
+    }
+
+    void registrarRecebimento() {
+        recebidos.increment();
+    }
+
+    void registrarErro() {
+        erros.increment();
+    }
+
+    void registrarEco(long nanos) {
+        latenciaEco.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void registrarInstrucao(long nanos) {
+        latenciaInstrucao.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer criarTimer(SimpleMeterRegistry registro, String nome) {
+        return Timer.builder("simulador." + nome)
+                .publishPercentiles(0.5, 0.99)
+                .percentilePrecision(2)
+                .distributionStatisticExpiry(Duration.ofSeconds(duracaoSegundos * 2L + 60))
+                .distributionStatisticBufferLength(1)
+                .register(registro);
+    }
+
+    private static String milissegundos(HistogramSnapshot snapshot, int indice) {
+        ValueAtPercentile[] percentis = snapshot.percentileValues();
+        if (snapshot.count() == 0 || percentis.length <= indice) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%.1fms", percentis[indice].value(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Payloads como texto em qualquer content-type: pedidos e respostas de
+     * rota são JSON, eco e eventos são lidos como texto
+     */
+    private static final class ConversorTexto extends StringMessageConverter {
+
+        @Override
+        protected boolean supportsMimeType(MessageHeaders cabecalhos) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.cwcdev.ia.simulador;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.cwcdev.ia.codec.Polyline;
+import com.cwcdev.ia.navegacao.MotorNavegacao;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Respostas locais no formato do ViaCEP, do Nominatim e do OSRM para testes de
+ * carga sem depender dos serviços públicos (perfil "stubs", ver
+ * application-stubs.properties).
+ *
+ * As respostas são determinísticas (derivadas do CEP, do texto ou das
+ * coordenadas) e entregues após a latência configurada mais uma variação
+ * aleatória. A espera é feita por um agendador: as threads do Tomcat não
+ * ficam presas durante a latência simulada.
+ */
+@RestController
+@Profile("stubs")
+public class StubsUpstream {
+
+    // Centro das coordenadas geradas (São Paulo) e raio aproximado em graus
+    private static final double LATITUDE_CENTRO = -23.5505;
+    private static final double LONGITUDE_CENTRO = -46.6333;
+    private static final double RAIO_GRAUS = 0.08;
+    private static final double METROS_POR_PASSO = 2000;
+    private static final double METROS_POR_GRAU = 111320;
+
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService agendador = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "stubs-upstream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int latenciaViaCep;
+    private final int latenciaNominatim;
+    private final int latenciaOsrm;
+    private final int variacao;
+    private final double passoRota;
+
+    public StubsUpstream(ObjectMapper objectMapper,
+            @Value("${stubs.latencia-ms.viacep:80}") int latenciaViaCep,
+            @Value("${stubs.latencia-ms.nominatim:250}") int latenciaNominatim,
+            @Value("${stubs.latencia-ms.osrm:150}") int latenciaOsrm,
+            @Value("${stubs.variacao-ms:30}") int variacao,
+            @Value("${stubs.osrm.passo-metros:25}") double passoRota) {
+        this.objectMapper = objectMapper;
+        this.latenciaViaCep = latenciaViaCep;
+        this.latenciaNominatim = latenciaNominatim;
+        this.latenciaOsrm = latenciaOsrm;
+        this.variacao = variacao;
+        this.passoRota = passoRota;
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        agendador.shutdownNow();
+    }
+
+    @GetMapping(value = "/stubs/viacep/ws/{cep}/json/", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> viaCep(@PathVariable String cep) {
+        return responderApos(latenciaViaCep, () -> {
+            ObjectNode endereco = objectMapper.createObjectNode();
+            endereco.put("cep", cep.substring(0, Math.min(5, cep.length())) + "-" + cep.substring(Math.min(5, cep.length())));
+            endereco.put("logradouro", "Rua Simulada " + (Math.abs(cep.hashCode()) % 500));
+            endereco.put("bairro", "Bairro " + (Math.abs(cep.hashCode()) % 40));
+            endereco.put("localidade", "São Paulo");
+            endereco.put("uf", "SP");
+            endereco.put("ibge", "3550308");
+            endereco.put("ddd", "11");
+            return endereco;
+        });
+    }
+
+    /**
+     * Busca por logradouro: três faixas de CEP do logradouro pedido, a
+     * primeira igual ao CEP que o Nominatim simulado devolve para a mesma rua
+     */
+    @GetMapping(value = "/stubs/viacep/ws/{uf}/{cidade}/{logradouro}/json/",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> viaCepLogradouro(@PathVariable String uf,
+            @PathVariable String cidade, @PathVariable String logradouro) {
+        return responderApos(latenciaViaCep, () -> {
+            ArrayNode enderecos = objectMapper.createArrayNode();
+            for (int i = 0; i < 3; i++) {
+                ObjectNode endereco = enderecos.addObject();
+                endereco.put("cep", cepLogradouro(logradouro, i));
+                endereco.put("logradouro", logradouro);
+                endereco.put("complemento", "de " + (i * 1000) + " a " + (i * 1000 + 999));
+                endereco.put("bairro", "Bairro " + (Math.abs(logradouro.hashCode()) % 40));
+                endereco.put("localidade", cidade);
+                endereco.put("uf", uf);
+                endereco.put("ibge", "3550308");
+                endereco.put("ddd", "11");
+            }
+            return enderecos;
+        });
+    }
+
+    @GetMapping(value = "/stubs/nominatim/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> nominatim(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String postalcode) {
+        String chave = postalcode != null ? postalcode : String.valueOf(q);
+        return responderApos(latenciaNominatim, () -> {
+            ArrayNode resultados = objectMapper.createArrayNode();
+            ObjectNode lugar = resultados.addObject();
+            lugar.put("lat", String.valueOf(latitude(chave)));
+            lugar.put("lon", String.valueOf(longitude(chave)));
+            lugar.put("display_name", "Local simulado " + chave + ", São Paulo, Brasil");
+            ObjectNode endereco = lugar.putObject("address");
+            // Texto com vírgulas: a rua é a primeira parte, no CEP da primeira faixa do ViaCEP simulado
+            String rua = q != null && q.contains(",") ? q.substring(0, q.indexOf(',')).trim() : null;
+            endereco.put("road", rua != null ? rua : "Avenida Simulada " + (Math.abs(chave.hashCode()) % 300));
+            if (rua != null && postalcode == null) {
+                endereco.put("postcode", cepLogradouro(rua, 0));
+            }
+            endereco.put("suburb", "Centro");
+            endereco.put("city", "São Paulo");
+            endereco.put("state", "São Paulo");
+            if (postalcode != null) {
+                endereco.put("postcode", postalcode);
+            }
+            return resultados;
+        });
+    }
+
+    /**
+     * Rota em "L" (primeiro na latitude, depois na longitude) com pontos a cada
+     * passo configurado, anotações por segmento e passos de partida, curva,
+     * continuação (a cada 2 km) e chegada. Pontos e passos intermediários caem
+     * numa grade fixa, como as ruas reais: rotas recalculadas de outra origem
+     * para o mesmo destino repetem o trecho final.
+     *
+     * Com alternatives, a segunda rota é o "L" invertido (primeiro na
+     * longitude), 10% mais lenta. A velocidade depende do perfil da URL.
+     */
+    @GetMapping(value = "/stubs/osrm/route/v1/**", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> osrm(HttpServletRequest request,
+            @RequestParam(required = false) String alternatives) {
+        // URI bruta: o Spring removeria o trecho após ';' de uma variável de caminho
+        String uri = request.getRequestURI();
+        String coordenadas = uri.substring(uri.lastIndexOf('/') + 1);
+        double velocidade = velocidade(uri);
+        boolean comAlternativa = alternatives != null && !alternatives.equals("false") && !alternatives.equals("0");
+        return responderApos(latenciaOsrm, () -> {
+            String[] pontos = coordenadas.split("[;,]");
+            double lng1 = Double.parseDouble(pontos[0]);
+            double lat1 = Double.parseDouble(pontos[1]);
+            double lng2 = Double.parseDouble(pontos[2]);
+            double lat2 = Double.parseDouble(pontos[3]);
+            ObjectNode raiz = objectMapper.createObjectNode();
+            raiz.put("code", "Ok");
+            ArrayNode rotas = raiz.putArray("routes");
+            montarRota(rotas.addObject(), lat1, lng1, lat2, lng2, true, velocidade);
+            if (comAlternativa && lat1 != lat2 && lng1 != lng2) {
+                montarRota(rotas.addObject(), lat1, lng1, lat2, lng2, false, velocidade * 0.9);
+            }
+            return raiz;
+        });
+    }
+
+    /**
+     * Matriz de tempos e distâncias do serviço table: o tempo entre dois pontos
+     * é o do "L" da rota principal, na velocidade do perfil. Sem sources ou
+     * destinations, todos os pontos entram.
+     */
+    @GetMapping(value = "/stubs/osrm/table/v1/**", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> osrmTabela(HttpServletRequest request,
+            @RequestParam(required = false) String sources,
+            @RequestParam(required = false) String destinations) {
+        String uri = request.getRequestURI();
+        String[] pontos = uri.substring(uri.lastIndexOf('/') + 1).split(";");
+        double velocidade = velocidade(uri);
+        return responderApos(latenciaOsrm, () -> {
+            double[] lats = new double[pontos.length];
+            double[] lngs = new double[pontos.length];
+            for (int i = 0; i < pontos.length; i++) {
+                String[] coordenada = pontos[i].split(",");
+                lngs[i] = Double.parseDouble(coordenada[0]);
+                lats[i] = Double.parseDouble(coordenada[1]);
+            }
+            int[] origens = indices(sources, pontos.length);
+            int[] destinos = indices(destinations, pontos.length);
+            ObjectNode raiz = objectMapper.createObjectNode();
+            raiz.put("code", "Ok");
+            ArrayNode duracoes = raiz.putArray("durations");
+            ArrayNode distancias = raiz.putArray("distances");
+            for (int origem : origens) {
+                ArrayNode linhaDuracoes = duracoes.addArray();
+                ArrayNode linhaDistancias = distancias.addArray();
+                for (int destino : destinos) {
+                    double distancia =
+                            MotorNavegacao.calcularDistancia(lats[origem], lngs[origem], lats[destino], lngs[origem])
+                            + MotorNavegacao.calcularDistancia(lats[destino], lngs[origem], lats[destino], lngs[destino]);
+                    linhaDuracoes.add(distancia / velocidade);
+                    linhaDistancias.add(distancia);
+                }
+            }
+            return raiz;
+        });
+    }
+
+    /**
+     * Velocidade (m/s) do perfil no penúltimo trecho do caminho da URL
+     */
+    private static double velocidade(String uri) {
+        String perfil = uri.substring(0, uri.lastIndexOf('/'));
+        perfil = perfil.substring(perfil.lastIndexOf('/') + 1);
+        return perfil.equals("walking") ? 1.4 : perfil.equals("cycling") ? 4.5 : 11.1;
+    }
+
+    private static int[] indices(String lista, int quantidade) {
+        if (lista == null || lista.isEmpty() || lista.equals("all")) {
+            int[] todos = new int[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                todos[i] = i;
+            }
+            return todos;
+        }
+        String[] partes = lista.split(";");
+        int[] indices = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            indices[i] = Integer.parseInt(partes[i]);
+        }
+        return indices;
+    }
+
+    private void montarRota(ObjectNode rota, double lat1, double lng1, double lat2, double lng2,
+                            boolean latitudePrimeiro, double velocidade) {
+        // Esquina do "L"
+        double latEsquina = latitudePrimeiro ? lat2 : lat1;
+        double lngEsquina = latitudePrimeiro ? lng1 : lng2;
+        double trecho1 = MotorNavegacao.calcularDistancia(lat1, lng1, latEsquina, lngEsquina);
+        double trecho2 = MotorNavegacao.calcularDistancia(latEsquina, lngEsquina, lat2, lng2);
+        double[] parada1 = latitudePrimeiro ? paradas(lat1, lat2, passoRota) : paradas(lng1, lng2, passoRota);
+        double[] parada2 = latitudePrimeiro ? paradas(lng1, lng2, passoRota) : paradas(lat1, lat2, passoRota);
+        int segmentos = parada1.length + parada2.length - 2;
+
+        int[] geometria = new int[(segmentos + 1) * 2];
+        for (int i = 0; i < parada1.length; i++) {
+            colocarPonto(geometria, i, latitudePrimeiro ? parada1[i] : lat1, latitudePrimeiro ? lng1 : parada1[i]);
+        }
+        for (int i = 1; i < parada2.length; i++) {
+            colocarPonto(geometria, parada1.length - 1 + i,
+                    latitudePrimeiro ? lat2 : parada2[i], latitudePrimeiro ? parada2[i] : lng2);
+        }
+        rota.put("geometry", Polyline.codificar(geometria, 0, segmentos + 1));
+
+        // Passos antes das anotações, na ordem em que o OSRM os devolve
+        String rua1 = latitudePrimeiro ? "Rua Simulada Norte-Sul" : "Avenida Simulada Leste-Oeste";
+        String rua2 = latitudePrimeiro ? "Avenida Simulada Leste-Oeste" : "Rua Simulada Norte-Sul";
+        ObjectNode perna = rota.putArray("legs").addObject();
+        ArrayNode passos = perna.putArray("steps");
+        double[] marcos = latitudePrimeiro ? paradas(lat1, lat2, METROS_POR_PASSO) : paradas(lng1, lng2, METROS_POR_PASSO);
+        for (int i = 0; i < marcos.length - 1; i++) {
+            double lat = latitudePrimeiro ? marcos[i] : lat1;
+            double lng = latitudePrimeiro ? lng1 : marcos[i];
+            double distancia = latitudePrimeiro
+                    ? MotorNavegacao.calcularDistancia(marcos[i], lng1, marcos[i + 1], lng1)
+                    : MotorNavegacao.calcularDistancia(lat1, marcos[i], lat1, marcos[i + 1]);
+            adicionarPasso(passos, i == 0 ? "depart" : "continue", i == 0 ? null : "straight",
+                    i == 0 ? rua1 : rua1 + ", marco " + marco(marcos[i]), distancia, velocidade, lat, lng);
+        }
+        boolean esquerda = latitudePrimeiro ? lng2 > lng1 : lat2 < lat1;
+        marcos = latitudePrimeiro ? paradas(lng1, lng2, METROS_POR_PASSO) : paradas(lat1, lat2, METROS_POR_PASSO);
+        for (int i = 0; i < marcos.length - 1; i++) {
+            double lat = latitudePrimeiro ? lat2 : marcos[i];
+            double lng = latitudePrimeiro ? marcos[i] : lng2;
+            double distancia = latitudePrimeiro
+                    ? MotorNavegacao.calcularDistancia(lat2, marcos[i], lat2, marcos[i + 1])
+                    : MotorNavegacao.calcularDistancia(marcos[i], lng2, marcos[i + 1], lng2);
+            adicionarPasso(passos, i == 0 ? "turn" : "continue", i == 0 ? (esquerda ? "left" : "right") : "straight",
+                    i == 0 ? rua2 : rua2 + ", marco " + marco(marcos[i]), distancia, velocidade, lat, lng);
+        }
+        adicionarPasso(passos, "arrive", null, "", 0, velocidade, lat2, lng2);
+        perna.put("distance", trecho1 + trecho2);
+        perna.put("duration", (trecho1 + trecho2) / velocidade);
+        ObjectNode anotacao = perna.putObject("annotation");
+        ArrayNode distancias = anotacao.putArray("distance");
+        ArrayNode duracoes = anotacao.putArray("duration");
+        ArrayNode nos = anotacao.putArray("nodes");
+        long noBase = Math.abs((long) (lat1 * 1e5) * 31 + (long) (lng1 * 1e5)) * 1000 + (latitudePrimeiro ? 0 : 500);
+        nos.add(noBase);
+        for (int i = 0; i < segmentos; i++) {
+            double d = MotorNavegacao.calcularDistancia(
+                    geometria[i * 2] / Polyline.ESCALA, geometria[i * 2 + 1] / Polyline.ESCALA,
+                    geometria[i * 2 + 2] / Polyline.ESCALA, geometria[i * 2 + 3] / Polyline.ESCALA);
+            distancias.add(d);
+            duracoes.add(d / velocidade);
+            nos.add(noBase + i + 1);
+        }
+
+        rota.put("distance", trecho1 + trecho2);
+        rota.put("duration", (trecho1 + trecho2) / velocidade);
+    }
+
+    private static void colocarPonto(int[] geometria, int indice, double lat, double lng) {
+        geometria[indice * 2] = (int) Math.round(lat * Polyline.ESCALA);
+        geometria[indice * 2 + 1] = (int) Math.round(lng * Polyline.ESCALA);
+    }
+
+    /**
+     * Coordenadas de {@code inicio} a {@code fim}: as pontas e, entre elas,
+     * as linhas de uma grade fixa com espaçamento de {@code metros}
+     */
+    private static double[] paradas(double inicio, double fim, double metros) {
+        double grade = metros / METROS_POR_GRAU;
+        double sentido = Math.signum(fim - inicio);
+        if (sentido == 0) {
+            return new double[] {inicio, fim};
+        }
+        long primeira = sentido > 0 ? (long) Math.floor(inicio / grade) + 1 : (long) Math.ceil(inicio / grade) - 1;
+        long ultima = sentido > 0 ? (long) Math.ceil(fim / grade) - 1 : (long) Math.floor(fim / grade) + 1;
+        int internas = (int) Math.max(0, (ultima - primeira) * (long) sentido + 1);
+        double[] valores = new double[internas + 2];
+        valores[0] = inicio;
+        for (int i = 0; i < internas; i++) {
+            valores[i + 1] = (primeira + i * (long) sentido) * grade;
+        }
+        valores[internas + 1] = fim;
+        return valores;
+    }
+
+    private static long marco(double grau) {
+        return Math.round(grau * METROS_POR_GRAU / METROS_POR_PASSO);
+    }
+
+    private static void adicionarPasso(ArrayNode passos, String tipo, String direcao, String nome,
+                                       double distancia, double velocidade, double lat, double lng) {
+        ObjectNode passo = passos.addObject();
+        passo.put("distance", distancia);
+        passo.put("duration", distancia / velocidade);
+        passo.put("name", nome);
+        ObjectNode manobra = passo.putObject("maneuver");
+        manobra.put("type", tipo);
+        if (direcao != null) {
+            manobra.put("modifier", direcao);
+        }
+        manobra.putArray("location").add(lng).add(lat);
+    }
+
+    private DeferredResult<ResponseEntity<String>> responderApos(int latenciaMs, Supplier<Object> resposta) {
+        DeferredResult<ResponseEntity<String>> resultado = new DeferredResult<>();
+        int espera = latenciaMs + (variacao > 0 ? ThreadLocalRandom.current().nextInt(variacao + 1) : 0);
+        agendador.schedule(() -> {
+            try {
+                resultado.setResult(ResponseEntity.ok(objectMapper.writeValueAsString(resposta.get())));
+            } catch (Exception e) {
+                resultado.setErrorResult(e);
+            }
+        }, espera, TimeUnit.MILLISECONDS);
+        return resultado;
+    }
+
+    private static String cepLogradouro(String logradouro, int faixa) {
+        int base = Math.abs(logradouro.toLowerCase().hashCode() % 90000) + 10000;
+        return base + "-" + String.format("%03d", faixa * 10);
+    }
+
+    private static double latitude(String chave) {
+        return LATITUDE_CENTRO + ((chave.hashCode() & 0xFFFF) / 65535.0 - 0.5) * 2 * RAIO_GRAUS;
+    }
+
+    private static double longitude(String chave) {
+        return LONGITUDE_CENTRO + (((chave.hashCode() >>> 16) & 0xFFFF) / 65535.0 - 0.5) * 2 * RAIO_GRAUS;
+    }
+}
@@ -0,0 +1,34 @@
+package com.cwcdev.ia.viagem;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Formato dos segmentos de viagem (um arquivo append-only por dia).
+ *
+ * Cada registro começa com o varint {@code (idLocal << 2) | tipo}, onde
+ * idLocal é o número da sessão dentro do arquivo:
+ * <pre>
+ * SESSAO    (tipo 0): sessaoId:texto timestamp:varlong       -- declara o idLocal
+ * FIM       (tipo 0): texto nulo dt:zigzag(ms)                -- libera o idLocal
+ * POSICAO   (tipo 1): dt:zigzag(ms) dLat:zigzag dLng:zigzag velocidade:varint(km/h)
+ * INSTRUCAO (tipo 2): dt:zigzag(ms) indice:varint
+ * ALERTA    (tipo 3): dt:zigzag(ms) indice:varint
+ * </pre>
+ * Tempos e coordenadas (ponto fixo 1e5, ~1 m) são deltas do registro anterior
+ * da mesma sessão, o que deixa um fix típico entre 6 e 9 bytes. Um idLocal
+ * liberado pelo FIM é reaproveitado pela próxima sessão declarada, o que mantém
+ * o cabeçalho em um byte enquanto houver menos de 32 sessões simultâneas.
+ */
+final class FormatoViagem {
+
+    static final double ESCALA = 1e5;
+    static final String PREFIXO = "viagens-";
+    static final String EXTENSAO = ".seg";
+
+    private FormatoViagem() {}
+
+    static Path arquivoDoDia(Path diretorio, LocalDate dia) {
+        return diretorio.resolve(PREFIXO + dia + EXTENSAO);
+    }
+}
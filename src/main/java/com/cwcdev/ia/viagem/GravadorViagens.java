@@ -0,0 +1,409 @@
+package com.cwcdev.ia.viagem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.codec.BufferBytes;
+import com.cwcdev.ia.gps.FixGps;
+import com.cwcdev.ia.navegacao.AnelEventos;
+
+/**
+ * Gravação das viagens (fixes, mudanças de instrução e alertas) em segmentos
+ * diários append-only (ver {@link FormatoViagem}).
+ *
+ * As threads de navegação apenas publicam eventos em um anel sem locks; uma
+ * thread de gravação codifica em lote e escreve com {@link FileChannel} quando
+ * o buffer enche ou a cada intervalo de flush. Com o anel cheio o evento é
+ * descartado e contado, sem bloquear a navegação. O fim de cada sessão é
+ * gravado e libera o idLocal dela para a próxima, de modo que o estado da
+ * gravação acompanha as sessões simultâneas e não as do dia.
+ *
+ * A exportação da trilha de uma sessão exige a chave entregue a ela na
+ * identificação (HMAC-SHA256 do id com o segredo do nó).
+ */
+@Component
+public class GravadorViagens {
+
+    private static final Logger logger = LoggerFactory.getLogger(GravadorViagens.class);
+    private static final int TAMANHO_LOTE = 64 * 1024;
+    private static final long INTERVALO_FLUSH_MS = 500;
+    private static final String ALGORITMO_CHAVE = "HmacSHA256";
+    // Intervalo mínimo entre tentativas de abrir o segmento após uma falha
+    private static final long INTERVALO_REABERTURA_MS = 1000;
+
+    private final boolean habilitado;
+    private final Path diretorio;
+    private final ZoneId fuso = ZoneId.systemDefault();
+    private final AnelEventos<RegistroViagem> anel;
+    private final Consumer<RegistroViagem> codificador = this::codificar;
+    private final BufferBytes lote = new BufferBytes(TAMANHO_LOTE + 1024);
+    private final LongAdder registrosGravados = new LongAdder();
+    private final LongAdder registrosDescartados = new LongAdder();
+    private final LongAdder bytesGravados = new LongAdder();
+    private final SecretKeySpec segredo;
+
+    // Estado da thread de gravação
+    private final Map<String, EstadoSessao> sessoes = new HashMap<>();
+    private final BitSet idsEmUso = new BitSet();
+    private FileChannel canal;
+    private long proximaReabertura;
+    private long descartadosSemSegmento;
+    private LocalDate diaAtual;
+    private long fimDoDia;
+    // Posição no arquivo do primeiro byte do lote
+    private long posicaoLote;
+    private long ultimoFlush;
+    private volatile IndiceViagens indiceAtual;
+    private volatile boolean executando = true;
+    private Thread thread;
+
+    public GravadorViagens(
+            @Value("${navegacao.viagens.habilitado:true}") boolean habilitado,
+            @Value("${navegacao.viagens.diretorio:dados/viagens}") String diretorio,
+            @Value("${navegacao.viagens.capacidade-anel:65536}") int capacidadeAnel,
+            @Value("${navegacao.viagens.segredo:}") String segredo) {
+        this.habilitado = habilitado;
+        this.diretorio = Paths.get(diretorio);
+        this.anel = new AnelEventos<>(capacidadeAnel, RegistroViagem::new);
+        byte[] bytesSegredo;
+        if (segredo.isEmpty()) {
+            bytesSegredo = new byte[32];
+            new SecureRandom().nextBytes(bytesSegredo);
+            logger.info("Sem navegacao.viagens.segredo: chaves de exportação valem até o reinício do nó");
+        } else {
+            bytesSegredo = segredo.getBytes(StandardCharsets.UTF_8);
+        }
+        this.segredo = new SecretKeySpec(bytesSegredo, ALGORITMO_CHAVE);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+        thread = new Thread(this::executar, "gravador-viagens");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void encerrar() throws InterruptedException {
+        executando = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join(2000);
+        }
+    }
+
+    public Path getDiretorio() {
+        return diretorio;
+    }
+
+    /**
+     * Índice do segmento em gravação, ou null antes do primeiro registro
+     */
+    IndiceViagens getIndiceAtual() {
+        return indiceAtual;
+    }
+
+    /**
+     * Chave que autoriza a exportação da trilha da sessão
+     */
+    public String chaveExportacao(String sessaoId) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO_CHAVE);
+            mac.init(segredo);
+            byte[] assinatura = mac.doFinal(sessaoId.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(assinatura);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC indisponível", e);
+        }
+    }
+
+    public boolean chaveConfere(String sessaoId, String chave) {
+        if (sessaoId == null || chave == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                chaveExportacao(sessaoId).getBytes(StandardCharsets.US_ASCII),
+                chave.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public void registrarPosicao(String sessaoId, FixGps fix) {
+        publicar(RegistroViagem.POSICAO, sessaoId, fix.timestamp, fix.latitude, fix.longitude, fix.velocidade, 0);
+    }
+
+    public void registrarInstrucao(String sessaoId, int indice) {
+        publicar(RegistroViagem.INSTRUCAO, sessaoId, System.currentTimeMillis(), 0, 0, 0, indice);
+    }
+
+    public void registrarAlerta(String sessaoId, int indice) {
+        publicar(RegistroViagem.ALERTA, sessaoId, System.currentTimeMillis(), 0, 0, 0, indice);
+    }
+
+    /**
+     * Grava o fim da sessão e libera o estado dela no gravador
+     */
+    public void encerrarSessao(String sessaoId) {
+        publicar(RegistroViagem.FIM, sessaoId, System.currentTimeMillis(), 0, 0, 0, 0);
+    }
+
+    public long getRegistrosGravados() { return registrosGravados.sum(); }
+
+    public long getRegistrosDescartados() { return registrosDescartados.sum(); }
+
+    public long getBytesGravados() { return bytesGravados.sum(); }
+
+    private void publicar(int tipo, String sessaoId, long timestamp, double lat, double lng, double velocidade, int indice) {
+        if (!habilitado) {
+            return;
+        }
+        long pos = anel.reservar();
+        if (pos < 0) {
+            registrosDescartados.increment();
+            return;
+        }
+        RegistroViagem registro = anel.slot(pos);
+        registro.tipo = tipo;
+        registro.sessaoId = sessaoId;
+        registro.timestamp = timestamp;
+        registro.latitude = lat;
+        registro.longitude = lng;
+        registro.velocidade = velocidade;
+        registro.indiceInstrucao = indice;
+        anel.publicar(pos);
+    }
+
+    private void executar() {
+        while (executando || !anel.isVazio()) {
+            int processados = 0;
+            try {
+                processados = anel.drenar(codificador, 4096);
+                long agora = System.currentTimeMillis();
+                if (lote.tamanho() >= TAMANHO_LOTE
+                        || (lote.tamanho() > 0 && agora - ultimoFlush >= INTERVALO_FLUSH_MS)) {
+                    descarregar();
+                }
+            } catch (RuntimeException e) {
+                // A thread de gravação não pode morrer: o anel encheria e tudo seria descartado
+                logger.error("Falha inesperada na gravação de viagens", e);
+            }
+            if (processados == 0) {
+                LockSupport.parkNanos(this, 10_000_000);
+            }
+        }
+        descarregar();
+        fecharCanal();
+    }
+
+    // Executado apenas pela thread de gravação. Um registro que falha é
+    // retirado do lote sem alterar o estado da sessão.
+    private void codificar(RegistroViagem registro) {
+        int inicioRegistro = -1;
+        try {
+            if ((registro.timestamp >= fimDoDia || canal == null) && !trocarDia(registro.timestamp)) {
+                // Sem segmento aberto até a próxima tentativa
+                descartadosSemSegmento++;
+                registrosDescartados.increment();
+                return;
+            }
+            inicioRegistro = lote.tamanho();
+            if (registro.tipo == RegistroViagem.FIM) {
+                codificarFim(registro);
+            } else {
+                codificarRegistro(registro, inicioRegistro);
+                registrosGravados.increment();
+            }
+        } catch (RuntimeException e) {
+            if (inicioRegistro >= 0) {
+                lote.truncar(inicioRegistro);
+            }
+            registrosDescartados.increment();
+            logger.error("Registro de viagem descartado (sessão {}): {}", registro.sessaoId, e.toString());
+        } finally {
+            registro.sessaoId = null;
+        }
+        if (lote.tamanho() >= TAMANHO_LOTE) {
+            descarregar();
+        }
+    }
+
+    private void codificarRegistro(RegistroViagem registro, int inicioRegistro) {
+        int lat = 0;
+        int lng = 0;
+        int kmh = 0;
+        if (registro.tipo == RegistroViagem.POSICAO) {
+            lat = Math.toIntExact(Math.round(registro.latitude * FormatoViagem.ESCALA));
+            lng = Math.toIntExact(Math.round(registro.longitude * FormatoViagem.ESCALA));
+            kmh = Math.toIntExact(Math.round(Math.max(0, registro.velocidade) * 3.6));
+        }
+
+        EstadoSessao estado = sessoes.get(registro.sessaoId);
+        boolean nova = estado == null;
+        if (nova) {
+            estado = new EstadoSessao(idsEmUso.nextClearBit(0));
+            lote.escreverVarint(estado.idLocal << 2 | RegistroViagem.SESSAO);
+            lote.escreverTexto(registro.sessaoId);
+            lote.escreverVarlong(registro.timestamp);
+            estado.ultimoTimestamp = registro.timestamp;
+        }
+
+        lote.escreverVarint(estado.idLocal << 2 | registro.tipo);
+        lote.escreverZigZagLong(registro.timestamp - estado.ultimoTimestamp);
+        if (registro.tipo == RegistroViagem.POSICAO) {
+            lote.escreverZigZag(lat - estado.ultimaLatitude);
+            lote.escreverZigZag(lng - estado.ultimaLongitude);
+            lote.escreverVarint(kmh);
+        } else {
+            lote.escreverVarint(registro.indiceInstrucao);
+        }
+
+        // Registro completo no lote: só agora o estado avança
+        estado.ultimoTimestamp = registro.timestamp;
+        if (registro.tipo == RegistroViagem.POSICAO) {
+            estado.ultimaLatitude = lat;
+            estado.ultimaLongitude = lng;
+        }
+        if (nova) {
+            sessoes.put(registro.sessaoId, estado);
+            idsEmUso.set(estado.idLocal);
+            estado.trecho = indiceAtual.declarar(registro.sessaoId, posicaoLote + inicioRegistro);
+        }
+        estado.trecho.estender(posicaoLote + lote.tamanho());
+    }
+
+    // Sessão que não chegou a gravar nada no dia (ou já encerrada) não tem o que fechar
+    private void codificarFim(RegistroViagem registro) {
+        EstadoSessao estado = sessoes.get(registro.sessaoId);
+        if (estado == null) {
+            return;
+        }
+        lote.escreverVarint(estado.idLocal << 2 | RegistroViagem.SESSAO);
+        lote.escreverTexto(null);
+        lote.escreverZigZagLong(registro.timestamp - estado.ultimoTimestamp);
+        estado.trecho.estender(posicaoLote + lote.tamanho());
+        sessoes.remove(registro.sessaoId);
+        idsEmUso.clear(estado.idLocal);
+        registrosGravados.increment();
+    }
+
+    /**
+     * Abre o segmento do dia do registro; depois de uma falha, só tenta de novo
+     * no mesmo dia após {@link #INTERVALO_REABERTURA_MS}
+     *
+     * @return false se não há segmento aberto
+     */
+    private boolean trocarDia(long timestamp) {
+        LocalDate dia = Instant.ofEpochMilli(timestamp).atZone(fuso).toLocalDate();
+        long agora = System.currentTimeMillis();
+        if (canal == null && dia.equals(diaAtual) && agora < proximaReabertura) {
+            return false;
+        }
+        descarregar();
+        fecharCanal();
+        sessoes.clear();
+        idsEmUso.clear();
+
+        diaAtual = dia;
+        fimDoDia = diaAtual.plusDays(1).atStartOfDay(fuso).toInstant().toEpochMilli();
+        IndiceViagens indice = new IndiceViagens(diaAtual);
+        posicaoLote = 0;
+        try {
+            Files.createDirectories(diretorio);
+            canal = FileChannel.open(FormatoViagem.arquivoDoDia(diretorio, diaAtual),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Reconstrói o índice do dia e descarta um registro parcial deixado
+            // por uma queda antes de continuar o arquivo
+            long tamanho = canal.size();
+            long valido = tamanho > 0 ? LeitorViagens.decodificar(canal, 0, tamanho, indice::registrar) : 0;
+            if (valido < tamanho) {
+                logger.warn("Segmento de viagens {} truncado de {} para {} bytes", diaAtual, tamanho, valido);
+                canal.truncate(valido);
+            }
+            canal.position(valido);
+            posicaoLote = valido;
+        } catch (IOException e) {
+            logger.error("Não foi possível abrir o segmento de viagens de {}: {}", diaAtual, e.getMessage());
+            fecharCanal();
+            proximaReabertura = agora + INTERVALO_REABERTURA_MS;
+        }
+        indiceAtual = indice;
+        if (canal != null && descartadosSemSegmento > 0) {
+            logger.warn("{} registros de viagem descartados sem segmento aberto", descartadosSemSegmento);
+            descartadosSemSegmento = 0;
+        }
+        return canal != null;
+    }
+
+    private void descarregar() {
+        ultimoFlush = System.currentTimeMillis();
+        if (lote.tamanho() == 0) {
+            return;
+        }
+        if (canal != null) {
+            try {
+                ByteBuffer dados = lote.comoByteBuffer();
+                while (dados.hasRemaining()) {
+                    canal.write(dados);
+                }
+                posicaoLote += lote.tamanho();
+                bytesGravados.add(lote.tamanho());
+            } catch (IOException e) {
+                logger.error("Falha ao gravar viagens: {}", e.getMessage());
+            }
+        }
+        lote.limpar();
+    }
+
+    private void fecharCanal() {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                logger.warn("Falha ao fechar segmento de viagens: {}", e.getMessage());
+            }
+            canal = null;
+        }
+    }
+
+    private static final class EstadoSessao {
+        final int idLocal;
+        long ultimoTimestamp;
+        int ultimaLatitude;
+        int ultimaLongitude;
+        IndiceViagens.Trecho trecho;
+
+        EstadoSessao(int idLocal) {
+            this.idLocal = idLocal;
+        }
+    }
+}
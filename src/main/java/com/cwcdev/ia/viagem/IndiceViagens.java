@@ -0,0 +1,75 @@
+package com.cwcdev.ia.viagem;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trecho de um segmento diário que contém cada sessão: da primeira declaração
+ * (SESSAO) ao fim do último registro. A leitura da trilha de uma sessão
+ * começa na declaração e termina no fim do trecho, sem varrer o resto do dia.
+ *
+ * O índice do dia em gravação é mantido pelo {@link GravadorViagens}; o de
+ * dias anteriores é montado pelo {@link LeitorViagens} numa única varredura.
+ */
+final class IndiceViagens {
+
+    private final LocalDate dia;
+    private final Map<String, Trecho> trechos = new ConcurrentHashMap<>();
+
+    IndiceViagens(LocalDate dia) {
+        this.dia = dia;
+    }
+
+    LocalDate getDia() {
+        return dia;
+    }
+
+    Trecho trecho(String sessaoId) {
+        return trechos.get(sessaoId);
+    }
+
+    /**
+     * Trecho da sessão, criado na primeira declaração dela
+     */
+    Trecho declarar(String sessaoId, long inicio) {
+        return trechos.computeIfAbsent(sessaoId, id -> new Trecho(inicio));
+    }
+
+    /**
+     * Estende o trecho da sessão até o fim do registro (usado na varredura de um arquivo)
+     */
+    void registrar(RegistroViagem registro) {
+        Trecho trecho = registro.tipo == RegistroViagem.SESSAO
+                ? declarar(registro.sessaoId, registro.inicioNoArquivo)
+                : trechos.get(registro.sessaoId);
+        if (trecho != null) {
+            trecho.estender(registro.fimNoArquivo);
+        }
+    }
+
+    int getSessoes() {
+        return trechos.size();
+    }
+
+    static final class Trecho {
+        final long inicio;
+        private volatile long fim;
+
+        Trecho(long inicio) {
+            this.inicio = inicio;
+            this.fim = inicio;
+        }
+
+        long getFim() {
+            return fim;
+        }
+
+        // Escrito por uma só thread (gravação ou varredura)
+        void estender(long fimRegistro) {
+            if (fimRegistro > fim) {
+                fim = fimRegistro;
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.cwcdev.ia.viagem;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.cwcdev.ia.codec.LeitorBytes;
+
+/**
+ * Leitura dos segmentos gravados por {@link GravadorViagens}: reprodução dos
+ * eventos de uma sessão e exportação em GPX.
+ *
+ * O arquivo é lido em janelas com posições long (um segmento diário pode
+ * passar de 2 GB) e só no trecho da sessão pedida, localizado pelo
+ * {@link IndiceViagens} do dia. Um registro incompleto no final (gravação em
+ * andamento ou queda do processo) encerra a leitura sem erro.
+ */
+@Component
+public class LeitorViagens {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeitorViagens.class);
+    private static final int TAMANHO_JANELA = 1 << 20;
+    // Maior registro aceito; um registro maior só aparece em arquivo corrompido
+    private static final int MAXIMO_REGISTRO = 64 * 1024;
+    private static final int DIAS_EM_CACHE = 8;
+    // Resultado da leitura de um registro
+    private static final int ENTREGAR = 0;
+    private static final int PULADO = 1;
+    private static final int CORROMPIDO = 2;
+
+    private final GravadorViagens gravador;
+    private final Path diretorio;
+    private final ZoneId fuso = ZoneId.systemDefault();
+    // Índices de dias encerrados (arquivos que não mudam mais), em ordem de acesso
+    private final Map<LocalDate, IndiceViagens> indicesFechados =
+            new LinkedHashMap<LocalDate, IndiceViagens>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LocalDate, IndiceViagens> maisAntigo) {
+                    return size() > DIAS_EM_CACHE;
+                }
+            };
+
+    public LeitorViagens(GravadorViagens gravador) {
+        this.gravador = gravador;
+        this.diretorio = gravador.getDiretorio();
+    }
+
+    /**
+     * Confere a chave de exportação entregue à sessão na identificação
+     */
+    public boolean chaveConfere(String sessaoId, String chave) {
+        return gravador.chaveConfere(sessaoId, chave);
+    }
+
+    /**
+     * Reproduz, em ordem de gravação, os eventos da sessão no dia informado
+     *
+     * @return quantidade de eventos entregues
+     */
+    public int reproduzir(LocalDate dia, String sessaoId, Consumer<RegistroViagem> destino) throws IOException {
+        Path arquivo = FormatoViagem.arquivoDoDia(diretorio, dia);
+        if (!Files.exists(arquivo)) {
+            return 0;
+        }
+        int[] entregues = {0};
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            IndiceViagens.Trecho trecho = indice(dia, canal).trecho(sessaoId);
+            if (trecho == null) {
+                return 0;
+            }
+            decodificar(canal, trecho.inicio, trecho.getFim(), registro -> {
+                if (registro.tipo != RegistroViagem.SESSAO && sessaoId.equals(registro.sessaoId)) {
+                    entregues[0]++;
+                    destino.accept(registro);
+                }
+            });
+        }
+        return entregues[0];
+    }
+
+    /**
+     * Índice do dia: o do gravador para o dia em gravação; para os demais, uma
+     * varredura única guardada em cache quando o dia já terminou
+     */
+    private IndiceViagens indice(LocalDate dia, FileChannel canal) throws IOException {
+        IndiceViagens doGravador = gravador.getIndiceAtual();
+        if (doGravador != null && doGravador.getDia().equals(dia)) {
+            return doGravador;
+        }
+        boolean encerrado = dia.isBefore(LocalDate.now(fuso));
+        if (encerrado) {
+            synchronized (indicesFechados) {
+                IndiceViagens emCache = indicesFechados.get(dia);
+                if (emCache != null) {
+                    return emCache;
+                }
+            }
+        }
+        long inicio = System.nanoTime();
+        IndiceViagens indice = new IndiceViagens(dia);
+        decodificar(canal, 0, canal.size(), indice::registrar);
+        logger.info("Índice de viagens de {} montado: {} sessões em {} ms",
+                dia, indice.getSessoes(), (System.nanoTime() - inicio) / 1_000_000);
+        if (encerrado) {
+            synchronized (indicesFechados) {
+                indicesFechados.put(dia, indice);
+            }
+        }
+        return indice;
+    }
+
+    /**
+     * Exporta a trilha da sessão em GPX 1.1
+     *
+     * @return quantidade de pontos exportados
+     */
+    public int exportarGpx(LocalDate dia, String sessaoId, Writer saida) throws IOException {
+        saida.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        saida.write("<gpx version=\"1.1\" creator=\"ExercicioCepAula\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        saida.write("<trk><name>" + escaparXml(sessaoId) + "</name><trkseg>\n");
+
+        StringBuilder linha = new StringBuilder(128);
+        int[] pontos = {0};
+        IOException[] falha = {null};
+        reproduzir(dia, sessaoId, registro -> {
+            if (registro.tipo != RegistroViagem.POSICAO || falha[0] != null) {
+                return;
+            }
+            linha.setLength(0);
+            linha.append("<trkpt lat=\"").append(registro.latitude)
+                 .append("\" lon=\"").append(registro.longitude)
+                 .append("\"><time>").append(Instant.ofEpochMilli(registro.timestamp))
+                 .append("</time></trkpt>\n");
+            try {
+                saida.append(linha);
+                pontos[0]++;
+            } catch (IOException e) {
+                falha[0] = e;
+            }
+        });
+        if (falha[0] != null) {
+            throw falha[0];
+        }
+
+        saida.write("</trkseg></trk>\n</gpx>\n");
+        saida.flush();
+        return pontos[0];
+    }
+
+    /**
+     * Decodifica os registros do arquivo entre as posições informadas, entregando
+     * um objeto reutilizado a cada chamada. Uma nova declaração de SESSAO com um
+     * idLocal já usado (liberado por um FIM ou reabertura do arquivo após
+     * reinício) substitui a anterior.
+     *
+     * Lendo do início do arquivo, um registro sem declaração indica corrupção e
+     * encerra a leitura; a partir de um trecho, são registros de sessões
+     * declaradas antes do trecho e apenas são pulados.
+     *
+     * @return posição logo após o último registro completo
+     */
+    static long decodificar(FileChannel canal, long inicio, long fim, Consumer<RegistroViagem> destino)
+            throws IOException {
+        ByteBuffer janela = ByteBuffer.allocate(TAMANHO_JANELA);
+        janela.limit(0);
+        LeitorBytes leitor = new LeitorBytes(janela);
+        Map<Integer, EstadoLeitura> sessoes = new HashMap<>();
+        RegistroViagem registro = new RegistroViagem();
+        boolean pularSemDeclaracao = inicio > 0;
+        long base = inicio;       // posição no arquivo do primeiro byte da janela
+        long carregado = inicio;  // próxima posição do arquivo a carregar
+        long ultimoCompleto = inicio;
+
+        while (true) {
+            if (janela.remaining() < MAXIMO_REGISTRO && carregado < fim) {
+                base += janela.position();
+                janela.compact();
+                janela.limit((int) Math.min(janela.capacity(), fim - base));
+                while (janela.hasRemaining()) {
+                    int lidos = canal.read(janela, carregado);
+                    if (lidos < 0) {
+                        fim = carregado;
+                        break;
+                    }
+                    carregado += lidos;
+                }
+                janela.flip();
+            }
+            if (!janela.hasRemaining()) {
+                break;
+            }
+
+            int inicioRegistro = janela.position();
+            int resultado;
+            try {
+                resultado = lerRegistro(leitor, sessoes, registro, pularSemDeclaracao);
+            } catch (BufferUnderflowException | IllegalStateException e) {
+                // Cauda incompleta: ignora o registro parcial
+                break;
+            }
+            if (resultado == CORROMPIDO) {
+                break;
+            }
+            ultimoCompleto = base + janela.position();
+            if (resultado == ENTREGAR) {
+                registro.inicioNoArquivo = base + inicioRegistro;
+                registro.fimNoArquivo = ultimoCompleto;
+                destino.accept(registro);
+            }
+        }
+        return ultimoCompleto;
+    }
+
+    // O estado da sessão só muda depois que o registro inteiro foi lido
+    private static int lerRegistro(LeitorBytes leitor, Map<Integer, EstadoLeitura> sessoes,
+                                   RegistroViagem registro, boolean pularSemDeclaracao) {
+        int cabecalho = leitor.lerVarint();
+        int tipo = cabecalho & 3;
+        int idLocal = cabecalho >>> 2;
+
+        if (tipo == RegistroViagem.SESSAO) {
+            String sessaoId = leitor.lerTexto();
+            if (sessaoId == null) {
+                return lerFim(leitor, sessoes, idLocal, registro, pularSemDeclaracao);
+            }
+            EstadoLeitura estado = new EstadoLeitura(sessaoId);
+            estado.timestamp = leitor.lerVarlong();
+            sessoes.put(idLocal, estado);
+            registro.tipo = tipo;
+            registro.sessaoId = estado.sessaoId;
+            registro.timestamp = estado.timestamp;
+            return ENTREGAR;
+        }
+
+        long deltaTempo = leitor.lerZigZagLong();
+        int deltaLatitude = 0;
+        int deltaLongitude = 0;
+        if (tipo == RegistroViagem.POSICAO) {
+            deltaLatitude = leitor.lerZigZag();
+            deltaLongitude = leitor.lerZigZag();
+        }
+        int valor = leitor.lerVarint();
+
+        EstadoLeitura estado = sessoes.get(idLocal);
+        if (estado == null) {
+            return pularSemDeclaracao ? PULADO : CORROMPIDO;
+        }
+        estado.timestamp += deltaTempo;
+        registro.tipo = tipo;
+        registro.sessaoId = estado.sessaoId;
+        registro.timestamp = estado.timestamp;
+        if (tipo == RegistroViagem.POSICAO) {
+            estado.latitude += deltaLatitude;
+            estado.longitude += deltaLongitude;
+            registro.latitude = estado.latitude / FormatoViagem.ESCALA;
+            registro.longitude = estado.longitude / FormatoViagem.ESCALA;
+            registro.velocidade = valor / 3.6;
+            registro.indiceInstrucao = 0;
+        } else {
+            registro.indiceInstrucao = valor;
+        }
+        return ENTREGAR;
+    }
+
+    private static int lerFim(LeitorBytes leitor, Map<Integer, EstadoLeitura> sessoes, int idLocal,
+                              RegistroViagem registro, boolean pularSemDeclaracao) {
+        long deltaTempo = leitor.lerZigZagLong();
+        EstadoLeitura estado = sessoes.remove(idLocal);
+        if (estado == null) {
+            return pularSemDeclaracao ? PULADO : CORROMPIDO;
+        }
+        registro.tipo = RegistroViagem.FIM;
+        registro.sessaoId = estado.sessaoId;
+        registro.timestamp = estado.timestamp + deltaTempo;
+        return ENTREGAR;
+    }
+
+    private static String escaparXml(String texto) {
+        return texto.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static final class EstadoLeitura {
+        final String sessaoId;
+        long timestamp;
+        int latitude;
+        int longitude;
+
+        EstadoLeitura(String sessaoId) {
+            this.sessaoId = sessaoId;
+        }
+    }
+}
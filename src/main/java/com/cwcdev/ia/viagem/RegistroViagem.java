@@ -0,0 +1,26 @@
+package com.cwcdev.ia.viagem;
+
+/**
+ * Evento de uma viagem: usado como slot reutilizável na gravação e como
+ * registro decodificado na leitura.
+ */
+public class RegistroViagem {
+
+    public static final int SESSAO = 0;
+    public static final int POSICAO = 1;
+    public static final int INSTRUCAO = 2;
+    public static final int ALERTA = 3;
+    // Fim da sessão no segmento (gravado como SESSAO sem id)
+    public static final int FIM = 4;
+
+    public int tipo;
+    public String sessaoId;
+    public long timestamp;
+    public double latitude;
+    public double longitude;
+    public double velocidade; // m/s
+    public int indiceInstrucao;
+    // Posição do registro no segmento (só na leitura)
+    public long inicioNoArquivo;
+    public long fimNoArquivo;
+}